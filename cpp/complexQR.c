@@ -0,0 +1,389 @@
+/*
+
+        Portable C versions of complexQR.S, complexQRf.S and complexQRcm.S.
+
+        The algorithm is that of the assembly language: for each column k the Householder vector
+        v = x + e^(i arg x0) |x| e0, normalized, is formed in v[], and (I - 2 v vH) is applied to
+        columns k .. n-1 of A, column k included, so A is left with R and zeros below the diagonal,
+        then, if flag is set, to rows k .. m-1 of Q.  A square matrix does not do the last column.
+        Q must be the identity on entry; on return Q A = R.
+
+        Two things differ from the assembly language.  A zero x0 takes the phase 1 and a zero column
+        is skipped, where complexQR.S divides by zero.  And the order of the sums: the assembly
+        language goes down a column of A for each column, strided by the row length in row-major
+        storage; here the rows are streamed, as in ComplexHouseholder.applyLeft,
+
+            w[j]     = sum over i of conj(v[i]) A[k+i][j]       j = k .. n-1, a row at a time
+            A[k+i][j] -= 2 v[i] w[j]
+
+        so that the inner loops run over j, unit stride, with no reduction, and the compiler can
+        vectorize them without -ffast-math.  The results agree with complexQR.S to rounding, not
+        bit for bit.  In column-major storage the columns are unit stride already; the dot product
+        is a reduction, so it is split over four partial sums that the compiler can keep in vector
+        registers.
+
+        These are named complexQRc, complexQRfc and complexQRcmc.  On arm64 they are built beside the
+        assembly language, for comparison (NativeQR.complexHouseholderPortable); elsewhere complexQR,
+        complexQRf, complexQRcm and complexQRneon are defined here as calls to them, so native-lib.cpp
+        is the same on every architecture.
+
+    Calling sequence, as complexQR:
+    long result = complexQRc((double) A, (double) v, (double) Q, (int) number of rows in A, (int) number of columns in A, (int) flag);
+        result is zero, or -1 if the workspace could not be allocated
+
+*/
+
+#include <math.h>
+#include <stdlib.h>
+#include <string.h>
+
+
+long complexQR(double *, double *, double *, int, int, int);
+
+
+/*
+ *              //	Row-major kernels
+ *
+ *              C = (I - 2 v vH) C for the rows x cols block c, leading dimension ldc (complex elements);
+ *              w holds 2*cols doubles.
+*/
+
+static void reflectRows(double *restrict c, int ldc, int rows, int cols, const double *restrict v, double *restrict w) {
+
+    int n2 = 2 * cols;
+    for (int j = 0; j < n2; j++) {
+        w[j] = 0.0;
+    }
+    for (int i = 0; i < rows; i++) {                            // w += conj(v[i]) * C[i][]
+        const double *restrict row = c + 2 * (long) ldc * i;
+        double vr = v[2 * i], vi = v[2 * i + 1];
+        for (int j = 0; j < n2; j += 2) {
+            w[j]     += vr * row[j] + vi * row[j + 1];
+            w[j + 1] += vr * row[j + 1] - vi * row[j];
+        }
+    }
+    for (int i = 0; i < rows; i++) {                            // C[i][] -= 2 v[i] * w
+        double *restrict row = c + 2 * (long) ldc * i;
+        double vr = 2.0 * v[2 * i], vi = 2.0 * v[2 * i + 1];
+        for (int j = 0; j < n2; j += 2) {
+            row[j]     -= vr * w[j] - vi * w[j + 1];
+            row[j + 1] -= vr * w[j + 1] + vi * w[j];
+        }
+    }
+}
+
+static void reflectRowsf(float *restrict c, int ldc, int rows, int cols, const float *restrict v, float *restrict w) {
+
+    int n2 = 2 * cols;
+    for (int j = 0; j < n2; j++) {
+        w[j] = 0.0f;
+    }
+    for (int i = 0; i < rows; i++) {
+        const float *restrict row = c + 2 * (long) ldc * i;
+        float vr = v[2 * i], vi = v[2 * i + 1];
+        for (int j = 0; j < n2; j += 2) {
+            w[j]     += vr * row[j] + vi * row[j + 1];
+            w[j + 1] += vr * row[j + 1] - vi * row[j];
+        }
+    }
+    for (int i = 0; i < rows; i++) {
+        float *restrict row = c + 2 * (long) ldc * i;
+        float vr = 2.0f * v[2 * i], vi = 2.0f * v[2 * i + 1];
+        for (int j = 0; j < n2; j += 2) {
+            row[j]     -= vr * w[j] - vi * w[j + 1];
+            row[j + 1] -= vr * w[j + 1] + vi * w[j];
+        }
+    }
+}
+
+
+/*
+ *              //	The Householder vector of the column of length len at x, stride (in complex elements)
+ *
+ *              Returns 0 if the column is zero, and v is not formed.
+*/
+
+static int house(const double *x, long stride, int len, double *v) {
+
+    double sum = 0.0;
+    for (int i = 0; i < len; i++) {
+        sum += x[2 * stride * i] * x[2 * stride * i] + x[2 * stride * i + 1] * x[2 * stride * i + 1];
+    }
+    if (sum == 0.0) {
+        return 0;
+    }
+    double norm = sqrt(sum);
+    double x0r = x[0], x0i = x[1];
+    double abs0 = hypot(x0r, x0i);
+    double v0r = x0r + ((abs0 != 0.0) ? x0r / abs0 : 1.0) * norm;          // x0 + e^(i arg x0) norm
+    double v0i = x0i + ((abs0 != 0.0) ? x0i / abs0 : 0.0) * norm;
+    double scale = 1.0 / sqrt(sum - abs0 * abs0 + v0r * v0r + v0i * v0i);
+
+    v[0] = v0r * scale;
+    v[1] = v0i * scale;
+    for (int i = 1; i < len; i++) {
+        v[2 * i]     = x[2 * stride * i] * scale;
+        v[2 * i + 1] = x[2 * stride * i + 1] * scale;
+    }
+    return 1;
+}
+
+static int housef(const float *x, long stride, int len, float *v) {
+
+    float sum = 0.0f;
+    for (int i = 0; i < len; i++) {
+        sum += x[2 * stride * i] * x[2 * stride * i] + x[2 * stride * i + 1] * x[2 * stride * i + 1];
+    }
+    if (sum == 0.0f) {
+        return 0;
+    }
+    float norm = sqrtf(sum);
+    float x0r = x[0], x0i = x[1];
+    float abs0 = hypotf(x0r, x0i);
+    float v0r = x0r + ((abs0 != 0.0f) ? x0r / abs0 : 1.0f) * norm;
+    float v0i = x0i + ((abs0 != 0.0f) ? x0i / abs0 : 0.0f) * norm;
+    float scale = 1.0f / sqrtf(sum - abs0 * abs0 + v0r * v0r + v0i * v0i);
+
+    v[0] = v0r * scale;
+    v[1] = v0i * scale;
+    for (int i = 1; i < len; i++) {
+        v[2 * i]     = x[2 * stride * i] * scale;
+        v[2 * i + 1] = x[2 * stride * i + 1] * scale;
+    }
+    return 1;
+}
+
+
+/*
+ *              //	complexQR, rows contiguous
+*/
+
+static void factorRows(double *A, double *v, double *Q, double *w, int m, int n, int flag) {
+
+    int steps = (m == n) ? n - 1 : n;                           // square matrix does not do the last column
+    for (int k = 0; k < steps; k++) {
+        double *akk = A + 2 * ((long) n * k + k);
+        if (!house(akk, n, m - k, v)) {
+            continue;                                           // column is already zero
+        }
+        reflectRows(akk, n, m - k, n - k, v, w);
+        if (flag) {
+            reflectRows(Q + 2 * (long) m * k, m, m - k, m, v, w);
+        }
+    }
+}
+
+long complexQRc(double *A, double *v, double *Q, int m, int n, int flag) {
+
+    double *w = (double *) malloc(2 * sizeof(double) * (size_t) (m > n ? m : n));
+    if (w == NULL) {
+        return -1L;
+    }
+    factorRows(A, v, Q, w, m, n, flag);
+    free(w);
+    return 0L;
+}
+
+
+/*
+ *              //	complexQRf, single precision, rows contiguous
+*/
+
+long complexQRfc(float *A, float *v, float *Q, int m, int n, int flag) {
+
+    float *w = (float *) malloc(2 * sizeof(float) * (size_t) (m > n ? m : n));
+    if (w == NULL) {
+        return -1L;
+    }
+    int steps = (m == n) ? n - 1 : n;
+    for (int k = 0; k < steps; k++) {
+        float *akk = A + 2 * ((long) n * k + k);
+        if (!housef(akk, n, m - k, v)) {
+            continue;
+        }
+        reflectRowsf(akk, n, m - k, n - k, v, w);
+        if (flag) {
+            reflectRowsf(Q + 2 * (long) m * k, m, m - k, m, v, w);
+        }
+    }
+    free(w);
+    return 0L;
+}
+
+
+/*
+ *              //	complexQRf with the Householder vectors kept, for FloatComplexQR's solves and refinement
+ *
+ *              Stored as FloatComplexHouseholder.factor stores them: R on and above the diagonal, v[1..] below
+ *              it and v[0] in vHead, 2*n floats.  Each reflection is applied to column k as well, as in complexQRfc,
+ *              which gives R[k][k], then v is written over the zeros below it.  There is no Q.
+*/
+
+long complexQRfv(float *A, float *vHead, int m, int n) {
+
+    float *v = (float *) malloc(2 * sizeof(float) * (size_t) m);
+    float *w = (float *) malloc(2 * sizeof(float) * (size_t) n);
+    if (v == NULL || w == NULL) {
+        free(v);
+        free(w);
+        return -1L;
+    }
+    int steps = (m - 1 < n) ? m - 1 : n;                        // ComplexHouseholder.reflections
+    for (int k = 0; k < n; k++) {
+        vHead[2 * k] = 0.0f;                                    // no reflection, H = I
+        vHead[2 * k + 1] = 0.0f;
+    }
+    for (int k = 0; k < steps; k++) {
+        float *akk = A + 2 * ((long) n * k + k);
+        if (!housef(akk, n, m - k, v)) {
+            continue;                                           // the column is zero, and so is v
+        }
+        reflectRowsf(akk, n, m - k, n - k, v, w);
+        vHead[2 * k] = v[0];
+        vHead[2 * k + 1] = v[1];
+        for (int i = 1; i < m - k; i++) {
+            akk[2 * (long) n * i]     = v[2 * i];
+            akk[2 * (long) n * i + 1] = v[2 * i + 1];
+        }
+    }
+    free(v);
+    free(w);
+    return 0L;
+}
+
+
+/*
+ *              //	complexQRcm, columns contiguous: element (i, j) at 2*(m*j + i), A and Q
+ *
+ *              Each column is a dot product with v and an update, both unit stride.
+*/
+
+static void reflectColumn(double *restrict c, int len, const double *restrict v) {
+
+    double sr[4] = {0.0, 0.0, 0.0, 0.0}, si[4] = {0.0, 0.0, 0.0, 0.0};      // four partial sums of vH c
+    int i = 0;
+    for (; i + 4 <= len; i += 4) {
+        for (int l = 0; l < 4; l++) {
+            double vr = v[2 * (i + l)], vi = v[2 * (i + l) + 1];
+            double cr = c[2 * (i + l)], ci = c[2 * (i + l) + 1];
+            sr[l] += vr * cr + vi * ci;
+            si[l] += vr * ci - vi * cr;
+        }
+    }
+    for (; i < len; i++) {
+        sr[0] += v[2 * i] * c[2 * i] + v[2 * i + 1] * c[2 * i + 1];
+        si[0] += v[2 * i] * c[2 * i + 1] - v[2 * i + 1] * c[2 * i];
+    }
+    double s0 = 2.0 * ((sr[0] + sr[1]) + (sr[2] + sr[3]));
+    double s1 = 2.0 * ((si[0] + si[1]) + (si[2] + si[3]));
+    for (i = 0; i < len; i++) {                                 // c -= 2 (vH c) v
+        double vr = v[2 * i], vi = v[2 * i + 1];
+        c[2 * i]     -= s0 * vr - s1 * vi;
+        c[2 * i + 1] -= s0 * vi + s1 * vr;
+    }
+}
+
+long complexQRcmc(double *A, double *v, double *Q, int m, int n, int flag) {
+
+    int steps = (m == n) ? n - 1 : n;
+    for (int k = 0; k < steps; k++) {
+        double *akk = A + 2 * ((long) m * k + k);
+        if (!house(akk, 1, m - k, v)) {
+            continue;
+        }
+        for (int j = k; j < n; j++) {
+            reflectColumn(A + 2 * ((long) m * j + k), m - k, v);
+        }
+        if (flag) {
+            for (int j = 0; j < m; j++) {
+                reflectColumn(Q + 2 * ((long) m * j + k), m - k, v);
+            }
+        }
+    }
+    return 0L;
+}
+
+
+#if !defined(__aarch64__)
+
+/*
+ *              //	No assembly language here: the portable versions are the native ones
+*/
+
+long complexQR(double *A, double *v, double *Q, int m, int n, int flag) {
+    return complexQRc(A, v, Q, m, n, flag);
+}
+
+long complexQRf(float *A, float *v, float *Q, int m, int n, int flag) {
+    return complexQRfc(A, v, Q, m, n, flag);
+}
+
+long complexQRcm(double *A, double *v, double *Q, int m, int n, int flag) {
+    return complexQRcmc(A, v, Q, m, n, flag);
+}
+
+long complexQRneon(double *A, double *v, double *Q, int m, int n, int flag) {
+    return complexQRc(A, v, Q, m, n, flag);
+}
+
+#endif
+
+
+/*
+ *              //	complexQR on an A with nothing readable after it, e.g. the elements of a Java array
+ *
+ *              complexQR.S reads one row past the end of a column, so on arm64 A is copied into a buffer with
+ *              that row of padding and back; the copy is O(m n), the factorization O(m n^2).  Elsewhere complexQR
+ *              is complexQRc, which reads only A.  Returns zero, or -1 if the buffer could not be allocated.
+*/
+
+long complexQRunpadded(double *A, double *v, double *Q, int m, int n, int flag) {
+#if defined(__aarch64__)
+    size_t bytes = 2 * sizeof(double) * (size_t) m * n;
+    double *padded = (double *) malloc(bytes + 2 * sizeof(double) * (size_t) n);
+    if (padded == NULL) {
+        return -1L;
+    }
+    memcpy(padded, A, bytes);
+    memset((char *) padded + bytes, 0, 2 * sizeof(double) * (size_t) n);
+    complexQR(padded, v, Q, m, n, flag);
+    memcpy(A, padded, bytes);
+    free(padded);
+    return 0L;
+#else
+    return complexQRc(A, v, Q, m, n, flag);
+#endif
+}
+
+
+/*
+ *              //	Entry points for callers without JNI, e.g. the Java FFM API, ForeignQR.java
+ *
+ *              The caller provides the workspace, complexQRworkspace(m, n) doubles, so nothing is allocated per call:
+ *              v in the first 2*m, and for complexQRc the row of sums after it.  complexQRw factors one matrix with
+ *              the native kernel, the assembly language on arm64, complexQRc elsewhere; Q may be NULL when flag is 0.
+ *              complexQRbatch factors count matrices stored one after the other, A 2*m*n doubles apart and Q 2*m*m,
+ *              each Q the identity on entry, in one call.
+ *
+ *              complexQR.S reads one row past the end of a column, so A must be followed by 2*n readable doubles.
+*/
+
+long complexQRworkspace(int m, int n) {
+    return 2L * m + 2L * (m > n ? m : n);
+}
+
+long complexQRw(double *A, double *Q, double *work, int m, int n, int flag) {
+#if defined(__aarch64__)
+    return complexQR(A, work, Q, m, n, flag);
+#else
+    factorRows(A, work, Q, work + 2 * (long) m, m, n, flag);
+    return 0L;
+#endif
+}
+
+long complexQRbatch(double *A, double *Q, double *work, int count, int m, int n, int flag) {
+    for (int i = 0; i < count; i++) {
+        complexQRw(A + 2 * (long) m * n * i, flag ? Q + 2 * (long) m * m * i : NULL, work, m, n, flag);
+    }
+    return 0L;
+}
@@ -1,16 +1,36 @@
 #include <jni.h>
 #include <string>
-#include <android/log.h>
 #include <unistd.h>
+#include <cstdlib>
+#include <cstring>
+#include <sys/time.h>
 
 #define     TAG                             "bob"
 
+/*
+ *              //	Logging: logcat on Android, stderr in the desktop library
+*/
+
+#ifdef __ANDROID__
+#include <android/log.h>
+#define     LOGD(...)                       __android_log_print(ANDROID_LOG_DEBUG, TAG, __VA_ARGS__)
+#else
+#include <cstdio>
+#define     LOGD(...)                       (fprintf(stderr, TAG ": " __VA_ARGS__), fputc('\n', stderr))
+#endif
+
 /*
  *              //	Function prototypes
  *
 */
 
 extern "C" long complexQR(double*, double*, double*, int, int, int);
+extern "C" long complexQRf(float*, float*, float*, int, int, int);
+extern "C" long complexQRfv(float*, float*, int, int);                        // complexQR.c
+extern "C" long complexQRcm(double*, double*, double*, int, int, int);
+extern "C" long complexQRc(double*, double*, double*, int, int, int);          // complexQR.c
+extern "C" long complexQRneon(double*, double*, double*, int, int, int);
+extern "C" long complexQRunpadded(double*, double*, double*, int, int, int);   // complexQR.c
 bool throwJavaException(JNIEnv *, std::string, std::string, int, std::string);
 
 
@@ -23,25 +43,25 @@ Java_com_bob_complexqr_MainActivity_complexHouseholder(JNIEnv *env, jobject thiz
 
     double *v;
     if ((v = (double *)calloc(2*rows, sizeof(double))) == nullptr) {
-        __android_log_print(ANDROID_LOG_DEBUG, TAG, "malloc failed");
+        LOGD("malloc failed");
         throwJavaException(env, __FUNCTION__, "malloc failed. OutOfMemoryError", 0, "Exception");
         return 0L;
     }
 
-    __android_log_print(ANDROID_LOG_DEBUG, TAG, "starting complex houseHolder: %d   %d", rows, cols);
+    LOGD("starting complex houseHolder: %d   %d", rows, cols);
 
 //    long time;
 
     struct timeval  start{}, end{};
     gettimeofday(&start, nullptr);
 
-    long p = complexQR(aPtr, v, qPtr, rows, cols, Q);           // always returns zero
+    long p = complexQRunpadded(aPtr, v, qPtr, rows, cols, Q);   // the array has no row after it for complexQR.S to read
 
     gettimeofday(&end, nullptr);
 
     long executionTime = (end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec);
 
-    __android_log_print(ANDROID_LOG_DEBUG, TAG, "houseHolder time, usec: %ld", executionTime);
+    LOGD("houseHolder time, usec: %ld", executionTime);
 
     env->SetDoubleArrayRegion(a, 0, 2*rows*cols, aPtr);
     env->SetDoubleArrayRegion(qq, 0, 2*rows*rows, qPtr);
@@ -53,4 +73,338 @@ Java_com_bob_complexqr_MainActivity_complexHouseholder(JNIEnv *env, jobject thiz
 
     return executionTime;
 
-}
\ No newline at end of file
+}
+
+/*
+ *              //	Off-heap storage for DirectComplexMatrix, see NativeQR.java
+ *
+ *              The memory is allocated here, 64 byte aligned and zeroed, wrapped with NewDirectByteBuffer
+ *              and freed only by an explicit call from DirectComplexMatrix.close().  The collector never
+ *              sees more than the small ByteBuffer object.
+*/
+
+extern "C"
+JNIEXPORT jobject JNICALL
+Java_com_bob_complexqr_NativeQR_allocate(JNIEnv *env, jclass clazz, jlong bytes) {
+
+    void *p = nullptr;
+    if (bytes <= 0 || posix_memalign(&p, 64, (size_t) bytes) != 0) {
+        LOGD("allocate failed: %lld bytes", (long long) bytes);
+        throwJavaException(env, __FUNCTION__, "allocate failed. OutOfMemoryError", 0, "OutOfMemoryError");
+        return nullptr;
+    }
+    memset(p, 0, (size_t) bytes);
+
+    return env->NewDirectByteBuffer(p, bytes);
+}
+
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_bob_complexqr_NativeQR_free(JNIEnv *env, jclass clazz, jobject buffer) {
+
+    free(env->GetDirectBufferAddress(buffer));
+}
+
+
+/*
+ *              //	complexQR on Java arrays for NativeQR, as the MainActivity entry point but static
+ *
+ *              qq may be null when Q is zero.  The array has no row after it for complexQR.S to read, so this goes
+ *              through complexQRunpadded.
+*/
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_bob_complexqr_NativeQR_complexHouseholder(JNIEnv *env, jclass clazz, jdoubleArray a, jdoubleArray qq, jint rows, jint cols, jint Q) {
+
+    double *v;
+    if ((v = (double *)calloc(2*rows, sizeof(double))) == nullptr) {
+        LOGD("malloc failed");
+        throwJavaException(env, __FUNCTION__, "malloc failed. OutOfMemoryError", 0, "Exception");
+        return 0L;
+    }
+
+    double* aPtr = env->GetDoubleArrayElements(a, nullptr);
+    double* qPtr = (qq == nullptr) ? nullptr : env->GetDoubleArrayElements(qq, nullptr);
+
+    struct timeval  start{}, end{};
+    gettimeofday(&start, nullptr);
+
+    long p = complexQRunpadded(aPtr, v, qPtr, rows, cols, Q);
+
+    gettimeofday(&end, nullptr);
+
+    long executionTime = (end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec);
+
+    env->ReleaseDoubleArrayElements(a, aPtr, (p == 0) ? 0 : JNI_ABORT);   // copy back and release
+    if (p != 0) {
+        if (qPtr != nullptr) {
+            env->ReleaseDoubleArrayElements(qq, qPtr, JNI_ABORT);
+        }
+        free(v);
+        LOGD("malloc failed");
+        throwJavaException(env, __FUNCTION__, "malloc failed. OutOfMemoryError", 0, "Exception");
+        return 0L;
+    }
+    if (qPtr != nullptr) {
+        env->ReleaseDoubleArrayElements(qq, qPtr, (Q != 0) ? 0 : JNI_ABORT);
+    }
+
+    free(v);
+
+    return executionTime;
+}
+
+
+/*
+ *              //	complexQRc, the portable C version of complexQR, on Java arrays, for comparison with the assembly language
+ *
+ *              qq may be null when Q is zero.
+*/
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_bob_complexqr_NativeQR_complexHouseholderPortable(JNIEnv *env, jclass clazz, jdoubleArray a, jdoubleArray qq, jint rows, jint cols, jint Q) {
+
+    double *v;
+    if ((v = (double *)calloc(2*rows, sizeof(double))) == nullptr) {
+        LOGD("malloc failed");
+        throwJavaException(env, __FUNCTION__, "malloc failed. OutOfMemoryError", 0, "Exception");
+        return 0L;
+    }
+
+    double* aPtr = env->GetDoubleArrayElements(a, nullptr);
+    double* qPtr = (qq == nullptr) ? nullptr : env->GetDoubleArrayElements(qq, nullptr);
+
+    struct timeval  start{}, end{};
+    gettimeofday(&start, nullptr);
+
+    long p = complexQRc(aPtr, v, qPtr, rows, cols, Q);
+
+    gettimeofday(&end, nullptr);
+
+    long executionTime = (end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec);
+
+    LOGD("portable houseHolder time, usec: %ld", executionTime);
+
+    env->ReleaseDoubleArrayElements(a, aPtr, 0);            // copy back and release
+    if (qPtr != nullptr) {
+        env->ReleaseDoubleArrayElements(qq, qPtr, (Q != 0) ? 0 : JNI_ABORT);
+    }
+
+    free(v);
+
+    if (p != 0) {
+        throwJavaException(env, __FUNCTION__, "workspace malloc failed. OutOfMemoryError", 0, "Exception");
+    }
+
+    return executionTime;
+}
+
+
+/*
+ *              //	complexQRneon, complexQR with the inner loops in the NEON q registers, on Java arrays
+ *
+ *              qq may be null when Q is zero.
+*/
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_bob_complexqr_NativeQR_complexHouseholderNeon(JNIEnv *env, jclass clazz, jdoubleArray a, jdoubleArray qq, jint rows, jint cols, jint Q) {
+
+    double *v;
+    if ((v = (double *)calloc(2*rows, sizeof(double))) == nullptr) {
+        LOGD("malloc failed");
+        throwJavaException(env, __FUNCTION__, "malloc failed. OutOfMemoryError", 0, "Exception");
+        return 0L;
+    }
+
+    double* aPtr = env->GetDoubleArrayElements(a, nullptr);
+    double* qPtr = (qq == nullptr) ? nullptr : env->GetDoubleArrayElements(qq, nullptr);
+
+    struct timeval  start{}, end{};
+    gettimeofday(&start, nullptr);
+
+    complexQRneon(aPtr, v, qPtr, rows, cols, Q);
+
+    gettimeofday(&end, nullptr);
+
+    long executionTime = (end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec);
+
+    LOGD("neon houseHolder time, usec: %ld", executionTime);
+
+    env->ReleaseDoubleArrayElements(a, aPtr, 0);            // copy back and release
+    if (qPtr != nullptr) {
+        env->ReleaseDoubleArrayElements(qq, qPtr, (Q != 0) ? 0 : JNI_ABORT);
+    }
+
+    free(v);
+
+    return executionTime;
+}
+
+
+/*
+ *              //	complexQR on direct buffers: the kernel works on the caller's memory, no JNI copies
+ *
+ *              qq may be null when Q is zero, the kernel does not touch Q then.  complexQR.S reads one row past
+ *              the end of A, so a must hold rows*cols + cols complex elements, as DirectComplexMatrix allocates.
+*/
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_bob_complexqr_NativeQR_complexHouseholderDirect(JNIEnv *env, jclass clazz, jobject a, jobject qq, jint rows, jint cols, jint Q) {
+
+    auto *aPtr = (double *) env->GetDirectBufferAddress(a);
+    auto *qPtr = (qq == nullptr) ? nullptr : (double *) env->GetDirectBufferAddress(qq);
+    if (aPtr == nullptr || (Q != 0 && qPtr == nullptr)) {
+        throwJavaException(env, __FUNCTION__, "not a direct buffer", 0, "IllegalArgumentException");
+        return 0L;
+    }
+    if (env->GetDirectBufferCapacity(a) < 16L * ((long) rows * cols + cols)
+            || (Q != 0 && env->GetDirectBufferCapacity(qq) < 16L * rows * rows)) {
+        throwJavaException(env, __FUNCTION__, "direct buffer is too small", 0, "IllegalArgumentException");
+        return 0L;
+    }
+
+    double *v;
+    if ((v = (double *)calloc(2*rows, sizeof(double))) == nullptr) {
+        LOGD("malloc failed");
+        throwJavaException(env, __FUNCTION__, "malloc failed. OutOfMemoryError", 0, "Exception");
+        return 0L;
+    }
+
+    struct timeval  start{}, end{};
+    gettimeofday(&start, nullptr);
+
+    complexQR(aPtr, v, qPtr, rows, cols, Q);
+
+    gettimeofday(&end, nullptr);
+
+    long executionTime = (end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec);
+
+    LOGD("direct houseHolder time, usec: %ld", executionTime);
+
+    free(v);
+
+    return executionTime;
+}
+
+
+/*
+ *              //	Single precision complexQR, see complexQRf.S and FloatComplexMatrix.java
+ *
+ *              qq may be null when Q is zero.
+*/
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_bob_complexqr_NativeQR_complexHouseholderFloat(JNIEnv *env, jclass clazz, jfloatArray a, jfloatArray qq, jint rows, jint cols, jint Q) {
+
+    float *v;
+    if ((v = (float *)calloc(2*rows, sizeof(float))) == nullptr) {
+        LOGD("malloc failed");
+        throwJavaException(env, __FUNCTION__, "malloc failed. OutOfMemoryError", 0, "Exception");
+        return 0L;
+    }
+
+    float* aPtr = env->GetFloatArrayElements(a, nullptr);
+    float* qPtr = (qq == nullptr) ? nullptr : env->GetFloatArrayElements(qq, nullptr);
+
+    struct timeval  start{}, end{};
+    gettimeofday(&start, nullptr);
+
+    complexQRf(aPtr, v, qPtr, rows, cols, Q);
+
+    gettimeofday(&end, nullptr);
+
+    long executionTime = (end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec);
+
+    LOGD("float houseHolder time, usec: %ld", executionTime);
+
+    env->ReleaseFloatArrayElements(a, aPtr, 0);             // copy back and release
+    if (qPtr != nullptr) {
+        env->ReleaseFloatArrayElements(qq, qPtr, (Q != 0) ? 0 : JNI_ABORT);
+    }
+
+    free(v);
+
+    return executionTime;
+}
+
+
+/*
+ *              //	Single precision complexQR with the Householder vectors kept, for FloatComplexQR
+ *
+ *              complexQRfv, the portable C, on every architecture: R and the vectors in a, v[0] in vHead.
+*/
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_bob_complexqr_NativeQR_complexHouseholderFloatVectors(JNIEnv *env, jclass clazz, jfloatArray a, jfloatArray vHead, jint rows, jint cols) {
+
+    float* aPtr = env->GetFloatArrayElements(a, nullptr);
+    float* hPtr = env->GetFloatArrayElements(vHead, nullptr);
+
+    struct timeval  start{}, end{};
+    gettimeofday(&start, nullptr);
+
+    long p = complexQRfv(aPtr, hPtr, rows, cols);
+
+    gettimeofday(&end, nullptr);
+
+    long executionTime = (end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec);
+
+    env->ReleaseFloatArrayElements(a, aPtr, (p == 0) ? 0 : JNI_ABORT);     // copy back and release
+    env->ReleaseFloatArrayElements(vHead, hPtr, (p == 0) ? 0 : JNI_ABORT);
+    if (p != 0) {
+        LOGD("malloc failed");
+        throwJavaException(env, __FUNCTION__, "malloc failed. OutOfMemoryError", 0, "Exception");
+        return 0L;
+    }
+
+    return executionTime;
+}
+
+
+/*
+ *              //	complexQR on column-major A and Q, see complexQRcm.S and ColumnMajorHouseholder.java
+ *
+ *              qq may be null when Q is zero.
+*/
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_bob_complexqr_NativeQR_complexHouseholderColumnMajor(JNIEnv *env, jclass clazz, jdoubleArray a, jdoubleArray qq, jint rows, jint cols, jint Q) {
+
+    double *v;
+    if ((v = (double *)calloc(2*rows, sizeof(double))) == nullptr) {
+        LOGD("malloc failed");
+        throwJavaException(env, __FUNCTION__, "malloc failed. OutOfMemoryError", 0, "Exception");
+        return 0L;
+    }
+
+    double* aPtr = env->GetDoubleArrayElements(a, nullptr);
+    double* qPtr = (qq == nullptr) ? nullptr : env->GetDoubleArrayElements(qq, nullptr);
+
+    struct timeval  start{}, end{};
+    gettimeofday(&start, nullptr);
+
+    complexQRcm(aPtr, v, qPtr, rows, cols, Q);
+
+    gettimeofday(&end, nullptr);
+
+    long executionTime = (end.tv_sec * 1000000 + end.tv_usec) - (start.tv_sec * 1000000 + start.tv_usec);
+
+    LOGD("column-major houseHolder time, usec: %ld", executionTime);
+
+    env->ReleaseDoubleArrayElements(a, aPtr, 0);            // copy back and release
+    if (qPtr != nullptr) {
+        env->ReleaseDoubleArrayElements(qq, qPtr, (Q != 0) ? 0 : JNI_ABORT);
+    }
+
+    free(v);
+
+    return executionTime;
+}
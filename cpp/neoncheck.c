@@ -0,0 +1,248 @@
+/*
+
+        Check of the arm64 kernels, for the qemu workflow, .github/workflows/neon.yml: complexQRneon.S
+        against complexQR.S, complexQRf.S against the single precision C version, complexQRfc,
+        complexQRcm.S against the column-major C version, complexQRcmc, and complexQRunpadded, the
+        complexQR.S entry point for Java arrays, against complexQRc.
+
+        Random matrices of several shapes, square, tall, odd and even row counts, are factored with Q by
+        both kernels, and by complexQRc, and R and Q compared element by element.  The NEON kernel adds
+        its sums in another order, so the comparison is to a tolerance relative to the norm of A, not
+        bit for bit.  Exit status 0 if every shape agrees.
+
+        complexQRf.S, complexQRcm.S and complexQRunpadded are given the Java arrays with no padding, so
+        their A and Q are placed to end at a page that can not be read: a read past the end faults.
+
+            aarch64-linux-gnu-gcc -O2 -static -o neoncheck neoncheck.c complexQR.S complexQRneon.S complexQRf.S complexQRcm.S complexQR.c -lm
+            qemu-aarch64 ./neoncheck
+
+*/
+
+#include <math.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/mman.h>
+#include <unistd.h>
+
+#define     TOLERANCE       1.0e-12
+#define     TOLERANCE_F     1.0e-4f
+
+long complexQR(double *, double *, double *, int, int, int);
+long complexQRneon(double *, double *, double *, int, int, int);
+long complexQRc(double *, double *, double *, int, int, int);
+long complexQRf(float *, float *, float *, int, int, int);
+long complexQRfc(float *, float *, float *, int, int, int);
+long complexQRcm(double *, double *, double *, int, int, int);
+long complexQRcmc(double *, double *, double *, int, int, int);
+long complexQRunpadded(double *, double *, double *, int, int, int);
+
+typedef long (*kernel)(double *, double *, double *, int, int, int);
+typedef long (*kernelf)(float *, float *, float *, int, int, int);
+
+// bytes, zeroed, ending where an unreadable page begins
+static void *guarded(size_t bytes) {
+
+    size_t page = (size_t) sysconf(_SC_PAGESIZE);
+    size_t span = (bytes + page - 1) / page * page;
+    char *base = (char *) mmap(NULL, span + page, PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+    if (base == MAP_FAILED) {
+        perror("mmap");
+        exit(2);
+    }
+    mprotect(base + span, page, PROT_NONE);
+    return base + span - bytes;
+}
+
+static void release(void *p, size_t bytes) {
+
+    size_t page = (size_t) sysconf(_SC_PAGESIZE);
+    size_t span = (bytes + page - 1) / page * page;
+    munmap((char *) p + bytes - span, span + page);
+}
+
+// Factor a copy of a with Q.  One row of padding, as complexQR.S reads a row past the end of a column.
+static void factor(kernel qr, const double *a, int m, int n, double *r, double *q) {
+
+    double *v = (double *) calloc(2 * (size_t) m, sizeof(double));
+    memcpy(r, a, 2 * sizeof(double) * (size_t) m * n);
+    memset(q, 0, 2 * sizeof(double) * (size_t) m * m);
+    for (int i = 0; i < m; i++) {
+        q[2 * (m * i + i)] = 1.0;
+    }
+    qr(r, v, q, m, n, 1);
+    free(v);
+}
+
+// The same in single precision, A and Q guarded, no padding
+static void factorf(kernelf qr, const float *a, int m, int n, float *r, float *q) {
+
+    float *v = (float *) calloc(2 * (size_t) m, sizeof(float));
+    memcpy(r, a, 2 * sizeof(float) * (size_t) m * n);
+    memset(q, 0, 2 * sizeof(float) * (size_t) m * m);
+    for (int i = 0; i < m; i++) {
+        q[2 * (m * i + i)] = 1.0f;
+    }
+    qr(r, v, q, m, n, 1);
+    free(v);
+}
+
+static float differencef(const float *x, const float *y, size_t len) {
+
+    float d = 0.0f;
+    for (size_t i = 0; i < len; i++) {
+        float e = fabsf(x[i] - y[i]);
+        if (!(e <= d)) {
+            d = e;
+        }
+    }
+    return d;
+}
+
+// complexQRf.S against complexQRfc for an m x n matrix; 1 if they agree
+static int checkFloat(int m, int n) {
+
+    size_t la = 2 * (size_t) m * n, lq = 2 * (size_t) m * m;
+    float *a = (float *) calloc(la, sizeof(float));
+    float *r0 = (float *) guarded(la * sizeof(float));
+    float *r1 = (float *) calloc(la, sizeof(float));
+    float *q0 = (float *) guarded(lq * sizeof(float));
+    float *q1 = (float *) calloc(lq, sizeof(float));
+
+    float norm = 0.0f;
+    for (size_t i = 0; i < la; i++) {
+        a[i] = 2.0f * rand() / RAND_MAX - 1.0f;
+        norm += a[i] * a[i];
+    }
+    norm = sqrtf(norm);
+
+    factorf(complexQRf, a, m, n, r0, q0);
+    factorf(complexQRfc, a, m, n, r1, q1);
+
+    float f = fmaxf(differencef(r0, r1, la) / norm, differencef(q0, q1, lq));
+    int ok = f <= TOLERANCE_F;
+    printf("%4dx%-4d  float %.2e  %s\n", m, n, f, ok ? "ok" : "FAILED");
+
+    free(a); release(r0, la * sizeof(float)); free(r1); release(q0, lq * sizeof(float)); free(q1);
+    return ok;
+}
+
+static double difference(const double *x, const double *y, size_t len) {
+
+    double d = 0.0;
+    for (size_t i = 0; i < len; i++) {
+        double e = fabs(x[i] - y[i]);
+        if (!(e <= d)) {
+            d = e;                                              // NaN is kept
+        }
+    }
+    return d;
+}
+
+// complexQRcm.S against complexQRcmc for an m x n matrix stored by columns, A and Q guarded; 1 if they agree
+static int checkColumnMajor(int m, int n) {
+
+    size_t la = 2 * (size_t) m * n, lq = 2 * (size_t) m * m;
+    double *a = (double *) calloc(la, sizeof(double));
+    double *r0 = (double *) guarded(la * sizeof(double));
+    double *r1 = (double *) calloc(la, sizeof(double));
+    double *q0 = (double *) guarded(lq * sizeof(double));
+    double *q1 = (double *) calloc(lq, sizeof(double));
+
+    double norm = 0.0;
+    for (size_t i = 0; i < la; i++) {
+        a[i] = 2.0 * rand() / RAND_MAX - 1.0;
+        norm += a[i] * a[i];
+    }
+    norm = sqrt(norm);
+
+    factor(complexQRcm, a, m, n, r0, q0);                       // the identity is the same stored by columns
+    factor(complexQRcmc, a, m, n, r1, q1);
+
+    double cm = fmax(difference(r0, r1, la) / norm, difference(q0, q1, lq));
+    int ok = cm <= TOLERANCE;
+    printf("%4dx%-4d  column-major %.2e  %s\n", m, n, cm, ok ? "ok" : "FAILED");
+
+    free(a); release(r0, la * sizeof(double)); free(r1); release(q0, lq * sizeof(double)); free(q1);
+    return ok;
+}
+
+static int checkUnpadded(int m, int n) {
+
+    size_t la = 2 * (size_t) m * n, lq = 2 * (size_t) m * m;
+    double *a = (double *) calloc(la, sizeof(double));
+    double *r0 = (double *) guarded(la * sizeof(double));
+    double *r1 = (double *) calloc(la + 2 * (size_t) n, sizeof(double));
+    double *q0 = (double *) guarded(lq * sizeof(double));
+    double *q1 = (double *) calloc(lq, sizeof(double));
+
+    double norm = 0.0;
+    for (size_t i = 0; i < la; i++) {
+        a[i] = 2.0 * rand() / RAND_MAX - 1.0;
+        norm += a[i] * a[i];
+    }
+    norm = sqrt(norm);
+
+    factor(complexQRunpadded, a, m, n, r0, q0);
+    factor(complexQRc, a, m, n, r1, q1);
+
+    double unpadded = fmax(difference(r0, r1, la) / norm, difference(q0, q1, lq));
+    int ok = unpadded <= TOLERANCE;
+    printf("%4dx%-4d  unpadded %.2e  %s\n", m, n, unpadded, ok ? "ok" : "FAILED");
+
+    free(a); release(r0, la * sizeof(double)); free(r1); release(q0, lq * sizeof(double)); free(q1);
+    return ok;
+}
+
+int main(void) {
+
+    static const int shapes[][2] = {{2, 1}, {2, 2}, {3, 3}, {5, 2}, {7, 3}, {8, 8}, {40, 17}, {41, 40}, {192, 120}, {200, 200}};
+    int failures = 0;
+    srand(1);
+
+    for (size_t s = 0; s < sizeof(shapes) / sizeof(shapes[0]); s++) {
+        int m = shapes[s][0], n = shapes[s][1];
+        size_t la = 2 * (size_t) m * n, lq = 2 * (size_t) m * m;
+        double *a = (double *) calloc(la + 2 * (size_t) n, sizeof(double));
+        double *r0 = (double *) calloc(la + 2 * (size_t) n, sizeof(double));
+        double *r1 = (double *) calloc(la + 2 * (size_t) n, sizeof(double));
+        double *r2 = (double *) calloc(la + 2 * (size_t) n, sizeof(double));
+        double *q0 = (double *) calloc(lq, sizeof(double));
+        double *q1 = (double *) calloc(lq, sizeof(double));
+        double *q2 = (double *) calloc(lq, sizeof(double));
+
+        double norm = 0.0;
+        for (size_t i = 0; i < la; i++) {
+            a[i] = 2.0 * rand() / RAND_MAX - 1.0;
+            norm += a[i] * a[i];
+        }
+        norm = sqrt(norm);
+
+        factor(complexQR, a, m, n, r0, q0);
+        factor(complexQRneon, a, m, n, r1, q1);
+        factor(complexQRc, a, m, n, r2, q2);
+
+        double neon = fmax(difference(r0, r1, la) / norm, difference(q0, q1, lq));
+        double c = fmax(difference(r0, r2, la) / norm, difference(q0, q2, lq));
+        int ok = neon <= TOLERANCE && c <= TOLERANCE;
+        printf("%4dx%-4d  neon %.2e  c %.2e  %s\n", m, n, neon, c, ok ? "ok" : "FAILED");
+        if (!ok) {
+            failures++;
+        }
+
+        free(a); free(r0); free(r1); free(r2); free(q0); free(q1); free(q2);
+    }
+
+    for (size_t s = 0; s < sizeof(shapes) / sizeof(shapes[0]); s++) {
+        if (!checkFloat(shapes[s][0], shapes[s][1])) {
+            failures++;
+        }
+        if (!checkColumnMajor(shapes[s][0], shapes[s][1])) {
+            failures++;
+        }
+        if (!checkUnpadded(shapes[s][0], shapes[s][1])) {
+            failures++;
+        }
+    }
+    return failures == 0 ? 0 : 1;
+}
@@ -0,0 +1,233 @@
+package com.bob.complexqr;
+
+/*
+        Binding of the native QR kernels through the Foreign Function and Memory API, for desktop JVMs.
+
+        The JNI entry points, MainActivity.complexHouseholder and NativeQR, pin or copy the Java arrays
+        on every call and go through a JNI transition.  Here the kernels of complexQR.c are called as C
+        functions by a method handle from Linker.nativeLinker(), on off-heap MemorySegments the caller
+        owns, so a matrix kept in a segment is never copied.  For matrices of at most CRITICAL_MAXIMUM
+        elements the call is marked critical (trivial in JDK 21), without the thread state transition,
+        which for small matrices is most of the cost; a larger one would hold up the garbage collector
+        for the whole factorization, so it goes through an ordinary downcall.
+
+            complexQRw          one matrix, with a caller's workspace, nothing allocated per call
+            complexQRbatch      count matrices one after the other, in one call
+            complexQRworkspace  doubles of workspace for m x n
+
+        The segments hold interleaved real and imag, rows contiguous, as for complexQR; allocate gives
+        one with the row of padding complexQR.S reads past the end of A.  The library is the one CMake
+        builds, libcomplexqr.so on Linux, found on java.library.path or given by path.  Java 22 or
+        later; JDK 21 needs --enable-preview:
+
+            javac --release 21 --enable-preview -d out java/*.java java-desktop/ForeignQR.java
+            java --enable-preview --enable-native-access=ALL-UNNAMED -Djava.library.path=build -cp out ...
+
+        As a QrEngine, "foreign", it copies the arrays in and out of segments kept between calls; it is
+        found by name by QrEngines, like VectorQrEngine, and is available if the library loads.
+*/
+
+import java.io.File;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public final class ForeignQR implements QrEngine, AutoCloseable {
+
+    public static final String LIBRARY = "complexqr";
+
+    private static final long ALIGNMENT = 64L;                          // bytes, a cache line
+    private static final long CRITICAL_MAXIMUM = 64L * 64L;             // largest m*n called as a critical function
+
+    private final Arena arena = Arena.ofShared();                       // the library and the kept segments
+    private final MethodHandle factor;                                  // complexQRw, null if not loaded
+    private final MethodHandle factorCritical;                          // complexQRw, for small matrices
+    private final MethodHandle batch;                                   // complexQRbatch
+    private final MethodHandle workspace;                               // complexQRworkspace
+
+    private MemorySegment aSegment = MemorySegment.NULL;                // for the array entry point, grown as needed
+    private MemorySegment qSegment = MemorySegment.NULL;
+    private MemorySegment wSegment = MemorySegment.NULL;
+
+    // CONSTRUCTORS
+    // The library found on java.library.path; not available if it is not there
+    public ForeignQR() {
+        this(find());
+    }
+
+    // The library at path, or if path is null not available
+    public ForeignQR(Path library) {
+        MethodHandle f = null, fc = null, b = null, w = null;
+        if (library != null) {
+            try {
+                SymbolLookup lookup = SymbolLookup.libraryLookup(library, this.arena);
+                Linker linker = Linker.nativeLinker();
+                Linker.Option[] critical = critical();
+                FunctionDescriptor one = FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.ADDRESS, ValueLayout.ADDRESS,
+                        ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT);
+                MemorySegment symbol = lookup.find("complexQRw").orElseThrow();
+                f = linker.downcallHandle(symbol, one);
+                fc = linker.downcallHandle(symbol, one, critical);
+                b = linker.downcallHandle(lookup.find("complexQRbatch").orElseThrow(),
+                        FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS,
+                                ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+                w = linker.downcallHandle(lookup.find("complexQRworkspace").orElseThrow(),
+                        FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT), critical);
+            } catch (RuntimeException e) {
+                f = fc = b = w = null;                                  // no library, or not one with these symbols
+            }
+        }
+        this.factor = f;
+        this.factorCritical = fc;
+        this.batch = b;
+        this.workspace = w;
+    }
+
+    private static Path find() {
+        String name = System.mapLibraryName(LIBRARY);
+        String path = System.getProperty("java.library.path", "");
+        for (String dir : path.split(File.pathSeparator)) {
+            if (dir.isEmpty()) continue;
+            Path p = Paths.get(dir, name);
+            if (Files.isReadable(p)) return p;
+        }
+        return null;
+    }
+
+    // Linker.Option.critical(false) in Java 22, isTrivial() in the JDK 21 preview; none if neither exists
+    private static Linker.Option[] critical() {
+        try {
+            Method m = Linker.Option.class.getMethod("critical", boolean.class);
+            return new Linker.Option[] {(Linker.Option) m.invoke(null, false)};
+        } catch (ReflectiveOperationException e) {
+            try {
+                Method m = Linker.Option.class.getMethod("isTrivial");
+                return new Linker.Option[] {(Linker.Option) m.invoke(null)};
+            } catch (ReflectiveOperationException e2) {
+                return new Linker.Option[0];
+            }
+        }
+    }
+
+    // SEGMENTS
+    // Zeroed segment for an m x n matrix, 64 byte aligned, with the row of padding the kernels may read
+    public static MemorySegment allocate(Arena arena, int m, int n) {
+        return allocate(arena, 1, m, n);
+    }
+
+    // Zeroed segment for count m x n matrices, one after the other
+    public static MemorySegment allocate(Arena arena, int count, int m, int n) {
+        if (count < 1 || m < 1 || n < 1) throw new IllegalArgumentException("dimensions, " + count + " of " + m + "x" + n + ", must be positive");
+        return arena.allocate(16L * ((long) count * m * n + n), ALIGNMENT);
+    }
+
+    // count m x m identities, one after the other, for the Q of a batch
+    public static MemorySegment identity(Arena arena, int count, int m) {
+        MemorySegment q = allocate(arena, count, m, m);
+        for (long k = 0; k < count; k++) {
+            for (long i = 0; i < m; i++) {
+                q.set(ValueLayout.JAVA_DOUBLE, 16L * (k * m * m + m * i + i), 1.0);
+            }
+        }
+        return q;
+    }
+
+    // Workspace for m x n, as complexQRworkspace
+    public MemorySegment workspace(Arena arena, int m, int n) {
+        return arena.allocate(8L * workspaceSize(m, n), ALIGNMENT);
+    }
+
+    public long workspaceSize(int m, int n) {
+        check();
+        try {
+            return (long) this.workspace.invokeExact(m, n);
+        } catch (Throwable e) {
+            throw new IllegalStateException("complexQRworkspace failed: " + e, e);
+        }
+    }
+
+    // FACTORIZATION
+    // Factor the m x n matrix in a in place, and form Q in q if it is not MemorySegment.NULL; q must be the
+    // identity on entry.  work is from workspace(m, n).  Returns microseconds.
+    public long householder(MemorySegment a, MemorySegment q, MemorySegment work, int m, int n) {
+        return householderBatch(a, q, work, 1, m, n);
+    }
+
+    // Factor count m x n matrices in a, 2*m*n doubles apart, and their Q in q, 2*m*m apart, in one native call
+    public long householderBatch(MemorySegment a, MemorySegment q, MemorySegment work, int count, int m, int n) {
+        check();
+        if (m < n) throw new IllegalArgumentException("number of rows, " + m + ", must not be less than the number of columns, " + n);
+        if (count < 1 || n < 1) throw new IllegalArgumentException("dimensions, " + count + " of " + m + "x" + n + ", must be positive");
+        boolean withQ = q.byteSize() > 0L;
+        if (a.byteSize() < 16L * ((long) count * m * n + n)) throw new IllegalArgumentException("segment is too short for " + count + " padded " + m + "x" + n + " complex matrices");
+        if (withQ && q.byteSize() < 16L * count * m * m) throw new IllegalArgumentException("Q segment is too short for " + count + " " + m + "x" + m + " complex matrices");
+        if (work.byteSize() < 8L * workspaceSize(m, n)) throw new IllegalArgumentException("workspace is too short for " + m + "x" + n);
+        long start = System.nanoTime();
+        long status;
+        try {
+            if (count > 1) {
+                status = (long) this.batch.invokeExact(a, q, work, count, m, n, withQ ? 1 : 0);
+            } else if ((long) m * n <= CRITICAL_MAXIMUM) {
+                status = (long) this.factorCritical.invokeExact(a, q, work, m, n, withQ ? 1 : 0);
+            } else {
+                status = (long) this.factor.invokeExact(a, q, work, m, n, withQ ? 1 : 0);
+            }
+        } catch (Throwable e) {
+            throw new IllegalStateException("native QR failed: " + e, e);
+        }
+        if (status != 0L) throw new IllegalStateException("native QR returned " + status);
+        return (System.nanoTime() - start) / 1000L;
+    }
+
+    // QrEngine: the arrays are copied through segments kept for the next call
+    public synchronized long householder(double[] a, double[] q, int m, int n) {
+        QrEngines.checkArguments(a, q, m, n);
+        check();
+        if (this.aSegment.byteSize() < 16L * ((long) m * n + n)) {
+            this.aSegment = allocate(this.arena, m, n);
+        }
+        if (q != null && this.qSegment.byteSize() < 16L * m * m) {
+            this.qSegment = allocate(this.arena, m, m);
+        }
+        if (this.wSegment.byteSize() < 8L * workspaceSize(m, n)) {
+            this.wSegment = workspace(this.arena, m, n);
+        }
+        int la = 2 * m * n, lq = 2 * m * m;
+        MemorySegment.copy(a, 0, this.aSegment, ValueLayout.JAVA_DOUBLE, 0L, la);
+        if (q != null) {
+            MemorySegment.copy(q, 0, this.qSegment, ValueLayout.JAVA_DOUBLE, 0L, lq);
+        }
+        long time = householder(this.aSegment, (q == null) ? MemorySegment.NULL : this.qSegment, this.wSegment, m, n);
+        MemorySegment.copy(this.aSegment, ValueLayout.JAVA_DOUBLE, 0L, a, 0, la);
+        if (q != null) {
+            MemorySegment.copy(this.qSegment, ValueLayout.JAVA_DOUBLE, 0L, q, 0, lq);
+        }
+        QrEngines.clearBelowDiagonal(a, m, n);                      // R, zero below the diagonal, as QrEngine promises
+        return time;
+    }
+
+    public String getName() {
+        return QrEngines.FOREIGN;
+    }
+
+    public boolean isAvailable() {
+        return this.factor != null;
+    }
+
+    private void check() {
+        if (this.factor == null) throw new IllegalStateException("native library " + LIBRARY + " not loaded");
+    }
+
+    // Unload the library and free the kept segments
+    public void close() {
+        this.arena.close();
+    }
+}
@@ -0,0 +1,134 @@
+package com.bob.complexqr;
+
+/*
+        QR engine with the Householder updates in the Java Vector API, for desktop and server JVMs.
+
+        Android has no jdk.incubator.vector, so this file is kept out of the app, in java-desktop,
+        and QrEngines finds it by name; compile and run it with
+
+            javac --add-modules jdk.incubator.vector -d out java/*.java java-desktop/*.java
+            java --add-modules jdk.incubator.vector -cp out ...
+
+        (java/*.java needs android.util.Log, a stub printing to stderr will do).  Without the module
+        the class fails to load and QrEngines leaves it out.
+
+        The algorithm is ComplexHouseholder.factor, house for each column, scalar, and the update
+        of the trailing columns, where the time goes, vectorized.  The rows are interleaved real and
+        imag, so a vector holds VL/2 complex elements, and a complex times a vector x of them is
+
+            (vr + i vi) x = vr x + vi (swap(x) * [-1, +1, -1, +1, ...])
+
+        with swap exchanging each real and imag pair, one rearrange, and the sign, times vi, a vector
+        formed once per row, so each element costs two fused multiply adds.  conj(v) x uses the
+        sign [+1, -1, ...].  The loops run over a row of C, unit stride, as in applyLeft; the tail
+        of a row shorter than a vector is done in scalar.
+*/
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+public final class VectorQrEngine implements QrEngine {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorShuffle<Double> SWAP = VectorShuffle.fromOp(SPECIES, new IntUnaryOperator() {
+        public int applyAsInt(int i) {
+            return i ^ 1;                                           // real <-> imag
+        }
+    });
+    private static final DoubleVector IMAG_SIGN = DoubleVector.fromArray(SPECIES, alternate(-1.0, 1.0), 0);   // v x
+    private static final DoubleVector CONJ_SIGN = DoubleVector.fromArray(SPECIES, alternate(1.0, -1.0), 0);   // conj(v) x
+
+    public VectorQrEngine() {
+    }
+
+    private static double[] alternate(double even, double odd) {
+        double[] s = new double[SPECIES.length()];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = (i % 2 == 0) ? even : odd;
+        }
+        return s;
+    }
+
+    public String getName() {
+        return QrEngines.VECTOR;
+    }
+
+    // A vector must hold at least one complex element
+    public boolean isAvailable() {
+        return SPECIES.length() >= 2;
+    }
+
+    public long householder(double[] a, double[] q, int m, int n) {
+        QrEngines.checkArguments(a, q, m, n);
+        long start = System.nanoTime();
+        double[] vHead = new double[2 * n];
+        double[] work = new double[2 * Math.max(m, n)];
+        int steps = ComplexHouseholder.reflections(m, n);
+        for (int k = 0; k < steps; k++) {
+            int kk = 2 * (n * k + k);
+            ComplexHouseholder.house(a, kk, n, m - k, vHead, 2 * k);
+            if (k + 1 < n) {
+                applyLeft(a, kk, n, vHead[2 * k], vHead[2 * k + 1], m - k, a, kk + 2, n, n - k - 1, work);
+            }
+        }
+        if (q != null) {
+            for (int k = 0; k < steps; k++) {
+                applyLeft(a, 2 * (n * k + k), n, vHead[2 * k], vHead[2 * k + 1], m - k, q, 2 * m * k, m, m, work);
+            }
+        }
+        QrEngines.clearBelowDiagonal(a, m, n);
+        return (System.nanoTime() - start) / 1000L;
+    }
+
+    // ComplexHouseholder.applyLeft: C = (I - 2 v vH) C for the len x ncols block of c at c[cOff], leading dimension ldc
+    static void applyLeft(double[] a, int vOff, int lda, double h0r, double h0i, int len,
+                          double[] c, int cOff, int ldc, int ncols, double[] work) {
+        int n2 = 2 * ncols;
+        int bound = SPECIES.loopBound(n2);
+        Arrays.fill(work, 0, n2, 0.0);
+        for (int i = 0; i < len; i++) {                             // w += conj(v[i]) * C[i][]
+            double vr = (i == 0) ? h0r : a[vOff + 2 * lda * i];
+            double vi = (i == 0) ? h0i : a[vOff + 2 * lda * i + 1];
+            int row = cOff + 2 * ldc * i;
+            DoubleVector real = DoubleVector.broadcast(SPECIES, vr);
+            DoubleVector imag = CONJ_SIGN.mul(vi);
+            int j = 0;
+            for (; j < bound; j += SPECIES.length()) {
+                DoubleVector x = DoubleVector.fromArray(SPECIES, c, row + j);
+                DoubleVector w = DoubleVector.fromArray(SPECIES, work, j);
+                w = x.fma(real, w);
+                w = x.rearrange(SWAP).fma(imag, w);
+                w.intoArray(work, j);
+            }
+            for (int p = row + j; j < n2; j += 2, p += 2) {
+                work[j]     += vr * c[p] + vi * c[p + 1];
+                work[j + 1] += vr * c[p + 1] - vi * c[p];
+            }
+        }
+        for (int i = 0; i < len; i++) {                             // C[i][] -= 2 v[i] * w
+            double vr = (i == 0) ? h0r : a[vOff + 2 * lda * i];
+            double vi = (i == 0) ? h0i : a[vOff + 2 * lda * i + 1];
+            vr += vr;
+            vi += vi;
+            int row = cOff + 2 * ldc * i;
+            DoubleVector real = DoubleVector.broadcast(SPECIES, -vr);
+            DoubleVector imag = IMAG_SIGN.mul(-vi);
+            int j = 0;
+            for (; j < bound; j += SPECIES.length()) {
+                DoubleVector w = DoubleVector.fromArray(SPECIES, work, j);
+                DoubleVector x = DoubleVector.fromArray(SPECIES, c, row + j);
+                x = w.fma(real, x);
+                x = w.rearrange(SWAP).fma(imag, x);
+                x.intoArray(c, row + j);
+            }
+            for (int p = row + j; j < n2; j += 2, p += 2) {
+                c[p]     -= vr * work[j] - vi * work[j + 1];
+                c[p + 1] -= vr * work[j + 1] + vi * work[j];
+            }
+        }
+    }
+}
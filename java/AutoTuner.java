@@ -0,0 +1,274 @@
+package com.bob.complexqr;
+
+/*
+        Autotuning of the tile size and thread count of the blocked and parallel factorizations.
+
+        The best tile size depends on the caches and the best thread count on the cores, big.LITTLE
+        phones and servers differing in both, so neither can be fixed in the code.  The first time a
+        configuration is asked for a shape class, the candidates are timed on a random matrix of that
+        shape and the fastest is kept.  The search is coordinate wise: the tile size with all the
+        processors, then the thread count with that tile size, each candidate timed twice after a
+        warm up run, the faster time counting.
+
+        A shape class is the rows and columns each rounded up to a power of two, so 300x200 and
+        500x256 share the class 512x256.  Trials use the shape itself, at most TRIAL_MAXIMUM in
+        either dimension, so a first use costs no more than a few seconds.
+
+        The winners are kept in a profile, PROFILE_FILE_NAME, next to params.txt, in the same
+        format,
+
+            // autotuned QR parameters
+            processors = 8
+            tiledqr.512x256.nb = 64
+            tiledqr.512x256.threads = 4
+
+        loaded when the app starts and written when a new class has been tuned.  A profile written
+        on a device with a different number of processors is ignored.  Entries may be edited by
+        hand; removing one makes that class be tuned again.
+*/
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public final class AutoTuner {
+
+    public static final String TAG = MainActivity.TAG;
+
+    public static final String PROFILE_FILE_NAME    = "tuning.txt";
+
+    public static final String TILED_QR             = "tiledqr";        // TiledQR, nb and threads
+    public static final String CHOLESKY             = "cholesky";       // ComplexCholesky, nb and threads
+
+    private static final int[] BLOCK_SIZES          = {16, 24, 32, 48, 64, 96, 128};
+    private static final int TRIAL_MAXIMUM          = 512;              // largest dimension of a trial matrix
+    private static final int TRIAL_REPEATS          = 2;                // timed runs of each candidate
+
+    private final File profile;                                         // null: not persisted
+    private final int processors;
+    private final Map<String, Configuration> tuned = new TreeMap<>();
+
+    // A tuned configuration
+    public static final class Configuration {
+        public final int blockSize;
+        public final int threads;
+
+        public Configuration(int blockSize, int threads) {
+            this.blockSize = blockSize;
+            this.threads = threads;
+        }
+
+        public String toString() {
+            return "nb = " + this.blockSize + ", threads = " + this.threads;
+        }
+    }
+
+    // CONSTRUCTORS
+    // A tuner whose profile is the file profile, read now if it exists; profile may be null
+    public AutoTuner(File profile) {
+        this.profile = profile;
+        this.processors = Runtime.getRuntime().availableProcessors();
+        if (profile != null && profile.exists()) {
+            read(profile);
+        }
+    }
+
+    // A tuner with its profile in the directory dir, as params.txt
+    public static AutoTuner load(File dir) {
+        return new AutoTuner((dir == null) ? null : new File(dir, PROFILE_FILE_NAME));
+    }
+
+    // CONFIGURATIONS
+    // The configuration of kernel, TILED_QR or CHOLESKY, for an m x n matrix, tuned now if its class has not been
+    public synchronized Configuration get(String kernel, int m, int n) {
+        String key = key(kernel, m, n);
+        Configuration c = this.tuned.get(key);
+        if (c == null) {
+            c = tune(kernel, m, n);
+            this.tuned.put(key, c);
+            Log.d(TAG, "autotuned " + key + ": " + c);
+            save();
+        }
+        return c;
+    }
+
+    // The configuration of a class if it has been tuned, else null
+    public synchronized Configuration lookup(String kernel, int m, int n) {
+        return this.tuned.get(key(kernel, m, n));
+    }
+
+    // Number of tuned classes
+    public synchronized int size() {
+        return this.tuned.size();
+    }
+
+    // Factor the m x n matrix a in place with the tuned tiled QR
+    public TiledQR tiledQR(double[] a, int m, int n) {
+        Configuration c = get(TILED_QR, m, n);
+        return new TiledQR(a, m, n, c.blockSize, c.threads);
+    }
+
+    // Factor the n x n matrix a in place with the tuned Cholesky factorization
+    public ComplexCholesky cholesky(double[] a, int n) {
+        Configuration c = get(CHOLESKY, n, n);
+        return new ComplexCholesky(a, n, c.blockSize, c.threads);
+    }
+
+    // Shape class: rows and columns rounded up to powers of two
+    static String key(String kernel, int m, int n) {
+        if (!TILED_QR.equals(kernel) && !CHOLESKY.equals(kernel)) throw new IllegalArgumentException("no tuning for " + kernel);
+        if (m < 1 || n < 1) throw new IllegalArgumentException("dimensions, " + m + "x" + n + ", must be positive");
+        return kernel + "." + ceilingPowerOfTwo(m) + "x" + ceilingPowerOfTwo(n);
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        int p = Integer.highestOneBit(x);
+        return (p == x) ? p : 2 * p;
+    }
+
+    // SEARCH
+    private Configuration tune(String kernel, int m, int n) {
+        double scale = Math.min(1.0, (double) TRIAL_MAXIMUM / Math.max(m, n));
+        int tm = Math.max(1, (int) (m * scale));
+        int tn = Math.max(1, (int) (n * scale));
+        if (CHOLESKY.equals(kernel)) {
+            tm = tn = Math.max(tm, tn);
+        }
+        double[] a = trialMatrix(kernel, tm, tn);
+
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int t = 1; t < this.processors; t *= 2) {
+            threadCounts.add(t);
+        }
+        threadCounts.add(this.processors);
+
+        int bestBlock = BLOCK_SIZES[0];
+        long best = Long.MAX_VALUE;
+        for (int nb : BLOCK_SIZES) {
+            if (nb > Math.max(tn, BLOCK_SIZES[0])) break;       // one tile is as large as it gets
+            long time = time(kernel, a, tm, tn, nb, this.processors);
+            if (time < best) {
+                best = time;
+                bestBlock = nb;
+            }
+        }
+        int bestThreads = this.processors;
+        for (int threads : threadCounts) {
+            if (threads == this.processors) continue;           // timed above
+            long time = time(kernel, a, tm, tn, bestBlock, threads);
+            if (time < best) {
+                best = time;
+                bestThreads = threads;
+            }
+        }
+        return new Configuration(bestBlock, bestThreads);
+    }
+
+    // Best of TRIAL_REPEATS timed runs, after one untimed run, nanoseconds
+    private static long time(String kernel, double[] a, int m, int n, int nb, int threads) {
+        long best = Long.MAX_VALUE;
+        for (int repeat = 0; repeat <= TRIAL_REPEATS; repeat++) {
+            double[] b = a.clone();
+            long start = System.nanoTime();
+            if (TILED_QR.equals(kernel)) {
+                new TiledQR(b, m, n, nb, threads);
+            } else {
+                new ComplexCholesky(b, n, nb, threads);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (repeat > 0) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    // Random m x n matrix; for CHOLESKY made Hermitian positive definite by a dominant diagonal
+    private static double[] trialMatrix(String kernel, int m, int n) {
+        Random random = new Random(1L);
+        double[] a = new double[2 * m * n];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = 2.0 * random.nextDouble() - 1.0;
+        }
+        if (CHOLESKY.equals(kernel)) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < i; j++) {
+                    a[2 * (n * j + i)] = a[2 * (n * i + j)];
+                    a[2 * (n * j + i) + 1] = -a[2 * (n * i + j) + 1];
+                }
+                a[2 * (n * i + i)] = 2.0 * n;
+                a[2 * (n * i + i) + 1] = 0.0;
+            }
+        }
+        return a;
+    }
+
+    // PROFILE
+    private void read(File file) {
+        Map<String, Integer> values = new TreeMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.indexOf("//") == 0 || line.trim().length() == 0) continue;
+                String[] params = line.split("=");
+                if (params.length > 1) {
+                    try {
+                        values.put(params[0].trim(), Integer.parseInt(params[1].trim()));
+                    } catch (NumberFormatException e) {
+                        Log.d(TAG, "tuning profile, bad line: " + line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "tuning profile not read: " + e);
+            return;
+        }
+        Integer p = values.get("processors");
+        if (p == null || p != this.processors) {
+            Log.d(TAG, "tuning profile is for " + p + " processors, not " + this.processors + ", ignored");
+            return;
+        }
+        for (Map.Entry<String, Integer> e : values.entrySet()) {
+            String name = e.getKey();
+            if (!name.endsWith(".nb")) continue;
+            String key = name.substring(0, name.length() - 3);
+            Integer threads = values.get(key + ".threads");
+            if (threads != null && e.getValue() > 0 && threads > 0) {
+                this.tuned.put(key, new Configuration(e.getValue(), threads));
+            }
+        }
+        Log.d(TAG, "tuning profile: " + this.tuned.size() + " classes");
+    }
+
+    // Write the profile, through a temporary file so that a reader never sees half of it
+    public synchronized void save() {
+        if (this.profile == null) {
+            return;
+        }
+        File temporary = new File(this.profile.getPath() + ".tmp");
+        try (Writer w = new FileWriter(temporary)) {
+            w.write("// autotuned QR parameters, see AutoTuner\n");
+            w.write("processors = " + this.processors + "\n");
+            for (Map.Entry<String, Configuration> e : this.tuned.entrySet()) {
+                w.write(e.getKey() + ".nb = " + e.getValue().blockSize + "\n");
+                w.write(e.getKey() + ".threads = " + e.getValue().threads + "\n");
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "tuning profile not written: " + e);
+            return;
+        }
+        if (!temporary.renameTo(this.profile)) {
+            Log.d(TAG, "tuning profile not renamed to " + this.profile);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.bob.complexqr;
+
+/*
+        Benchmarks of the Java routines, run in the background after the assembly language QR
+        when params.txt contains
+
+            benchmark = 1
+
+        Each benchmark is run once to warm up the JIT and then timed.  Results go to the log and
+        are returned as a report for the text view.
+*/
+
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.Random;
+
+public final class Benchmark {
+
+    public static final String TAG = MainActivity.TAG;
+
+    private static final int RLS_ORDER      = 16;           // taps of the QR-RLS filter
+    private static final int RLS_BLOCK      = 4096;         // samples per block
+    private static final int RLS_BLOCKS     = 16;           // blocks per timed run
+
+    private Benchmark() {
+    }
+
+    // Run all the benchmarks for an nRows x nCols matrix and return a report
+    public static String run(int nRows, int nCols) {
+        return run(nRows, nCols, null);
+    }
+
+    // As run, with the tiled QR configured by tuner, which tunes it on first use; tuner may be null
+    public static String run(int nRows, int nCols, AutoTuner tuner) {
+        StringBuilder report = new StringBuilder();
+
+        if (NativeQR.isAvailable()) {
+            double assembly = nativeQRMflops(nRows, nCols, false);
+            double portable = nativeQRMflops(nRows, nCols, true);
+            report.append(String.format(Locale.US, "Native QR %dx%d: %.0f Mflops, portable C: %.0f Mflops\n", nRows, nCols, assembly, portable));
+        }
+
+        double mflops = javaQRMflops(nRows, nCols);
+        report.append(String.format(Locale.US, "Java QR %dx%d: %.0f Mflops\n", nRows, nCols, mflops));
+
+        double columnMajor = javaColumnMajorQRMflops(nRows, nCols);
+        report.append(String.format(Locale.US, "Java QR %dx%d column-major: %.0f Mflops\n", nRows, nCols, columnMajor));
+
+        double recursive = javaRecursiveQRMflops(nRows, nCols);
+        report.append(String.format(Locale.US, "Java QR %dx%d recursive: %.0f Mflops\n", nRows, nCols, recursive));
+
+        AutoTuner.Configuration c = (tuner == null)
+                ? new AutoTuner.Configuration(TiledQR.BLOCK_SIZE, Runtime.getRuntime().availableProcessors())
+                : tuner.get(AutoTuner.TILED_QR, nRows, nCols);
+        TiledQR tiled = tiledQR(nRows, nCols, c.blockSize, c.threads);
+        report.append(String.format(Locale.US, "Tiled QR %dx%d, nb %d, %d threads: %.0f Mflops, efficiency %.2f\n", nRows, nCols,
+                c.blockSize, c.threads, flopCount(nRows, nCols) / (tiled.getElapsedNanos() / 1000.0), tiled.getEfficiency()));
+
+        double speedup = mixedPrecisionSpeedup(nRows, nCols);
+        report.append(String.format(Locale.US, "Mixed precision LS %dx%d: %.2fx double\n", nRows, nCols, speedup));
+
+        double rate = rlsSamplesPerSecond(RLS_ORDER, RLS_BLOCK, RLS_BLOCKS);
+        report.append(String.format(Locale.US, "QR-RLS, %d taps: %.0f samples/sec\n", RLS_ORDER, rate));
+
+        Log.d(TAG, report.toString());
+        return report.toString();
+    }
+
+    // Mflops of complexQR, R only, or with portable of complexQR.c, the compiler's version of the same loops
+    public static double nativeQRMflops(int nRows, int nCols, boolean portable) {
+        double[] a = randomComplex(nRows * nCols, new Random(1L));
+        long elapsed = 0L;
+        for (int repeat = 0; repeat < 2; repeat++) {            // the first run warms up
+            double[] b = a.clone();
+            elapsed = portable ? NativeQR.complexHouseholderPortable(b, null, nRows, nCols, 0)
+                               : NativeQR.complexHouseholder(b, null, nRows, nCols, 0);
+        }
+        double mflops = flopCount(nRows, nCols) / Math.max(1L, elapsed);
+        Log.d(TAG, "native QR " + (portable ? "portable C " : "") + nRows + "x" + nCols + " " + elapsed + " microseconds, Mflops = " + mflops);
+        return mflops;
+    }
+
+    // Mflops of the Java Householder QR, R only, with the flop count used for the assembly language version
+    public static double javaQRMflops(int nRows, int nCols) {
+        double[] a = randomComplex(nRows * nCols, new Random(1L));
+        double[] b = new double[a.length];
+        double[] vHead = new double[2 * nCols];
+        double[] work = new double[2 * nCols];
+
+        System.arraycopy(a, 0, b, 0, a.length);                 // warm up
+        ComplexHouseholder.factor(b, 0, nCols, nRows, nCols, vHead, work);
+
+        System.arraycopy(a, 0, b, 0, a.length);
+        long start = System.nanoTime();
+        ComplexHouseholder.factor(b, 0, nCols, nRows, nCols, vHead, work);
+        long elapsed = System.nanoTime() - start;
+
+        double mflops = flopCount(nRows, nCols) / (elapsed / 1000.0);
+        Log.d(TAG, "Java QR " + nRows + "x" + nCols + " " + elapsed / 1000 + " microseconds, Mflops = " + mflops);
+        return mflops;
+    }
+
+    // Mflops of the column-major Java Householder QR, R only, conversion not included
+    public static double javaColumnMajorQRMflops(int nRows, int nCols) {
+        double[] a = ColumnMajorHouseholder.toColumnMajor(randomComplex(nRows * nCols, new Random(1L)), nRows, nCols);
+        double[] b = new double[a.length];
+        double[] vHead = new double[2 * nCols];
+
+        System.arraycopy(a, 0, b, 0, a.length);                 // warm up
+        ColumnMajorHouseholder.factor(b, nRows, nCols, vHead);
+
+        System.arraycopy(a, 0, b, 0, a.length);
+        long start = System.nanoTime();
+        ColumnMajorHouseholder.factor(b, nRows, nCols, vHead);
+        long elapsed = System.nanoTime() - start;
+
+        double mflops = flopCount(nRows, nCols) / (elapsed / 1000.0);
+        Log.d(TAG, "Java column-major QR " + nRows + "x" + nCols + " " + elapsed / 1000 + " microseconds, Mflops = " + mflops);
+        return mflops;
+    }
+
+    // Mflops of the recursive Java Householder QR, R only
+    public static double javaRecursiveQRMflops(int nRows, int nCols) {
+        double[] a = randomComplex(nRows * nCols, new Random(1L));
+        double[] b = new double[a.length];
+        double[] vHead = new double[2 * nCols];
+
+        System.arraycopy(a, 0, b, 0, a.length);                 // warm up
+        RecursiveHouseholder.factor(b, nRows, nCols, vHead);
+
+        System.arraycopy(a, 0, b, 0, a.length);
+        long start = System.nanoTime();
+        RecursiveHouseholder.factor(b, nRows, nCols, vHead);
+        long elapsed = System.nanoTime() - start;
+
+        double mflops = flopCount(nRows, nCols) / (elapsed / 1000.0);
+        Log.d(TAG, "Java recursive QR " + nRows + "x" + nCols + " " + elapsed / 1000 + " microseconds, Mflops = " + mflops);
+        return mflops;
+    }
+
+    // The tiled QR with nb x nb tiles on threads threads, after a warm up; its timing is logged
+    public static TiledQR tiledQR(int nRows, int nCols, int nb, int threads) {
+        double[] a = randomComplex(nRows * nCols, new Random(1L));
+        new TiledQR(a.clone(), nRows, nCols, nb, threads);                      // warm up
+        TiledQR qr = new TiledQR(a, nRows, nCols, nb, threads);
+        qr.timingReport();
+        return qr;
+    }
+
+    // Time of a double least squares solve, factorization included, over that of MixedPrecisionLeastSquares
+    public static double mixedPrecisionSpeedup(int nRows, int nCols) {
+        Random random = new Random(3L);
+        double[] a = randomComplex(nRows * nCols, random);
+        double[] b = randomComplex(nRows, random);
+        double[] y = new double[2 * nRows];
+
+        long mixed = Long.MAX_VALUE, full = Long.MAX_VALUE;
+        for (int k = 0; k < 2; k++) {                           // first pass warms up
+            long start = System.nanoTime();
+            MixedPrecisionLeastSquares solver = new MixedPrecisionLeastSquares(a, nRows, nCols);
+            solver.solve(b);
+            mixed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ComplexQR qr = new ComplexQR(a.clone(), nRows, nCols);
+            System.arraycopy(b, 0, y, 0, y.length);
+            qr.solve(y);
+            full = System.nanoTime() - start;
+            Log.d(TAG, "least squares " + nRows + "x" + nCols + " mixed " + mixed / 1000 + " microseconds, "
+                    + solver.getRefinementSteps() + " refinement steps, fallback " + solver.usedFallback() + ", double " + full / 1000 + " microseconds");
+        }
+        return (double) full / mixed;
+    }
+
+    // Samples per second of an order-tap QR-RLS filter identifying a random FIR system, blocks of blockSize samples
+    public static double rlsSamplesPerSecond(int order, int blockSize, int blocks) {
+        Random random = new Random(2L);
+        double[] h = randomComplex(order, random);
+        double[] block = new double[4 * blockSize];
+        double[] history = new double[2 * order];
+        QRRLSFilter filter = new QRRLSFilter(order, 0.999);
+
+        fillSystemIdentification(block, h, history, random);   // warm up
+        filter.process(block);
+
+        long elapsed = 0L;
+        for (int k = 0; k < blocks; k++) {
+            fillSystemIdentification(block, h, history, random);
+            long start = System.nanoTime();
+            filter.process(block);
+            elapsed += System.nanoTime() - start;
+        }
+
+        double rate = (double) blocks * blockSize / (elapsed / 1.0e9);
+        Log.d(TAG, "QR-RLS " + order + " taps, " + blocks * blockSize + " samples, " + elapsed / 1000 + " microseconds, samples/sec = " + rate);
+        Log.d(TAG, "QR-RLS last a priori error " + Math.hypot(block[block.length - 2], block[block.length - 1]));
+        return rate;
+    }
+
+    // Interleaved input/desired samples: complex white noise through the FIR filter h
+    private static void fillSystemIdentification(double[] block, double[] h, double[] history, Random random) {
+        int order = h.length / 2;
+        for (int p = 0; p < block.length; p += 4) {
+            System.arraycopy(history, 0, history, 2, 2 * (order - 1));
+            history[0] = random.nextGaussian();
+            history[1] = random.nextGaussian();
+            double dr = 0.0, di = 0.0;
+            for (int i = 0; i < 2 * order; i += 2) {
+                dr += history[i] * h[i] - history[i + 1] * h[i + 1];
+                di += history[i] * h[i + 1] + history[i + 1] * h[i];
+            }
+            block[p] = history[0];
+            block[p + 1] = history[1];
+            block[p + 2] = dr;
+            block[p + 3] = di;
+        }
+    }
+
+    // Interleaved complex numbers with real and imag on [-1.0, +1.0]
+    static double[] randomComplex(int n, Random random) {
+        double[] a = new double[2 * n];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = -1.0 + 2.0 * random.nextDouble();
+        }
+        return a;
+    }
+
+    // Same count as MainActivity.flopCount
+    static double flopCount(int m, int n) {
+        double k = ((double) m * n * n - (double) n * n * n / 3.0) / 2.0;
+        return 16.0 * k;
+    }
+}
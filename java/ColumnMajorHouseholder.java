@@ -0,0 +1,175 @@
+package com.bob.complexqr;
+
+/*
+        Householder QR kernels for matrices stored by columns, and conversions between row-major
+        and column-major storage.
+
+        Column-major storage keeps real and imag interleaved but makes the columns contiguous:
+        element (i, j) of an m x n matrix is at 2*(ld*j + i), with ld = m for a whole matrix.  Every Householder step works down columns: the norm of x, vH c for each column c,
+        and c -= 2 (vH c) v.  Row-major storage strides these by 2*n doubles, so each cache line
+        gives one element; stored by columns they are unit stride streams.
+
+        The factorization is that of ComplexHouseholder, R on and above the diagonal, v[1..] below
+        it in the same column, v[0] in vHead, Q A = R.  complexQRcm.S is the assembly language
+        version, through NativeQR.complexHouseholderColumnMajor.
+
+        The conversions copy in square tiles so that both the reads and the writes stay in cache.
+*/
+
+public final class ColumnMajorHouseholder {
+
+    private static final int TILE = 32;                     // tile edge for the conversions, complex elements
+
+    private ColumnMajorHouseholder() {
+    }
+
+    // CONVERSIONS
+    // Copy an m x n row-major matrix into column-major storage
+    public static double[] toColumnMajor(double[] a, int m, int n) {
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        double[] c = new double[2 * m * n];
+        transpose(a, n, c, m, m, n);
+        return c;
+    }
+
+    // Copy an m x n column-major matrix into row-major storage, as for complexQR
+    public static double[] toRowMajor(double[] c, int m, int n) {
+        if (c.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        double[] a = new double[2 * m * n];
+        transpose(c, m, a, n, n, m);
+        return a;
+    }
+
+    // Copy a ComplexMatrix into column-major storage
+    public static double[] toColumnMajor(ComplexMatrix matrix) {
+        int m = matrix.getNrow(), n = matrix.getNcol();
+        Complex[][] array = matrix.getArrayReference();
+        double[] c = new double[2 * m * n];
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < m; i++) {
+                c[2 * (m * j + i)] = array[i][j].getReal();
+                c[2 * (m * j + i) + 1] = array[i][j].getImag();
+            }
+        }
+        return c;
+    }
+
+    // Copy an m x n column-major matrix into a ComplexMatrix
+    public static ComplexMatrix toComplexMatrix(double[] c, int m, int n) {
+        ComplexMatrix matrix = new ComplexMatrix(m, n);
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < m; i++) {
+                matrix.setElement(i, j, c[2 * (m * j + i)], c[2 * (m * j + i) + 1]);
+            }
+        }
+        return matrix;
+    }
+
+    // b[j][i] = a[i][j] for the rows x cols matrix a, leading dimensions lda and ldb, by tiles
+    private static void transpose(double[] a, int lda, double[] b, int ldb, int rows, int cols) {
+        for (int i0 = 0; i0 < rows; i0 += TILE) {
+            int i1 = Math.min(i0 + TILE, rows);
+            for (int j0 = 0; j0 < cols; j0 += TILE) {
+                int j1 = Math.min(j0 + TILE, cols);
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0; j < j1; j++) {
+                        b[2 * (ldb * j + i)] = a[2 * (lda * i + j)];
+                        b[2 * (ldb * j + i) + 1] = a[2 * (lda * i + j) + 1];
+                    }
+                }
+            }
+        }
+    }
+
+    // KERNELS
+    // Apply H = I - 2 v vH from the left to ncols columns of c, each len long, starting at c[cOff], leading
+    // dimension ldc.  v[0] = (h0r, h0i) and v[1..len-1] follow it at a[vOff + 2], unit stride.
+    public static void applyLeft(double[] a, int vOff, double h0r, double h0i, int len,
+                                 double[] c, int cOff, int ldc, int ncols) {
+        for (int j = 0; j < ncols; j++) {
+            int col = cOff + 2 * ldc * j;
+            double sr = h0r * c[col] + h0i * c[col + 1];            // s = vH c
+            double si = h0r * c[col + 1] - h0i * c[col];
+            for (int i = 2, p = col + 2; i < 2 * len; i += 2, p += 2) {
+                double vr = a[vOff + i], vi = a[vOff + i + 1];
+                sr += vr * c[p] + vi * c[p + 1];
+                si += vr * c[p + 1] - vi * c[p];
+            }
+            sr += sr;                                               // 2*sum
+            si += si;
+            c[col]     -= h0r * sr - h0i * si;                      // c -= v s
+            c[col + 1] -= h0r * si + h0i * sr;
+            for (int i = 2, p = col + 2; i < 2 * len; i += 2, p += 2) {
+                double vr = a[vOff + i], vi = a[vOff + i + 1];
+                c[p]     -= vr * sr - vi * si;
+                c[p + 1] -= vr * si + vi * sr;
+            }
+        }
+    }
+
+    // QR factorization of the m x n column-major matrix a in place, leading dimension lda, starting at a[off].
+    // vHead must hold 2*n doubles.
+    public static void factor(double[] a, int off, int lda, int m, int n, double[] vHead) {
+        int steps = ComplexHouseholder.reflections(m, n);
+        for (int k = 0; k < steps; k++) {
+            int kk = off + 2 * (lda * k + k);
+            ComplexHouseholder.house(a, kk, 1, m - k, vHead, 2 * k);            // column k is unit stride
+            applyLeft(a, kk, vHead[2 * k], vHead[2 * k + 1], m - k, a, kk + 2 * lda, lda, n - k - 1);
+        }
+        for (int k = Math.max(steps, 0); k < n; k++) {
+            vHead[2 * k] = 0.0;                                     // no reflection, H = I
+            vHead[2 * k + 1] = 0.0;
+        }
+    }
+
+    public static void factor(double[] a, int m, int n, double[] vHead) {
+        factor(a, 0, m, m, n, vHead);
+    }
+
+    // Apply Q (transpose = false) or QH (transpose = true) from the left to the m x ncols column-major c
+    public static void applyQ(double[] a, int m, int n, double[] vHead, boolean transpose,
+                              double[] c, int cOff, int ldc, int ncols) {
+        int steps = ComplexHouseholder.reflections(m, n);
+        for (int s = 0; s < steps; s++) {
+            int k = transpose ? steps - 1 - s : s;
+            applyLeft(a, 2 * (m * k + k), vHead[2 * k], vHead[2 * k + 1], m - k, c, cOff + 2 * k, ldc, ncols);
+        }
+    }
+
+    // Form the explicit m x m Q, Q A = R, column-major, as complexQRcm does with flag = 1
+    public static double[] formQ(double[] a, int m, int n, double[] vHead) {
+        double[] q = new double[2 * m * m];
+        for (int i = 0; i < m; i++) {
+            q[2 * (m * i + i)] = 1.0;
+        }
+        applyQ(a, m, n, vHead, false, q, 0, m, m);
+        return q;
+    }
+
+    // complexQR on column-major a and q, as NativeQR.complexHouseholderColumnMajor, in Java if the library
+    // is not loaded.  a is overwritten with R, zero below the diagonal; q, if not null, must hold the identity.
+    // Returns the time in microseconds.
+    public static long householder(double[] a, double[] q, int m, int n) {
+        if (m < n) throw new IllegalArgumentException("rows, " + m + ", are fewer than columns, " + n);
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        if (q != null && q.length < 2 * m * m) throw new IllegalArgumentException("Q must be " + m + "x" + m);
+        long time;
+        if (NativeQR.isAvailable()) {
+            time = NativeQR.complexHouseholderColumnMajor(a, q, m, n, (q == null) ? 0 : 1);
+        } else {
+            long start = System.nanoTime();
+            double[] vHead = new double[2 * n];
+            factor(a, m, n, vHead);
+            if (q != null) {
+                applyQ(a, m, n, vHead, false, q, 0, m, m);
+            }
+            time = (System.nanoTime() - start) / 1000L;
+        }
+        for (int j = 0; j < n; j++) {                       // R only: the Householder vectors, or what complexQRcm leaves
+            for (int p = 2 * (m * j + j + 1); p < 2 * m * (j + 1); p++) {
+                a[p] = 0.0;
+            }
+        }
+        return time;
+    }
+}
@@ -0,0 +1,337 @@
+package com.bob.complexqr;
+
+/*
+        Cholesky factorization of a Hermitian positive definite complex matrix, A = L LH, with L
+        lower triangular with a real positive diagonal.  Half the flops of LU, no pivoting, and
+        only the lower triangle of A is referenced.
+
+        Storage is that of complexQR, row i, column j at 2*(n*i + j), and L overwrites the lower
+        triangle of A.  With L stored by rows every inner product, l_ik conj(l_jk) summed over k,
+        is the dot product of two contiguous rows.
+
+        The factorization is blocked, right looking, on square tiles of nb x nb:
+
+            POTRF   factor the diagonal tile                        L_kk LH_kk = A_kk
+            TRSM    the tiles below it                              L_ik = A_ik L_kk^-H
+            HERK    the trailing diagonal tiles                     A_ii -= L_ik LH_ik
+            GEMM    the trailing tiles below the diagonal           A_ij -= L_ik LH_jk
+
+        The tiled variant runs the TRSMs of a step, then its HERK and GEMM updates, concurrently on
+        a ForkJoinPool; the updates are nearly all the work.
+
+        solve, determinant and inverse are done with L.
+
+        see:    G. H. Golub and C. F. Van Loan, Matrix Computations, section 4.2
+                A. Buttari, J. Langou, J. Kurzak and J. Dongarra, A class of parallel tiled linear algebra
+                algorithms for multicore architectures, Parallel Computing 35 (2009)
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class ComplexCholesky {
+
+    public static final int BLOCK_SIZE = 48;                // default tile size
+
+    private final int n;
+    private final double[] l;                               // L in the lower triangle, zero above, n x n
+
+    // CONSTRUCTORS
+    // Factor a ComplexMatrix, which remains unaltered
+    public ComplexCholesky(ComplexMatrix matrix) {
+        this(interleavedSquare(matrix), matrix.getNrow());
+    }
+
+    // Factor the n x n matrix a in place, blocked, one thread
+    public ComplexCholesky(double[] a, int n) {
+        this(a, n, BLOCK_SIZE, 1);
+    }
+
+    // Factor the n x n matrix a in place with nb x nb tiles; threads > 1 runs the tile kernels of each step concurrently
+    public ComplexCholesky(double[] a, int n, int nb, int threads) {
+        if (a.length < 2 * n * n) throw new IllegalArgumentException("array is too short for a " + n + "x" + n + " complex matrix");
+        if (nb < 1) throw new IllegalArgumentException("block size, " + nb + ", must be at least one");
+        this.n = n;
+        this.l = a;
+        if (threads > 1 && n > nb) {
+            factorTiled(a, n, nb, threads);
+        } else {
+            factor(a, n, nb);
+        }
+        for (int i = 0; i < n; i++) {                       // clear the strictly upper triangle
+            for (int p = 2 * (n * i + i + 1); p < 2 * n * (i + 1); p++) {
+                a[p] = 0.0;
+            }
+        }
+    }
+
+    private static double[] interleavedSquare(ComplexMatrix matrix) {
+        if (matrix.getNrow() != matrix.getNcol()) throw new IllegalArgumentException("Matrix is not square");
+        return ComplexHouseholder.toInterleaved(matrix);
+    }
+
+    // KERNELS
+    // Blocked right looking factorization of the lower triangle of a, n x n
+    public static void factor(double[] a, int n, int nb) {
+        for (int k = 0; k < n; k += nb) {
+            int kb = Math.min(nb, n - k);
+            potrf(a, n, k, kb);
+            for (int i = k + kb; i < n; i += nb) {
+                trsm(a, n, k, kb, i, Math.min(nb, n - i));
+            }
+            for (int i = k + kb; i < n; i += nb) {
+                int ib = Math.min(nb, n - i);
+                for (int j = k + kb; j <= i; j += nb) {
+                    update(a, n, k, kb, i, ib, j, Math.min(nb, n - j));
+                }
+            }
+        }
+    }
+
+    // Tiled factorization, the TRSMs and then the updates of each step shared between threads
+    public static void factorTiled(final double[] a, final int n, final int nb, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int k = 0; k < n; k += nb) {
+                final int k0 = k;
+                final int kb = Math.min(nb, n - k);
+                potrf(a, n, k, kb);
+                List<Callable<Void>> list = new ArrayList<>();
+                for (int i = k + kb; i < n; i += nb) {
+                    final int i0 = i;
+                    list.add(new Callable<Void>() {
+                        public Void call() {
+                            trsm(a, n, k0, kb, i0, Math.min(nb, n - i0));
+                            return null;
+                        }
+                    });
+                }
+                invoke(pool, list);
+                list.clear();
+                for (int i = k + kb; i < n; i += nb) {
+                    for (int j = k + kb; j <= i; j += nb) {
+                        final int i0 = i, j0 = j;
+                        list.add(new Callable<Void>() {
+                            public Void call() {
+                                update(a, n, k0, kb, i0, Math.min(nb, n - i0), j0, Math.min(nb, n - j0));
+                                return null;
+                            }
+                        });
+                    }
+                }
+                invoke(pool, list);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void invoke(ForkJoinPool pool, List<Callable<Void>> list) {
+        if (list.isEmpty()) {
+            return;
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(list)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Cholesky tile kernel interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ArithmeticException) {
+                throw (ArithmeticException) e.getCause();
+            }
+            throw new IllegalStateException("Cholesky tile kernel failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    // POTRF: unblocked factorization of the diagonal tile at row and column k, kb x kb
+    static void potrf(double[] a, int n, int k, int kb) {
+        for (int j = k; j < k + kb; j++) {
+            int jk = 2 * (n * j + k);
+            int jj = 2 * (n * j + j);
+            double d = a[jj] - sumSquares(a, jk, j - k);
+            if (!(d > 0.0)) throw new ArithmeticException("Matrix is not positive definite");
+            d = Math.sqrt(d);
+            a[jj] = d;
+            a[jj + 1] = 0.0;
+            for (int i = j + 1; i < k + kb; i++) {
+                divideDot(a, n, i, j, k, d);
+            }
+        }
+    }
+
+    // TRSM: L_ik = A_ik L_kk^-H for the tile at rows i..i+ib-1, columns k..k+kb-1
+    static void trsm(double[] a, int n, int k, int kb, int i, int ib) {
+        for (int r = i; r < i + ib; r++) {
+            for (int j = k; j < k + kb; j++) {
+                divideDot(a, n, r, j, k, a[2 * (n * j + j)]);
+            }
+        }
+    }
+
+    // HERK or GEMM: A_ij -= L_ik LH_jk for the tile at rows i.., columns j..; only the lower triangle when i == j
+    static void update(double[] a, int n, int k, int kb, int i, int ib, int j, int jb) {
+        for (int r = i; r < i + ib; r++) {
+            int rk = 2 * (n * r + k);
+            int last = (i == j) ? r + 1 : j + jb;
+            for (int c = j; c < last; c++) {
+                int ck = 2 * (n * c + k);
+                double sr = 0.0, si = 0.0;
+                for (int p = 0; p < 2 * kb; p += 2) {           // l_rp conj(l_cp)
+                    double xr = a[rk + p], xi = a[rk + p + 1];
+                    double yr = a[ck + p], yi = a[ck + p + 1];
+                    sr += xr * yr + xi * yi;
+                    si += xi * yr - xr * yi;
+                }
+                int rc = 2 * (n * r + c);
+                a[rc] -= sr;
+                a[rc + 1] -= si;
+            }
+        }
+    }
+
+    // l_ij = (a_ij - sum over p = k..j-1 of l_ip conj(l_jp)) / d
+    private static void divideDot(double[] a, int n, int i, int j, int k, double d) {
+        int ik = 2 * (n * i + k);
+        int jk = 2 * (n * j + k);
+        double sr = 0.0, si = 0.0;
+        for (int p = 0; p < 2 * (j - k); p += 2) {
+            double xr = a[ik + p], xi = a[ik + p + 1];
+            double yr = a[jk + p], yi = a[jk + p + 1];
+            sr += xr * yr + xi * yi;
+            si += xi * yr - xr * yi;
+        }
+        int ij = 2 * (n * i + j);
+        a[ij] = (a[ij] - sr) / d;
+        a[ij + 1] = (a[ij + 1] - si) / d;
+    }
+
+    // Sum of |x_p|^2 over len complex elements from off
+    private static double sumSquares(double[] a, int off, int len) {
+        double s = 0.0;
+        for (int p = off; p < off + 2 * len; p++) {
+            s += a[p] * a[p];
+        }
+        return s;
+    }
+
+    // SOLUTIONS
+    // Solve A x = b in place, b interleaved from bOff
+    public void solve(double[] b, int bOff) {
+        int n = this.n;
+        for (int i = 0; i < n; i++) {                       // L y = b
+            int ip = 2 * n * i;
+            double sr = b[bOff + 2 * i], si = b[bOff + 2 * i + 1];
+            for (int j = 0; j < i; j++) {
+                double lr = this.l[ip + 2 * j], li = this.l[ip + 2 * j + 1];
+                double yr = b[bOff + 2 * j], yi = b[bOff + 2 * j + 1];
+                sr -= lr * yr - li * yi;
+                si -= lr * yi + li * yr;
+            }
+            double d = this.l[ip + 2 * i];
+            b[bOff + 2 * i] = sr / d;
+            b[bOff + 2 * i + 1] = si / d;
+        }
+        for (int i = n - 1; i >= 0; i--) {                  // LH x = y, column i of LH is row i of L, conjugated
+            double d = this.l[2 * (n * i + i)];
+            double xr = b[bOff + 2 * i] / d, xi = b[bOff + 2 * i + 1] / d;
+            b[bOff + 2 * i] = xr;
+            b[bOff + 2 * i + 1] = xi;
+            int ip = 2 * n * i;
+            for (int j = 0; j < i; j++) {                   // b_j -= conj(l_ij) x_i
+                double lr = this.l[ip + 2 * j], li = this.l[ip + 2 * j + 1];
+                b[bOff + 2 * j] -= lr * xr + li * xi;
+                b[bOff + 2 * j + 1] -= lr * xi - li * xr;
+            }
+        }
+    }
+
+    // Solve A x = b
+    public Complex[] solve(Complex[] b) {
+        if (b.length != this.n) throw new IllegalArgumentException("vector length, " + b.length + ", does not equal the matrix dimension, " + this.n);
+        double[] x = new double[2 * this.n];
+        for (int i = 0; i < this.n; i++) {
+            x[2 * i] = b[i].getReal();
+            x[2 * i + 1] = b[i].getImag();
+        }
+        solve(x, 0);
+        Complex[] result = new Complex[this.n];
+        for (int i = 0; i < this.n; i++) {
+            result[i] = new Complex(x[2 * i], x[2 * i + 1]);
+        }
+        return result;
+    }
+
+    // Returns the determinant, real and positive, the product of the squared diagonal of L
+    public double determinant() {
+        double det = 1.0;
+        for (int i = 0; i < this.n; i++) {
+            double d = this.l[2 * (this.n * i + i)];
+            det *= d * d;
+        }
+        return det;
+    }
+
+    // Returns log(determinant), useful if determinant() underflows or overflows
+    public double logDeterminant() {
+        double sum = 0.0;
+        for (int i = 0; i < this.n; i++) {
+            sum += Math.log(this.l[2 * (this.n * i + i)]);
+        }
+        return 2.0 * sum;
+    }
+
+    // Returns the inverse, A^-1 = L^-H L^-1, with L^-1 found by forward substitution on rows
+    public ComplexMatrix inverse() {
+        int n = this.n;
+        double[] w = new double[2 * n * n];                 // W = L^-1, lower triangular
+        for (int i = 0; i < n; i++) {
+            int ip = 2 * n * i;
+            double d = this.l[ip + 2 * i];
+            w[ip + 2 * i] = 1.0 / d;
+            for (int j = 0; j < i; j++) {                   // w_ij = -(sum over p = j..i-1 of l_ip w_pj) / l_ii
+                double sr = 0.0, si = 0.0;
+                for (int p = j; p < i; p++) {
+                    double lr = this.l[ip + 2 * p], li = this.l[ip + 2 * p + 1];
+                    double xr = w[2 * (n * p + j)], xi = w[2 * (n * p + j) + 1];
+                    sr += lr * xr - li * xi;
+                    si += lr * xi + li * xr;
+                }
+                w[ip + 2 * j] = -sr / d;
+                w[ip + 2 * j + 1] = -si / d;
+            }
+        }
+        double[] inv = new double[2 * n * n];
+        for (int i = 0; i < n; i++) {                       // (WH W)_ij = sum over p >= max(i, j) of conj(w_pi) w_pj
+            for (int j = 0; j <= i; j++) {
+                double sr = 0.0, si = 0.0;
+                for (int p = i; p < n; p++) {
+                    double xr = w[2 * (n * p + i)], xi = w[2 * (n * p + i) + 1];
+                    double yr = w[2 * (n * p + j)], yi = w[2 * (n * p + j) + 1];
+                    sr += xr * yr + xi * yi;
+                    si += xr * yi - xi * yr;
+                }
+                inv[2 * (n * i + j)] = sr;
+                inv[2 * (n * i + j) + 1] = si;
+                inv[2 * (n * j + i)] = sr;
+                inv[2 * (n * j + i) + 1] = -si;
+            }
+        }
+        return ComplexHouseholder.toComplexMatrix(inv, 0, n, n, n);
+    }
+
+    // GET VALUES
+    public int getN() {
+        return this.n;
+    }
+
+    // Return L
+    public ComplexMatrix getL() {
+        return ComplexHouseholder.toComplexMatrix(this.l, 0, this.n, this.n, this.n);
+    }
+}
@@ -0,0 +1,324 @@
+package com.bob.complexqr;
+
+/*
+        Eigen values of a general (non-Hermitian) complex matrix.
+
+        The matrix is first reduced to upper Hessenberg form by Householder similarity transforms,
+        H = Qh A Qh^H, a panel of BLOCK_SIZE columns at a time as LAPACK's zgehrd.  The panel's
+        reflectors are made one column at a time, and Y = A V T gathered as they are, then the
+        columns to the right of the panel are updated once from each side: A - Y V^H from the
+        right, and ComplexHouseholder.applyBlockLeft with the T of formT from the left.  Small
+        matrices, for which the panel work is most of the total, are reduced one reflector at a
+        time by applyLeft and applyRight.  The Householder vectors are kept below the subdiagonal,
+        their first elements in vHead.
+
+        The eigen values of H are found by the shifted QR algorithm in complex arithmetic: Wilkinson
+        shifts from the trailing 2x2 block, QR steps done with Givens rotations on the active
+        window, deflation when a subdiagonal element becomes negligible and exceptional shifts if
+        a block does not converge.  Each step is O(n^2), the whole O(n^3), less than the reduction.
+
+        Storage is that of complexQR: row i, column j at 2*(n*i + j).
+
+        see:    G. H. Golub and C. F. Van Loan, Matrix Computations, sections 7.4 and 7.5
+*/
+
+public final class ComplexEigen {
+
+    private static final int MAXIMUM_ITERATIONS     = 30;       // per eigen value
+    private static final int EXCEPTIONAL_SHIFT      = 10;       // iterations without deflation before an exceptional shift
+    private static final int BLOCK_SIZE             = 32;       // reflectors per panel of the Hessenberg reduction
+    private static final int UNBLOCKED              = 256;      // smaller matrices are reduced one reflector at a time
+
+    private ComplexEigen() {
+    }
+
+    // Reduce the n x n matrix a to upper Hessenberg form in place.
+    // On return H is on and above the subdiagonal, the Householder vector of column k below the subdiagonal
+    // with its first element in vHead[2k], vHead[2k+1].  vHead must hold 2*n doubles.
+    public static void hessenberg(double[] a, int n, double[] vHead) {
+        if (a.length < 2 * n * n) throw new IllegalArgumentException("array is too short for a " + n + "x" + n + " complex matrix");
+        if (n < UNBLOCKED) {
+            hessenbergUnblocked(a, n, vHead);
+            return;
+        }
+        double[] y = new double[2 * n * BLOCK_SIZE];
+        double[] t = new double[2 * BLOCK_SIZE * BLOCK_SIZE];
+        double[] vh = new double[2 * BLOCK_SIZE * n];
+        double[] work = new double[2 * BLOCK_SIZE * n];
+        for (int k = 0; k < n - 2; k += BLOCK_SIZE) {
+            int nb = Math.min(BLOCK_SIZE, n - 2 - k);
+            int off = 2 * (n * (k + 1) + k);                        // A[k+1][k], the top of V
+            int len = n - k - 1;
+            panel(a, n, k, nb, vHead, y, work);
+            ComplexHouseholder.formT(a, off, n, len, nb, vHead, 2 * k, t, 0, nb, work);
+            int tail = n - k - nb;                                  // columns k+nb.., untouched by the panel
+            rightBlock(a, n, k, nb, vHead, y, vh, tail);
+            ComplexHouseholder.applyBlockLeft(a, off, n, len, nb, vHead, 2 * k, t, 0, nb, true,
+                    a, 2 * (n * (k + 1) + k + nb), n, tail, work);
+        }
+        for (int k = Math.max(n - 2, 0); k < n; k++) {
+            vHead[2 * k] = 0.0;
+            vHead[2 * k + 1] = 0.0;
+        }
+    }
+
+    // One reflector at a time: applyLeft on the trailing columns and applyRight on every row
+    private static void hessenbergUnblocked(double[] a, int n, double[] vHead) {
+        double[] work = new double[2 * n];
+        for (int k = 0; k < n - 2; k++) {
+            int off = 2 * (n * (k + 1) + k);                        // A[k+1][k]
+            int len = n - k - 1;
+            ComplexHouseholder.house(a, off, n, len, vHead, 2 * k);
+            double h0r = vHead[2 * k], h0i = vHead[2 * k + 1];
+            ComplexHouseholder.applyLeft(a, off, n, h0r, h0i, len, a, off + 2, n, n - k - 1, work);    // H A, columns k+1..
+            ComplexHouseholder.applyRight(a, off, n, h0r, h0i, len, a, 2 * (k + 1), n, n, work);       // (H A) H, all rows
+        }
+        for (int k = Math.max(n - 2, 0); k < n; k++) {
+            vHead[2 * k] = 0.0;
+            vHead[2 * k + 1] = 0.0;
+        }
+    }
+
+    // Reduce columns k..k+nb-1, as LAPACK's zlahr2.  Each column is brought up to date when it is reached:
+    // A Q from the columns of Y = A V T so far, then QH from the reflectors so far, before its reflector is
+    // made.  Column jj of Y is 2 (A v - Y VH v), A the matrix at the start of the panel, which the columns
+    // to the right of the reflector still are.  The columns right of the panel are not touched.
+    // y must hold 2*n*nb doubles, n rows of nb, and work 2*n.
+    private static void panel(double[] a, int n, int k, int nb, double[] vHead, double[] y, double[] work) {
+        double[] u = new double[2 * nb];
+        for (int jj = 0; jj < nb; jj++) {
+            int j = k + jj;
+            if (jj > 0) {
+                for (int l = 0; l < jj; l++) {                      // u = conj of row j of V, the row that meets column j
+                    int p = (l == jj - 1) ? -1 : 2 * (n * j + k + l);
+                    u[2 * l] = (p < 0) ? vHead[2 * (k + l)] : a[p];
+                    u[2 * l + 1] = -((p < 0) ? vHead[2 * (k + l) + 1] : a[p + 1]);
+                }
+                for (int i = 0; i < n; i++) {                       // A[][j] -= Y u, every row
+                    int p = 2 * (n * i + j), q = 2 * nb * i;
+                    double sr = 0.0, si = 0.0;
+                    for (int l = 0; l < 2 * jj; l += 2) {
+                        sr += y[q + l] * u[l] - y[q + l + 1] * u[l + 1];
+                        si += y[q + l] * u[l + 1] + y[q + l + 1] * u[l];
+                    }
+                    a[p] -= sr;
+                    a[p + 1] -= si;
+                }
+                for (int l = 0; l < jj; l++) {                      // H[l] A[][j], rows k+1+l..
+                    int v = 2 * (n * (k + 1 + l) + k + l);
+                    ComplexHouseholder.applyLeft(a, v, n, vHead[2 * (k + l)], vHead[2 * (k + l) + 1], n - k - 1 - l,
+                            a, 2 * (n * (k + 1 + l) + j), n, 1, work);
+                }
+            }
+
+            int len = n - j - 1;
+            ComplexHouseholder.house(a, 2 * (n * (j + 1) + j), n, len, vHead, 2 * j);
+            work[0] = vHead[2 * j];                                 // v, contiguous
+            work[1] = vHead[2 * j + 1];
+            for (int c = 1; c < len; c++) {
+                work[2 * c] = a[2 * (n * (j + 1 + c) + j)];
+                work[2 * c + 1] = a[2 * (n * (j + 1 + c) + j) + 1];
+            }
+            for (int l = 0; l < jj; l++) {                          // u = VH v, the reflectors before this one
+                double sr = 0.0, si = 0.0;
+                for (int c = 0; c < len; c++) {
+                    int p = 2 * (n * (j + 1 + c) + k + l);
+                    sr += a[p] * work[2 * c] + a[p + 1] * work[2 * c + 1];
+                    si += a[p] * work[2 * c + 1] - a[p + 1] * work[2 * c];
+                }
+                u[2 * l] = sr;
+                u[2 * l + 1] = si;
+            }
+            for (int i = 0; i < n; i++) {                           // Y[i][jj] = 2 (A[i][j+1..] v - Y[i][] u)
+                int row = 2 * (n * i + j + 1), q = 2 * nb * i;
+                double sr = 0.0, si = 0.0;
+                for (int c = 0, p = row; c < 2 * len; c += 2, p += 2) {
+                    sr += a[p] * work[c] - a[p + 1] * work[c + 1];
+                    si += a[p] * work[c + 1] + a[p + 1] * work[c];
+                }
+                for (int l = 0; l < 2 * jj; l += 2) {
+                    sr -= y[q + l] * u[l] - y[q + l + 1] * u[l + 1];
+                    si -= y[q + l] * u[l + 1] + y[q + l + 1] * u[l];
+                }
+                y[q + 2 * jj] = 2.0 * sr;
+                y[q + 2 * jj + 1] = 2.0 * si;
+            }
+        }
+    }
+
+    // A Q on the tail columns k+nb.. of every row: A[][k+nb..] -= Y VH.  VH is packed first, nb rows of the
+    // tail, so the update is ComplexHouseholder.subtractVW, four rows of VH a pass.  vh must hold 2*nb*tail doubles.
+    private static void rightBlock(double[] a, int n, int k, int nb, double[] vHead, double[] y, double[] vh, int tail) {
+        int n2 = 2 * tail;
+        for (int c = 0; c < tail; c++) {                            // column k+nb+c meets row nb-1+c of V
+            int r = k + nb + c;
+            for (int l = 0; l < nb; l++) {
+                double vr, vi;
+                if (c == 0 && l == nb - 1) {
+                    vr = vHead[2 * (k + l)];
+                    vi = vHead[2 * (k + l) + 1];
+                } else {
+                    vr = a[2 * (n * r + k + l)];
+                    vi = a[2 * (n * r + k + l) + 1];
+                }
+                vh[n2 * l + 2 * c] = vr;
+                vh[n2 * l + 2 * c + 1] = -vi;
+            }
+        }
+        ComplexHouseholder.subtractVW(y, 0, nb, n, nb, vh, a, 2 * (k + nb), n, n2);
+    }
+
+    // Copy the Hessenberg matrix out of the output of hessenberg(), zero below the subdiagonal
+    public static double[] hessenbergMatrix(double[] a, int n) {
+        double[] h = new double[2 * n * n];
+        for (int i = 0; i < n; i++) {
+            int j0 = Math.max(i - 1, 0);
+            System.arraycopy(a, 2 * (n * i + j0), h, 2 * (n * i + j0), 2 * (n - j0));
+        }
+        return h;
+    }
+
+    // Eigen values of the upper Hessenberg matrix h, n x n, zero below the subdiagonal; h is overwritten.
+    // Returns the eigen values interleaved, real and imag, in the order they deflate.
+    public static double[] hessenbergEigenValues(double[] h, int n) {
+        double[] lambda = new double[2 * n];
+        double[] rot = new double[3 * n];
+        double[] g = new double[3];
+        double eps = Math.ulp(1.0);
+
+        int hi = n - 1;
+        int iter = 0;
+        while (hi >= 0) {
+            int lo = hi;                                            // find the start of the unreduced block
+            while (lo > 0) {
+                double sub = abs(h, n, lo, lo - 1);
+                double scale = abs(h, n, lo, lo) + abs(h, n, lo - 1, lo - 1);
+                if (scale == 0.0) {
+                    scale = norm1(h, n, hi);
+                }
+                if (sub <= eps * scale) {
+                    h[2 * (n * lo + lo - 1)] = 0.0;
+                    h[2 * (n * lo + lo - 1) + 1] = 0.0;
+                    break;
+                }
+                lo--;
+            }
+            if (lo == hi) {                                         // 1x1 block deflated
+                lambda[2 * hi] = h[2 * (n * hi + hi)];
+                lambda[2 * hi + 1] = h[2 * (n * hi + hi) + 1];
+                hi--;
+                iter = 0;
+                continue;
+            }
+            if (++iter > MAXIMUM_ITERATIONS) throw new ArithmeticException("QR iteration did not converge");
+
+            double mur, mui;
+            if (iter % EXCEPTIONAL_SHIFT == 0) {                    // exceptional shift
+                mur = h[2 * (n * hi + hi)] + abs(h, n, hi, hi - 1) + (hi - 2 >= lo ? abs(h, n, hi - 1, hi - 2) : 0.0);
+                mui = h[2 * (n * hi + hi) + 1];
+            } else {
+                double[] mu = wilkinson(h, n, hi);
+                mur = mu[0];
+                mui = mu[1];
+            }
+
+            for (int i = lo; i <= hi; i++) {                        // H - mu I
+                h[2 * (n * i + i)] -= mur;
+                h[2 * (n * i + i) + 1] -= mui;
+            }
+            for (int k = lo; k < hi; k++) {                         // QR, rows k and k+1 of the window
+                int kk = 2 * (n * k + k);
+                int below = 2 * (n * (k + 1) + k);
+                ComplexHouseholder.givens(h, kk, h[below], h[below + 1], g);
+                h[below] = 0.0;
+                h[below + 1] = 0.0;
+                ComplexHouseholder.rotate(g, h, kk + 2, h, below + 2, hi - k);
+                rot[3 * k] = g[0];
+                rot[3 * k + 1] = g[1];
+                rot[3 * k + 2] = g[2];
+            }
+            for (int k = lo; k < hi; k++) {                         // R Q, columns k and k+1 of the window
+                double c = rot[3 * k], sr = rot[3 * k + 1], si = rot[3 * k + 2];
+                int last = Math.min(k + 1, hi);
+                for (int i = lo; i <= last; i++) {
+                    int p = 2 * (n * i + k);
+                    double xr = h[p], xi = h[p + 1];
+                    double yr = h[p + 2], yi = h[p + 3];
+                    h[p]     = c * xr + sr * yr + si * yi;          // x c + y conj(s)
+                    h[p + 1] = c * xi + sr * yi - si * yr;
+                    h[p + 2] = c * yr - sr * xr + si * xi;          // y c - x s
+                    h[p + 3] = c * yi - sr * xi - si * xr;
+                }
+            }
+            for (int i = lo; i <= hi; i++) {                        // + mu I
+                h[2 * (n * i + i)] += mur;
+                h[2 * (n * i + i) + 1] += mui;
+            }
+        }
+        return lambda;
+    }
+
+    // Eigen value of the trailing 2x2 block [a b; c d] of rows hi-1, hi closer to d
+    private static double[] wilkinson(double[] h, int n, int hi) {
+        int p = 2 * (n * (hi - 1) + hi - 1);
+        int q = 2 * (n * hi + hi - 1);
+        double ar = h[p], ai = h[p + 1], br = h[p + 2], bi = h[p + 3];
+        double cr = h[q], ci = h[q + 1], dr = h[q + 2], di = h[q + 3];
+        double tr = 0.5 * (ar - dr), ti = 0.5 * (ai - di);          // t = (a - d)/2
+        double sr = tr * tr - ti * ti + br * cr - bi * ci;          // t^2 + b c
+        double si = 2.0 * tr * ti + br * ci + bi * cr;
+        double mod = Math.hypot(sr, si);                            // sqrt(t^2 + b c)
+        double rr = Math.sqrt(0.5 * (mod + Math.abs(sr)));
+        double ri = (rr == 0.0) ? 0.0 : si / (2.0 * rr);
+        if (sr < 0.0) {
+            double temp = rr;
+            rr = Math.abs(ri);
+            ri = (si < 0.0) ? -temp : temp;
+        }
+        if (tr * rr + ti * ri < 0.0) {                              // the root with t + sqrt larger in size
+            rr = -rr;
+            ri = -ri;
+        }
+        double denr = tr + rr, deni = ti + ri;                      // mu = d - b c / (t + sqrt)
+        double den = denr * denr + deni * deni;
+        if (den == 0.0) {
+            return new double[] {dr, di};
+        }
+        double bcr = br * cr - bi * ci, bci = br * ci + bi * cr;
+        return new double[] {dr - (bcr * denr + bci * deni) / den, di - (bci * denr - bcr * deni) / den};
+    }
+
+    private static double abs(double[] h, int n, int i, int j) {
+        int p = 2 * (n * i + j);
+        return Math.abs(h[p]) + Math.abs(h[p + 1]);
+    }
+
+    private static double norm1(double[] h, int n, int hi) {
+        double sum = 0.0;
+        for (int i = 0; i <= hi; i++) {
+            for (int j = Math.max(i - 1, 0); j <= hi; j++) {
+                sum += abs(h, n, i, j);
+            }
+        }
+        return sum;
+    }
+
+    // Sort interleaved eigen values into descending order of modulus
+    public static Complex[] sortByModulus(double[] lambda, int n) {
+        Complex[] values = new Complex[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = new Complex(lambda[2 * i], lambda[2 * i + 1]);
+        }
+        for (int i = 1; i < n; i++) {
+            Complex value = values[i];
+            double mod = value.abs();
+            int j = i - 1;
+            while (j >= 0 && values[j].abs() < mod) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+        return values;
+    }
+}
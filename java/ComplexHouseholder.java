@@ -0,0 +1,465 @@
+package com.bob.complexqr;
+
+/*
+        Java kernels for the complex Householder QR factorization.
+
+        These follow complexQR.S step for step: the Householder vector of column k is
+        v = x + e^(i arg x0) ||x|| e0, normalized to unit length, and H = I - 2 v vH.
+        Unlike the assembly language version the Householder vectors are kept: v[1..] is stored
+        below the diagonal of A and v[0], which is not unity, in a separate array vHead.
+
+        Storage is that of complexQR.S: rows are contiguous, real and imaginary parts are in
+        sequential locations, so element (i, j) of an m x n matrix is at 2*(n*i + j).  Most of the
+        kernels take an offset and a leading dimension (in complex elements) so that they can work
+        on a panel or a tile of a larger matrix.
+
+        Q is accumulated as in complexQR.S, Q A = R, so A = QH R as checked in MainActivity.verify.
+*/
+
+import java.util.Arrays;
+
+public final class ComplexHouseholder {
+
+    private ComplexHouseholder() {
+    }
+
+    // Number of Householder reflections for an m x n matrix.  As in complexQR.S a square matrix
+    // does not do the last column.
+    public static int reflections(int m, int n) {
+        return Math.min(m - 1, n);
+    }
+
+    // Generate the Householder vector for the column of length len starting at a[off], stride lda.
+    // On return a[off] holds the diagonal element of R, the rest of the column holds v[1..] and
+    // vHead[vOff], vHead[vOff+1] hold v[0].  A zero column gives v = 0, i.e. H = I.
+    public static void house(double[] a, int off, int lda, int len, double[] vHead, int vOff) {
+        int stride = 2 * lda;
+        double sum = 0.0;
+        for (int i = 0, p = off; i < len; i++, p += stride) {
+            sum += a[p] * a[p] + a[p + 1] * a[p + 1];               // xH x
+        }
+        double norm = Math.sqrt(sum);
+        if (norm == 0.0) {
+            vHead[vOff] = 0.0;
+            vHead[vOff + 1] = 0.0;
+            return;                                                 // column is already zero
+        }
+
+        double x0r = a[off];
+        double x0i = a[off + 1];
+        double abs0 = Math.hypot(x0r, x0i);
+        double pr = 1.0, pi = 0.0;                                  // e^(i arg x0)
+        if (abs0 != 0.0) {
+            pr = x0r / abs0;
+            pi = x0i / abs0;
+        }
+        double v0r = x0r + pr * norm;
+        double v0i = x0i + pi * norm;
+
+        double vnorm = Math.sqrt(sum - abs0 * abs0 + v0r * v0r + v0i * v0i);
+        double scale = 1.0 / vnorm;                                 // reciprocal so a multiply can be used in the loop
+
+        vHead[vOff] = v0r * scale;
+        vHead[vOff + 1] = v0i * scale;
+        a[off] = -pr * norm;                                        // R[k][k]
+        a[off + 1] = -pi * norm;
+        for (int i = 1, p = off + stride; i < len; i++, p += stride) {
+            a[p] *= scale;
+            a[p + 1] *= scale;
+        }
+    }
+
+    // Apply H = I - 2 v vH from the left to the len x ncols block of c starting at c[cOff], leading dimension ldc.
+    // v[0] = (h0r, h0i) and v[1..len-1] are at a[vOff + 2*lda*i].
+    // The rows of c are streamed, so both vH C and the update are unit stride; work must hold 2*ncols doubles.
+    public static void applyLeft(double[] a, int vOff, int lda, double h0r, double h0i, int len,
+                                 double[] c, int cOff, int ldc, int ncols, double[] work) {
+        int n2 = 2 * ncols;
+        for (int j = 0, p = cOff; j < n2; j += 2, p += 2) {         // w = conj(v0) * C[0][]
+            work[j]     = h0r * c[p] + h0i * c[p + 1];
+            work[j + 1] = h0r * c[p + 1] - h0i * c[p];
+        }
+        for (int i = 1; i < len; i++) {                             // w += conj(v[i]) * C[i][]
+            int q = vOff + 2 * lda * i;
+            double vr = a[q];
+            double vi = a[q + 1];
+            for (int j = 0, p = cOff + 2 * ldc * i; j < n2; j += 2, p += 2) {
+                work[j]     += vr * c[p] + vi * c[p + 1];
+                work[j + 1] += vr * c[p + 1] - vi * c[p];
+            }
+        }
+        for (int j = 0; j < n2; j++) {
+            work[j] += work[j];                                     // 2*sum
+        }
+        for (int i = 0; i < len; i++) {                             // C[i][] -= v[i] * w
+            double vr, vi;
+            if (i == 0) {
+                vr = h0r;
+                vi = h0i;
+            } else {
+                int q = vOff + 2 * lda * i;
+                vr = a[q];
+                vi = a[q + 1];
+            }
+            for (int j = 0, p = cOff + 2 * ldc * i; j < n2; j += 2, p += 2) {
+                c[p]     -= vr * work[j] - vi * work[j + 1];
+                c[p + 1] -= vr * work[j + 1] + vi * work[j];
+            }
+        }
+    }
+
+    // Apply H = I - 2 v vH from the right to the nrows x len block of c starting at c[cOff], leading dimension ldc.
+    // v is stored as for applyLeft.  v is first copied to work (2*len doubles) so each row of c is a unit stride
+    // dot product followed by a unit stride update.
+    public static void applyRight(double[] a, int vOff, int lda, double h0r, double h0i, int len,
+                                  double[] c, int cOff, int ldc, int nrows, double[] work) {
+        work[0] = h0r;
+        work[1] = h0i;
+        for (int j = 1; j < len; j++) {
+            work[2 * j] = a[vOff + 2 * lda * j];
+            work[2 * j + 1] = a[vOff + 2 * lda * j + 1];
+        }
+        int n2 = 2 * len;
+        for (int i = 0; i < nrows; i++) {
+            int row = cOff + 2 * ldc * i;
+            double sr = 0.0, si = 0.0;                              // s = C[i][] v
+            for (int j = 0, p = row; j < n2; j += 2, p += 2) {
+                sr += c[p] * work[j] - c[p + 1] * work[j + 1];
+                si += c[p] * work[j + 1] + c[p + 1] * work[j];
+            }
+            sr += sr;                                               // 2*sum
+            si += si;
+            for (int j = 0, p = row; j < n2; j += 2, p += 2) {      // C[i][] -= s vH
+                c[p]     -= sr * work[j] + si * work[j + 1];
+                c[p + 1] -= si * work[j] - sr * work[j + 1];
+            }
+        }
+    }
+
+    // QR factorization of the m x n matrix a in place, leading dimension lda, starting at a[off].
+    // On return R is on and above the diagonal, the Householder vectors below it, v[0] in vHead (2*n doubles).
+    // work must hold 2*n doubles.
+    public static void factor(double[] a, int off, int lda, int m, int n, double[] vHead, double[] work) {
+        int steps = reflections(m, n);
+        for (int k = 0; k < steps; k++) {
+            int kk = off + 2 * (lda * k + k);
+            house(a, kk, lda, m - k, vHead, 2 * k);
+            if (k + 1 < n) {
+                applyLeft(a, kk, lda, vHead[2 * k], vHead[2 * k + 1], m - k, a, kk + 2, lda, n - k - 1, work);
+            }
+        }
+        for (int k = Math.max(steps, 0); k < n; k++) {
+            vHead[2 * k] = 0.0;                                     // no reflection, H = I
+            vHead[2 * k + 1] = 0.0;
+        }
+    }
+
+    // QR factorization of the m x n matrix a (rows contiguous), as complexQR with the Householder vectors kept
+    public static void factor(double[] a, int m, int n, double[] vHead) {
+        factor(a, 0, n, m, n, vHead, new double[2 * n]);
+    }
+
+    // Apply Q (transpose = false) or QH (transpose = true) from the left to the m x ncols block c,
+    // using the Householder vectors of an m x n factorization.  work must hold 2*ncols doubles.
+    public static void applyQ(double[] a, int m, int n, double[] vHead, boolean transpose,
+                              double[] c, int cOff, int ldc, int ncols, double[] work) {
+        int steps = reflections(m, n);
+        for (int s = 0; s < steps; s++) {
+            int k = transpose ? steps - 1 - s : s;
+            applyLeft(a, 2 * (n * k + k), n, vHead[2 * k], vHead[2 * k + 1], m - k,
+                    c, cOff + 2 * ldc * k, ldc, ncols, work);
+        }
+    }
+
+    // Form the explicit m x m Q, Q A = R, as complexQR does with flag = 1
+    public static double[] formQ(double[] a, int m, int n, double[] vHead) {
+        double[] q = new double[2 * m * m];
+        for (int i = 0; i < m; i++) {
+            q[2 * (m * i + i)] = 1.0;
+        }
+        applyQ(a, m, n, vHead, false, q, 0, m, m, new double[2 * m]);
+        return q;
+    }
+
+    // COMPACT WY
+    // The k reflectors of a panel, v[j] starting on row j of the panel, combine as
+    // H0 H1 ... Hk-1 = I - V T VH, T k x k upper triangular.  V is stored as by factor: v[j][0] in
+    // vHead[vOff + 2j], v[j][1..] below the diagonal of column j of the panel at a[off], leading dimension lda.
+
+    // Form T for the k reflectors of a len-row panel, as LAPACK's zlarft with tau = 2.  T is at t[tOff],
+    // leading dimension ldt; work must hold 2*k doubles.
+    public static void formT(double[] a, int off, int lda, int len, int k, double[] vHead, int vOff,
+                             double[] t, int tOff, int ldt, double[] work) {
+        for (int i = 0; i < k; i++) {
+            for (int l = 0; l < i; l++) {                           // work[l] = v[l]H v[i], rows i..len-1
+                int p = off + 2 * (lda * i + l);
+                double ar = a[p], ai = a[p + 1];
+                double hr = vHead[vOff + 2 * i], hi = vHead[vOff + 2 * i + 1];
+                double sr = ar * hr + ai * hi;
+                double si = ar * hi - ai * hr;
+                for (int r = i + 1; r < len; r++) {
+                    int q = off + 2 * lda * r;
+                    double xr = a[q + 2 * l], xi = a[q + 2 * l + 1];
+                    double yr = a[q + 2 * i], yi = a[q + 2 * i + 1];
+                    sr += xr * yr + xi * yi;
+                    si += xr * yi - xi * yr;
+                }
+                work[2 * l] = sr;
+                work[2 * l + 1] = si;
+            }
+            for (int l = 0; l < i; l++) {                           // T[0..i-1][i] = -2 T[0..i-1][0..i-1] work
+                double sr = 0.0, si = 0.0;
+                for (int j = l, p = tOff + 2 * (ldt * l + l); j < i; j++, p += 2) {
+                    sr += t[p] * work[2 * j] - t[p + 1] * work[2 * j + 1];
+                    si += t[p] * work[2 * j + 1] + t[p + 1] * work[2 * j];
+                }
+                t[tOff + 2 * (ldt * l + i)] = -2.0 * sr;
+                t[tOff + 2 * (ldt * l + i) + 1] = -2.0 * si;
+            }
+            for (int l = i + 1; l < k; l++) {                       // below the diagonal of T
+                t[tOff + 2 * (ldt * l + i)] = 0.0;
+                t[tOff + 2 * (ldt * l + i) + 1] = 0.0;
+            }
+            t[tOff + 2 * (ldt * i + i)] = (i < len - 1) ? 2.0 : 0.0;     // a one-row column has no reflection
+            t[tOff + 2 * (ldt * i + i) + 1] = 0.0;
+        }
+    }
+
+    // Apply the block reflector of k reflectors from the left to the len x ncols block c at c[cOff], leading
+    // dimension ldc: C = (I - V T VH) C, or with adjoint = true C = (I - V TH VH) C = Hk-1 ... H1 H0 C, which
+    // is how factor applies them.  C is streamed twice, once for W = VH C and once for C -= V W, rather than
+    // twice per reflector.  Below the triangle of V, W is accumulated four rows of C at a time and C updated
+    // from four rows of W at a time, so each pass over W or C does four times the work.
+    // work must hold 2*k*ncols doubles.
+    public static void applyBlockLeft(double[] a, int off, int lda, int len, int k, double[] vHead, int vOff,
+                                      double[] t, int tOff, int ldt, boolean adjoint,
+                                      double[] c, int cOff, int ldc, int ncols, double[] work) {
+        int n2 = 2 * ncols;
+        int top = Math.min(k, len);                                 // rows of the triangle of V
+        Arrays.fill(work, 0, k * n2, 0.0);
+        for (int r = 0; r < top; r++) {                             // W = VH C, the triangle
+            int row = cOff + 2 * ldc * r;
+            for (int j = 0; j <= r; j++) {
+                double vr, vi;
+                if (j == r) {
+                    vr = vHead[vOff + 2 * j];
+                    vi = vHead[vOff + 2 * j + 1];
+                } else {
+                    vr = a[off + 2 * (lda * r + j)];
+                    vi = a[off + 2 * (lda * r + j) + 1];
+                }
+                for (int q = 0, w = n2 * j, p = row; q < n2; q += 2, w += 2, p += 2) {
+                    work[w]     += vr * c[p] + vi * c[p + 1];
+                    work[w + 1] += vr * c[p + 1] - vi * c[p];
+                }
+            }
+        }
+        multiplyVH(a, off + 2 * lda * top, lda, len - top, k, c, cOff + 2 * ldc * top, ldc, n2, work);     // and below it
+
+        multiplyT(t, tOff, ldt, k, adjoint, work, n2);
+
+        for (int r = 0; r < top; r++) {                             // C -= V W, the triangle
+            int row = cOff + 2 * ldc * r;
+            for (int j = 0; j <= r; j++) {
+                double vr, vi;
+                if (j == r) {
+                    vr = vHead[vOff + 2 * j];
+                    vi = vHead[vOff + 2 * j + 1];
+                } else {
+                    vr = a[off + 2 * (lda * r + j)];
+                    vi = a[off + 2 * (lda * r + j) + 1];
+                }
+                addRow(c, row, work, n2 * j, n2, -vr, -vi);
+            }
+        }
+        subtractVW(a, off + 2 * lda * top, lda, len - top, k, work, c, cOff + 2 * ldc * top, ldc, n2);      // and below it
+    }
+
+    // W = TH W (adjoint) or T W for the k x k upper triangular T at t[tOff] and the k x n2/2 W in work, in place
+    static void multiplyT(double[] t, int tOff, int ldt, int k, boolean adjoint, double[] work, int n2) {
+        if (adjoint) {                                              // W = TH W, TH lower, so from the bottom up
+            for (int i = k - 1; i >= 0; i--) {
+                scaleRow(work, n2 * i, n2, t[tOff + 2 * (ldt * i + i)], -t[tOff + 2 * (ldt * i + i) + 1]);
+                for (int l = 0; l < i; l++) {                       // W[i] += conj(T[l][i]) W[l]
+                    addRow(work, n2 * i, work, n2 * l, n2, t[tOff + 2 * (ldt * l + i)], -t[tOff + 2 * (ldt * l + i) + 1]);
+                }
+            }
+        } else {                                                    // W = T W, T upper, so from the top down
+            for (int i = 0; i < k; i++) {
+                scaleRow(work, n2 * i, n2, t[tOff + 2 * (ldt * i + i)], t[tOff + 2 * (ldt * i + i) + 1]);
+                for (int l = i + 1; l < k; l++) {                   // W[i] += T[i][l] W[l]
+                    addRow(work, n2 * i, work, n2 * l, n2, t[tOff + 2 * (ldt * i + l)], t[tOff + 2 * (ldt * i + l) + 1]);
+                }
+            }
+        }
+    }
+
+    // W += VH C for the full rows x k block V at v[vOff], leading dimension ldv, and the rows x n2/2 block C,
+    // four rows at a time, so each pass over W does four rows' work
+    static void multiplyVH(double[] v, int vOff, int ldv, int rows, int k, double[] c, int cOff, int ldc, int n2, double[] work) {
+        int r = 0;
+        for (; r + 4 <= rows; r += 4) {
+            int c0 = cOff + 2 * ldc * r, c1 = c0 + 2 * ldc, c2 = c1 + 2 * ldc, c3 = c2 + 2 * ldc;
+            int v0 = vOff + 2 * ldv * r, v1 = v0 + 2 * ldv, v2 = v1 + 2 * ldv, v3 = v2 + 2 * ldv;
+            for (int j = 0; j < k; j++) {
+                double ar = v[v0 + 2 * j], ai = v[v0 + 2 * j + 1];
+                double br = v[v1 + 2 * j], bi = v[v1 + 2 * j + 1];
+                double cr = v[v2 + 2 * j], ci = v[v2 + 2 * j + 1];
+                double dr = v[v3 + 2 * j], di = v[v3 + 2 * j + 1];
+                for (int q = 0, w = n2 * j; q < n2; q += 2, w += 2) {
+                    work[w]     += ar * c[c0 + q] + ai * c[c0 + q + 1] + br * c[c1 + q] + bi * c[c1 + q + 1]
+                                 + cr * c[c2 + q] + ci * c[c2 + q + 1] + dr * c[c3 + q] + di * c[c3 + q + 1];
+                    work[w + 1] += ar * c[c0 + q + 1] - ai * c[c0 + q] + br * c[c1 + q + 1] - bi * c[c1 + q]
+                                 + cr * c[c2 + q + 1] - ci * c[c2 + q] + dr * c[c3 + q + 1] - di * c[c3 + q];
+                }
+            }
+        }
+        for (; r < rows; r++) {
+            int row = cOff + 2 * ldc * r, vr0 = vOff + 2 * ldv * r;
+            for (int j = 0; j < k; j++) {
+                double vr = v[vr0 + 2 * j], vi = v[vr0 + 2 * j + 1];
+                for (int q = 0, w = n2 * j, p = row; q < n2; q += 2, w += 2, p += 2) {
+                    work[w]     += vr * c[p] + vi * c[p + 1];
+                    work[w + 1] += vr * c[p + 1] - vi * c[p];
+                }
+            }
+        }
+    }
+
+    // C -= V W for the full rows x k block V, four rows of W at a time, so each pass over C does four rows' work
+    static void subtractVW(double[] v, int vOff, int ldv, int rows, int k, double[] work, double[] c, int cOff, int ldc, int n2) {
+        for (int r = 0; r < rows; r++) {
+            int row = cOff + 2 * ldc * r, vr0 = vOff + 2 * ldv * r;
+            int j = 0;
+            for (; j + 4 <= k; j += 4) {
+                double ar = v[vr0 + 2 * j],     ai = v[vr0 + 2 * j + 1];
+                double br = v[vr0 + 2 * j + 2], bi = v[vr0 + 2 * j + 3];
+                double cr = v[vr0 + 2 * j + 4], ci = v[vr0 + 2 * j + 5];
+                double dr = v[vr0 + 2 * j + 6], di = v[vr0 + 2 * j + 7];
+                int w0 = n2 * j, w1 = w0 + n2, w2 = w1 + n2, w3 = w2 + n2;
+                for (int q = 0, p = row; q < n2; q += 2, p += 2) {
+                    c[p]     -= ar * work[w0 + q] - ai * work[w0 + q + 1] + br * work[w1 + q] - bi * work[w1 + q + 1]
+                              + cr * work[w2 + q] - ci * work[w2 + q + 1] + dr * work[w3 + q] - di * work[w3 + q + 1];
+                    c[p + 1] -= ar * work[w0 + q + 1] + ai * work[w0 + q] + br * work[w1 + q + 1] + bi * work[w1 + q]
+                              + cr * work[w2 + q + 1] + ci * work[w2 + q] + dr * work[w3 + q + 1] + di * work[w3 + q];
+                }
+            }
+            for (; j < k; j++) {
+                addRow(c, row, work, n2 * j, n2, -v[vr0 + 2 * j], -v[vr0 + 2 * j + 1]);
+            }
+        }
+    }
+
+    // x[xOff..xOff+n2) *= (sr, si), interleaved
+    static void scaleRow(double[] x, int xOff, int n2, double sr, double si) {
+        for (int q = xOff; q < xOff + n2; q += 2) {
+            double xr = x[q], xi = x[q + 1];
+            x[q] = sr * xr - si * xi;
+            x[q + 1] = sr * xi + si * xr;
+        }
+    }
+
+    // y[yOff..yOff+n2) += (sr, si) x[xOff..], interleaved
+    static void addRow(double[] y, int yOff, double[] x, int xOff, int n2, double sr, double si) {
+        if (sr == 0.0 && si == 0.0) return;
+        for (int q = 0; q < n2; q += 2) {
+            double xr = x[xOff + q], xi = x[xOff + q + 1];
+            y[yOff + q] += sr * xr - si * xi;
+            y[yOff + q + 1] += sr * xi + si * xr;
+        }
+    }
+
+    // Solve the upper triangular n x n system R x = y in place, R at r[off] with leading dimension ldr
+    public static void backSubstitute(double[] r, int off, int ldr, int n, double[] x, int xOff) {
+        for (int i = n - 1; i >= 0; i--) {
+            double sr = x[xOff + 2 * i];
+            double si = x[xOff + 2 * i + 1];
+            int p = off + 2 * (ldr * i + i + 1);
+            for (int j = i + 1; j < n; j++, p += 2) {
+                double rr = r[p], ri = r[p + 1];
+                double xr = x[xOff + 2 * j], xi = x[xOff + 2 * j + 1];
+                sr -= rr * xr - ri * xi;
+                si -= rr * xi + ri * xr;
+            }
+            p = off + 2 * (ldr * i + i);
+            double dr = r[p], di = r[p + 1];
+            double d = dr * dr + di * di;
+            if (d == 0.0) throw new ArithmeticException("Singular matrix");
+            x[xOff + 2 * i]     = (sr * dr + si * di) / d;
+            x[xOff + 2 * i + 1] = (si * dr - sr * di) / d;
+        }
+    }
+
+    // Complex Givens rotation G = [c, s; -conj(s), c], c real, such that G [a; b] = [r; 0].
+    // rot receives c, Re(s), Im(s); a is overwritten with r.
+    public static void givens(double[] a, int aOff, double br, double bi, double[] rot) {
+        double ar = a[aOff], ai = a[aOff + 1];
+        double absA = Math.hypot(ar, ai);
+        double absB = Math.hypot(br, bi);
+        if (absB == 0.0) {
+            rot[0] = 1.0;
+            rot[1] = 0.0;
+            rot[2] = 0.0;
+            return;
+        }
+        if (absA == 0.0) {
+            rot[0] = 0.0;
+            rot[1] = br / absB;                                     // s = conj(b) / |b|
+            rot[2] = -bi / absB;
+            a[aOff] = absB;
+            a[aOff + 1] = 0.0;
+            return;
+        }
+        double norm = Math.hypot(absA, absB);
+        double pr = ar / absA, pi = ai / absA;                      // a / |a|
+        rot[0] = absA / norm;
+        rot[1] = (pr * br + pi * bi) / norm;                        // s = (a/|a|) conj(b) / norm
+        rot[2] = (pi * br - pr * bi) / norm;
+        a[aOff] = pr * norm;
+        a[aOff + 1] = pi * norm;
+    }
+
+    // Apply the rotation to the pair of rows x and y, len complex elements each, unit stride:
+    // x = c x + s y, y = -conj(s) x + c y
+    public static void rotate(double[] rot, double[] x, int xOff, double[] y, int yOff, int len) {
+        double c = rot[0], sr = rot[1], si = rot[2];
+        if (c == 1.0 && sr == 0.0 && si == 0.0) {
+            return;
+        }
+        for (int j = 0, p = xOff, q = yOff; j < len; j++, p += 2, q += 2) {
+            double xr = x[p], xi = x[p + 1];
+            double yr = y[q], yi = y[q + 1];
+            x[p]     = c * xr + sr * yr - si * yi;
+            x[p + 1] = c * xi + sr * yi + si * yr;
+            y[q]     = c * yr - sr * xr - si * xi;
+            y[q + 1] = c * yi - sr * xi + si * xr;
+        }
+    }
+
+    // Copy a ComplexMatrix into the interleaved storage used by complexQR
+    public static double[] toInterleaved(ComplexMatrix matrix) {
+        int m = matrix.getNrow();
+        int n = matrix.getNcol();
+        Complex[][] array = matrix.getArrayReference();
+        double[] a = new double[2 * m * n];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                a[2 * (n * i + j)] = array[i][j].getReal();
+                a[2 * (n * i + j) + 1] = array[i][j].getImag();
+            }
+        }
+        return a;
+    }
+
+    // Copy interleaved storage, m x n with leading dimension lda, into a ComplexMatrix
+    public static ComplexMatrix toComplexMatrix(double[] a, int off, int lda, int m, int n) {
+        ComplexMatrix matrix = new ComplexMatrix(m, n);
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                int p = off + 2 * (lda * i + j);
+                matrix.setElement(i, j, a[p], a[p + 1]);
+            }
+        }
+        return matrix;
+    }
+}
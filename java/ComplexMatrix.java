@@ -53,6 +53,14 @@ public class ComplexMatrix{
         private double dswap = 1.0D;        // row swap index
         private static final double TINY = 1.0e-30;
 
+        private int modCount = 0;                   // changes to the elements, and references to them handed out
+        private double[] hessenberg = null;         // Hessenberg form, Householder vectors below the subdiagonal
+        private int hessenbergCount = -1;           // modCount when the Hessenberg form was calculated
+        private Complex[] eigenValues = null;       // eigen values, descending order of modulus
+        private int eigenCount = -1;                // modCount when the eigen values were calculated
+                                                    // a reference taken before the cache is filled and written
+                                                    // to after it is not seen: take the reference again
+
         /*********************************************************/
 
         // CONSTRUCTORS
@@ -161,6 +169,7 @@ public class ComplexMatrix{
         // SET VALUES
         // Set the matrix with a copy of an existing nrow x ncol 2-D matrix of complex variables
         public void setTwoDarray(Complex[][] aarray){
+            this.modCount++;
             if(this.nrow != aarray.length)throw new IllegalArgumentException("row length of this ComplexMatrix differs from that of the 2D array argument");
             if(this.ncol != aarray[0].length)throw new IllegalArgumentException("column length of this ComplexMatrix differs from that of the 2D array argument");
             for(int i=0; i<nrow; i++){
@@ -173,6 +182,7 @@ public class ComplexMatrix{
 
         // Set the matrix with a copy of an existing nrow x ncol 2-D matrix of double variables
         public void setTwoDarray(double[][] aarray){
+            this.modCount++;
             if(this.nrow != aarray.length)throw new IllegalArgumentException("row length of this ComplexMatrix differs from that of the 2D array argument");
             if(this.ncol != aarray[0].length)throw new IllegalArgumentException("column length of this ComplexMatrix differs from that of the 2D array argument");
             for(int i=0; i<nrow; i++){
@@ -188,6 +198,7 @@ public class ComplexMatrix{
         // j = column index
         // aa = value of the element
         public void setElement(int i, int j, Complex aa){
+            this.modCount++;
             this.matrix[i][j]=Complex.copy(aa);
         }
 
@@ -197,6 +208,7 @@ public class ComplexMatrix{
         // aa = real part of the element
         // bb = imag part of the element
         public void setElement(int i, int j, double aa, double bb){
+            this.modCount++;
             this.matrix[i][j].reset(aa, bb);
         }
 
@@ -209,6 +221,7 @@ public class ComplexMatrix{
 
         // Set a sub-matrix starting with row index i, column index j
         public void setSubMatrix(int i, int j, Complex[][] subMatrix){
+            this.modCount++;
             int k = subMatrix.length;
             int l = subMatrix[0].length;
             if(i+k-1>=this.nrow)throw new IllegalArgumentException("Sub-matrix position is outside the row bounds of this Matrix");
@@ -231,6 +244,7 @@ public class ComplexMatrix{
         // row = array of row indices
         // col = array of column indices
         public void setSubMatrix(int[] row, int[] col, Complex[][] subMatrix){
+            this.modCount++;
             int n=row.length;
             int m=col.length;
             for(int p=0; p<n; p++){
@@ -374,17 +388,20 @@ public class ComplexMatrix{
 
         // Return a reference to the internal 2-D array
         public Complex[][] getArrayReference(){
+            this.modCount++;                        // the caller may change the elements through it
             return this.matrix;
         }
 
         // Return a reference to the internal 2-D array
         public Complex[][] getArray(){
+            this.modCount++;                        // the caller may change the elements through it
             return this.matrix;
         }
 
         // Return a reference to the internal 2-D array
         // included for backward compatibility with earlier incorrect documentation
         public Complex[][] getArrayPointer(){
+            this.modCount++;                        // the caller may change the elements through it
             return this.matrix;
         }
 
@@ -401,12 +418,14 @@ public class ComplexMatrix{
 
         // Return a single element of the internal 2-D array
         public Complex getElementReference(int i, int j){
+            this.modCount++;                        // the caller may change the elements through it
             return this.matrix[i][j];
         }
 
         // Return a reference to a single element of the internal 2-D array
         // included for backward compatibility with earlier incorrect documentation
         public Complex getElementPointer(int i, int j){
+            this.modCount++;                        // the caller may change the elements through it
             return this.matrix[i][j];
         }
 
@@ -632,6 +651,7 @@ public class ComplexMatrix{
 
         // Add matrix B to this matrix [equivalence of +=]
         public void plusEquals(ComplexMatrix bmat){
+            this.modCount++;
             if((this.nrow!=bmat.nrow)||(this.ncol!=bmat.ncol)){
                 throw new IllegalArgumentException("Array dimensions do not agree");
             }
@@ -736,6 +756,7 @@ public class ComplexMatrix{
 
         // Subtract matrix B from this matrix [equivlance of -=]
         public void minusEquals(ComplexMatrix bmat){
+            this.modCount++;
             if((this.nrow!=bmat.nrow)||(this.ncol!=bmat.ncol)){
                 throw new IllegalArgumentException("Array dimensions do not agree");
             }
@@ -921,6 +942,7 @@ public class ComplexMatrix{
 
         // Multiply this matrix by a complex matrix [equivalence of *=]
         public void timesEquals(ComplexMatrix bmat){
+            this.modCount++;
             if(this.ncol!=bmat.nrow)throw new IllegalArgumentException("Nonconformable matrices");
 
             ComplexMatrix cmat = new ComplexMatrix(this.nrow, bmat.ncol);
@@ -951,6 +973,7 @@ public class ComplexMatrix{
 
         // Multiply this matrix by a complex constant [equivalence of *=]
         public void timesEquals(Complex constant){
+            this.modCount++;
 
             for(int i=0; i<this.nrow; i++){
                 for(int j=0; j<this.ncol; j++){
@@ -961,6 +984,7 @@ public class ComplexMatrix{
 
         // Multiply this matrix by a real (double) constant [equivalence of *=]
         public void timesEquals(double constant){
+            this.modCount++;
             Complex cconstant = new Complex(constant, 0.0);
 
             for(int i=0; i<this.nrow; i++){
@@ -1173,6 +1197,36 @@ public class ComplexMatrix{
             return adj;
         }
 
+        // VIEWS
+        // These share this matrix's elements rather than copying them; see ComplexMatrixView
+        // View of the whole matrix
+        public ComplexMatrixView view(){
+            return new ComplexMatrixView(this);
+        }
+
+        // View of the sub-matrix starting with row index i, column index j
+        // and ending with row index k, column index l, as getSubMatrix
+        public ComplexMatrixView subMatrixView(int i, int j, int k, int l){
+            if(i>k)throw new IllegalArgumentException("row indices inverted");
+            if(j>l)throw new IllegalArgumentException("column indices inverted");
+            return new ComplexMatrixView(this).subView(i, j, k-i+1, l-j+1);
+        }
+
+        // View of the transpose
+        public ComplexMatrixView transposeView(){
+            return new ComplexMatrixView(this).transpose();
+        }
+
+        // View of the complex conjugate
+        public ComplexMatrixView conjugateView(){
+            return new ComplexMatrixView(this).conjugate();
+        }
+
+        // View of the adjoin, the conjugate transpose
+        public ComplexMatrixView adjoinView(){
+            return new ComplexMatrixView(this).adjoin();
+        }
+
         // OPPOSITE
         // Opposite of a complex matrix [instance method]
         public ComplexMatrix opposite(){
@@ -1495,4 +1549,116 @@ public class ComplexMatrix{
             ludmat=this.luDecomp();
             return ludmat.luBackSub(bvec);
         }
+
+        // EIGEN VALUES AND EIGEN VECTORS OF A HERMITIAN MATRIX
+        // Returns true if the matrix is square and equal to its conjugate transpose
+        // to within tolerance times the largest element
+        public boolean isHermitian(double tolerance){
+            if(this.nrow!=this.ncol)return false;
+            double big = 0.0D;
+            for(int i=0; i<this.nrow; i++){
+                for(int j=0; j<this.ncol; j++)big = Math.max(big, Complex.abs(this.matrix[i][j]));
+            }
+            for(int i=0; i<this.nrow; i++){
+                for(int j=i; j<this.ncol; j++){
+                    double dr = this.matrix[i][j].getReal() - this.matrix[j][i].getReal();
+                    double di = this.matrix[i][j].getImag() + this.matrix[j][i].getImag();
+                    if(Math.abs(dr)>tolerance*big || Math.abs(di)>tolerance*big)return false;
+                }
+            }
+            return true;
+        }
+
+        // Eigen values, sorted into descending order, and optionally eigen vectors of a Hermitian matrix
+        // Householder tridiagonalization and implicit QL.  This matrix remains unaltered.
+        public HermitianEigen hermitianEigen(boolean vectors){
+            if(this.nrow!=this.ncol)throw new IllegalArgumentException("Matrix is not square");
+            return HermitianEigen.tridiagonal(ComplexHouseholder.toInterleaved(this), this.nrow, vectors);
+        }
+
+        // Eigen values, sorted into descending order, and optionally eigen vectors of a small Hermitian matrix
+        // Cyclic Jacobi, the rotations of each round shared between threads.  This matrix remains unaltered.
+        public HermitianEigen hermitianJacobi(boolean vectors, int threads){
+            if(this.nrow!=this.ncol)throw new IllegalArgumentException("Matrix is not square");
+            return HermitianEigen.jacobi(ComplexHouseholder.toInterleaved(this), this.nrow, vectors, 100, threads);
+        }
+
+        // Returns the eigen values of a Hermitian matrix sorted into descending order, without the eigen vectors
+        public double[] getHermitianEigenValues(){
+            return this.hermitianEigen(false).getEigenValues();
+        }
+
+        // EIGEN VALUES OF A GENERAL COMPLEX MATRIX
+        // Returns the upper Hessenberg form of this matrix, unitarily similar to it, see ComplexEigen.hessenberg
+        // The reduction is cached until the matrix changes
+        public ComplexMatrix getHessenberg(){
+            double[] h = ComplexEigen.hessenbergMatrix(this.hessenbergReduce(), this.nrow);
+            return ComplexHouseholder.toComplexMatrix(h, 0, this.nrow, this.nrow, this.nrow);
+        }
+
+        // Returns the eigen values sorted into descending order of modulus
+        // Hessenberg reduction then the shifted QR algorithm, see ComplexEigen; cached as getHessenberg
+        public Complex[] getEigenValues(){
+            if(this.eigenCount!=this.modCount){
+                double[] h = ComplexEigen.hessenbergMatrix(this.hessenbergReduce(), this.nrow);
+                this.eigenValues = ComplexEigen.sortByModulus(ComplexEigen.hessenbergEigenValues(h, this.nrow), this.nrow);
+                this.eigenCount = this.modCount;
+            }
+            return Complex.copy(this.eigenValues);
+        }
+
+        // CHOLESKY DECOMPOSITION
+        // Cholesky decomposition, A = L LH, of a Hermitian positive definite matrix, for solve, determinant and inverse
+        // Only the lower triangle is used.  This matrix remains unaltered.
+        public ComplexCholesky cholesky(){
+            return new ComplexCholesky(this);
+        }
+
+        // Cholesky decomposition with the tiles of each step shared between threads
+        public ComplexCholesky cholesky(int threads){
+            if(this.nrow!=this.ncol)throw new IllegalArgumentException("Matrix is not square");
+            return new ComplexCholesky(ComplexHouseholder.toInterleaved(this), this.nrow, ComplexCholesky.BLOCK_SIZE, threads);
+        }
+
+        // SINGULAR VALUE DECOMPOSITION
+        // Singular value decomposition, A = U S VH, optionally without U and V
+        // QR preconditioning then one-sided Jacobi, see ComplexSVD.  This matrix remains unaltered.
+        public ComplexSVD svd(boolean vectors){
+            return new ComplexSVD(this, vectors);
+        }
+
+        // Returns the singular values in descending order, without the singular vectors
+        public double[] getSingularValues(){
+            return this.svd(false).getSingularValues();
+        }
+
+        // Returns the 2-norm condition number, the ratio of the largest to the smallest singular value
+        public double conditionNumber(){
+            return this.svd(false).condition();
+        }
+
+        // Returns the Moore-Penrose pseudo-inverse
+        public ComplexMatrix pseudoInverse(){
+            return this.svd(true).pseudoInverse();
+        }
+
+        // Householder reduction of a copy of this matrix to Hessenberg form, the Householder vectors below the subdiagonal
+        // Done again only if the matrix has changed since the last reduction
+        private double[] hessenbergReduce(){
+            if(this.nrow!=this.ncol)throw new IllegalArgumentException("Matrix is not square");
+            if(this.hessenbergCount!=this.modCount){
+                int n = this.nrow;
+                double[] a = new double[2*n*n];
+                for(int i=0; i<n; i++){
+                    for(int j=0; j<n; j++){
+                        a[2*(n*i + j)] = this.matrix[i][j].getReal();
+                        a[2*(n*i + j) + 1] = this.matrix[i][j].getImag();
+                    }
+                }
+                ComplexEigen.hessenberg(a, n, new double[2*n]);
+                this.hessenberg = a;
+                this.hessenbergCount = this.modCount;
+            }
+            return this.hessenberg;
+        }
 }
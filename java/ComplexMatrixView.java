@@ -0,0 +1,236 @@
+package com.bob.complexqr;
+
+/*
+        A view of a ComplexMatrix: a submatrix, a strided selection, the transpose, the conjugate,
+        or any combination of them, that shares the parent's Complex[][] rather than copying it.
+
+        Element (i, j) of the view is element (row0 + i*ri + j*rj, col0 + i*ci + j*cj) of the
+        parent, conjugated if the conjugate flag is set.  Taking a submatrix, a stride, the
+        transpose or the conjugate of a view only changes these numbers, so each is O(1), where
+        getSubMatrix, transpose, conjugate and adjoin of ComplexMatrix each allocate a new
+        Complex[][].
+
+        The arithmetic kernels, times, plus, minus and norm, take views and accumulate in doubles
+        without allocating a Complex per operation, and timesInto writes a product straight into
+        a view of another matrix, so a blocked algorithm can update a trailing submatrix in place.
+
+        A view sees later changes to its parent, but keeps the shape it was made with.
+*/
+
+public class ComplexMatrixView {
+
+    private final ComplexMatrix parent;
+    private final int nrow;                 // rows of the view
+    private final int ncol;                 // columns of the view
+    private final int row0, col0;           // parent position of element (0, 0)
+    private final int ri, rj;               // parent row = row0 + i*ri + j*rj
+    private final int ci, cj;               // parent column = col0 + i*ci + j*cj
+    private final boolean conjugated;
+
+    // CONSTRUCTORS
+    // View of the whole of a matrix
+    public ComplexMatrixView(ComplexMatrix parent) {
+        this(parent, parent.getNrow(), parent.getNcol(), 0, 0, 1, 0, 0, 1, false);
+    }
+
+    private ComplexMatrixView(ComplexMatrix parent, int nrow, int ncol, int row0, int col0,
+                              int ri, int rj, int ci, int cj, boolean conjugated) {
+        this.parent = parent;
+        this.nrow = nrow;
+        this.ncol = ncol;
+        this.row0 = row0;
+        this.col0 = col0;
+        this.ri = ri;
+        this.rj = rj;
+        this.ci = ci;
+        this.cj = cj;
+        this.conjugated = conjugated;
+    }
+
+    // VIEWS OF THIS VIEW
+    // The nrows x ncols submatrix whose top left element is (i, j) of this view
+    public ComplexMatrixView subView(int i, int j, int nrows, int ncols) {
+        if (i < 0 || j < 0 || nrows < 0 || ncols < 0 || i + nrows > this.nrow || j + ncols > this.ncol) {
+            throw new IllegalArgumentException("Sub-matrix " + nrows + "x" + ncols + " at (" + i + ", " + j + ") is outside the " + this.nrow + "x" + this.ncol + " view");
+        }
+        return new ComplexMatrixView(this.parent, nrows, ncols, parentRow(i, j), parentCol(i, j),
+                this.ri, this.rj, this.ci, this.cj, this.conjugated);
+    }
+
+    // Every rowStep'th row and colStep'th column, starting with the first
+    public ComplexMatrixView stridedView(int rowStep, int colStep) {
+        if (rowStep < 1 || colStep < 1) throw new IllegalArgumentException("steps, " + rowStep + " and " + colStep + ", must be positive");
+        return new ComplexMatrixView(this.parent, (this.nrow + rowStep - 1) / rowStep, (this.ncol + colStep - 1) / colStep,
+                this.row0, this.col0, this.ri * rowStep, this.rj * colStep, this.ci * rowStep, this.cj * colStep, this.conjugated);
+    }
+
+    public ComplexMatrixView transpose() {
+        return new ComplexMatrixView(this.parent, this.ncol, this.nrow, this.row0, this.col0,
+                this.rj, this.ri, this.cj, this.ci, this.conjugated);
+    }
+
+    public ComplexMatrixView conjugate() {
+        return new ComplexMatrixView(this.parent, this.nrow, this.ncol, this.row0, this.col0,
+                this.ri, this.rj, this.ci, this.cj, !this.conjugated);
+    }
+
+    // Conjugate transpose
+    public ComplexMatrixView adjoin() {
+        return new ComplexMatrixView(this.parent, this.ncol, this.nrow, this.row0, this.col0,
+                this.rj, this.ri, this.cj, this.ci, !this.conjugated);
+    }
+
+    // GET VALUES
+    public int getNrow() {
+        return this.nrow;
+    }
+
+    public int getNcol() {
+        return this.ncol;
+    }
+
+    public ComplexMatrix getParent() {
+        return this.parent;
+    }
+
+    public boolean isConjugated() {
+        return this.conjugated;
+    }
+
+    public double getReal(int i, int j) {
+        check(i, j);
+        return this.parent.getArrayReference()[parentRow(i, j)][parentCol(i, j)].getReal();
+    }
+
+    public double getImag(int i, int j) {
+        check(i, j);
+        double imag = this.parent.getArrayReference()[parentRow(i, j)][parentCol(i, j)].getImag();
+        return this.conjugated ? -imag : imag;
+    }
+
+    // Return a copy of element (i, j)
+    public Complex getElementCopy(int i, int j) {
+        return new Complex(getReal(i, j), getImag(i, j));
+    }
+
+    // Copy the view into a new ComplexMatrix
+    public ComplexMatrix copy() {
+        ComplexMatrix c = new ComplexMatrix(this.nrow, this.ncol);
+        Complex[][] src = this.parent.getArrayReference();
+        Complex[][] dst = c.getArrayReference();
+        for (int i = 0; i < this.nrow; i++) {
+            for (int j = 0; j < this.ncol; j++) {
+                Complex z = src[parentRow(i, j)][parentCol(i, j)];
+                dst[i][j].reset(z.getReal(), this.conjugated ? -z.getImag() : z.getImag());
+            }
+        }
+        return c;
+    }
+
+    // SET VALUES
+    // Set element (i, j) of the view, and so of the parent
+    public void setElement(int i, int j, double real, double imag) {
+        check(i, j);
+        this.parent.setElement(parentRow(i, j), parentCol(i, j), real, this.conjugated ? -imag : imag);
+    }
+
+    public void setElement(int i, int j, Complex value) {
+        setElement(i, j, value.getReal(), value.getImag());
+    }
+
+    // KERNELS
+    // a b, as a new matrix
+    public static ComplexMatrix times(ComplexMatrixView a, ComplexMatrixView b) {
+        ComplexMatrix c = new ComplexMatrix(a.nrow, b.ncol);
+        timesInto(a, b, new ComplexMatrixView(c), false);
+        return c;
+    }
+
+    // c = a b, or c -= a b if subtract is true; c must not share storage with a or b
+    public static void timesInto(ComplexMatrixView a, ComplexMatrixView b, ComplexMatrixView c, boolean subtract) {
+        if (a.ncol != b.nrow) throw new IllegalArgumentException("Nonconformable matrices");
+        if (c.nrow != a.nrow || c.ncol != b.ncol) throw new IllegalArgumentException("destination is " + c.nrow + "x" + c.ncol + ", product is " + a.nrow + "x" + b.ncol);
+        Complex[][] aa = a.parent.getArrayReference();
+        Complex[][] bb = b.parent.getArrayReference();
+        Complex[][] cc = c.parent.getArrayReference();
+        double as = a.conjugated ? -1.0 : 1.0;
+        double bs = b.conjugated ? -1.0 : 1.0;
+        double cs = c.conjugated ? -1.0 : 1.0;
+        double[] rowR = new double[a.ncol];                     // row i of a, unpacked once
+        double[] rowI = new double[a.ncol];
+        for (int i = 0; i < a.nrow; i++) {
+            for (int k = 0; k < a.ncol; k++) {
+                Complex z = aa[a.parentRow(i, k)][a.parentCol(i, k)];
+                rowR[k] = z.getReal();
+                rowI[k] = as * z.getImag();
+            }
+            for (int j = 0; j < b.ncol; j++) {
+                double sr = 0.0, si = 0.0;
+                for (int k = 0; k < a.ncol; k++) {
+                    Complex z = bb[b.parentRow(k, j)][b.parentCol(k, j)];
+                    double zr = z.getReal(), zi = bs * z.getImag();
+                    sr += rowR[k] * zr - rowI[k] * zi;
+                    si += rowR[k] * zi + rowI[k] * zr;
+                }
+                Complex d = cc[c.parentRow(i, j)][c.parentCol(i, j)];
+                if (subtract) {
+                    d.reset(d.getReal() - sr, d.getImag() - cs * si);
+                } else {
+                    d.reset(sr, cs * si);
+                }
+            }
+        }
+    }
+
+    // a + b, as a new matrix
+    public static ComplexMatrix plus(ComplexMatrixView a, ComplexMatrixView b) {
+        return combine(a, b, 1.0);
+    }
+
+    // a - b, as a new matrix
+    public static ComplexMatrix minus(ComplexMatrixView a, ComplexMatrixView b) {
+        return combine(a, b, -1.0);
+    }
+
+    private static ComplexMatrix combine(ComplexMatrixView a, ComplexMatrixView b, double sign) {
+        if (a.nrow != b.nrow || a.ncol != b.ncol) throw new IllegalArgumentException("Array dimensions do not agree");
+        ComplexMatrix c = new ComplexMatrix(a.nrow, a.ncol);
+        Complex[][] aa = a.parent.getArrayReference();
+        Complex[][] bb = b.parent.getArrayReference();
+        Complex[][] cc = c.getArrayReference();
+        double as = a.conjugated ? -1.0 : 1.0;
+        double bs = b.conjugated ? -sign : sign;
+        for (int i = 0; i < a.nrow; i++) {
+            for (int j = 0; j < a.ncol; j++) {
+                Complex x = aa[a.parentRow(i, j)][a.parentCol(i, j)];
+                Complex y = bb[b.parentRow(i, j)][b.parentCol(i, j)];
+                cc[i][j].reset(x.getReal() + sign * y.getReal(), as * x.getImag() + bs * y.getImag());
+            }
+        }
+        return c;
+    }
+
+    // Sum of the moduli of the elements, as ComplexMatrix.norm
+    public static double norm(ComplexMatrixView a) {
+        Complex[][] aa = a.parent.getArrayReference();
+        double sum = 0.0;
+        for (int i = 0; i < a.nrow; i++) {
+            for (int j = 0; j < a.ncol; j++) {
+                sum += Complex.abs(aa[a.parentRow(i, j)][a.parentCol(i, j)]);
+            }
+        }
+        return sum;
+    }
+
+    private int parentRow(int i, int j) {
+        return this.row0 + i * this.ri + j * this.rj;
+    }
+
+    private int parentCol(int i, int j) {
+        return this.col0 + i * this.ci + j * this.cj;
+    }
+
+    private void check(int i, int j) {
+        if (i < 0 || i >= this.nrow || j < 0 || j >= this.ncol) throw new IllegalArgumentException("element (" + i + ", " + j + ") is outside the " + this.nrow + "x" + this.ncol + " view");
+    }
+}
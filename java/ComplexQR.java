@@ -0,0 +1,470 @@
+package com.bob.complexqr;
+
+/*
+        QR factorization of a complex m x n matrix, m >= n, held so that it can be reused:
+        least squares solutions, R and Q, and updating when a column is added or removed.
+
+        The factorization is kept in one of two forms:
+
+        reflectors      the output of ComplexHouseholder.factor, R above the diagonal and the
+                        Householder vectors below it.  This is what a fresh factorization gives.
+
+        thin Q          R as an n x n upper triangular matrix and the first n rows of Q, an n x m
+                        matrix whose rows are orthonormal.  This is the form used for updating.
+                        It is built from the reflectors the first time a column is inserted or
+                        removed, or directly from the explicit Q returned by complexHouseholder.
+
+        Q follows complexQR.S, Q A = R, so the rows of Q are the conjugates of the orthonormal
+        columns of A = QH R.  Each row of the thin Q is contiguous, so the Givens rotations used for
+        updating stream two rows at a time.
+
+        insertColumn and removeColumn restore the triangular form in O(mn), instead of the
+        O(mn^2) of refactoring, which is what matters when a feature selection loop adds and drops
+        one column of A at a time.
+
+        applyQ multiplies a matrix by Q or QH, from either side, straight from the reflectors, without
+        forming the m x m Q: O(mnk) for k columns (or rows) of C rather than O(m^2 k) to form Q and
+        multiply by it.  The reflectors are taken BLOCK at a time as compact WY block reflectors,
+        I - V T VH, each applied to C with ComplexHouseholder.applyBlockLeft, and the columns of C are
+        split into slabs applied concurrently; each slab sees every block in turn.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class ComplexQR {
+
+    private int nrow = 0;                   // number of rows, m
+    private int ncol = 0;                   // number of columns, n
+
+    private double[] a = null;              // reflectors: R and the Householder vectors, m x n
+    private double[] vHead = null;          // reflectors: first element of each Householder vector
+
+    private double[] r = null;              // thin Q: R, n x n, leading dimension capacity
+    private double[] qt = null;             // thin Q: first n rows of Q, each of length m
+    private int capacity = 0;               // thin Q: number of columns r and qt have room for
+
+    private final double[] rot = new double[3];         // Givens rotation: c, Re(s), Im(s)
+
+    private static final double DEPENDENT = 1.0e-14;    // relative size of a column judged linearly dependent
+    private static final int BLOCK = 32;                // reflectors per block reflector in applyQ
+    private static final int SLAB_MINIMUM = 32;         // fewest columns of C given to a thread in applyQ
+
+    public static final int LEFT = 0;                   // applyQ: Q C, C with m rows
+    public static final int RIGHT = 1;                  // applyQ: C Q, C with m columns
+
+    // CONSTRUCTORS
+    // Factor a copy of a ComplexMatrix
+    public ComplexQR(ComplexMatrix matrix) {
+        this(ComplexHouseholder.toInterleaved(matrix), matrix.getNrow(), matrix.getNcol());
+    }
+
+    // Factor the m x n matrix a, stored as for complexQR.  a is overwritten by the factorization.
+    public ComplexQR(double[] a, int m, int n) {
+        if (m < n) throw new IllegalArgumentException("number of rows, " + m + ", must not be less than the number of columns, " + n);
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        this.nrow = m;
+        this.ncol = n;
+        this.a = a;
+        this.vHead = new double[2 * n];
+        ComplexHouseholder.factor(a, 0, n, m, n, vHead, new double[2 * n]);
+    }
+
+    // Factor a in place as the constructor does, by RecursiveHouseholder, which keeps the block updates in cache
+    public static ComplexQR factorRecursive(double[] a, int m, int n) {
+        if (m < n) throw new IllegalArgumentException("number of rows, " + m + ", must not be less than the number of columns, " + n);
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        ComplexQR qr = new ComplexQR(m, n);
+        qr.a = a;
+        qr.vHead = new double[2 * n];
+        RecursiveHouseholder.factor(a, m, n, qr.vHead);
+        return qr;
+    }
+
+    private ComplexQR(int m, int n) {
+        this.nrow = m;
+        this.ncol = n;
+    }
+
+    // Use the output of complexHouseholder with the Q flag set: R in rr (m x n) and the explicit Q in qq (m x m).
+    // Neither array is modified.
+    public static ComplexQR fromExplicitQ(double[] rr, double[] qq, int m, int n) {
+        if (m < n) throw new IllegalArgumentException("number of rows, " + m + ", must not be less than the number of columns, " + n);
+        ComplexQR qr = new ComplexQR(m, n);
+        qr.allocate(n);
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(rr, 2 * n * i + 2 * i, qr.r, 2 * (qr.capacity * i + i), 2 * (n - i));    // only the upper triangle
+            System.arraycopy(qq, 2 * m * i, qr.qt, 2 * m * i, 2 * m);
+        }
+        return qr;
+    }
+
+    // GET VALUES
+    // Return the number of rows
+    public int getNrow() {
+        return this.nrow;
+    }
+
+    // Return the number of columns
+    public int getNcol() {
+        return this.ncol;
+    }
+
+    // Return true if the factorization is held as Householder vectors rather than as a thin Q
+    public boolean hasReflectors() {
+        return this.a != null;
+    }
+
+    // Return R as an m x n ComplexMatrix, zero below the diagonal, as complexQR leaves it in A
+    public ComplexMatrix getR() {
+        int m = this.nrow, n = this.ncol;
+        ComplexMatrix rmat = new ComplexMatrix(m, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                int p = (this.a != null) ? 2 * (n * i + j) : 2 * (this.capacity * i + j);
+                double[] src = (this.a != null) ? this.a : this.r;
+                rmat.setElement(i, j, src[p], src[p + 1]);
+            }
+        }
+        return rmat;
+    }
+
+    // Return R packed, n(n+1)/2 elements
+    public PackedUpperTriangular getPackedR() {
+        return (this.a != null) ? PackedUpperTriangular.fromInterleaved(this.a, 0, this.ncol, this.ncol)
+                                : PackedUpperTriangular.fromInterleaved(this.r, 0, this.capacity, this.ncol);
+    }
+
+    // Return the m x m Q, Q A = R.  Only available while the factorization is held as reflectors.
+    public ComplexMatrix getQ() {
+        if (this.a == null) throw new IllegalStateException("only the thin Q is held after updating, use getThinQ()");
+        double[] q = ComplexHouseholder.formQ(this.a, this.nrow, this.ncol, this.vHead);
+        return ComplexHouseholder.toComplexMatrix(q, 0, this.nrow, this.nrow, this.nrow);
+    }
+
+    // Return the first n rows of Q as an n x m ComplexMatrix
+    public ComplexMatrix getThinQ() {
+        toThin();
+        return ComplexHouseholder.toComplexMatrix(this.qt, 0, this.nrow, this.ncol, this.nrow);
+    }
+
+    // APPLYING Q
+    // Return Q C (side LEFT) or C Q (side RIGHT), or with conjugate = true QH C or C QH.  c is not modified.
+    public ComplexMatrix applyQ(ComplexMatrix c, int side, boolean conjugate) {
+        int rows = c.getNrow(), cols = c.getNcol();
+        double[] x = ComplexHouseholder.toInterleaved(c);
+        applyQ(x, rows, cols, side, conjugate, Runtime.getRuntime().availableProcessors());
+        return ComplexHouseholder.toComplexMatrix(x, 0, cols, rows, cols);
+    }
+
+    // Q C, QH C, C Q or C QH in place, for the rows x cols matrix c stored as for complexQR, the columns
+    // of C (rows of C for side RIGHT) shared between threads.  Only while the factorization is held as reflectors.
+    public void applyQ(double[] c, int rows, int cols, int side, boolean conjugate, int threads) {
+        int m = this.nrow;
+        if (this.a == null) throw new IllegalStateException("only the thin Q is held after updating, Q cannot be applied");
+        if (side != LEFT && side != RIGHT) throw new IllegalArgumentException("side, " + side + ", must be LEFT or RIGHT");
+        if (side == LEFT && rows != m) throw new IllegalArgumentException("number of rows, " + rows + ", is not equal to the order of Q, " + m);
+        if (side == RIGHT && cols != m) throw new IllegalArgumentException("number of columns, " + cols + ", is not equal to the order of Q, " + m);
+        if (c.length < 2 * rows * cols) throw new IllegalArgumentException("array is too short for a " + rows + "x" + cols + " complex matrix");
+        if (side == LEFT) {
+            applyLeft(c, cols, conjugate, threads);
+            return;
+        }
+        // C Q = (QH CH)H and C QH = (Q CH)H: the same blocks applied to the adjoint of C, which is m x rows
+        double[] ch = adjoint(c, rows, cols);
+        applyLeft(ch, rows, !conjugate, threads);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                c[2 * (cols * i + j)] = ch[2 * (rows * j + i)];
+                c[2 * (cols * i + j) + 1] = -ch[2 * (rows * j + i) + 1];
+            }
+        }
+    }
+
+    // Q C or QH C for the m x ncols c, by block reflectors of up to BLOCK reflectors
+    private void applyLeft(final double[] c, final int ncols, final boolean conjugate, int threads) {
+        final int m = this.nrow, n = this.ncol;
+        final int steps = ComplexHouseholder.reflections(m, n);
+        if (steps <= 0 || ncols == 0) {
+            return;
+        }
+        final int nb = Math.min(BLOCK, steps);
+        final int blocks = (steps + nb - 1) / nb;
+        // T of every block, formed once and shared by the slabs
+        final double[] t = new double[2 * nb * nb * blocks];
+        double[] w = new double[2 * nb];
+        for (int b = 0; b < blocks; b++) {
+            int k0 = nb * b;
+            ComplexHouseholder.formT(this.a, 2 * (n * k0 + k0), n, m - k0, Math.min(nb, steps - k0), this.vHead, 2 * k0,
+                    t, 2 * nb * nb * b, nb, w);
+        }
+        int slabs = Math.max(1, Math.min(threads, ncols / SLAB_MINIMUM));
+        if (slabs == 1) {
+            applyBlocks(c, 0, ncols, ncols, t, nb, steps, conjugate);
+            return;
+        }
+        final int width = (ncols + slabs - 1) / slabs;
+        ForkJoinPool pool = new ForkJoinPool(slabs);
+        try {
+            List<Callable<Void>> list = new ArrayList<>();
+            for (int j = 0; j < ncols; j += width) {
+                final int j0 = j;
+                final int jb = Math.min(width, ncols - j);
+                list.add(new Callable<Void>() {
+                    public Void call() {
+                        applyBlocks(c, j0, jb, ncols, t, nb, steps, conjugate);
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> f : pool.invokeAll(list)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("applying Q interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("applying Q failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Apply every block to columns j0..j0+jb-1 of c, leading dimension ldc.  Q = (Hs-1 ... H0), so Q C takes the
+    // blocks first to last, each as Hk-1 ... H0 (adjoint), and QH C last to first, each as H0 ... Hk-1.
+    private void applyBlocks(double[] c, int j0, int jb, int ldc, double[] t, int nb, int steps, boolean conjugate) {
+        int n = this.ncol;
+        int blocks = (steps + nb - 1) / nb;
+        double[] work = new double[2 * nb * jb];
+        for (int s = 0; s < blocks; s++) {
+            int b = conjugate ? blocks - 1 - s : s;
+            int k0 = nb * b;
+            ComplexHouseholder.applyBlockLeft(this.a, 2 * (n * k0 + k0), n, this.nrow - k0, Math.min(nb, steps - k0),
+                    this.vHead, 2 * k0, t, 2 * nb * nb * b, nb, !conjugate, c, 2 * (ldc * k0 + j0), ldc, jb, work);
+        }
+    }
+
+    // The cols x rows conjugate transpose of the rows x cols x
+    private static double[] adjoint(double[] x, int rows, int cols) {
+        double[] y = new double[2 * rows * cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                y[2 * (rows * j + i)] = x[2 * (cols * i + j)];
+                y[2 * (rows * j + i) + 1] = -x[2 * (cols * i + j) + 1];
+            }
+        }
+        return y;
+    }
+
+    // LEAST SQUARES
+    // Return x minimising ||A x - b||, b of length m
+    public Complex[] solve(Complex[] bvec) {
+        int m = this.nrow, n = this.ncol;
+        if (bvec.length != m) throw new IllegalArgumentException("vector length, " + bvec.length + ", is not equal to the number of rows, " + m);
+        double[] y = new double[2 * Math.max(m, n)];
+        for (int i = 0; i < m; i++) {
+            y[2 * i] = bvec[i].getReal();
+            y[2 * i + 1] = bvec[i].getImag();
+        }
+        solve(y);
+        Complex[] xvec = new Complex[n];
+        for (int i = 0; i < n; i++) {
+            xvec[i] = new Complex(y[2 * i], y[2 * i + 1]);
+        }
+        return xvec;
+    }
+
+    // Least squares in place: y holds b, interleaved, m elements, and receives x in its first n elements.
+    // y must hold 2*max(m, n) doubles.
+    public void solve(double[] y) {
+        int m = this.nrow, n = this.ncol;
+        if (y.length < 2 * Math.max(m, n)) throw new IllegalArgumentException("vector is too short for " + Math.max(m, n) + " complex elements");
+        if (this.a != null) {
+            ComplexHouseholder.applyQ(this.a, m, n, this.vHead, false, y, 0, 1, 1, new double[2]);
+            ComplexHouseholder.backSubstitute(this.a, 0, n, n, y, 0);
+        } else {
+            double[] b = y.clone();
+            thinTimes(b, y);
+            ComplexHouseholder.backSubstitute(this.r, 0, this.capacity, n, y, 0);
+        }
+    }
+
+    // UPDATING
+    // Insert a column at index k, 0 <= k <= n, of the factored matrix A.
+    // The new column is orthogonalized against the rows of the thin Q (twice, for accuracy),
+    // appended as row n of Q and R is returned to triangular form by Givens rotations of rows k..n.
+    public void insertColumn(int k, Complex[] column) {
+        int m = this.nrow, n = this.ncol;
+        if (k < 0 || k > n) throw new IllegalArgumentException("column index, " + k + ", must be between 0 and " + n);
+        if (column.length != m) throw new IllegalArgumentException("column length, " + column.length + ", is not equal to the number of rows, " + m);
+        if (n + 1 > m) throw new IllegalArgumentException("cannot insert a column: the number of columns would exceed the number of rows");
+
+        toThin();
+        if (n + 1 > this.capacity) {
+            reallocate(Math.min(m, Math.max(n + 1, 2 * this.capacity)));
+        }
+
+        double[] x = new double[2 * m];
+        double xnorm = 0.0;
+        for (int i = 0; i < m; i++) {
+            x[2 * i] = column[i].getReal();
+            x[2 * i + 1] = column[i].getImag();
+            xnorm += x[2 * i] * x[2 * i] + x[2 * i + 1] * x[2 * i + 1];
+        }
+        xnorm = Math.sqrt(xnorm);
+
+        double[] w = new double[2 * n + 2];                 // w = Q x, and the new element of R
+        double[] dw = new double[2 * n];
+        thinTimes(x, w);
+        thinResidual(x, w);
+        thinTimes(x, dw);                                   // reorthogonalize
+        thinResidual(x, dw);
+        for (int i = 0; i < 2 * n; i++) {
+            w[i] += dw[i];
+        }
+
+        double rho = 0.0;
+        for (int i = 0; i < 2 * m; i++) {
+            rho += x[i] * x[i];
+        }
+        rho = Math.sqrt(rho);
+        if (rho <= DEPENDENT * xnorm) throw new ArithmeticException("inserted column is linearly dependent on the columns of A");
+
+        int ld = this.capacity;
+        int qrow = 2 * m * n;                               // new row n of Q = conj(x) / rho
+        for (int i = 0; i < m; i++) {
+            this.qt[qrow + 2 * i] = x[2 * i] / rho;
+            this.qt[qrow + 2 * i + 1] = -x[2 * i + 1] / rho;
+        }
+        for (int i = 0; i <= n; i++) {                      // open column k of R, clear row n
+            int p = 2 * ld * i;
+            System.arraycopy(this.r, p + 2 * k, this.r, p + 2 * k + 2, 2 * (n - k));
+            if (i == n) {
+                Arrays.fill(this.r, p, p + 2 * (n + 1), 0.0);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            this.r[2 * (ld * i + k)] = w[2 * i];
+            this.r[2 * (ld * i + k) + 1] = w[2 * i + 1];
+        }
+        this.r[2 * (ld * n + k)] = rho;
+        this.r[2 * (ld * n + k) + 1] = 0.0;
+        this.ncol = n + 1;
+
+        for (int i = n; i > k; i--) {                       // zero column k below the diagonal, from the bottom up
+            int above = 2 * (ld * (i - 1) + k);
+            int below = 2 * (ld * i + k);
+            ComplexHouseholder.givens(this.r, above, this.r[below], this.r[below + 1], this.rot);
+            this.r[below] = 0.0;
+            this.r[below + 1] = 0.0;
+            ComplexHouseholder.rotate(this.rot, this.r, above + 2, this.r, below + 2, n - k);
+            ComplexHouseholder.rotate(this.rot, this.qt, 2 * m * (i - 1), this.qt, 2 * m * i, m);
+        }
+    }
+
+    // Remove column k, 0 <= k < n, of the factored matrix A.
+    // Deleting the column of R leaves it upper Hessenberg from column k on; Givens rotations of rows
+    // k..n-1 remove the subdiagonal and the last row of R and of Q is dropped.
+    public void removeColumn(int k) {
+        int m = this.nrow, n = this.ncol;
+        if (k < 0 || k >= n) throw new IllegalArgumentException("column index, " + k + ", must be between 0 and " + (n - 1));
+
+        toThin();
+        int ld = this.capacity;
+        for (int i = 0; i < n; i++) {
+            int p = 2 * ld * i;
+            System.arraycopy(this.r, p + 2 * k + 2, this.r, p + 2 * k, 2 * (n - k - 1));
+            this.r[p + 2 * (n - 1)] = 0.0;
+            this.r[p + 2 * (n - 1) + 1] = 0.0;
+        }
+        for (int j = k; j < n - 1; j++) {
+            int diag = 2 * (ld * j + j);
+            int sub = 2 * (ld * (j + 1) + j);
+            ComplexHouseholder.givens(this.r, diag, this.r[sub], this.r[sub + 1], this.rot);
+            this.r[sub] = 0.0;
+            this.r[sub + 1] = 0.0;
+            ComplexHouseholder.rotate(this.rot, this.r, diag + 2, this.r, sub + 2, n - j - 2);
+            ComplexHouseholder.rotate(this.rot, this.qt, 2 * m * j, this.qt, 2 * m * (j + 1), m);
+        }
+        Arrays.fill(this.r, 2 * ld * (n - 1), 2 * ld * n, 0.0);
+        Arrays.fill(this.qt, 2 * m * (n - 1), 2 * m * n, 0.0);
+        this.ncol = n - 1;
+    }
+
+    // Convert the reflectors to R and the thin Q, once, O(mn^2)
+    private void toThin() {
+        if (this.a == null) {
+            return;
+        }
+        int m = this.nrow, n = this.ncol;
+        allocate(n);
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(this.a, 2 * (n * i + i), this.r, 2 * (this.capacity * i + i), 2 * (n - i));
+        }
+        // rows of Q = rows of (H_(s-1) ... H_0), the first n rows of QH are its first n columns
+        // so apply the reflectors in reverse to the first n columns of I and take the conjugate transpose
+        double[] e = new double[2 * m * n];
+        for (int i = 0; i < n; i++) {
+            e[2 * (n * i + i)] = 1.0;
+        }
+        ComplexHouseholder.applyQ(this.a, m, n, this.vHead, true, e, 0, n, n, new double[2 * n]);
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                this.qt[2 * (m * j + i)] = e[2 * (n * i + j)];
+                this.qt[2 * (m * j + i) + 1] = -e[2 * (n * i + j) + 1];
+            }
+        }
+        this.a = null;
+        this.vHead = null;
+    }
+
+    private void allocate(int cap) {
+        this.capacity = Math.max(cap, 1);
+        this.r = new double[2 * this.capacity * this.capacity];
+        this.qt = new double[2 * this.nrow * this.capacity];
+    }
+
+    private void reallocate(int cap) {
+        double[] oldR = this.r;
+        double[] oldQt = this.qt;
+        int oldCap = this.capacity;
+        allocate(cap);
+        for (int i = 0; i < this.ncol; i++) {
+            System.arraycopy(oldR, 2 * oldCap * i, this.r, 2 * this.capacity * i, 2 * this.ncol);
+        }
+        System.arraycopy(oldQt, 0, this.qt, 0, 2 * this.nrow * this.ncol);
+    }
+
+    // y = (first n rows of Q) x
+    private void thinTimes(double[] x, double[] y) {
+        int m = this.nrow;
+        for (int j = 0; j < this.ncol; j++) {
+            double sr = 0.0, si = 0.0;
+            for (int i = 0, p = 2 * m * j; i < m; i++, p += 2) {
+                double qr = this.qt[p], qi = this.qt[p + 1];
+                sr += qr * x[2 * i] - qi * x[2 * i + 1];
+                si += qr * x[2 * i + 1] + qi * x[2 * i];
+            }
+            y[2 * j] = sr;
+            y[2 * j + 1] = si;
+        }
+    }
+
+    // x -= (first n rows of Q)H w
+    private void thinResidual(double[] x, double[] w) {
+        int m = this.nrow;
+        for (int j = 0; j < this.ncol; j++) {
+            double wr = w[2 * j], wi = w[2 * j + 1];
+            for (int i = 0, p = 2 * m * j; i < m; i++, p += 2) {
+                double qr = this.qt[p], qi = -this.qt[p + 1];
+                x[2 * i]     -= qr * wr - qi * wi;
+                x[2 * i + 1] -= qr * wi + qi * wr;
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.bob.complexqr;
+
+/*
+        Singular value decomposition of a complex m x n matrix, A = U S VH, with the singular values
+        in descending order.
+
+        For m > n the matrix is first factored by the Householder QR of ComplexHouseholder, A = QH R,
+        so only the n x n triangular R has to be diagonalized; for m < n the same is done with AH.
+        R is then diagonalized by one-sided (Hestenes) Jacobi applied to the columns of X = RH:
+        plane rotations of pairs of columns until all the columns are orthogonal.  Working on RH
+        rather than R converges in noticeably fewer sweeps (Drmac and Veselic).
+
+        X is stored with its columns contiguous, so the dot products and rotations are unit stride,
+        and the squared column norms are updated with each rotation instead of recomputed.
+
+        If only the singular values are wanted, the rotations are not accumulated and U and V are
+        not formed.
+
+        When X V = W S, with W having orthonormal columns, R = V S WH, so U = QH [V; 0] and V = W.
+
+        see:    Z. Drmac and K. Veselic, New fast and accurate Jacobi SVD algorithm, SIAM J. Matrix Anal. Appl. 29 (2008)
+*/
+
+public class ComplexSVD {
+
+    private static final int MAXIMUM_SWEEPS = 60;
+
+    private int nrow = 0;                       // rows of A
+    private int ncol = 0;                       // columns of A
+    private int k = 0;                          // min(m, n), number of singular values
+    private double[] singularValues = null;     // descending order
+    private double[] u = null;                  // m x k, interleaved, rows contiguous; null if not requested
+    private double[] v = null;                  // n x k
+    private int numberOfSweeps = 0;
+    private int numberOfRotations = 0;
+
+    // CONSTRUCTORS
+    // SVD of a ComplexMatrix; vectors = false for the singular values alone
+    public ComplexSVD(ComplexMatrix matrix, boolean vectors) {
+        this(ComplexHouseholder.toInterleaved(matrix), matrix.getNrow(), matrix.getNcol(), vectors);
+    }
+
+    // SVD of the m x n matrix a, stored as for complexQR; a is overwritten
+    public ComplexSVD(double[] a, int m, int n, boolean vectors) {
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        this.nrow = m;
+        this.ncol = n;
+        boolean wide = m < n;
+        if (wide) {
+            a = adjoint(a, m, n);                               // work with AH, n x m
+            int t = m;
+            m = n;
+            n = t;
+        }
+        this.k = n;
+
+        double[] vHead = new double[2 * n];
+        ComplexHouseholder.factor(a, 0, n, m, n, vHead, new double[2 * n]);
+
+        double[] x = new double[2 * n * n];                     // columns of X = RH, contiguous: x[j] = row j of R, conjugated
+        for (int j = 0; j < n; j++) {
+            for (int i = j; i < n; i++) {
+                x[2 * (n * j + i)] = a[2 * (n * j + i)];
+                x[2 * (n * j + i) + 1] = -a[2 * (n * j + i) + 1];
+            }
+        }
+
+        double[] rot = null;                                    // accumulated rotations, columns contiguous
+        if (vectors) {
+            rot = new double[2 * n * n];
+            for (int j = 0; j < n; j++) {
+                rot[2 * (n * j + j)] = 1.0;
+            }
+        }
+
+        double[] norm = new double[n];
+        for (int j = 0; j < n; j++) {
+            norm[j] = dot(x, 2 * n * j, x, 2 * n * j, n)[0];
+        }
+        jacobi(x, norm, rot, n);
+
+        this.singularValues = new double[n];
+        int[] order = new int[n];
+        for (int j = 0; j < n; j++) {
+            norm[j] = Math.sqrt(dot(x, 2 * n * j, x, 2 * n * j, n)[0]);
+            order[j] = j;
+        }
+        for (int i = 1; i < n; i++) {                           // sort into descending order
+            int index = order[i];
+            int j = i - 1;
+            while (j >= 0 && norm[order[j]] < norm[index]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+        for (int j = 0; j < n; j++) {
+            this.singularValues[j] = norm[order[j]];
+        }
+
+        if (vectors) {
+            double[] left = new double[2 * m * n];              // [V; 0] of R = V S WH, then QH [V; 0]
+            double[] right = new double[2 * n * n];             // W = X columns / S
+            for (int j = 0; j < n; j++) {
+                int src = order[j];
+                double s = norm[src];
+                for (int i = 0; i < n; i++) {
+                    left[2 * (n * i + j)] = rot[2 * (n * src + i)];
+                    left[2 * (n * i + j) + 1] = rot[2 * (n * src + i) + 1];
+                    if (s != 0.0) {
+                        right[2 * (n * i + j)] = x[2 * (n * src + i)] / s;
+                        right[2 * (n * i + j) + 1] = x[2 * (n * src + i) + 1] / s;
+                    }
+                }
+            }
+            ComplexHouseholder.applyQ(a, m, n, vHead, true, left, 0, n, n, new double[2 * n]);
+            if (wide) {                                         // A = (AH)H = W S UH
+                this.u = right;
+                this.v = left;
+            } else {
+                this.u = left;
+                this.v = right;
+            }
+        }
+    }
+
+    // One-sided Jacobi on the n columns of x, squared norms in norm, rotations accumulated in rot unless null
+    private void jacobi(double[] x, double[] norm, double[] rot, int n) {
+        double tolerance = n * Math.ulp(1.0);
+        boolean rotated = true;
+        while (rotated) {
+            if (this.numberOfSweeps++ >= MAXIMUM_SWEEPS) throw new ArithmeticException("one-sided Jacobi did not converge in " + MAXIMUM_SWEEPS + " sweeps");
+            rotated = false;
+            for (int p = 0; p < n - 1; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    double alpha = norm[p], beta = norm[q];
+                    if (alpha == 0.0 || beta == 0.0) {
+                        continue;
+                    }
+                    double[] gamma = dot(x, 2 * n * p, x, 2 * n * q, n);        // xpH xq
+                    double g = Math.hypot(gamma[0], gamma[1]);
+                    if (g <= tolerance * Math.sqrt(alpha * beta)) {
+                        continue;
+                    }
+                    rotated = true;
+                    this.numberOfRotations++;
+                    double zeta = (beta - alpha) / (2.0 * g);
+                    double t = 1.0 / (Math.abs(zeta) + Math.sqrt(1.0 + zeta * zeta));
+                    if (zeta < 0.0) {
+                        t = -t;
+                    }
+                    double c = 1.0 / Math.sqrt(1.0 + t * t);
+                    double s = t * c;
+                    double er = gamma[0] / g, ei = gamma[1] / g;
+                    rotate(x, 2 * n * p, 2 * n * q, n, c, s, er, ei);
+                    if (rot != null) {
+                        rotate(rot, 2 * n * p, 2 * n * q, n, c, s, er, ei);
+                    }
+                    norm[p] = alpha - t * g;
+                    norm[q] = beta + t * g;
+                }
+            }
+        }
+    }
+
+    // [xp, xq] = [xp, xq] G, G = [e^(i phi) c, e^(i phi) s; -s, c]
+    private static void rotate(double[] x, int p, int q, int n, double c, double s, double er, double ei) {
+        for (int i = 0; i < 2 * n; i += 2) {
+            double xr = x[p + i] * er - x[p + i + 1] * ei;
+            double xi = x[p + i] * ei + x[p + i + 1] * er;
+            double yr = x[q + i], yi = x[q + i + 1];
+            x[p + i] = c * xr - s * yr;
+            x[p + i + 1] = c * xi - s * yi;
+            x[q + i] = s * xr + c * yr;
+            x[q + i + 1] = s * xi + c * yi;
+        }
+    }
+
+    // xH y for vectors of length n, unit stride
+    private static double[] dot(double[] x, int xOff, double[] y, int yOff, int n) {
+        double sr = 0.0, si = 0.0;
+        for (int i = 0; i < 2 * n; i += 2) {
+            double xr = x[xOff + i], xi = x[xOff + i + 1];
+            double yr = y[yOff + i], yi = y[yOff + i + 1];
+            sr += xr * yr + xi * yi;
+            si += xr * yi - xi * yr;
+        }
+        return new double[] {sr, si};
+    }
+
+    private static double[] adjoint(double[] a, int m, int n) {
+        double[] b = new double[2 * m * n];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                b[2 * (m * j + i)] = a[2 * (n * i + j)];
+                b[2 * (m * j + i) + 1] = -a[2 * (n * i + j) + 1];
+            }
+        }
+        return b;
+    }
+
+    // GET VALUES
+    // Return the singular values in descending order
+    public double[] getSingularValues() {
+        return this.singularValues.clone();
+    }
+
+    // Return U, m x min(m, n)
+    public ComplexMatrix getU() {
+        if (this.u == null) throw new IllegalStateException("singular vectors were not requested");
+        return ComplexHouseholder.toComplexMatrix(this.u, 0, this.k, this.nrow, this.k);
+    }
+
+    // Return V, n x min(m, n)
+    public ComplexMatrix getV() {
+        if (this.v == null) throw new IllegalStateException("singular vectors were not requested");
+        return ComplexHouseholder.toComplexMatrix(this.v, 0, this.k, this.ncol, this.k);
+    }
+
+    // Return the 2-norm condition number, largest over smallest singular value
+    public double condition() {
+        double smallest = this.singularValues[this.k - 1];
+        return (smallest == 0.0) ? Double.POSITIVE_INFINITY : this.singularValues[0] / smallest;
+    }
+
+    // Return the default tolerance below which singular values are treated as zero
+    public double tolerance() {
+        return Math.max(this.nrow, this.ncol) * Math.ulp(this.singularValues[0]);
+    }
+
+    // Return the numerical rank
+    public int rank() {
+        double tol = tolerance();
+        int r = 0;
+        while (r < this.k && this.singularValues[r] > tol) {
+            r++;
+        }
+        return r;
+    }
+
+    // Return the Moore-Penrose pseudo-inverse, n x m, V S+ UH
+    public ComplexMatrix pseudoInverse() {
+        if (this.u == null) throw new IllegalStateException("singular vectors were not requested");
+        int m = this.nrow, n = this.ncol, r = rank();
+        double[] p = new double[2 * n * m];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                double sr = 0.0, si = 0.0;
+                for (int l = 0; l < r; l++) {
+                    int vp = 2 * (this.k * i + l), up = 2 * (this.k * j + l);
+                    double s = 1.0 / this.singularValues[l];
+                    double vr = this.v[vp], vi = this.v[vp + 1];
+                    double ur = this.u[up], ui = -this.u[up + 1];
+                    sr += s * (vr * ur - vi * ui);
+                    si += s * (vr * ui + vi * ur);
+                }
+                p[2 * (m * i + j)] = sr;
+                p[2 * (m * i + j) + 1] = si;
+            }
+        }
+        return ComplexHouseholder.toComplexMatrix(p, 0, m, n, m);
+    }
+
+    // Return the number of Jacobi sweeps
+    public int getNumberOfSweeps() {
+        return this.numberOfSweeps;
+    }
+
+    // Return the number of Jacobi rotations
+    public int getNumberOfRotations() {
+        return this.numberOfRotations;
+    }
+}
@@ -0,0 +1,211 @@
+package com.bob.complexqr;
+
+/*
+        A complex matrix whose elements live off the Java heap, in a direct ByteBuffer in native
+        byte order, laid out as complexQR expects: rows contiguous, real and imag interleaved,
+        element (i, j) at double index 2*(n*i + j).
+
+        At 384x240 and beyond the Complex[][] of ComplexMatrix and the double[] copies handed to
+        complexHouseholder keep the collector busy.  Here the collector sees only the buffer
+        object: the memory is malloc'ed by NativeQR.allocate and released by close(), so use it in
+        try-with-resources.  householder() passes the buffer address straight to complexQR, with
+        no JNI copy in either direction.  complexQR.S reads one row past the end of A, so the buffer
+        has ncol elements of padding after the matrix, beyond its limit.
+
+        Android has no MemorySegment, so a direct ByteBuffer is the off-heap handle.  Without the
+        native library the buffer comes from ByteBuffer.allocateDirect, close() just drops it, and
+        householder() uses the Java kernels of ComplexHouseholder.
+
+        A mapped MatrixFile can also be wrapped in place, by MappedComplexMatrix.asDirect; its buffer
+        keeps the file's byte order, and may be read only, so householder() copies, as without the
+        native library, if either this matrix or q is wrapped.
+
+        Element access after close() throws IllegalStateException.
+*/
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+public class DirectComplexMatrix implements AutoCloseable {
+
+    private final int nrow;
+    private final int ncol;
+    private final boolean nativeMemory;     // from NativeQR.allocate, must be freed
+    private ByteBuffer buffer;              // null once closed
+    private DoubleBuffer data;              // double view of buffer
+
+    // CONSTRUCTORS
+    // nrow x ncol matrix of zeros
+    public DirectComplexMatrix(int nrow, int ncol) {
+        if (nrow < 1 || ncol < 1) throw new IllegalArgumentException("dimensions, " + nrow + "x" + ncol + ", must be positive");
+        long bytes = 16L * nrow * ncol;
+        long padded = 16L * ((long) nrow * ncol + ncol);    // the row complexQR.S reads past A
+        if (padded > Integer.MAX_VALUE) throw new IllegalArgumentException("a " + nrow + "x" + ncol + " complex matrix is too large for a buffer");
+        this.nrow = nrow;
+        this.ncol = ncol;
+        this.nativeMemory = NativeQR.isAvailable();
+        ByteBuffer b = this.nativeMemory ? NativeQR.allocate(padded) : ByteBuffer.allocateDirect((int) padded);
+        b.limit((int) bytes);                               // the matrix; the padding is only for the kernel
+        this.buffer = b.order(ByteOrder.nativeOrder());
+        this.data = this.buffer.asDoubleBuffer();
+    }
+
+    // Wrap buffer, nrow x ncol complex doubles from its position stored as for complexQR, in place and in the
+    // buffer's own byte order, for MappedComplexMatrix.asDirect.  close() only drops it.
+    DirectComplexMatrix(ByteBuffer buffer, int nrow, int ncol) {
+        if (nrow < 1 || ncol < 1) throw new IllegalArgumentException("dimensions, " + nrow + "x" + ncol + ", must be positive");
+        if (buffer.remaining() < 16L * nrow * ncol) throw new IllegalArgumentException("buffer is too short for a " + nrow + "x" + ncol + " complex matrix");
+        this.nrow = nrow;
+        this.ncol = ncol;
+        this.nativeMemory = false;
+        this.buffer = buffer;
+        this.data = buffer.asDoubleBuffer();
+    }
+
+    // Copy of a ComplexMatrix
+    public static DirectComplexMatrix of(ComplexMatrix matrix) {
+        int m = matrix.getNrow(), n = matrix.getNcol();
+        DirectComplexMatrix d = new DirectComplexMatrix(m, n);
+        Complex[][] array = matrix.getArrayReference();
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                d.data.put(2 * (n * i + j), array[i][j].getReal());
+                d.data.put(2 * (n * i + j) + 1, array[i][j].getImag());
+            }
+        }
+        return d;
+    }
+
+    // Copy of an m x n matrix stored as for complexQR
+    public static DirectComplexMatrix of(double[] a, int m, int n) {
+        DirectComplexMatrix d = new DirectComplexMatrix(m, n);
+        d.copyFrom(a);
+        return d;
+    }
+
+    // n x n identity, the initial Q for householder()
+    public static DirectComplexMatrix identity(int n) {
+        DirectComplexMatrix d = new DirectComplexMatrix(n, n);
+        for (int i = 0; i < n; i++) {
+            d.data.put(2 * (n * i + i), 1.0);
+        }
+        return d;
+    }
+
+    // Release the memory; further access throws IllegalStateException.  Calling close() again does nothing.
+    @Override
+    public void close() {
+        if (this.buffer != null) {
+            if (this.nativeMemory) {
+                NativeQR.free(this.buffer);
+            }
+            this.buffer = null;
+            this.data = null;
+        }
+    }
+
+    public boolean isClosed() {
+        return this.buffer == null;
+    }
+
+    private DoubleBuffer data() {
+        if (this.data == null) throw new IllegalStateException("DirectComplexMatrix is closed");
+        return this.data;
+    }
+
+    // GET VALUES
+    public int getNrow() {
+        return this.nrow;
+    }
+
+    public int getNcol() {
+        return this.ncol;
+    }
+
+    public double getReal(int i, int j) {
+        return data().get(index(i, j));
+    }
+
+    public double getImag(int i, int j) {
+        return data().get(index(i, j) + 1);
+    }
+
+    public Complex getElement(int i, int j) {
+        int p = index(i, j);
+        return new Complex(data().get(p), data().get(p + 1));
+    }
+
+    // The underlying buffer, native byte order unless wrapped; valid until close()
+    public ByteBuffer getBuffer() {
+        if (this.buffer == null) throw new IllegalStateException("DirectComplexMatrix is closed");
+        return this.buffer;
+    }
+
+    // SET VALUES
+    public void setElement(int i, int j, double real, double imag) {
+        int p = index(i, j);
+        data().put(p, real);
+        data().put(p + 1, imag);
+    }
+
+    public void setElement(int i, int j, Complex value) {
+        setElement(i, j, value.getReal(), value.getImag());
+    }
+
+    // Copy in an array stored as for complexQR, 2*nrow*ncol doubles
+    public void copyFrom(double[] a) {
+        if (a.length < 2 * this.nrow * this.ncol) throw new IllegalArgumentException("array is too short for a " + this.nrow + "x" + this.ncol + " complex matrix");
+        DoubleBuffer d = data().duplicate();
+        d.clear();
+        d.put(a, 0, 2 * this.nrow * this.ncol);
+    }
+
+    // COPIES
+    // Copy out as an array stored as for complexQR
+    public double[] toInterleaved() {
+        double[] a = new double[2 * this.nrow * this.ncol];
+        DoubleBuffer d = data().duplicate();
+        d.clear();
+        d.get(a);
+        return a;
+    }
+
+    public ComplexMatrix toComplexMatrix() {
+        return ComplexHouseholder.toComplexMatrix(toInterleaved(), 0, this.ncol, this.nrow, this.ncol);
+    }
+
+    // QR DECOMPOSITION
+    // complexQR in place: this matrix is overwritten with R, and q, if not null, must hold the
+    // nrow x nrow identity and is overwritten with Q, Q A = R.  Returns the time in microseconds.
+    public long householder(DirectComplexMatrix q) {
+        if (this.nrow < this.ncol) throw new IllegalArgumentException("rows, " + this.nrow + ", are fewer than columns, " + this.ncol);
+        if (q != null && (q.nrow != this.nrow || q.ncol != this.nrow)) throw new IllegalArgumentException("Q must be " + this.nrow + "x" + this.nrow);
+        ByteBuffer a = getBuffer();
+        ByteBuffer qq = (q == null) ? null : q.getBuffer();
+        if (this.nativeMemory && (q == null || q.nativeMemory)) {
+            return NativeQR.complexHouseholderDirect(a, qq, this.nrow, this.ncol, (q == null) ? 0 : 1);
+        }
+
+        long start = System.nanoTime();
+        int m = this.nrow, n = this.ncol;
+        double[] r = toInterleaved();
+        double[] vHead = new double[2 * n];
+        ComplexHouseholder.factor(r, m, n, vHead);
+        if (q != null) {
+            q.copyFrom(ComplexHouseholder.formQ(r, m, n, vHead));
+        }
+        for (int i = 1; i < m; i++) {                       // R only, drop the Householder vectors
+            for (int p = 2 * n * i; p < 2 * (n * i + Math.min(i, n)); p++) {
+                r[p] = 0.0;
+            }
+        }
+        copyFrom(r);
+        return (System.nanoTime() - start) / 1000L;
+    }
+
+    private int index(int i, int j) {
+        if (i < 0 || i >= this.nrow || j < 0 || j >= this.ncol) throw new IllegalArgumentException("element (" + i + ", " + j + ") is outside the " + this.nrow + "x" + this.ncol + " matrix");
+        return 2 * (this.ncol * i + j);
+    }
+}
@@ -0,0 +1,158 @@
+package com.bob.complexqr;
+
+/*
+        Single precision versions of the Householder kernels of ComplexHouseholder, for
+        FloatComplexMatrix and complexQRf.S.
+
+        The algorithm and the storage are the same: rows contiguous, real and imag interleaved,
+        element (i, j) of an m x n matrix at 2*(n*i + j), the Householder vectors below the diagonal
+        with v[0] in vHead, and Q A = R.  Only the element type differs, so each row of a panel takes
+        half the memory traffic of the double version.  Sums are accumulated in float, as
+        complexQRf.S does.
+*/
+
+public final class FloatComplexHouseholder {
+
+    private FloatComplexHouseholder() {
+    }
+
+    // Generate the Householder vector for the column of length len starting at a[off], stride lda.
+    // See ComplexHouseholder.house.
+    public static void house(float[] a, int off, int lda, int len, float[] vHead, int vOff) {
+        int stride = 2 * lda;
+        float sum = 0.0f;
+        for (int i = 0, p = off; i < len; i++, p += stride) {
+            sum += a[p] * a[p] + a[p + 1] * a[p + 1];               // xH x
+        }
+        float norm = (float) Math.sqrt(sum);
+        if (norm == 0.0f) {
+            vHead[vOff] = 0.0f;
+            vHead[vOff + 1] = 0.0f;
+            return;                                                 // column is already zero
+        }
+
+        float x0r = a[off];
+        float x0i = a[off + 1];
+        float abs0 = (float) Math.hypot(x0r, x0i);
+        float pr = 1.0f, pi = 0.0f;                                 // e^(i arg x0)
+        if (abs0 != 0.0f) {
+            pr = x0r / abs0;
+            pi = x0i / abs0;
+        }
+        float v0r = x0r + pr * norm;
+        float v0i = x0i + pi * norm;
+
+        float vnorm = (float) Math.sqrt(sum - abs0 * abs0 + v0r * v0r + v0i * v0i);
+        float scale = 1.0f / vnorm;
+
+        vHead[vOff] = v0r * scale;
+        vHead[vOff + 1] = v0i * scale;
+        a[off] = -pr * norm;                                        // R[k][k]
+        a[off + 1] = -pi * norm;
+        for (int i = 1, p = off + stride; i < len; i++, p += stride) {
+            a[p] *= scale;
+            a[p + 1] *= scale;
+        }
+    }
+
+    // Apply H = I - 2 v vH from the left to the len x ncols block of c, rows streamed.
+    // See ComplexHouseholder.applyLeft; work must hold 2*ncols floats.
+    public static void applyLeft(float[] a, int vOff, int lda, float h0r, float h0i, int len,
+                                 float[] c, int cOff, int ldc, int ncols, float[] work) {
+        int n2 = 2 * ncols;
+        for (int j = 0, p = cOff; j < n2; j += 2, p += 2) {         // w = conj(v0) * C[0][]
+            work[j]     = h0r * c[p] + h0i * c[p + 1];
+            work[j + 1] = h0r * c[p + 1] - h0i * c[p];
+        }
+        for (int i = 1; i < len; i++) {                             // w += conj(v[i]) * C[i][]
+            int q = vOff + 2 * lda * i;
+            float vr = a[q];
+            float vi = a[q + 1];
+            for (int j = 0, p = cOff + 2 * ldc * i; j < n2; j += 2, p += 2) {
+                work[j]     += vr * c[p] + vi * c[p + 1];
+                work[j + 1] += vr * c[p + 1] - vi * c[p];
+            }
+        }
+        for (int j = 0; j < n2; j++) {
+            work[j] += work[j];                                     // 2*sum
+        }
+        for (int i = 0; i < len; i++) {                             // C[i][] -= v[i] * w
+            float vr, vi;
+            if (i == 0) {
+                vr = h0r;
+                vi = h0i;
+            } else {
+                int q = vOff + 2 * lda * i;
+                vr = a[q];
+                vi = a[q + 1];
+            }
+            for (int j = 0, p = cOff + 2 * ldc * i; j < n2; j += 2, p += 2) {
+                c[p]     -= vr * work[j] - vi * work[j + 1];
+                c[p + 1] -= vr * work[j + 1] + vi * work[j];
+            }
+        }
+    }
+
+    // QR factorization of the m x n matrix a in place, leading dimension lda, starting at a[off].
+    // See ComplexHouseholder.factor; vHead and work must hold 2*n floats.
+    public static void factor(float[] a, int off, int lda, int m, int n, float[] vHead, float[] work) {
+        int steps = ComplexHouseholder.reflections(m, n);
+        for (int k = 0; k < steps; k++) {
+            int kk = off + 2 * (lda * k + k);
+            house(a, kk, lda, m - k, vHead, 2 * k);
+            if (k + 1 < n) {
+                applyLeft(a, kk, lda, vHead[2 * k], vHead[2 * k + 1], m - k, a, kk + 2, lda, n - k - 1, work);
+            }
+        }
+        for (int k = Math.max(steps, 0); k < n; k++) {
+            vHead[2 * k] = 0.0f;                                    // no reflection, H = I
+            vHead[2 * k + 1] = 0.0f;
+        }
+    }
+
+    public static void factor(float[] a, int m, int n, float[] vHead) {
+        factor(a, 0, n, m, n, vHead, new float[2 * n]);
+    }
+
+    // Apply Q (transpose = false) or QH (transpose = true) from the left to the m x ncols block c
+    public static void applyQ(float[] a, int m, int n, float[] vHead, boolean transpose,
+                              float[] c, int cOff, int ldc, int ncols, float[] work) {
+        int steps = ComplexHouseholder.reflections(m, n);
+        for (int s = 0; s < steps; s++) {
+            int k = transpose ? steps - 1 - s : s;
+            applyLeft(a, 2 * (n * k + k), n, vHead[2 * k], vHead[2 * k + 1], m - k,
+                    c, cOff + 2 * ldc * k, ldc, ncols, work);
+        }
+    }
+
+    // Form the explicit m x m Q, Q A = R, as complexQRf does with flag = 1
+    public static float[] formQ(float[] a, int m, int n, float[] vHead) {
+        float[] q = new float[2 * m * m];
+        for (int i = 0; i < m; i++) {
+            q[2 * (m * i + i)] = 1.0f;
+        }
+        applyQ(a, m, n, vHead, false, q, 0, m, m, new float[2 * m]);
+        return q;
+    }
+
+    // Solve the upper triangular n x n system R x = y in place
+    public static void backSubstitute(float[] r, int off, int ldr, int n, float[] x, int xOff) {
+        for (int i = n - 1; i >= 0; i--) {
+            float sr = x[xOff + 2 * i];
+            float si = x[xOff + 2 * i + 1];
+            int p = off + 2 * (ldr * i + i + 1);
+            for (int j = i + 1; j < n; j++, p += 2) {
+                float rr = r[p], ri = r[p + 1];
+                float xr = x[xOff + 2 * j], xi = x[xOff + 2 * j + 1];
+                sr -= rr * xr - ri * xi;
+                si -= rr * xi + ri * xr;
+            }
+            p = off + 2 * (ldr * i + i);
+            float dr = r[p], di = r[p + 1];
+            float d = dr * dr + di * di;
+            if (d == 0.0f) throw new ArithmeticException("Singular matrix");
+            x[xOff + 2 * i]     = (sr * dr + si * di) / d;
+            x[xOff + 2 * i + 1] = (si * dr - sr * di) / d;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.bob.complexqr;
+
+/*
+        A single precision complex matrix, stored as complexQR stores its double matrices: one float[]
+        with the rows contiguous and the real and imag parts in sequential locations, element (i, j)
+        at 2*(ncol*i + j).
+
+        Half the size of the double storage, so the Householder loops, which are bound by memory
+        bandwidth, move half the bytes.  householder() runs complexQRf.S, the s register version of
+        complexQR.S, through NativeQR, or FloatComplexHouseholder without the native library; qr()
+        keeps the Householder vectors for solve and refinement, see FloatComplexQR.
+
+        Conversions to and from ComplexMatrix, DirectComplexMatrix and interleaved double arrays
+        round to nearest.
+*/
+
+public class FloatComplexMatrix {
+
+    private final int nrow;
+    private final int ncol;
+    private final float[] data;             // 2*nrow*ncol
+
+    // CONSTRUCTORS
+    // nrow x ncol matrix of zeros
+    public FloatComplexMatrix(int nrow, int ncol) {
+        if (nrow < 1 || ncol < 1) throw new IllegalArgumentException("dimensions, " + nrow + "x" + ncol + ", must be positive");
+        this.nrow = nrow;
+        this.ncol = ncol;
+        this.data = new float[2 * nrow * ncol];
+    }
+
+    // Wrap an array stored as for complexQR, no copy
+    public FloatComplexMatrix(float[] data, int nrow, int ncol) {
+        if (data.length < 2 * nrow * ncol) throw new IllegalArgumentException("array is too short for a " + nrow + "x" + ncol + " complex matrix");
+        this.nrow = nrow;
+        this.ncol = ncol;
+        this.data = data;
+    }
+
+    // Rounded copy of an m x n double array stored as for complexQR
+    public static FloatComplexMatrix of(double[] a, int m, int n) {
+        FloatComplexMatrix f = new FloatComplexMatrix(m, n);
+        for (int p = 0; p < f.data.length; p++) {
+            f.data[p] = (float) a[p];
+        }
+        return f;
+    }
+
+    // Rounded copy of a ComplexMatrix
+    public static FloatComplexMatrix of(ComplexMatrix matrix) {
+        int m = matrix.getNrow(), n = matrix.getNcol();
+        FloatComplexMatrix f = new FloatComplexMatrix(m, n);
+        Complex[][] array = matrix.getArrayReference();
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                f.data[2 * (n * i + j)] = (float) array[i][j].getReal();
+                f.data[2 * (n * i + j) + 1] = (float) array[i][j].getImag();
+            }
+        }
+        return f;
+    }
+
+    // Rounded copy of a DirectComplexMatrix
+    public static FloatComplexMatrix of(DirectComplexMatrix matrix) {
+        return of(matrix.toInterleaved(), matrix.getNrow(), matrix.getNcol());
+    }
+
+    // n x n identity, the initial Q for householder()
+    public static FloatComplexMatrix identity(int n) {
+        FloatComplexMatrix f = new FloatComplexMatrix(n, n);
+        for (int i = 0; i < n; i++) {
+            f.data[2 * (n * i + i)] = 1.0f;
+        }
+        return f;
+    }
+
+    // GET VALUES
+    public int getNrow() {
+        return this.nrow;
+    }
+
+    public int getNcol() {
+        return this.ncol;
+    }
+
+    // The underlying array, stored as for complexQR
+    public float[] getArrayReference() {
+        return this.data;
+    }
+
+    public Complex getElement(int i, int j) {
+        int p = index(i, j);
+        return new Complex(this.data[p], this.data[p + 1]);
+    }
+
+    // SET VALUES
+    public void setElement(int i, int j, float real, float imag) {
+        int p = index(i, j);
+        this.data[p] = real;
+        this.data[p + 1] = imag;
+    }
+
+    public void setElement(int i, int j, Complex value) {
+        setElement(i, j, (float) value.getReal(), (float) value.getImag());
+    }
+
+    // COPIES
+    // Double copy stored as for complexQR
+    public double[] toInterleaved() {
+        double[] a = new double[this.data.length];
+        for (int p = 0; p < a.length; p++) {
+            a[p] = this.data[p];
+        }
+        return a;
+    }
+
+    public ComplexMatrix toComplexMatrix() {
+        return ComplexHouseholder.toComplexMatrix(toInterleaved(), 0, this.ncol, this.nrow, this.ncol);
+    }
+
+    public DirectComplexMatrix toDirectComplexMatrix() {
+        return DirectComplexMatrix.of(toInterleaved(), this.nrow, this.ncol);
+    }
+
+    public FloatComplexMatrix copy() {
+        return new FloatComplexMatrix(this.data.clone(), this.nrow, this.ncol);
+    }
+
+    // QR DECOMPOSITION
+    // complexQRf in place: this matrix is overwritten with R, and q, if not null, must hold the
+    // nrow x nrow identity and is overwritten with Q, Q A = R.  Returns the time in microseconds.
+    public long householder(FloatComplexMatrix q) {
+        if (this.nrow < this.ncol) throw new IllegalArgumentException("rows, " + this.nrow + ", are fewer than columns, " + this.ncol);
+        if (q != null && (q.nrow != this.nrow || q.ncol != this.nrow)) throw new IllegalArgumentException("Q must be " + this.nrow + "x" + this.nrow);
+        if (NativeQR.isAvailable()) {
+            return NativeQR.complexHouseholderFloat(this.data, (q == null) ? null : q.data, this.nrow, this.ncol, (q == null) ? 0 : 1);
+        }
+
+        long start = System.nanoTime();
+        int m = this.nrow, n = this.ncol;
+        float[] vHead = new float[2 * n];
+        FloatComplexHouseholder.factor(this.data, m, n, vHead);
+        if (q != null) {
+            float[] qq = FloatComplexHouseholder.formQ(this.data, m, n, vHead);
+            System.arraycopy(qq, 0, q.data, 0, qq.length);
+        }
+        for (int i = 1; i < m; i++) {                       // R only, drop the Householder vectors
+            for (int p = 2 * n * i; p < 2 * (n * i + Math.min(i, n)); p++) {
+                this.data[p] = 0.0f;
+            }
+        }
+        return (System.nanoTime() - start) / 1000L;
+    }
+
+    // Householder QR keeping the vectors, for solve and refine; this matrix remains unaltered
+    public FloatComplexQR qr() {
+        return new FloatComplexQR(this);
+    }
+
+    private int index(int i, int j) {
+        if (i < 0 || i >= this.nrow || j < 0 || j >= this.ncol) throw new IllegalArgumentException("element (" + i + ", " + j + ") is outside the " + this.nrow + "x" + this.ncol + " matrix");
+        return 2 * (this.ncol * i + j);
+    }
+}
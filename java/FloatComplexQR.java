@@ -0,0 +1,191 @@
+package com.bob.complexqr;
+
+/*
+        Single precision Householder QR of an m x n complex matrix, m >= n, with the Householder
+        vectors kept, for least squares solutions.  The factorization is native, complexQRfv, when
+        the library is loaded, FloatComplexHouseholder.factor otherwise; both store the same.
+
+        solve() is accurate to single precision.  refine() is one step of mixed precision iterative
+        refinement for callers who need double accuracy.  Refining x alone stalls at single
+        precision when the least squares residual is not small, so x and the residual r are refined
+        together as the augmented system
+
+            [ I   A ] [ r ]   [ b ]
+            [ AH  0 ] [ x ] = [ 0 ]
+
+        (Bjorck): the residuals of both block rows are formed in double with the original double A,
+        the corrections are found with the float Q and R, and r and x are updated in double.  Each
+        step costs O(mn) against the O(mn^2) float factorization and, while cond(A) is well below
+        1/eps(float), gains roughly the digits of single precision.
+
+        see:    A. Bjorck, Iterative refinement of linear least squares solutions I, BIT 7 (1967)
+                N. J. Higham, Accuracy and Stability of Numerical Algorithms, chapter 20
+*/
+
+public class FloatComplexQR {
+
+    private final int nrow;
+    private final int ncol;
+    private final float[] a;                // R on and above the diagonal, vectors below
+    private final float[] vHead;
+    private final float[] work;
+
+    // CONSTRUCTORS
+    // Factor a FloatComplexMatrix, which remains unaltered
+    public FloatComplexQR(FloatComplexMatrix matrix) {
+        this(matrix.getArrayReference().clone(), matrix.getNrow(), matrix.getNcol());
+    }
+
+    // Factor the m x n matrix a, stored as for complexQR; a is overwritten
+    public FloatComplexQR(float[] a, int m, int n) {
+        if (m < n) throw new IllegalArgumentException("rows, " + m + ", are fewer than columns, " + n);
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        this.nrow = m;
+        this.ncol = n;
+        this.a = a;
+        this.vHead = new float[2 * n];
+        this.work = new float[2];
+        if (NativeQR.isAvailable()) {
+            NativeQR.complexHouseholderFloatVectors(a, this.vHead, m, n);
+        } else {
+            FloatComplexHouseholder.factor(a, m, n, this.vHead);
+        }
+    }
+
+    // GET VALUES
+    public int getNrow() {
+        return this.nrow;
+    }
+
+    public int getNcol() {
+        return this.ncol;
+    }
+
+    // Return R, m x n
+    public ComplexMatrix getR() {
+        ComplexMatrix r = new ComplexMatrix(this.nrow, this.ncol);
+        for (int i = 0; i < this.nrow; i++) {
+            for (int j = i; j < this.ncol; j++) {
+                r.setElement(i, j, this.a[2 * (this.ncol * i + j)], this.a[2 * (this.ncol * i + j) + 1]);
+            }
+        }
+        return r;
+    }
+
+    // Return Q, m x m, Q A = R
+    public ComplexMatrix getQ() {
+        float[] q = FloatComplexHouseholder.formQ(this.a, this.nrow, this.ncol, this.vHead);
+        return new FloatComplexMatrix(q, this.nrow, this.nrow).toComplexMatrix();
+    }
+
+    // SOLUTIONS
+    // Least squares solution of A x = b in single precision.  b, m complex elements, is overwritten;
+    // x is returned in its first n elements.
+    public void solve(float[] b) {
+        if (b.length < 2 * this.nrow) throw new IllegalArgumentException("vector is too short for " + this.nrow + " complex elements");
+        FloatComplexHouseholder.applyQ(this.a, this.nrow, this.ncol, this.vHead, false, b, 0, 1, 1, this.work);
+        FloatComplexHouseholder.backSubstitute(this.a, 0, this.ncol, this.ncol, b, 0);
+    }
+
+    // Least squares solution of A x = b, b in double, rounded to float for the solve; returns x, n elements
+    public double[] solve(double[] b) {
+        float[] y = new float[2 * this.nrow];
+        for (int p = 0; p < y.length; p++) {
+            y[p] = (float) b[p];
+        }
+        solve(y);
+        double[] x = new double[2 * this.ncol];
+        for (int p = 0; p < x.length; p++) {
+            x[p] = y[p];
+        }
+        return x;
+    }
+
+    // One step of mixed precision refinement of x, n elements, and the residual r = b - A x, m elements, in place.
+    // aDouble is the matrix that was rounded to make this factorization, m x n as for complexQR, b the right hand side.
+    // Returns the 2-norm of the correction to x, to be compared with the norm of x.
+    public double refine(double[] aDouble, double[] b, double[] x, double[] r) {
+        int m = this.nrow, n = this.ncol;
+        if (aDouble.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        float[] f = new float[2 * m];
+        float[] g = new float[2 * n];
+        double[] gd = new double[2 * n];
+        for (int i = 0; i < m; i++) {                       // f = b - r - A x, g = -AH r, in double, rounded once
+            double sr = b[2 * i] - r[2 * i], si = b[2 * i + 1] - r[2 * i + 1];
+            double rr = r[2 * i], ri = r[2 * i + 1];
+            int p = 2 * n * i;
+            for (int j = 0; j < 2 * n; j += 2) {
+                double ar = aDouble[p + j], ai = aDouble[p + j + 1];
+                sr -= ar * x[j] - ai * x[j + 1];
+                si -= ar * x[j + 1] + ai * x[j];
+                gd[j] -= ar * rr + ai * ri;
+                gd[j + 1] -= ar * ri - ai * rr;
+            }
+            f[2 * i] = (float) sr;
+            f[2 * i + 1] = (float) si;
+        }
+        for (int j = 0; j < 2 * n; j++) {
+            g[j] = (float) gd[j];
+        }
+
+        forwardSubstituteAdjoint(g);                        // h = R^-H g
+        FloatComplexHouseholder.applyQ(this.a, m, n, this.vHead, false, f, 0, 1, 1, this.work);     // d = Q f
+        double sum = 0.0;
+        for (int j = 0; j < 2 * n; j++) {                   // dx = R^-1 (d1 - h), d1 replaced by h for dr
+            float d1 = f[j];
+            f[j] = g[j];
+            g[j] = d1 - g[j];
+        }
+        FloatComplexHouseholder.backSubstitute(this.a, 0, n, n, g, 0);
+        FloatComplexHouseholder.applyQ(this.a, m, n, this.vHead, true, f, 0, 1, 1, this.work);      // dr = QH [h; d2]
+        for (int j = 0; j < 2 * n; j++) {
+            x[j] += g[j];
+            sum += (double) g[j] * g[j];
+        }
+        for (int i = 0; i < 2 * m; i++) {
+            r[i] += f[i];
+        }
+        return Math.sqrt(sum);
+    }
+
+    // Least squares solution of A x = b to about double accuracy: a float solve then up to maximumSteps
+    // refinement steps, stopping when the correction is below sqrt(n) eps(double) relative to x
+    public double[] solveRefined(double[] aDouble, double[] b, int maximumSteps) {
+        double[] x = solve(b);
+        double[] r = new double[2 * this.nrow];
+        for (int k = 0; k < maximumSteps; k++) {
+            double dx = refine(aDouble, b, x, r);
+            if (dx <= Math.sqrt(this.ncol) * Math.ulp(1.0) * norm(x)) {
+                break;
+            }
+        }
+        return x;
+    }
+
+    // Solve RH h = g in place, R the n x n upper triangle of the factorization
+    private void forwardSubstituteAdjoint(float[] g) {
+        int n = this.ncol;
+        for (int i = 0; i < n; i++) {
+            float sr = g[2 * i], si = g[2 * i + 1];
+            for (int k = 0; k < i; k++) {                   // - conj(r_ki) h_k
+                float rr = this.a[2 * (n * k + i)], ri = this.a[2 * (n * k + i) + 1];
+                float hr = g[2 * k], hi = g[2 * k + 1];
+                sr -= rr * hr + ri * hi;
+                si -= rr * hi - ri * hr;
+            }
+            float dr = this.a[2 * (n * i + i)], di = -this.a[2 * (n * i + i) + 1];
+            float d = dr * dr + di * di;
+            if (d == 0.0f) throw new ArithmeticException("Singular matrix");
+            g[2 * i] = (sr * dr + si * di) / d;
+            g[2 * i + 1] = (si * dr - sr * di) / d;
+        }
+    }
+
+    private static double norm(double[] x) {
+        double sum = 0.0;
+        for (double v : x) {
+            sum += v * v;
+        }
+        return Math.sqrt(sum);
+    }
+}
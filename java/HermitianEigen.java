@@ -0,0 +1,503 @@
+package com.bob.complexqr;
+
+/*
+        Eigen values and, optionally, eigen vectors of a complex Hermitian matrix.
+
+        Two methods, both working on the interleaved storage of complexQR (row i, column j at 2*(n*i + j)):
+
+        tridiagonal     Householder reduction to Hermitian tridiagonal form, using the reflector
+                        kernels of ComplexHouseholder, a diagonal unitary scaling that makes the
+                        tridiagonal matrix real, then the implicit QL algorithm with Wilkinson shifts
+                        on the real tridiagonal matrix.  O(n^3); the method for all but small matrices.
+
+        jacobi          cyclic Jacobi with complex rotations in round robin (tournament) order.  Each
+                        round is n/2 rotations on disjoint pairs of rows and columns, so the rotations
+                        of a round can be applied concurrently.  Accurate and simple for small matrices.
+
+        The eigen values are returned sorted into descending order, as in Matrix, with the eigen
+        vectors, when requested, as the matching columns.  Without eigen vectors the back
+        transformation, which is most of the work, is skipped.
+
+        Both methods use the whole matrix and assume it is Hermitian; the matrix is overwritten.
+
+        see:    G. H. Golub and C. F. Van Loan, Matrix Computations, sections 8.3 and 8.5
+        and     JAMA, tred2 and tql2, for the QL iteration
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class HermitianEigen {
+
+    private static final int MAXIMUM_QL_ITERATIONS  = 30;       // per eigen value
+    private static final int PARALLEL_MINIMUM       = 64;       // smallest matrix for which Jacobi rounds are split over threads
+
+    private final int n;
+    private double[] eigenValues = null;        // sorted into descending order
+    private int[] eigenIndices = null;          // position of each sorted eigen value before sorting
+    private double[] eigenVectors = null;       // n x n, column j is the eigen vector of eigenValues[j]; null if not requested
+    private int numberOfRotations = 0;          // Jacobi rotations, or QL iterations
+    private int numberOfSweeps = 0;             // Jacobi sweeps
+
+    private HermitianEigen(int n) {
+        this.n = n;
+    }
+
+    // TRIDIAGONAL REDUCTION AND IMPLICIT QL
+    // a = n x n Hermitian matrix, overwritten; vectors = true to compute the eigen vectors
+    public static HermitianEigen tridiagonal(double[] a, int n, boolean vectors) {
+        checkArguments(a, n);
+        HermitianEigen eigen = new HermitianEigen(n);
+        double[] d = new double[n];
+        double[] e = new double[n];
+        double[] vHead = new double[2 * n];
+        double[] phase = new double[2 * n];
+        double[] p = new double[2 * n];
+
+        for (int k = 0; k < n - 2; k++) {
+            int off = 2 * (n * (k + 1) + k);                    // A[k+1][k]
+            int len = n - k - 1;
+            ComplexHouseholder.house(a, off, n, len, vHead, 2 * k);
+            hermitianUpdate(a, n, k + 1, off, vHead[2 * k], vHead[2 * k + 1], p);
+        }
+
+        double pr = 1.0, pi = 0.0;                              // D = diag(phase) makes T real
+        for (int k = 0; k < n; k++) {
+            d[k] = a[2 * (n * k + k)];
+            phase[2 * k] = pr;
+            phase[2 * k + 1] = pi;
+            if (k < n - 1) {
+                double er = a[2 * (n * (k + 1) + k)];
+                double ei = a[2 * (n * (k + 1) + k) + 1];
+                double abs = Math.hypot(er, ei);
+                e[k] = abs;
+                if (abs != 0.0) {
+                    double tr = (pr * er - pi * ei) / abs;
+                    pi = (pr * ei + pi * er) / abs;
+                    pr = tr;
+                }
+            }
+        }
+
+        double[] z = null;
+        if (vectors) {
+            z = new double[n * n];
+            for (int i = 0; i < n; i++) {
+                z[n * i + i] = 1.0;
+            }
+        }
+        eigen.numberOfRotations = tql(d, e, z, n);
+
+        double[] v = null;
+        if (vectors) {
+            v = new double[2 * n * n];                          // V = U D Z
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    v[2 * (n * i + j)] = phase[2 * i] * z[n * i + j];
+                    v[2 * (n * i + j) + 1] = phase[2 * i + 1] * z[n * i + j];
+                }
+            }
+            double[] work = new double[2 * n];
+            for (int k = n - 3; k >= 0; k--) {
+                int off = 2 * (n * (k + 1) + k);
+                ComplexHouseholder.applyLeft(a, off, n, vHead[2 * k], vHead[2 * k + 1], n - k - 1,
+                        v, 2 * n * (k + 1), n, n, work);
+            }
+        }
+        eigen.sort(d, v);
+        return eigen;
+    }
+
+    // A[k..n-1][k..n-1] = H A H with H = I - 2 v vH, v[0] = (h0r, h0i), v[1..] below a[vOff] in column k-1.
+    // With p = A v, alpha = vH p and w = p - alpha v this is A -= 2 (v wH + w vH).
+    private static void hermitianUpdate(double[] a, int n, int k, int vOff, double h0r, double h0i, double[] p) {
+        int len = n - k;
+        double alpha = 0.0;
+        for (int i = 0; i < len; i++) {                         // p = A v, alpha = vH p
+            double sr = 0.0, si = 0.0;
+            int row = 2 * (n * (k + i) + k);
+            for (int j = 0; j < len; j++) {
+                double vr = (j == 0) ? h0r : a[vOff + 2 * n * j];
+                double vi = (j == 0) ? h0i : a[vOff + 2 * n * j + 1];
+                double ar = a[row + 2 * j], ai = a[row + 2 * j + 1];
+                sr += ar * vr - ai * vi;
+                si += ar * vi + ai * vr;
+            }
+            p[2 * i] = sr;
+            p[2 * i + 1] = si;
+            double vr = (i == 0) ? h0r : a[vOff + 2 * n * i];
+            double vi = (i == 0) ? h0i : a[vOff + 2 * n * i + 1];
+            alpha += vr * sr + vi * si;
+        }
+        for (int i = 0; i < len; i++) {                         // w = p - alpha v
+            p[2 * i] -= alpha * ((i == 0) ? h0r : a[vOff + 2 * n * i]);
+            p[2 * i + 1] -= alpha * ((i == 0) ? h0i : a[vOff + 2 * n * i + 1]);
+        }
+        for (int i = 0; i < len; i++) {
+            double vir = (i == 0) ? h0r : a[vOff + 2 * n * i];
+            double vii = (i == 0) ? h0i : a[vOff + 2 * n * i + 1];
+            double wir = p[2 * i], wii = p[2 * i + 1];
+            int row = 2 * (n * (k + i) + k);
+            for (int j = 0; j < len; j++) {
+                double vjr = (j == 0) ? h0r : a[vOff + 2 * n * j];
+                double vji = (j == 0) ? h0i : a[vOff + 2 * n * j + 1];
+                double wjr = p[2 * j], wji = p[2 * j + 1];
+                // v_i conj(w_j) + w_i conj(v_j)
+                double re = vir * wjr + vii * wji + wir * vjr + wii * vji;
+                double im = vii * wjr - vir * wji + wii * vjr - wir * vji;
+                a[row + 2 * j] -= 2.0 * re;
+                a[row + 2 * j + 1] -= 2.0 * im;
+            }
+        }
+    }
+
+    // Implicit QL with Wilkinson shifts on the real symmetric tridiagonal matrix with diagonal d and
+    // subdiagonal e, e[i] coupling i and i+1.  The rotations are accumulated in z (n x n) unless z is null.
+    // Returns the number of iterations.  Adapted from JAMA tql2.
+    private static int tql(double[] d, double[] e, double[] z, int n) {
+        int iterations = 0;
+        double f = 0.0;
+        double tst1 = 0.0;
+        double eps = Math.ulp(1.0);
+        e[n - 1] = 0.0;
+
+        for (int l = 0; l < n; l++) {
+            tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+            int m = l;
+            while (m < n) {
+                if (Math.abs(e[m]) <= eps * tst1) {
+                    break;
+                }
+                m++;
+            }
+            if (m > l) {
+                int iter = 0;
+                do {
+                    if (++iter > MAXIMUM_QL_ITERATIONS) throw new ArithmeticException("QL iteration did not converge");
+                    iterations++;
+                    double g = d[l];                            // Wilkinson shift
+                    double p = (d[l + 1] - g) / (2.0 * e[l]);
+                    double r = Math.hypot(p, 1.0);
+                    if (p < 0) {
+                        r = -r;
+                    }
+                    d[l] = e[l] / (p + r);
+                    d[l + 1] = e[l] * (p + r);
+                    double dl1 = d[l + 1];
+                    double h = g - d[l];
+                    for (int i = l + 2; i < n; i++) {
+                        d[i] -= h;
+                    }
+                    f += h;
+
+                    p = d[m];                                   // implicit QL transformation
+                    double c = 1.0, c2 = c, c3 = c;
+                    double el1 = e[l + 1];
+                    double s = 0.0, s2 = 0.0;
+                    for (int i = m - 1; i >= l; i--) {
+                        c3 = c2;
+                        c2 = c;
+                        s2 = s;
+                        g = c * e[i];
+                        h = c * p;
+                        r = Math.hypot(p, e[i]);
+                        e[i + 1] = s * r;
+                        s = e[i] / r;
+                        c = p / r;
+                        p = c * d[i] - s * g;
+                        d[i + 1] = h + s * (c * g + s * d[i]);
+                        if (z != null) {
+                            for (int k = 0; k < n; k++) {
+                                h = z[n * k + i + 1];
+                                z[n * k + i + 1] = s * z[n * k + i] + c * h;
+                                z[n * k + i] = c * z[n * k + i] - s * h;
+                            }
+                        }
+                    }
+                    p = -s * s2 * c3 * el1 * e[l] / dl1;
+                    e[l] = s * p;
+                    d[l] = c * p;
+                } while (Math.abs(e[l]) > eps * tst1);
+            }
+            d[l] += f;
+            e[l] = 0.0;
+        }
+        return iterations;
+    }
+
+    // CYCLIC JACOBI
+    // a = n x n Hermitian matrix, overwritten; vectors = true to compute the eigen vectors;
+    // maximumSweeps = limit on sweeps; threads > 1 applies the rotations of each round concurrently
+    public static HermitianEigen jacobi(double[] a, int n, boolean vectors, int maximumSweeps, int threads) {
+        checkArguments(a, n);
+        HermitianEigen eigen = new HermitianEigen(n);
+        double[] v = null;
+        if (vectors) {
+            v = new double[2 * n * n];
+            for (int i = 0; i < n; i++) {
+                v[2 * (n * i + i)] = 1.0;
+            }
+        }
+
+        int players = n + (n & 1);                              // round robin, a bye when n is odd
+        int[] ring = new int[players];
+        for (int i = 0; i < players; i++) {
+            ring[i] = i;
+        }
+        int pairs = players / 2;
+        int[] pp = new int[pairs];
+        int[] qq = new int[pairs];
+        double[] rotation = new double[4 * pairs];              // c, s, Re(e^i phi), Im(e^i phi) of each pair
+        boolean[] active = new boolean[pairs];
+        boolean parallel = threads > 1 && n >= PARALLEL_MINIMUM;
+        ForkJoinPool pool = parallel ? new ForkJoinPool(threads) : null;
+
+        double total = 0.0;
+        for (int i = 0; i < 2 * n * n; i++) {
+            total += a[i] * a[i];
+        }
+        double tolerance = Math.ulp(1.0) * Math.ulp(1.0) * total;
+
+        try {
+            while (offDiagonal(a, n) > tolerance) {
+                if (eigen.numberOfSweeps++ >= maximumSweeps) throw new ArithmeticException("Jacobi method did not converge in " + maximumSweeps + " sweeps");
+                for (int round = 0; round < players - 1; round++) {
+                    for (int k = 0; k < pairs; k++) {
+                        int p = ring[k], q = ring[players - 1 - k];
+                        pp[k] = Math.min(p, q);
+                        qq[k] = Math.max(p, q);
+                        active[k] = qq[k] < n && jacobiRotation(a, n, pp[k], qq[k], rotation, 4 * k, tolerance / ((double) n * n));
+                        if (active[k]) {
+                            eigen.numberOfRotations++;
+                        }
+                    }
+                    if (parallel) {
+                        applyParallel(pool, a, v, n, pp, qq, rotation, active);
+                    } else {
+                        for (int k = 0; k < pairs; k++) {
+                            if (active[k]) applyColumns(a, n, pp[k], qq[k], rotation, 4 * k);
+                        }
+                        for (int k = 0; k < pairs; k++) {
+                            if (active[k]) applyRows(a, n, pp[k], qq[k], rotation, 4 * k);
+                        }
+                        if (v != null) {
+                            for (int k = 0; k < pairs; k++) {
+                                if (active[k]) applyColumns(v, n, pp[k], qq[k], rotation, 4 * k);
+                            }
+                        }
+                    }
+                    int last = ring[players - 1];               // rotate all but the first
+                    System.arraycopy(ring, 1, ring, 2, players - 2);
+                    ring[1] = last;
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        double[] d = new double[n];
+        for (int i = 0; i < n; i++) {
+            d[i] = a[2 * (n * i + i)];
+        }
+        eigen.sort(d, v);
+        return eigen;
+    }
+
+    // Small matrices: serial cyclic Jacobi
+    public static HermitianEigen jacobi(double[] a, int n, boolean vectors) {
+        return jacobi(a, n, vectors, 100, 1);
+    }
+
+    // Rotation parameters for the pair (p, q).  With a_pq = g e^(i phi), G = [e^(i phi) c, e^(i phi) s; -s, c]
+    // and GH A G has a zero in (p, q).  Returns false if a_pq is negligible.
+    private static boolean jacobiRotation(double[] a, int n, int p, int q, double[] rotation, int off, double negligible) {
+        double apqr = a[2 * (n * p + q)];
+        double apqi = a[2 * (n * p + q) + 1];
+        double g2 = apqr * apqr + apqi * apqi;
+        if (g2 <= negligible) {
+            return false;
+        }
+        double g = Math.sqrt(g2);
+        double theta = (a[2 * (n * q + q)] - a[2 * (n * p + p)]) / (2.0 * g);
+        double t = 1.0 / (Math.abs(theta) + Math.sqrt(theta * theta + 1.0));
+        if (theta < 0.0) {
+            t = -t;
+        }
+        double c = 1.0 / Math.sqrt(t * t + 1.0);
+        rotation[off] = c;
+        rotation[off + 1] = t * c;
+        rotation[off + 2] = apqr / g;
+        rotation[off + 3] = apqi / g;
+        return true;
+    }
+
+    // X = X G on columns p and q
+    private static void applyColumns(double[] x, int n, int p, int q, double[] rotation, int off) {
+        double c = rotation[off], s = rotation[off + 1];
+        double er = rotation[off + 2], ei = rotation[off + 3];
+        for (int k = 0; k < n; k++) {
+            int kp = 2 * (n * k + p), kq = 2 * (n * k + q);
+            double xr = x[kp] * er - x[kp + 1] * ei;            // x_kp e^(i phi)
+            double xi = x[kp] * ei + x[kp + 1] * er;
+            double yr = x[kq], yi = x[kq + 1];
+            x[kp] = c * xr - s * yr;
+            x[kp + 1] = c * xi - s * yi;
+            x[kq] = s * xr + c * yr;
+            x[kq + 1] = s * xi + c * yi;
+        }
+    }
+
+    // A = GH A on rows p and q
+    private static void applyRows(double[] a, int n, int p, int q, double[] rotation, int off) {
+        double c = rotation[off], s = rotation[off + 1];
+        double er = rotation[off + 2], ei = -rotation[off + 3];
+        int rp = 2 * n * p, rq = 2 * n * q;
+        for (int k = 0; k < 2 * n; k += 2) {
+            double xr = a[rp + k] * er - a[rp + k + 1] * ei;    // a_pk e^(-i phi)
+            double xi = a[rp + k] * ei + a[rp + k + 1] * er;
+            double yr = a[rq + k], yi = a[rq + k + 1];
+            a[rp + k] = c * xr - s * yr;
+            a[rp + k + 1] = c * xi - s * yi;
+            a[rq + k] = s * xr + c * yr;
+            a[rq + k + 1] = s * xi + c * yi;
+        }
+        a[rp + 2 * q] = 0.0;                                    // exact zeros, real diagonal
+        a[rp + 2 * q + 1] = 0.0;
+        a[rq + 2 * p] = 0.0;
+        a[rq + 2 * p + 1] = 0.0;
+        a[rp + 2 * p + 1] = 0.0;
+        a[rq + 2 * q + 1] = 0.0;
+    }
+
+    // The rotations of a round touch disjoint columns, then disjoint rows, so each phase is split over the pool
+    private static void applyParallel(ForkJoinPool pool, final double[] a, final double[] v, final int n,
+                                      final int[] pp, final int[] qq, final double[] rotation, final boolean[] active) {
+        final int pairs = pp.length;
+        final int tasks = Math.min(pool.getParallelism(), pairs);
+        for (int phase = 0; phase < 3; phase++) {
+            if (phase == 2 && v == null) {
+                break;
+            }
+            final int ph = phase;
+            List<Callable<Void>> list = new ArrayList<>(tasks);
+            for (int t = 0; t < tasks; t++) {
+                final int first = t;
+                list.add(new Callable<Void>() {
+                    public Void call() {
+                        for (int k = first; k < pairs; k += tasks) {
+                            if (!active[k]) continue;
+                            if (ph == 0) applyColumns(a, n, pp[k], qq[k], rotation, 4 * k);
+                            else if (ph == 1) applyRows(a, n, pp[k], qq[k], rotation, 4 * k);
+                            else applyColumns(v, n, pp[k], qq[k], rotation, 4 * k);
+                        }
+                        return null;
+                    }
+                });
+            }
+            try {
+                for (Future<Void> f : pool.invokeAll(list)) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Jacobi rotation interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Jacobi rotation failed: " + e.getCause(), e.getCause());
+            }
+        }
+    }
+
+    // Sum of |a_ij|^2 off the diagonal
+    private static double offDiagonal(double[] a, int n) {
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j) {
+                    int p = 2 * (n * i + j);
+                    sum += a[p] * a[p] + a[p + 1] * a[p + 1];
+                }
+            }
+        }
+        return sum;
+    }
+
+    // Sort the eigen values into descending order, with the columns of v to match
+    private void sort(double[] d, double[] v) {
+        int n = this.n;
+        this.eigenIndices = new int[n];
+        for (int i = 0; i < n; i++) {
+            this.eigenIndices[i] = i;
+        }
+        for (int i = 1; i < n; i++) {                           // insertion sort on the indices
+            int index = this.eigenIndices[i];
+            int j = i - 1;
+            while (j >= 0 && d[this.eigenIndices[j]] < d[index]) {
+                this.eigenIndices[j + 1] = this.eigenIndices[j];
+                j--;
+            }
+            this.eigenIndices[j + 1] = index;
+        }
+        this.eigenValues = new double[n];
+        for (int i = 0; i < n; i++) {
+            this.eigenValues[i] = d[this.eigenIndices[i]];
+        }
+        if (v != null) {
+            this.eigenVectors = new double[2 * n * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    int src = 2 * (n * i + this.eigenIndices[j]);
+                    this.eigenVectors[2 * (n * i + j)] = v[src];
+                    this.eigenVectors[2 * (n * i + j) + 1] = v[src + 1];
+                }
+            }
+        }
+    }
+
+    private static void checkArguments(double[] a, int n) {
+        if (n < 1) throw new IllegalArgumentException("matrix dimension, " + n + ", must be at least one");
+        if (a.length < 2 * n * n) throw new IllegalArgumentException("array is too short for a " + n + "x" + n + " complex matrix");
+    }
+
+    // GET VALUES
+    // Return the eigen values sorted into descending order
+    public double[] getEigenValues() {
+        return this.eigenValues.clone();
+    }
+
+    // Return the positions of the sorted eigen values before sorting
+    public int[] getEigenIndices() {
+        return this.eigenIndices.clone();
+    }
+
+    // Return true if the eigen vectors were computed
+    public boolean hasEigenVectors() {
+        return this.eigenVectors != null;
+    }
+
+    // Return the eigen vectors as the columns of a ComplexMatrix, in the order of getEigenValues()
+    public ComplexMatrix getEigenVectors() {
+        if (this.eigenVectors == null) throw new IllegalStateException("eigen vectors were not requested");
+        return ComplexHouseholder.toComplexMatrix(this.eigenVectors, 0, this.n, this.n, this.n);
+    }
+
+    // Return a reference to the eigen vectors, interleaved, n x n, column j for eigen value j
+    public double[] getEigenVectorArray() {
+        return this.eigenVectors;
+    }
+
+    // Return the number of Jacobi rotations or QL iterations
+    public int getNumberOfRotations() {
+        return this.numberOfRotations;
+    }
+
+    // Return the number of Jacobi sweeps
+    public int getNumberOfSweeps() {
+        return this.numberOfSweeps;
+    }
+}
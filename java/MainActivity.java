@@ -5,8 +5,10 @@ package com.bob.complexqr;
         a generalization to complex numbers of a previous QR factorization done in the early
         stages of the COVID-19 pandemic.
 
-        This only implements the assembly language version on the Armv8.2-A architecture.  Note that
-        v8.2 does not include implementation of complex arithmetic in hardware.
+        The assembly language version is for the Armv8.2-A architecture.  Note that v8.2 does not
+        include implementation of complex arithmetic in hardware.  The factorization goes through
+        QrEngines, which uses it where the library is loaded on arm64 and is fastest, and the Java
+        engines elsewhere, so the app also runs on other architectures.
 
         If the matrix is small enough, e.g. 192x120, the efficiency is quite high, about 50-70%,
         depending on what you believe the speed of the cpu is, whether the advertised rate of
@@ -15,7 +17,9 @@ package com.bob.complexqr;
 
         NB  This version runs the R calculation on the user interface because of the interest in
         timing for benchmark performance but runs the calculation of Q (and repeats R), along with
-        the verification, as a background thread.
+        the verification, as a background thread.  The R calculation uses the engine selected for
+        the shape by an earlier run, or the native one: the selection, which tests and times the
+        engines and tunes the tiled one, is done first in the background thread.
 */
 
 import static android.os.Process.getThreadPriority;
@@ -49,6 +53,10 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 
 public class MainActivity extends AppCompatActivity {
@@ -67,6 +75,13 @@ public class MainActivity extends AppCompatActivity {
     ProgressBar spinner;
 
     ComplexMatrix displ = null;
+    boolean runBenchmark = false;                           // benchmark = 1 in params.txt runs the Java benchmarks
+    String benchmarkReport = null;
+    AutoTuner tuner = null;                                 // tuned tile sizes and thread counts, next to params.txt
+    QrEngines engines = null;                               // the QR engines, selected by architecture, shape and speed
+    volatile MatrixExporter exporter = null;                // writes the .dat files on its own thread, null once destroyed
+    final Queue<Future<double[]>> exports = new ConcurrentLinkedQueue<>();  // handed to exporter, not yet known written;
+                                                            // added to on both threads, awaited in the background
     double[][] AAr;                                         // elements of the A matrix, random numbers [-1.0, +1.0]
     double[][] AAi;                                         // imaginary part
 
@@ -80,8 +95,13 @@ public class MainActivity extends AppCompatActivity {
 //      This section for permissions        * * * * * * * * * * * * * * * * * * * * * * * *
 
     // Used to load the 'complexqr' library on application startup.
+    // If it cannot be loaded, e.g. on an architecture it is not built for, the Java engines are used.
     static {
-        System.loadLibrary("complexqr");
+        try {
+            System.loadLibrary("complexqr");
+        } catch (UnsatisfiedLinkError e) {
+            Log.d(TAG, "complexqr library not loaded: " + e);
+        }
     }
 
     @Override
@@ -93,6 +113,16 @@ public class MainActivity extends AppCompatActivity {
 
     }
 
+    @Override
+    protected void onDestroy() {
+        MatrixExporter closing = exporter;
+        exporter = null;                    // the background thread stops handing it writes
+        if (closing != null) {
+            closing.close();                // finish writing the .dat files
+        }
+        super.onDestroy();
+    }
+
 
     public void onResume() {
         super.onResume();
@@ -128,8 +158,7 @@ public class MainActivity extends AppCompatActivity {
     public void process() {
 
         if (!getArchitecture().equals(ARM_ARCHITECTURE)) {
-            tv.append(getResources().getString(R.string.architecture));
-            return;
+            Log.d(TAG, "not " + ARM_ARCHITECTURE + ", the assembly language version is not used");
         }
 
         List<String> list = getWatermarkParams();
@@ -152,6 +181,9 @@ public class MainActivity extends AppCompatActivity {
                             return;
                         }
                     }
+                    if ("benchmark".equals(params[0].trim())) {
+                        runBenchmark = Integer.parseInt(params[1].trim()) != 0;
+                    }
                     if ("cols".equals(params[0].trim())) {
                         int n = Integer.parseInt(params[1].trim());
                         if (n > 1 && n <= colsMax) {
@@ -170,11 +202,22 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
+        if (tuner == null) {
+            tuner = AutoTuner.load(getExternalFilesDir(null));
+        }
+        if (engines == null) {
+            engines = new QrEngines(tuner);
+            QrEngines.setDefault(engines);
+        }
+        if (exporter == null) {
+            exporter = new MatrixExporter();
+        }
+
         generateAmatrix(nRows, nCols);
 
         double[] Amatrix = convertToComplexSingle(AAr, AAi, nRows, nCols);
 
-        writeBytesToFile("A_matrix.dat", convertDoubleArrayToByteArray(Amatrix));
+        exportMatrix("A_matrix.dat", Amatrix.clone());                       // a copy, executeQR overwrites Amatrix with R
 
         long assemblyTime = executeQR(Amatrix, nRows, nCols);
 
@@ -184,16 +227,14 @@ public class MainActivity extends AppCompatActivity {
     private long executeQR(double[] A, int nRows, int nCols) {
 
         Log.d(TAG, "testComplexHouseholder");
-        int computeQ = 0;
-
-        double[][] QQ = identity(nRows);
 
-        double[] Q = convertToComplexSingle(QQ, nRows, nRows);
         long start, end, assemblyTime;
         start = System.currentTimeMillis();
 
         try {
-            assemblyTime = complexHouseholder(A, Q, nRows, nCols, computeQ);
+            QrEngine engine = engines.selectedOrDefault(nRows, nCols);        // select() can take seconds, see doSomeTaskAsync
+            Log.d(TAG, "QR engine " + engine.getName());
+            assemblyTime = engine.householder(A, null, nRows, nCols);          // R only
         }  catch (Exception e) {
             tv.append(getResources().getString(R.string.badParam3));
             return 0L;
@@ -201,7 +242,7 @@ public class MainActivity extends AppCompatActivity {
 
         end = System.currentTimeMillis();
         Log.d(TAG, "execution time java " + (end-start) + " msec and, assembly only, " + assemblyTime + " microseconds");
-        Log.d(TAG, "Mflops per second = " + flopCount(nRows, nCols) / assemblyTime);
+        Log.d(TAG, "Mflops per second = " + flopCount(nRows, nCols) / Math.max(1L, assemblyTime));
 
         return assemblyTime;
     }
@@ -225,8 +266,6 @@ public class MainActivity extends AppCompatActivity {
         384x240 45.6 msec, R only; GcSupervisor: GC congestion
  */
 
-        int computeQ = 1;               // this computes Q and R in the background
-
         double[] B = convertToComplexSingle(AAr, AAi, nRows, nCols);
 
         double[][] QQ = identity(nRows);
@@ -238,7 +277,7 @@ public class MainActivity extends AppCompatActivity {
         start = System.currentTimeMillis();
 
         try {
-            assemblyTimeQ = complexHouseholder(B, Q, nRows, nCols, computeQ);
+            assemblyTimeQ = engines.householder(B, Q, nRows, nCols);           // this computes Q and R in the background
         }  catch (Exception e) {
             tv.append(getResources().getString(R.string.badParam3));
             return null;
@@ -257,8 +296,8 @@ public class MainActivity extends AppCompatActivity {
 
     private ComplexMatrix verify(double[][] ar, double[][] ai, double[] A, double[] qq) {
 
-        writeBytesToFile("R_matrix.dat", convertDoubleArrayToByteArray(A));
-        writeBytesToFile("Q_matrix.dat", convertDoubleArrayToByteArray(qq));
+        exportMatrix("R_matrix.dat", A);
+        exportMatrix("Q_matrix.dat", qq);
 
         ComplexMatrix matrix = new ComplexMatrix(ar, ai);
 
@@ -267,27 +306,20 @@ public class MainActivity extends AppCompatActivity {
 
         double[][] Qreal = new double[m][m];
         double[][] Qimag = new double[m][m];
-        double[][] Rreal = new double[m][n];
-        double[][] Rimag = new double[m][n];
         for (int i=0; i<m; i++) {                               // row
             for (int j = 0; j < m; j++) {                       // column
                 Qreal[i][j] = qq[2*m * i + 2 * j];
                 Qimag[i][j] = qq[2*m * i + 2 * j + 1];
             }
-            for (int j = 0; j < n; j++) {
-                Rreal[i][j] = A[2*n * i + 2 * j];
-                Rimag[i][j] = A[2*n * i + 2 * j + 1];
-            }
         }
 
         ComplexMatrix Qmat = new ComplexMatrix(Qreal, Qimag);
-        ComplexMatrix Rmat = new ComplexMatrix(Rreal, Rimag);
+        PackedUpperTriangular Rpacked = PackedUpperTriangular.fromInterleaved(A, 0, n, n);    // rows of A below n are zero
 
-        ComplexMatrix Qcon = Qmat.conjugate();
-        ComplexMatrix Qher = Qcon.transpose();
-        ComplexMatrix Aest = Qher.times(Rmat);
-        ComplexMatrix Qeye = Qher.times(Qmat);
-        ComplexMatrix Err  = Aest.minus(matrix);
+        ComplexMatrixView Qher = Qmat.adjoinView();
+        ComplexMatrix Aest = Rpacked.timesLeft(Qher.subView(0, 0, m, n));
+        ComplexMatrix Qeye = ComplexMatrixView.times(Qher, Qmat.view());
+        ComplexMatrix Err  = ComplexMatrixView.minus(Aest.view(), matrix.view());
 
         Log.d(TAG, "norm of error is " + Err.norm());
 
@@ -297,7 +329,7 @@ public class MainActivity extends AppCompatActivity {
         if ((Err.norm() < 1.E-8) && (Math.abs(det.getReal() - 1.0) < 1.E-10) && (Math.abs(det.getImag()) < 1.E-10)) {
             tv.append(getResources().getString(R.string.verify));
         }
-        return Rmat;
+        return Rpacked.toComplexMatrix(m);
     }
 
     public void display(ComplexMatrix Rmat) {
@@ -513,18 +545,46 @@ public class MainActivity extends AppCompatActivity {
             Log.d(TAG,"Exception: " + e);
         }
     }
-    private byte[] convertDoubleArrayToByteArray(double[] data) {
-        if (data == null) return null;
-        // ----------
-        byte[] byts = new byte[data.length * Double.BYTES];
-        for (int i = 0; i < data.length; i++)
-            System.arraycopy(convertDoubleToByteArray(data[i]), 0, byts, i * Double.BYTES, Double.BYTES);
-        return byts;
+
+    // Hand data to the exporter to write, big endian doubles as writeBytesToFile did; data must not change until it is written
+    // The background thread may get here after onDestroy has closed the exporter; the write is then dropped
+    public void exportMatrix(String name, double[] data) {
+        MatrixExporter exporter = this.exporter;
+        File file = new File(getExternalFilesDir(null), name);
+        Log.d(TAG, file.getPath());
+        if (exporter == null) {
+            Log.d(TAG, "exporter closed, " + name + " not written");
+            return;
+        }
+        try {
+            exports.add(exporter.writeAsync(file, data));
+        } catch (IllegalStateException e) {
+            Log.d(TAG, "Exception: " + e);                      // closed since it was read
+        }
     }
-    private byte [] convertDoubleToByteArray(double number) {
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Double.BYTES);
-        byteBuffer.putDouble(number);
-        return byteBuffer.array();
+
+    // Wait for the exports handed over so far; those not waited for, if interrupted, are forgotten
+    public void awaitExports() {
+        MatrixExporter exporter = this.exporter;
+        try {
+            Future<double[]> f;
+            while ((f = exports.poll()) != null) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Log.d(TAG, "Exception: " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.d(TAG, "Exception: " + e);
+            return;
+        } finally {
+            exports.clear();
+        }
+        if (exporter != null) {
+            Log.d(TAG, "exports written, waited " + exporter.getBlockedNanos() / 1000 + " microseconds for the exporter's queue");
+        }
     }
     public double toDouble(byte[] bytes) {
         return ByteBuffer.wrap(bytes).getDouble();
@@ -619,6 +679,9 @@ public class MainActivity extends AppCompatActivity {
         tv.append("\n" + answer + "\n");
         String version = getAndroidVersion();
         tv.append(version + "\n\n");
+        if (benchmarkReport != null) {
+            tv.append(benchmarkReport + "\n");
+        }
         tv.append(getResources().getString(R.string.epilogue));
         Log.d(TAG, "all done");
 
@@ -635,7 +698,7 @@ public class MainActivity extends AppCompatActivity {
             Log.d(TAG, "getCPUFrequencyCurrent " + e.toString());
         }
         Log.d(TAG, "getCPUFrequencyCurrent = " + freq);
-        int eff = (int) (100 * flopCount(nRows, nCols) / assemblyTime / (4 * freq));
+        int eff = (int) (100 * flopCount(nRows, nCols) / Math.max(1L, assemblyTime) / Math.max(1, 4 * freq));
         Log.d(TAG, "efficiency = " + eff + "% based on clock frequency of " + freq);
     }
 
@@ -648,8 +711,18 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void doInBackground() {
 
+                try {
+                    Log.d(TAG, "QR engine selected " + engines.select(nRows, nCols).getName());    // before Q is timed
+                } catch (IllegalStateException e) {
+                    Log.d(TAG, "Exception: " + e);          // evaluateQR reports it
+                }
                 displ = evaluateQR(nRows, nCols, assemblyTime);
 
+                if (runBenchmark) {
+                    benchmarkReport = Benchmark.run(nRows, nCols, tuner);
+                }
+                awaitExports();                             // written while the benchmark ran
+
                 allDone = "Thank you for your attention.\n";
 
             }
@@ -0,0 +1,158 @@
+package com.bob.complexqr;
+
+/*
+        A complex matrix read in place from the payload of a mapped MatrixFile.
+
+        Nothing is parsed or copied when it is made: getReal and getImag index the mapped buffer
+        according to the header's layout, shape and precision, in the file's byte order, and the
+        pages come in as they are touched.  Below the diagonal of an UPPER or PACKED matrix is zero.
+
+        asDirect gives the payload as a DirectComplexMatrix, also without a copy, when it is already
+        what the kernels take: doubles, row-major, stored in full.  toInterleaved, toComplexMatrix
+        and toPackedUpperTriangular copy out into the forms the rest of the package uses.
+
+        Writing through a view of a READ_ONLY mapping throws ReadOnlyBufferException.
+*/
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+public class MappedComplexMatrix {
+
+    private final MatrixFile.Header header;
+    private final ByteBuffer payload;               // the mapped payload, in the file's byte order
+    private final DoubleBuffer doubles;             // view of payload if the precision is DOUBLE, otherwise null
+    private final FloatBuffer floats;               // view of payload if the precision is FLOAT, otherwise null
+
+    // CONSTRUCTORS
+    // View payload as described by header; for MatrixFile.map
+    MappedComplexMatrix(MatrixFile.Header header, ByteBuffer payload) {
+        this.header = header;
+        this.payload = payload;
+        this.doubles = (header.precision == MatrixFile.DOUBLE) ? MatrixFile.doubles(payload) : null;
+        this.floats = (header.precision == MatrixFile.FLOAT) ? MatrixFile.floats(payload) : null;
+    }
+
+    // GET VALUES
+    public MatrixFile.Header getHeader() {
+        return this.header;
+    }
+
+    public int getNrow() {
+        return this.header.rows;
+    }
+
+    public int getNcol() {
+        return this.header.cols;
+    }
+
+    // The mapped payload, in the file's byte order
+    public ByteBuffer getPayload() {
+        return this.payload.duplicate().order(this.payload.order());
+    }
+
+    public double getReal(int i, int j) {
+        int p = index(i, j);
+        return (p < 0) ? 0.0 : part(p);
+    }
+
+    public double getImag(int i, int j) {
+        int p = index(i, j);
+        return (p < 0) ? 0.0 : part(p + 1);
+    }
+
+    public Complex getElement(int i, int j) {
+        return new Complex(getReal(i, j), getImag(i, j));
+    }
+
+    private double part(int p) {
+        return (this.doubles != null) ? this.doubles.get(p) : this.floats.get(p);
+    }
+
+    // Index of the real part of element (i, j) in the payload, or -1 below the diagonal of a triangle
+    private int index(int i, int j) {
+        int m = this.header.rows, n = this.header.cols;
+        if (i < 0 || i >= m || j < 0 || j >= n) throw new IllegalArgumentException("element (" + i + ", " + j + ") is outside the " + m + "x" + n + " matrix");
+        if (j < i && this.header.shape != MatrixFile.FULL) {
+            return -1;
+        }
+        if (this.header.shape == MatrixFile.PACKED) {
+            return PackedUpperTriangular.index(n, i, j);
+        }
+        return (this.header.layout == MatrixFile.ROW_MAJOR) ? 2 * (n * i + j) : 2 * (m * j + i);
+    }
+
+    // SET VALUES
+    // Set element (i, j), on or above the diagonal of a triangle, in the mapping and so, if it is READ_WRITE, in the file
+    public void setElement(int i, int j, double real, double imag) {
+        int p = index(i, j);
+        if (p < 0) throw new IllegalArgumentException("element (" + i + ", " + j + ") is below the diagonal of a triangular matrix");
+        if (this.doubles != null) {
+            this.doubles.put(p, real);
+            this.doubles.put(p + 1, imag);
+        } else {
+            this.floats.put(p, (float) real);
+            this.floats.put(p + 1, (float) imag);
+        }
+    }
+
+    // VIEWS AND COPIES
+    // The payload as a DirectComplexMatrix, without a copy; only for doubles stored row-major in full
+    public DirectComplexMatrix asDirect() {
+        MatrixFile.Header h = this.header;
+        if (h.precision != MatrixFile.DOUBLE || h.layout != MatrixFile.ROW_MAJOR || h.shape == MatrixFile.PACKED) {
+            throw new IllegalStateException("only a row-major matrix of doubles stored in full can be used in place");
+        }
+        return new DirectComplexMatrix(getPayload(), h.rows, h.cols);
+    }
+
+    // Copy out as an array stored as for complexQR, zero below the diagonal of a triangle
+    public double[] toInterleaved() {
+        int m = this.header.rows, n = this.header.cols;
+        double[] a = new double[2 * m * n];
+        MatrixFile.Header h = this.header;
+        if (h.precision == MatrixFile.DOUBLE && h.layout == MatrixFile.ROW_MAJOR && h.shape == MatrixFile.FULL) {
+            DoubleBuffer d = this.doubles.duplicate();
+            d.clear();
+            d.get(a);
+            return a;
+        }
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                int p = index(i, j);
+                if (p >= 0) {
+                    a[2 * (n * i + j)] = part(p);
+                    a[2 * (n * i + j) + 1] = part(p + 1);
+                }
+            }
+        }
+        return a;
+    }
+
+    public ComplexMatrix toComplexMatrix() {
+        return ComplexHouseholder.toComplexMatrix(toInterleaved(), 0, this.header.cols, this.header.rows, this.header.cols);
+    }
+
+    // Copy out the upper triangle of the first n rows, packed
+    public PackedUpperTriangular toPackedUpperTriangular() {
+        int n = this.header.cols;
+        if (this.header.rows < n) throw new IllegalStateException("a " + this.header.rows + "x" + n + " matrix has no " + n + "x" + n + " triangle");
+        PackedUpperTriangular r = new PackedUpperTriangular(n);
+        double[] packed = r.getArrayReference();
+        if (this.header.shape == MatrixFile.PACKED && this.doubles != null) {
+            DoubleBuffer d = this.doubles.duplicate();
+            d.clear();
+            d.get(packed);
+            return r;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                int p = index(i, j), q = PackedUpperTriangular.index(n, i, j);
+                packed[q] = part(p);
+                packed[q + 1] = part(p + 1);
+            }
+        }
+        return r;
+    }
+}
@@ -6,7 +6,8 @@ public class Matrix {
     private int numberOfColumns = 0;                // number of columns
     private double matrix[][] = null; 	            // 2-D  Matrix
     private double hessenberg[][] = null; 	        // 2-D  Hessenberg equivalent
-    private boolean hessenbergDone = false;         // = true when Hessenberg matrix calculated
+    private int hessenbergCount = -1;               // modCount when Hessenberg matrix calculated
+    private int modCount = 0;                       // references to the elements handed out, through which they may change
     private int permutationIndex[] = null;          // row permutation index
     private double rowSwapIndex = 1.0D;             // row swap index
     private double[] eigenValues = null;            // eigen values of the matrix
@@ -151,12 +152,14 @@ public class Matrix {
 
     // Return a reference to the internal 2-D array
     public double[][] getArrayReference(){
+        this.modCount++;                            // the caller may change the elements through it
         return this.matrix;
     }
 
     // Return a reference to the internal 2-D array
     // included for backward compatibility with incorrect earlier documentation
     public double[][] getArrayPointer(){
+        this.modCount++;                            // the caller may change the elements through it
         return this.matrix;
     }
 
@@ -216,4 +219,107 @@ public class Matrix {
     }
 
 
+    // HESSENBERG MATRIX
+    // Returns a copy of the upper Hessenberg form of this matrix, by Householder reduction, see ComplexEigen.hessenberg
+    // The reduction is cached until a reference to the elements is taken, as ComplexMatrix.getHessenberg
+    public double[][] hessenbergMatrix(){
+        if(this.numberOfRows!=this.numberOfColumns)throw new IllegalArgumentException("Matrix is not square");
+        if(this.hessenbergCount!=this.modCount){
+            int n = this.numberOfRows;
+            double[] a = new double[2*n*n];
+            for(int i=0; i<n; i++){
+                for(int j=0; j<n; j++)a[2*(n*i + j)] = this.matrix[i][j];
+            }
+            ComplexEigen.hessenberg(a, n, new double[2*n]);
+            double[] h = ComplexEigen.hessenbergMatrix(a, n);
+            this.hessenberg = new double[n][n];
+            for(int i=0; i<n; i++){
+                for(int j=0; j<n; j++)this.hessenberg[i][j] = h[2*(n*i + j)];
+            }
+            this.hessenbergCount = this.modCount;
+        }
+        double[][] c = new double[this.numberOfRows][];
+        for(int i=0; i<this.numberOfRows; i++)c[i] = this.hessenberg[i].clone();
+        return c;
+    }
+
+    // EIGEN VALUES AND EIGEN VECTORS OF A SYMMETRIC MATRIX
+    // Jacobi method, see HermitianEigen.jacobi
+    // Fills eigenValues and eigenVector in the order the Jacobi method leaves them,
+    // sortedEigenValues and sortedEigenVector in descending order, eigenIndices and numberOfRotations
+    public void symmetricEigen(){
+        if(this.numberOfRows!=this.numberOfColumns)throw new IllegalArgumentException("Matrix is not square");
+        int n = this.numberOfRows;
+        double[] a = new double[2*n*n];
+        for(int i=0; i<n; i++){
+            for(int j=0; j<n; j++){
+                if(this.matrix[i][j]!=this.matrix[j][i])throw new IllegalArgumentException("Matrix is not symmetric");
+                a[2*(n*i + j)] = this.matrix[i][j];
+            }
+        }
+        HermitianEigen eigen = HermitianEigen.jacobi(a, n, true, this.maximumJacobiIterations, 1);
+        double[] vectors = eigen.getEigenVectorArray();
+
+        this.sortedEigenValues = eigen.getEigenValues();
+        this.eigenIndices = eigen.getEigenIndices();
+        this.eigenValues = new double[n];
+        this.eigenVector = new double[n][n];
+        this.sortedEigenVector = new double[n][n];
+        for(int j=0; j<n; j++){
+            int k = this.eigenIndices[j];
+            this.eigenValues[k] = this.sortedEigenValues[j];
+            for(int i=0; i<n; i++){
+                this.sortedEigenVector[i][j] = vectors[2*(n*i + j)];
+                this.eigenVector[i][k] = vectors[2*(n*i + j)];
+            }
+        }
+        this.numberOfRotations = eigen.getNumberOfRotations();
+        this.eigenDone = true;
+    }
+
+    // Return the eigen values in the order the Jacobi method leaves them
+    public double[] getEigenValues(){
+        if(!this.eigenDone)this.symmetricEigen();
+        return this.eigenValues;
+    }
+
+    // Return the eigen values sorted into descending order
+    public double[] getSortedEigenValues(){
+        if(!this.eigenDone)this.symmetricEigen();
+        return this.sortedEigenValues;
+    }
+
+    // Return the eigen vectors as columns, in the order of getEigenValues()
+    public double[][] getEigenVector(){
+        if(!this.eigenDone)this.symmetricEigen();
+        return this.eigenVector;
+    }
+
+    // Return the eigen vectors as columns, in the order of getSortedEigenValues()
+    public double[][] getSortedEigenVector(){
+        if(!this.eigenDone)this.symmetricEigen();
+        return this.sortedEigenVector;
+    }
+
+    // Return the indices of the sorted eigen values in the unsorted order
+    public int[] getEigenIndices(){
+        if(!this.eigenDone)this.symmetricEigen();
+        return this.eigenIndices;
+    }
+
+    // Return the number of rotations used by the Jacobi method
+    public int getNumberOfJacobiRotations(){
+        return this.numberOfRotations;
+    }
+
+    // Reset the maximum number of Jacobi sweeps
+    public void setMaximumNumberOfJacobiIterations(int max){
+        this.maximumJacobiIterations = max;
+    }
+
+    // Return the maximum number of Jacobi sweeps
+    public int getMaximumNumberOfJacobiIterations(){
+        return this.maximumJacobiIterations;
+    }
+
 }
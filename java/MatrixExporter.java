@@ -0,0 +1,224 @@
+package com.bob.complexqr;
+
+/*
+        Bulk export of double arrays, the .dat files of MainActivity, through a FileChannel.
+
+        MainActivity.convertDoubleArrayToByteArray made an 8 byte ByteBuffer and a byte[] for every
+        double and copied each into a byte[] of the whole array before writing it: 4 m^2 objects for
+        an m x m Q.  Here the array is put into one direct ByteBuffer, reused for every write, through
+        its DoubleBuffer view, and each BUFFER_BYTES is written with one channel write.  The bytes are
+        the same, big endian by default.
+
+        writeAsync hands the array to the exporter's writer thread, through a bounded queue, and
+        returns a Future at once, so the thread that computed the matrix goes on to the next
+        factorization while the last one is written.  The exporter owns the array until the Future
+        is done and then gives it back, by get, to be reused.  Writes run one at a time in the order
+        they were queued.
+
+        The queue holds at most capacity writes.  When storage falls behind and the queue is full,
+        writeAsync waits for room, so finished buffers can not pile up without limit; the time spent
+        waiting is getBlockedNanos.  tryWriteAsync returns null instead of waiting.
+
+        close() waits for the queued writes to finish and the writer thread to end.  A write queued
+        as close() is called either runs or is cancelled; its Future always completes.
+*/
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MatrixExporter implements AutoCloseable {
+
+    public static final String TAG = MainActivity.TAG;
+
+    public static final int BUFFER_BYTES = 1 << 16;         // staged per channel write
+    public static final int QUEUE_CAPACITY = 4;             // writes queued before writeAsync waits
+
+    private final ByteBuffer buffer;                        // reused by every write, guarded by this
+    private final DoubleBuffer doubles;                     // view of buffer
+    private final BlockingQueue<FutureTask<double[]>> queue;
+    private final FutureTask<double[]> stop;                // queued by close, ends the writer thread
+    private final Thread writer;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicInteger submitting = new AtomicInteger();   // callers between the closed check and the queue
+    private final AtomicLong blocked = new AtomicLong();    // nanoseconds writeAsync waited for room
+
+    // CONSTRUCTORS
+    // Big endian, as ByteBuffer.putDouble and the existing .dat files
+    public MatrixExporter() {
+        this(ByteOrder.BIG_ENDIAN, QUEUE_CAPACITY);
+    }
+
+    public MatrixExporter(ByteOrder order, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("queue capacity, " + capacity + ", must be positive");
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(order);
+        this.doubles = this.buffer.asDoubleBuffer();
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.stop = task(null, null);
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "MatrixExporter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // The writer thread: run the queued writes in order until close, then cancel any queued after it.
+    // submitting is read before the queue, so a caller that passed the closed check is waited for.
+    private void drain() {
+        try {
+            while (true) {
+                FutureTask<double[]> task = this.queue.take();
+                if (task == this.stop) {
+                    break;
+                }
+                task.run();
+            }
+        } catch (InterruptedException e) {
+            Log.d(TAG, "MatrixExporter interrupted: " + e);
+        }
+        while (true) {
+            int callers = this.submitting.get();
+            FutureTask<double[]> task = this.queue.poll();
+            if (task != null) {
+                task.cancel(false);
+            } else if (callers == 0) {
+                return;
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    public ByteOrder getOrder() {
+        return this.buffer.order();
+    }
+
+    // WRITING
+    // Write len doubles of data from off to channel, at its position
+    public synchronized void write(WritableByteChannel channel, double[] data, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || data.length - off < len) throw new IllegalArgumentException("array of " + data.length + " doubles has no " + len + " from " + off);
+        int step = BUFFER_BYTES / 8;
+        for (int p = 0; p < len; p += step) {
+            int count = Math.min(step, len - p);
+            this.doubles.clear();
+            this.doubles.put(data, off + p, count);
+            this.buffer.clear();
+            this.buffer.limit(8 * count);
+            while (this.buffer.hasRemaining()) {
+                channel.write(this.buffer);
+            }
+        }
+    }
+
+    // Replace file with the doubles of data
+    public void write(File file, double[] data) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            write(os.getChannel(), data, 0, data.length);
+        } finally {
+            os.close();
+        }
+    }
+
+    // Write data to file on the writer thread, waiting for room in the queue if it is full.  The exporter owns
+    // data until the Future is done; get returns it.  A failure is logged, and thrown by get.
+    public Future<double[]> writeAsync(File file, double[] data) {
+        FutureTask<double[]> task = task(file, data);
+        this.submitting.incrementAndGet();
+        try {
+            if (this.closed.get()) throw new IllegalStateException("exporter is closed");
+            long start = System.nanoTime();
+            this.queue.put(task);
+            this.blocked.addAndGet(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for the exporter", e);
+        } finally {
+            this.submitting.decrementAndGet();
+        }
+        return task;
+    }
+
+    // As writeAsync, but null at once, data still the caller's, if the queue is full
+    public Future<double[]> tryWriteAsync(File file, double[] data) {
+        FutureTask<double[]> task = task(file, data);
+        this.submitting.incrementAndGet();
+        try {
+            if (this.closed.get()) throw new IllegalStateException("exporter is closed");
+            return this.queue.offer(task) ? task : null;
+        } finally {
+            this.submitting.decrementAndGet();
+        }
+    }
+
+    // A write of data to file, or if file is null nothing
+    private FutureTask<double[]> task(final File file, final double[] data) {
+        return new FutureTask<>(new Callable<double[]>() {
+            public double[] call() throws IOException {
+                if (file != null) {
+                    try {
+                        write(file, data);
+                    } catch (IOException e) {
+                        Log.d(TAG, "Exception: " + e);
+                        throw e;
+                    }
+                }
+                return data;
+            }
+        });
+    }
+
+    // Writes queued and not yet started
+    public int getQueued() {
+        return this.queue.size();
+    }
+
+    // Total time writeAsync has waited for room in the queue, nanoseconds
+    public long getBlockedNanos() {
+        return this.blocked.get();
+    }
+
+    // Wait for every write queued so far
+    public void flush() {
+        try {
+            writeAsync(null, null).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for the exporter", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("waiting for the exporter failed", e);
+        }
+    }
+
+    // Finish the queued writes and wait for the writer thread to end; nothing more can be queued.  Calling close() again does nothing.
+    @Override
+    public void close() {
+        if (!this.closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.queue.put(this.stop);
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted closing the exporter", e);
+        }
+    }
+}
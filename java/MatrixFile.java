@@ -0,0 +1,238 @@
+package com.bob.complexqr;
+
+/*
+        A binary file format for complex matrices that says what it holds, and a reader that maps it.
+
+        The .dat files MainActivity writes are raw big endian doubles: nothing in them gives the
+        shape, the layout or the precision, so they can only be read back by knowing them.  A
+        matrix file is a 64 byte header followed by the payload:
+
+            offset  bytes
+              0       4     magic, "CQRM"
+              4       1     version, VERSION
+              5       1     byte order of everything after this byte, 'B' big or 'L' little endian
+              6       1     precision, bytes per real or imag part: DOUBLE (8) or FLOAT (4)
+              7       1     layout: ROW_MAJOR, as for complexQR, or COLUMN_MAJOR, as ColumnMajorHouseholder
+              8       1     shape: FULL, UPPER (triangular, zero below the diagonal, stored in full) or
+                            PACKED (upper triangular packed by rows, as PackedUpperTriangular)
+              9       7     zero
+             16       8     rows
+             24       8     columns
+             32       8     offset of the payload, 64 for version 1
+             40       8     bytes of payload
+             48      16     zero
+
+        The payload is real and imag interleaved, elements in the order of the layout, so it starts
+        on a 64 byte boundary and is exactly the array the kernels use.  A reader rejects a later
+        version, a bad magic or a payload that does not match the shape.
+
+        map maps the file and returns a MappedComplexMatrix over the payload: no parse, no copy, the
+        pages are read as elements are touched.  mapRaw does the same for a headerless .dat file of
+        known shape.
+*/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+public final class MatrixFile {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+
+    public static final int DOUBLE = 8;                     // precision, bytes per part
+    public static final int FLOAT = 4;
+
+    public static final int ROW_MAJOR = 0;                  // layout
+    public static final int COLUMN_MAJOR = 1;
+
+    public static final int FULL = 0;                       // shape
+    public static final int UPPER = 1;
+    public static final int PACKED = 2;
+
+    private static final byte[] MAGIC = {'C', 'Q', 'R', 'M'};
+    private static final int CHUNK = 1 << 16;               // bytes of payload staged per write
+
+    private MatrixFile() {
+    }
+
+    // What a header says
+    public static final class Header {
+        public final int version;
+        public final ByteOrder order;
+        public final int precision;
+        public final int layout;
+        public final int shape;
+        public final int rows;
+        public final int cols;
+        public final long offset;                           // of the payload
+
+        public Header(ByteOrder order, int precision, int layout, int shape, int rows, int cols) {
+            this(VERSION, order, precision, layout, shape, rows, cols, HEADER_BYTES);
+        }
+
+        private Header(int version, ByteOrder order, int precision, int layout, int shape, int rows, int cols, long offset) {
+            if (precision != DOUBLE && precision != FLOAT) throw new IllegalArgumentException("precision, " + precision + ", must be DOUBLE or FLOAT");
+            if (layout != ROW_MAJOR && layout != COLUMN_MAJOR) throw new IllegalArgumentException("layout, " + layout + ", must be ROW_MAJOR or COLUMN_MAJOR");
+            if (shape != FULL && shape != UPPER && shape != PACKED) throw new IllegalArgumentException("shape, " + shape + ", must be FULL, UPPER or PACKED");
+            if (rows < 0 || cols < 0) throw new IllegalArgumentException("dimensions, " + rows + "x" + cols + ", must not be negative");
+            if (shape == PACKED && rows != cols) throw new IllegalArgumentException("a packed triangle must be square, not " + rows + "x" + cols);
+            this.version = version;
+            this.order = order;
+            this.precision = precision;
+            this.layout = layout;
+            this.shape = shape;
+            this.rows = rows;
+            this.cols = cols;
+            this.offset = offset;
+        }
+
+        // Complex elements in the payload
+        public long elements() {
+            return (this.shape == PACKED) ? (long) this.rows * (this.rows + 1) / 2 : (long) this.rows * this.cols;
+        }
+
+        public long payloadBytes() {
+            return 2L * this.precision * elements();
+        }
+
+        ByteBuffer encode() {
+            ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES).order(this.order);
+            b.put(MAGIC);
+            b.put((byte) this.version);
+            b.put((byte) ((this.order == ByteOrder.BIG_ENDIAN) ? 'B' : 'L'));
+            b.put((byte) this.precision);
+            b.put((byte) this.layout);
+            b.put((byte) this.shape);
+            b.putLong(16, this.rows);
+            b.putLong(24, this.cols);
+            b.putLong(32, this.offset);
+            b.putLong(40, payloadBytes());
+            b.clear();
+            return b;
+        }
+
+        static Header decode(ByteBuffer b) throws IOException {
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (b.get(i) != MAGIC[i]) throw new IOException("not a matrix file");
+            }
+            int version = b.get(4);
+            if (version < 1 || version > VERSION) throw new IOException("matrix file version " + version + " is not supported, only up to " + VERSION);
+            ByteOrder order;
+            if (b.get(5) == 'B') {
+                order = ByteOrder.BIG_ENDIAN;
+            } else if (b.get(5) == 'L') {
+                order = ByteOrder.LITTLE_ENDIAN;
+            } else {
+                throw new IOException("matrix file byte order, " + b.get(5) + ", is neither 'B' nor 'L'");
+            }
+            b.order(order);
+            long rows = b.getLong(16), cols = b.getLong(24);
+            if (rows > Integer.MAX_VALUE || cols > Integer.MAX_VALUE) throw new IOException("matrix file shape, " + rows + "x" + cols + ", is too large");
+            Header h;
+            try {
+                h = new Header(version, order, b.get(6), b.get(7), b.get(8), (int) rows, (int) cols, b.getLong(32));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("bad matrix file header: " + e.getMessage(), e);
+            }
+            if (h.offset < HEADER_BYTES) throw new IOException("matrix file payload offset, " + h.offset + ", is inside the header");
+            if (b.getLong(40) != h.payloadBytes()) throw new IOException("matrix file payload of " + b.getLong(40) + " bytes does not match the shape " + rows + "x" + cols);
+            return h;
+        }
+    }
+
+    // WRITING
+    // The m x n matrix a, stored as for complexQR; shape FULL or UPPER, which only records that a is triangular
+    public static void write(WritableByteChannel out, double[] a, int m, int n, int shape, ByteOrder order) throws IOException {
+        if (shape == PACKED) throw new IllegalArgumentException("write a PackedUpperTriangular for a packed triangle");
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        write(out, new Header(order, DOUBLE, ROW_MAJOR, shape, m, n), a, null);
+    }
+
+    // The m x n matrix c stored by columns, as ColumnMajorHouseholder
+    public static void writeColumnMajor(WritableByteChannel out, double[] c, int m, int n, ByteOrder order) throws IOException {
+        if (c.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        write(out, new Header(order, DOUBLE, COLUMN_MAJOR, FULL, m, n), c, null);
+    }
+
+    // R packed, n(n+1)/2 elements
+    public static void write(WritableByteChannel out, PackedUpperTriangular r, ByteOrder order) throws IOException {
+        write(out, new Header(order, DOUBLE, ROW_MAJOR, PACKED, r.getN(), r.getN()), r.getArrayReference(), null);
+    }
+
+    // A single precision matrix
+    public static void write(WritableByteChannel out, FloatComplexMatrix a, ByteOrder order) throws IOException {
+        write(out, new Header(order, FLOAT, ROW_MAJOR, FULL, a.getNrow(), a.getNcol()), null, a.getArrayReference());
+    }
+
+    // The header, then the payload from d or f, staged through a buffer in the header's byte order
+    private static void write(WritableByteChannel out, Header h, double[] d, float[] f) throws IOException {
+        writeFully(out, h.encode());
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK).order(h.order);
+        int parts = (int) (2 * h.elements());
+        int step = CHUNK / h.precision;
+        for (int p = 0; p < parts; p += step) {
+            int len = Math.min(step, parts - p);
+            chunk.clear();
+            if (d != null) {
+                chunk.asDoubleBuffer().put(d, p, len);
+            } else {
+                chunk.asFloatBuffer().put(f, p, len);
+            }
+            chunk.limit(len * h.precision);
+            writeFully(out, chunk);
+        }
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            out.write(b);
+        }
+    }
+
+    // READING
+    // The header at the start of channel
+    public static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES);
+        while (b.hasRemaining()) {
+            if (channel.read(b, b.position()) < 0) throw new IOException("matrix file is shorter than its header");
+        }
+        return Header.decode(b);
+    }
+
+    // Map the matrix file on channel read only and view its payload in place
+    public static MappedComplexMatrix map(FileChannel channel) throws IOException {
+        return map(channel, FileChannel.MapMode.READ_ONLY);
+    }
+
+    // Map with mode READ_ONLY, READ_WRITE (changes go to the file) or PRIVATE (changes stay in memory)
+    public static MappedComplexMatrix map(FileChannel channel, FileChannel.MapMode mode) throws IOException {
+        Header h = readHeader(channel);
+        if (channel.size() < h.offset + h.payloadBytes()) throw new IOException("matrix file is shorter than its payload");
+        if (h.payloadBytes() > Integer.MAX_VALUE) throw new IOException("matrix file payload of " + h.payloadBytes() + " bytes is too large to map");
+        ByteBuffer payload = channel.map(mode, h.offset, h.payloadBytes()).order(h.order);
+        return new MappedComplexMatrix(h, payload);
+    }
+
+    // Map a headerless m x n .dat file of doubles stored as for complexQR, big endian as MainActivity writes them
+    public static MappedComplexMatrix mapRaw(FileChannel channel, int m, int n) throws IOException {
+        Header h = new Header(VERSION, ByteOrder.BIG_ENDIAN, DOUBLE, ROW_MAJOR, FULL, m, n, 0L);
+        if (channel.size() < h.payloadBytes()) throw new IOException("file of " + channel.size() + " bytes is too short for a " + m + "x" + n + " complex matrix");
+        if (h.payloadBytes() > Integer.MAX_VALUE) throw new IOException("a " + m + "x" + n + " complex matrix is too large to map");
+        ByteBuffer payload = channel.map(FileChannel.MapMode.READ_ONLY, 0L, h.payloadBytes()).order(h.order);
+        return new MappedComplexMatrix(h, payload);
+    }
+
+    // Typed views of a payload
+    static DoubleBuffer doubles(ByteBuffer payload) {
+        return payload.duplicate().order(payload.order()).asDoubleBuffer();
+    }
+
+    static FloatBuffer floats(ByteBuffer payload) {
+        return payload.duplicate().order(payload.order()).asFloatBuffer();
+    }
+}
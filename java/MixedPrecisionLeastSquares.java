@@ -0,0 +1,159 @@
+package com.bob.complexqr;
+
+/*
+        Least squares solution of A x = b, A m x n with m >= n, to double precision accuracy from a
+        single precision factorization.
+
+        A is rounded to float and factored once by FloatComplexQR, natively when the library is
+        loaded, half the memory traffic of the double Householder loops.  Each solve is a float solve followed by rounds of iterative
+        refinement with the residuals in double, FloatComplexQR.refine, until the correction is
+        below sqrt(n) eps(double) relative to x.  The refinement rounds are O(mn), so for a well conditioned A the
+        cost is close to that of the float factorization alone.
+
+        Refinement converges only while cond(A) is well below 1/eps(float), about 1e7.  The
+        residual starts at zero, so the first two corrections are both of the size of the float
+        error.  After that, if a correction fails to shrink by at least STALL_RATIO, is not finite,
+        the float R is singular, or MAXIMUM_STEPS pass without convergence, the solve falls back
+        automatically to the double ComplexQR, which is factored once, when first needed, and kept.
+
+        A is kept by reference for the residuals and must not be changed while the solver is in use.
+*/
+
+import android.util.Log;
+
+public class MixedPrecisionLeastSquares {
+
+    public static final String TAG = MainActivity.TAG;
+
+    private static final int MAXIMUM_STEPS      = 10;       // refinement rounds before giving up
+    private static final double STALL_RATIO    = 0.5;      // each correction must be at most this times the last
+
+    private final int nrow;
+    private final int ncol;
+    private final double[] a;                               // A in double, for the residuals
+    private FloatComplexQR single = null;                   // null if the float factorization failed
+    private ComplexQR fallback = null;                      // double factorization, made when first needed
+
+    private int refinementSteps = 0;                        // of the last solve
+    private boolean lastFellBack = false;
+    private int fallbackCount = 0;
+
+    // CONSTRUCTORS
+    public MixedPrecisionLeastSquares(ComplexMatrix matrix) {
+        this(ComplexHouseholder.toInterleaved(matrix), matrix.getNrow(), matrix.getNcol());
+    }
+
+    // A stored as for complexQR; a is not altered but is kept by reference
+    public MixedPrecisionLeastSquares(double[] a, int m, int n) {
+        if (m < n) throw new IllegalArgumentException("rows, " + m + ", are fewer than columns, " + n);
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        this.nrow = m;
+        this.ncol = n;
+        this.a = a;
+        float[] f = new float[2 * m * n];
+        boolean finite = true;
+        for (int p = 0; p < f.length; p++) {
+            f[p] = (float) a[p];
+            finite &= Float.isFinite(f[p]);                 // overflow to infinity, or NaN: solve in double
+        }
+        if (finite) {
+            this.single = new FloatComplexQR(f, m, n);
+        }
+    }
+
+    // SOLUTIONS
+    // Least squares solution of A x = b, b m elements interleaved; returns x, n elements interleaved
+    public double[] solve(double[] b) {
+        if (b.length < 2 * this.nrow) throw new IllegalArgumentException("vector is too short for " + this.nrow + " complex elements");
+        this.refinementSteps = 0;
+        this.lastFellBack = false;
+        if (this.single != null) {
+            try {
+                double[] x = this.single.solve(b);
+                double[] r = new double[2 * this.nrow];
+                double last = Double.POSITIVE_INFINITY;
+                double tolerance = Math.sqrt(this.ncol) * Math.ulp(1.0);
+                while (this.refinementSteps < MAXIMUM_STEPS) {
+                    double dx = this.single.refine(this.a, b, x, r);
+                    this.refinementSteps++;
+                    if (Double.isNaN(dx) || Double.isInfinite(dx)) {
+                        break;
+                    }
+                    if (dx <= tolerance * norm(x)) {
+                        return x;
+                    }
+                    if (this.refinementSteps > 2 && dx > STALL_RATIO * last) {
+                        break;                                  // stalled
+                    }
+                    last = dx;
+                }
+            } catch (ArithmeticException e) {
+                Log.d(TAG, "mixed precision solve: " + e.getMessage());
+            }
+        }
+        return solveDouble(b);
+    }
+
+    // Least squares solution of A x = b
+    public Complex[] solve(Complex[] b) {
+        if (b.length != this.nrow) throw new IllegalArgumentException("vector length, " + b.length + ", is not equal to the number of rows, " + this.nrow);
+        double[] y = new double[2 * this.nrow];
+        for (int i = 0; i < this.nrow; i++) {
+            y[2 * i] = b[i].getReal();
+            y[2 * i + 1] = b[i].getImag();
+        }
+        double[] x = solve(y);
+        Complex[] result = new Complex[this.ncol];
+        for (int j = 0; j < this.ncol; j++) {
+            result[j] = new Complex(x[2 * j], x[2 * j + 1]);
+        }
+        return result;
+    }
+
+    private double[] solveDouble(double[] b) {
+        Log.d(TAG, "mixed precision refinement stalled after " + this.refinementSteps + " steps, solving in double");
+        this.lastFellBack = true;
+        this.fallbackCount++;
+        if (this.fallback == null) {
+            this.fallback = new ComplexQR(this.a.clone(), this.nrow, this.ncol);
+        }
+        double[] y = new double[2 * this.nrow];
+        System.arraycopy(b, 0, y, 0, y.length);
+        this.fallback.solve(y);
+        double[] x = new double[2 * this.ncol];
+        System.arraycopy(y, 0, x, 0, x.length);
+        return x;
+    }
+
+    private static double norm(double[] x) {
+        double sum = 0.0;
+        for (double v : x) {
+            sum += v * v;
+        }
+        return Math.sqrt(sum);
+    }
+
+    // GET VALUES
+    public int getNrow() {
+        return this.nrow;
+    }
+
+    public int getNcol() {
+        return this.ncol;
+    }
+
+    // Refinement rounds of the last solve
+    public int getRefinementSteps() {
+        return this.refinementSteps;
+    }
+
+    // True if the last solve fell back to double
+    public boolean usedFallback() {
+        return this.lastFellBack;
+    }
+
+    // Number of solves that fell back to double
+    public int getFallbackCount() {
+        return this.fallbackCount;
+    }
+}
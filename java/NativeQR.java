@@ -0,0 +1,82 @@
+package com.bob.complexqr;
+
+/*
+        Static entry points into the 'complexqr' native library that work on direct buffers rather
+        than Java arrays, for DirectComplexMatrix.
+
+        complexHouseholderDirect hands complexQR the address of the buffers, found with
+        GetDirectBufferAddress, so unlike MainActivity.complexHouseholder nothing is pinned or
+        copied back by JNI.  The buffers must be in native byte order, rows contiguous, interleaved
+        real and imag, as for complexQR.
+
+        allocate and free give direct buffers whose memory is malloc'ed natively and released only
+        by free, so the lifetime is explicit rather than left to the collector.
+
+        complexHouseholder is MainActivity.complexHouseholder as a static method, for QrEngines,
+        so that the native engine does not need an activity.  complexHouseholderPortable is the
+        same with complexQR.c, the C version, which the library has on every architecture; on
+        arm64 it is the baseline the assembly language is compared with, elsewhere complexQR
+        itself is the C version.  complexHouseholderNeon is complexQRneon.S, complexQR with its inner
+        loops in the NEON q registers, to rounding the same results.
+
+        complexHouseholderFloat is complexQR in single precision, complexQRf.S, for FloatComplexMatrix.
+        complexHouseholderFloatVectors is the same factorization in C keeping the Householder vectors,
+        as FloatComplexHouseholder.factor does, for FloatComplexQR.
+        complexHouseholderColumnMajor is complexQR on matrices stored by columns, complexQRcm.S.
+
+        If the library cannot be loaded, isAvailable() is false and DirectComplexMatrix falls back to
+        ByteBuffer.allocateDirect.
+*/
+
+import java.nio.ByteBuffer;
+
+public final class NativeQR {
+
+    private static final boolean AVAILABLE;
+
+    static {
+        boolean loaded;
+        try {
+            System.loadLibrary("complexqr");
+            loaded = true;
+        } catch (UnsatisfiedLinkError e) {
+            loaded = false;
+        }
+        AVAILABLE = loaded;
+    }
+
+    private NativeQR() {
+    }
+
+    // True if the native library is loaded
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    // Zeroed, 64 byte aligned native memory wrapped as a direct buffer; must be released with free
+    static native ByteBuffer allocate(long bytes);
+
+    // Release a buffer from allocate
+    static native void free(ByteBuffer buffer);
+
+    // complexQR on Java arrays, in place; qq may be null when q is 0.  Returns the kernel time in microseconds.
+    static native long complexHouseholder(double[] a, double[] qq, int m, int n, int q);
+
+    // complexQRc, the portable C version of complexQR, as complexHouseholder.  Returns microseconds.
+    static native long complexHouseholderPortable(double[] a, double[] qq, int m, int n, int q);
+
+    // complexQRneon, complexQR in the NEON q registers, as complexHouseholder.  Returns microseconds.
+    static native long complexHouseholderNeon(double[] a, double[] qq, int m, int n, int q);
+
+    // complexQR on direct buffers, in place; qq may be null when q is 0.  Returns the kernel time in microseconds.
+    static native long complexHouseholderDirect(ByteBuffer a, ByteBuffer qq, int m, int n, int q);
+
+    // complexQRf, single precision complexQR on float arrays; qq may be null when q is 0.  Returns microseconds.
+    static native long complexHouseholderFloat(float[] a, float[] qq, int m, int n, int q);
+
+    // complexQRfv, as FloatComplexHouseholder.factor: R and the vectors in a, v[0] in vHead.  Returns microseconds.
+    static native long complexHouseholderFloatVectors(float[] a, float[] vHead, int m, int n);
+
+    // complexQRcm, complexQR with A and Q stored by columns; qq may be null when q is 0.  Returns microseconds.
+    static native long complexHouseholderColumnMajor(double[] a, double[] qq, int m, int n, int q);
+}
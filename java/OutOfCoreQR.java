@@ -0,0 +1,506 @@
+package com.bob.complexqr;
+
+/*
+        Out-of-core tiled QR of a complex m x n matrix, m >= n, held in a file larger than memory.
+
+        The matrix is kept in a tile file: nb x nb tiles, one column of tiles after another, each tile
+        padded to nb x nb with its rows contiguous, in native byte order.  toTiles writes one from the
+        row-major layout of complexQR and the .dat files.  The tiles are mapped by FileChannel.map
+        for each read or write and the reference dropped after it.  The factorization leaves R and the
+        Householder vectors in the tiles, as TiledQR leaves them in its array, and the v[0] and T of
+        every kernel in records after the tiles.  writeR writes R out row-major.
+
+        The factorization is left-looking, by panels of as many tile columns as the cache allows:
+
+            read the panel, all its rows
+            for each column k of tiles to the left of the panel, its vectors read from the file:
+                the UNMQR and TSMQR of step k on every tile column of the panel, by a TaskGraph
+            factor the panel below the diagonal in memory, by TiledQR
+            write the panel and its vectors back
+
+        So each panel reads the file in file order from the start up to the panel and then writes the
+        panel, and every read or write is of whole tiles.  All of it is done by one I/O thread, in the
+        order it is asked for, while the factorization computes: the vectors of steps k + 1 and k + 2
+        are read while step k is applied, the next panel and the first vectors it applies once the last
+        vectors are asked for, and the panel is written back while the next one is updated.  That order
+        is what keeps a column from being read as vectors before it is written; the write is awaited
+        there only to report its failure.  The updates wait for the disk only when it is the slower;
+        getStallNanos is the time waited.  The heap holds three panels, the one written back, the one
+        updated or factored, which is copied while it is factored, and the one read ahead, and at most
+        2 AHEAD + 1 columns of vectors with their T, within cacheBytes.  Java has no call to unmap a
+        MappedByteBuffer: a mapping is released when its buffer is collected, so the address space
+        held is that of the buffers not yet collected, not bounded by this class.  Every write is
+        forced, so the pages of a mapping that is still held are clean and can be reclaimed.
+
+        A column of tiles is mapped as one buffer, so m * nb complex elements must be under 2 GB.
+*/
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class OutOfCoreQR implements AutoCloseable {
+
+    public static final String TAG = MainActivity.TAG;
+
+    public static final long CACHE_BYTES = 256L << 20;      // default heap for resident tiles
+    private static final int AHEAD = 2;                     // columns of vectors read ahead of the one applied
+
+    private final FileChannel channel;
+    private final int nrow;
+    private final int ncol;
+    private final int nb;
+    private final int mt, nt;                               // tile rows and tile columns
+    private final int width;                                // tile columns per panel
+    private final int threads;
+    private final long tileBytes;                           // one padded tile
+    private final long columnBytes;                         // one column of tiles
+    private final int recordDoubles;                        // v[0] and T of one kernel, padded
+    private final ExecutorService io;
+
+    private volatile long bytesRead = 0L;                   // counted by the I/O thread
+    private volatile long bytesWritten = 0L;
+    private volatile long ioNanos = 0L;
+    private long stallNanos = 0L;                           // compute waiting for the I/O thread
+    private long computeNanos = 0L;
+    private long elapsed = 0L;
+    private boolean factored = false;
+
+    // The vectors of one column k of tiles, rows k .. mt-1, with their v[0] and T
+    private static final class Vectors {
+        final double[][] v;
+        final double[][] head;
+        final double[][] t;
+
+        Vectors(int count) {
+            this.v = new double[count][];
+            this.head = new double[count][];
+            this.t = new double[count][];
+        }
+    }
+
+    // CONSTRUCTORS
+    // The m x n tile file open for reading and writing on channel, with the default tile size, cache and all the processors
+    public OutOfCoreQR(FileChannel channel, int m, int n) throws IOException {
+        this(channel, m, n, TiledQR.BLOCK_SIZE, CACHE_BYTES, Runtime.getRuntime().availableProcessors());
+    }
+
+    // The m x n tile file, nb x nb tiles, on channel.  cacheBytes bounds the tiles held in the heap.
+    public OutOfCoreQR(FileChannel channel, int m, int n, int nb, long cacheBytes, int threads) throws IOException {
+        if (m < n) throw new IllegalArgumentException("number of rows, " + m + ", must not be less than the number of columns, " + n);
+        if (n < 1) throw new IllegalArgumentException("number of columns, " + n + ", must be positive");
+        if (nb < 1) throw new IllegalArgumentException("block size, " + nb + ", must be at least one");
+        this.channel = channel;
+        this.nrow = m;
+        this.ncol = n;
+        this.nb = nb;
+        this.mt = (m + nb - 1) / nb;
+        this.nt = (n + nb - 1) / nb;
+        this.tileBytes = 16L * nb * nb;
+        this.columnBytes = this.tileBytes * this.mt;
+        this.recordDoubles = 2 * (nb + nb * nb);
+        if (this.columnBytes > Integer.MAX_VALUE) throw new IllegalArgumentException("a column of " + m + "x" + nb + " tiles is too large to map");
+        if (channel.size() < this.columnBytes * this.nt) throw new IllegalArgumentException("file of " + channel.size() + " bytes is too short for the tiles of a " + m + "x" + n + " matrix");
+        long cacheTiles = cacheBytes / this.tileBytes;
+        this.width = (int) Math.min(this.nt, (cacheTiles / this.mt - 2 * (AHEAD + 1)) / 3);
+        if (this.width < 1) throw new IllegalArgumentException("cache of " + cacheBytes + " bytes is too small for columns of " + this.mt + " tiles");
+        this.threads = Math.max(1, threads);
+        this.io = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "OutOfCoreQR I/O");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // Stop the I/O thread.  The channel is the caller's to close.
+    @Override
+    public void close() {
+        this.io.shutdown();
+    }
+
+    // Tile sizes
+    private int rows(int i) {
+        return Math.min(this.nb, this.nrow - i * this.nb);
+    }
+
+    private int cols(int j) {
+        return Math.min(this.nb, this.ncol - j * this.nb);
+    }
+
+    // Tiles i .. mt-1 of column j of tiles, mapped; tile i is at the start of the buffer
+    private MappedByteBuffer tiles(int j, int i) throws IOException {
+        return map(this.columnBytes * j + this.tileBytes * i, this.tileBytes * (this.mt - i));
+    }
+
+    // The records of rows i .. mt-1 of column k of tiles, after all the tiles, mapped; row i at the start
+    private MappedByteBuffer records(int k, int i) throws IOException {
+        long bytes = 8L * this.recordDoubles;
+        return map(this.columnBytes * this.nt + bytes * ((long) this.mt * k + i), bytes * (this.mt - i));
+    }
+
+    private MappedByteBuffer map(long position, long bytes) throws IOException {
+        MappedByteBuffer mapped = this.channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+        mapped.order(ByteOrder.nativeOrder());
+        return mapped;
+    }
+
+    // CONVERSION
+    // Write the m x n matrix read from source, rows contiguous as for complexQR, in order, as a tile file on target
+    public static void toTiles(ReadableByteChannel source, ByteOrder order, int m, int n, int nb, FileChannel target) throws IOException {
+        if (m < 1 || n < 1 || nb < 1) throw new IllegalArgumentException("dimensions, " + m + "x" + n + " in tiles of " + nb + ", must be positive");
+        int mt = (m + nb - 1) / nb, nt = (n + nb - 1) / nb;
+        ByteBuffer rows = ByteBuffer.allocateDirect(16 * n * nb).order(order);
+        ByteBuffer tile = ByteBuffer.allocateDirect(16 * nb * nb).order(ByteOrder.nativeOrder());
+        double[] panel = new double[2 * n * nb];
+        double[] padded = new double[2 * nb * nb];
+        for (int i = 0; i < mt; i++) {
+            int nr = Math.min(nb, m - i * nb);
+            rows.clear();
+            rows.limit(16 * n * nr);
+            while (rows.hasRemaining()) {
+                if (source.read(rows) < 0) throw new IOException("matrix ended before row " + (i * nb + nr) + " of " + m);
+            }
+            rows.flip();
+            rows.asDoubleBuffer().get(panel, 0, 2 * n * nr);
+            for (int j = 0; j < nt; j++) {
+                int nc = Math.min(nb, n - j * nb);
+                Arrays.fill(padded, 0.0);
+                for (int r = 0; r < nr; r++) {
+                    System.arraycopy(panel, 2 * (n * r + nb * j), padded, 2 * nb * r, 2 * nc);
+                }
+                tile.clear();
+                tile.asDoubleBuffer().put(padded);
+                long position = 16L * nb * nb * ((long) mt * j + i);
+                while (tile.hasRemaining()) {
+                    position += target.write(tile, position);
+                }
+            }
+        }
+    }
+
+    // FACTORIZATION
+    // Factor the file in place, panel by panel
+    public void factor() throws IOException {
+        if (this.factored) throw new IllegalStateException("already factored");
+        long start = System.nanoTime();
+        Future<double[]> next = readPanelLater(0);
+        ArrayDeque<Future<Vectors>> following = new ArrayDeque<>();     // vectors asked for with the next panel
+        Future<Void> written = null;                        // the last panel's write, not yet awaited
+        int writtenFrom = -1;                               // and its first tile column
+        for (int j = 0; j < this.nt; j += this.width) {
+            final int j0 = j;
+            final int w = Math.min(this.width, this.nt - j);
+            final int pw = Math.min(w * this.nb, this.ncol - j * this.nb);
+            final double[] panel = await(next);
+            next = null;
+
+            ArrayDeque<Future<Vectors>> ahead = following;
+            following = new ArrayDeque<>();
+            for (int k = ahead.size(); k < Math.min(AHEAD, j0); k++) {
+                ahead.add(readVectorsLater(k));
+            }
+            if (AHEAD >= j0) {
+                next = readNextLater(j0 + w, j0, following);
+            }
+            for (int k = 0; k < j0; k++) {
+                if (k == writtenFrom) {
+                    await(written);                         // queued before this column's read, so already done
+                    written = null;
+                }
+                Vectors v = await(ahead.poll());
+                if (k + AHEAD < j0) {
+                    ahead.add(readVectorsLater(k + AHEAD));
+                    if (k + AHEAD == j0 - 1) {
+                        next = readNextLater(j0 + w, j0, following);
+                    }
+                }
+                update(panel, j0, w, pw, k, v);
+            }
+
+            TiledQR inner = factorPanel(panel, j0, pw);
+            final double[][] recordsOut = records(inner, j0, w);
+            written = this.io.submit(new Callable<Void>() {
+                public Void call() throws IOException {
+                    writePanel(j0, w, pw, panel, recordsOut);
+                    return null;
+                }
+            });
+            writtenFrom = j0;
+        }
+        await(written);
+        this.elapsed = System.nanoTime() - start;
+        this.factored = true;
+    }
+
+    // The panel after this one, from tile column j1, and the vectors of its first steps that are already written, those
+    // of columns before j0, into following; null past the last panel.  They are read while this panel is finished.
+    private Future<double[]> readNextLater(int j1, int j0, ArrayDeque<Future<Vectors>> following) {
+        Future<double[]> next = readPanelLater(j1);
+        if (next != null) {
+            for (int k = 0; k < Math.min(AHEAD, j0); k++) {
+                following.add(readVectorsLater(k));
+            }
+        }
+        return next;
+    }
+
+    // The panel from tile column j0, or null past the last
+    private Future<double[]> readPanelLater(final int j0) {
+        if (j0 >= this.nt) {
+            return null;
+        }
+        final int w = Math.min(this.width, this.nt - j0);
+        final int pw = Math.min(w * this.nb, this.ncol - j0 * this.nb);
+        return this.io.submit(new Callable<double[]>() {
+            public double[] call() throws IOException {
+                return readPanel(j0, w, pw);
+            }
+        });
+    }
+
+    private Future<Vectors> readVectorsLater(final int k) {
+        return this.io.submit(new Callable<Vectors>() {
+            public Vectors call() throws IOException {
+                return readVectors(k);
+            }
+        });
+    }
+
+    // The result of work on the I/O thread, counting the time spent waiting for it
+    private <T> T await(Future<T> future) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("out-of-core QR interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalStateException("out-of-core QR I/O failed: " + e.getCause(), e.getCause());
+        } finally {
+            this.stallNanos += System.nanoTime() - start;
+        }
+    }
+
+    // Step k on the w tile columns of the panel from j0, pw complex elements wide: UNMQR of tile (k, j), then a
+    // TSMQR of tiles (k, j) and (i, j) for each i > k.  Each tile column is a chain; the chains run concurrently.
+    private void update(final double[] panel, int j0, int w, final int pw, final int k, final Vectors v) {
+        TaskGraph g = new TaskGraph(this.mt * w);
+        final int kb = cols(k);
+        for (int jj = 0; jj < w; jj++) {
+            final int c = jj * this.nb;
+            final int nc = cols(j0 + jj);
+            g.add(TiledQR.UNMQR, this.nt * k + j0 + jj, new Runnable() {
+                public void run() {
+                    ComplexHouseholder.applyBlockLeft(v.v[0], 0, nb, rows(k), kb, v.head[0], 0, v.t[0], 0, kb, true,
+                            panel, 2 * (pw * k * nb + c), pw, nc, new double[2 * kb * nc]);
+                }
+            }, new int[0], new int[] {w * k + jj});
+            for (int i = k + 1; i < this.mt; i++) {
+                final int i0 = i;
+                g.add(TiledQR.TSMQR, this.nt * i + j0 + jj, new Runnable() {
+                    public void run() {
+                        TiledQR.tsmqr(v.v[i0 - k], 0, nb, rows(i0), kb, v.head[i0 - k], v.t[i0 - k], true,
+                                panel, 2 * (pw * k * nb + c), pw, panel, 2 * (pw * i0 * nb + c), pw, nc);
+                    }
+                }, new int[0], new int[] {w * k + jj, w * i + jj});
+            }
+        }
+        g.run(this.threads);
+        this.computeNanos += g.getElapsedNanos();
+    }
+
+    // Factor the rows of the panel from its diagonal down; its tiles line up with those of the matrix
+    private TiledQR factorPanel(double[] panel, int j0, int pw) {
+        int r0 = j0 * this.nb;
+        double[] lower = Arrays.copyOfRange(panel, 2 * pw * r0, 2 * pw * this.nrow);
+        TiledQR inner = new TiledQR(lower, this.nrow - r0, pw, this.nb, this.threads);
+        System.arraycopy(lower, 0, panel, 2 * pw * r0, lower.length);
+        this.computeNanos += inner.getElapsedNanos();
+        return inner;
+    }
+
+    // The v[0] and T of the kernels of the w tile columns from j0, rows j0+jj .. mt-1 of column jj, laid out as
+    // their records, so the panel's factorization need not be kept for the write
+    private double[][] records(TiledQR inner, int j0, int w) {
+        double[][] out = new double[w][];
+        for (int jj = 0; jj < w; jj++) {
+            int k = j0 + jj;
+            out[jj] = new double[this.recordDoubles * (this.mt - k)];
+            for (int i = k; i < this.mt; i++) {
+                double[] head = inner.getHead(i - j0, jj);
+                double[] t = inner.getT(i - j0, jj);
+                System.arraycopy(head, 0, out[jj], this.recordDoubles * (i - k), head.length);
+                System.arraycopy(t, 0, out[jj], this.recordDoubles * (i - k) + 2 * this.nb, t.length);
+            }
+        }
+        return out;
+    }
+
+    // I/O THREAD
+    // The w tile columns from j0 as an m x pw array, rows contiguous
+    private double[] readPanel(int j0, int w, int pw) throws IOException {
+        long start = System.nanoTime();
+        double[] panel = new double[2 * pw * this.nrow];
+        for (int jj = 0; jj < w; jj++) {
+            int nc = cols(j0 + jj);
+            DoubleBuffer column = tiles(j0 + jj, 0).asDoubleBuffer();
+            for (int i = 0; i < this.mt; i++) {
+                for (int r = 0; r < rows(i); r++) {
+                    column.position(2 * this.nb * (this.nb * i + r));
+                    column.get(panel, 2 * (pw * (this.nb * i + r) + this.nb * jj), 2 * nc);
+                }
+            }
+        }
+        this.bytesRead += this.columnBytes * w;
+        this.ioNanos += System.nanoTime() - start;
+        return panel;
+    }
+
+    // The panel back into its tiles, and the v[0] and T of its kernels, from records, into theirs
+    private void writePanel(int j0, int w, int pw, double[] panel, double[][] recordsOut) throws IOException {
+        long start = System.nanoTime();
+        for (int jj = 0; jj < w; jj++) {
+            int k = j0 + jj;
+            int nc = cols(k);
+            MappedByteBuffer mapped = tiles(k, 0);
+            DoubleBuffer column = mapped.asDoubleBuffer();
+            for (int i = 0; i < this.mt; i++) {
+                for (int r = 0; r < rows(i); r++) {
+                    column.position(2 * this.nb * (this.nb * i + r));
+                    column.put(panel, 2 * (pw * (this.nb * i + r) + this.nb * jj), 2 * nc);
+                }
+            }
+            mapped.force();
+            MappedByteBuffer mappedRecords = records(k, k);
+            mappedRecords.asDoubleBuffer().put(recordsOut[jj]);
+            mappedRecords.force();
+            this.bytesWritten += this.columnBytes + 8L * this.recordDoubles * (this.mt - k);
+        }
+        this.ioNanos += System.nanoTime() - start;
+    }
+
+    // The vectors of column k of tiles and their records
+    private Vectors readVectors(int k) throws IOException {
+        long start = System.nanoTime();
+        int kb = cols(k);
+        Vectors v = new Vectors(this.mt - k);
+        DoubleBuffer column = tiles(k, k).asDoubleBuffer();
+        DoubleBuffer record = records(k, k).asDoubleBuffer();
+        for (int i = k; i < this.mt; i++) {
+            v.v[i - k] = new double[2 * this.nb * this.nb];
+            column.position(2 * this.nb * this.nb * (i - k));
+            column.get(v.v[i - k], 0, 2 * this.nb * rows(i));
+            v.head[i - k] = new double[2 * kb];
+            record.position(this.recordDoubles * (i - k));
+            record.get(v.head[i - k]);
+            v.t[i - k] = new double[2 * kb * kb];
+            record.position(this.recordDoubles * (i - k) + 2 * this.nb);
+            record.get(v.t[i - k]);
+        }
+        this.bytesRead += (this.tileBytes + 8L * this.recordDoubles) * (this.mt - k);
+        this.ioNanos += System.nanoTime() - start;
+        return v;
+    }
+
+    // OUTPUT
+    // Write R, n x n, rows contiguous and zero below the diagonal, to target
+    public void writeR(WritableByteChannel target, ByteOrder order) throws IOException {
+        if (!this.factored) throw new IllegalStateException("not factored yet, call factor()");
+        int n = this.ncol;
+        ByteBuffer bytes = ByteBuffer.allocateDirect(16 * n * this.nb).order(order);
+        for (int i = 0; i < this.nt; i++) {
+            int nr = cols(i);                               // rows of R in tile row i
+            double[] block = new double[2 * n * nr];
+            for (int j = i; j < this.nt; j++) {
+                DoubleBuffer tile = map(this.columnBytes * j + this.tileBytes * i, this.tileBytes).asDoubleBuffer();
+                for (int r = 0; r < nr; r++) {
+                    int c0 = (j == i) ? r : 0;              // from the diagonal on
+                    tile.position(2 * (this.nb * r + c0));
+                    tile.get(block, 2 * (n * r + this.nb * j + c0), 2 * (cols(j) - c0));
+                }
+            }
+            bytes.clear();
+            bytes.asDoubleBuffer().put(block);
+            bytes.limit(16 * n * nr);
+            while (bytes.hasRemaining()) {
+                target.write(bytes);
+            }
+        }
+    }
+
+    // GET VALUES
+    public int getNrow() {
+        return this.nrow;
+    }
+
+    public int getNcol() {
+        return this.ncol;
+    }
+
+    public int getBlockSize() {
+        return this.nb;
+    }
+
+    // Tile columns factored together, as many as the cache holds
+    public int getPanelWidth() {
+        return this.width;
+    }
+
+    // TIMING
+    // Wall time of the factorization, nanoseconds
+    public long getElapsedNanos() {
+        return this.elapsed;
+    }
+
+    // Time of the tile kernels, nanoseconds
+    public long getComputeNanos() {
+        return this.computeNanos;
+    }
+
+    // Time the I/O thread spent reading and writing, nanoseconds
+    public long getIoNanos() {
+        return this.ioNanos;
+    }
+
+    // Time the factorization waited for the I/O thread, nanoseconds; the part of getIoNanos not overlapped
+    public long getStallNanos() {
+        return this.stallNanos;
+    }
+
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    // The timing as text, also sent to the log
+    public String timingReport() {
+        String s = String.format(Locale.US, "out-of-core QR %dx%d, tiles of %d, panels of %d tile columns, %d threads: %.3f ms, "
+                        + "compute %.3f ms, I/O %.3f ms, stalled %.3f ms, read %.1f MB, written %.1f MB\n",
+                this.nrow, this.ncol, this.nb, this.width, this.threads, this.elapsed / 1.0e6, this.computeNanos / 1.0e6,
+                this.ioNanos / 1.0e6, this.stallNanos / 1.0e6, this.bytesRead / 1.0e6, this.bytesWritten / 1.0e6);
+        Log.d(TAG, s);
+        return s;
+    }
+}
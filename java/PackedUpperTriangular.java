@@ -0,0 +1,307 @@
+package com.bob.complexqr;
+
+/*
+        An n x n upper triangular complex matrix stored packed, n(n+1)/2 elements, for R factors.
+
+        complexHouseholder leaves R in the m x n A, with zeros or Householder vectors below the
+        diagonal; held that way, or copied into full m x n arrays, more than half of the storage
+        holds no part of R.  Packed, R takes n(n+1) doubles.
+
+        The rows are packed one after another, each starting at its diagonal element and
+        interleaved real, imag as elsewhere: element (i, j), j >= i, is at 2*(start(i) + j - i),
+        start(i) = i*n - i(i-1)/2.  Back substitution, R x = b, and R x both run along rows, so
+        they read the packed array once, front to back or back to front, with no gaps.  The
+        adjoint solve, RH x = b, runs down the rows too, as axpy updates.
+*/
+
+import java.util.Arrays;
+
+public class PackedUpperTriangular {
+
+    private final int n;
+    private final double[] r;               // packed by rows, 2*n(n+1)/2 doubles
+
+    // CONSTRUCTORS
+    // An n x n zero matrix
+    public PackedUpperTriangular(int n) {
+        if (n < 0) throw new IllegalArgumentException("order, " + n + ", must not be negative");
+        this.n = n;
+        this.r = new double[n * (n + 1)];
+    }
+
+    // Wrap an array already packed by rows; r is kept by reference
+    public PackedUpperTriangular(double[] r, int n) {
+        if (n < 0) throw new IllegalArgumentException("order, " + n + ", must not be negative");
+        if (r.length < n * (n + 1)) throw new IllegalArgumentException("array is too short for a packed " + n + "x" + n + " triangle");
+        this.n = n;
+        this.r = r;
+    }
+
+    // Pack the upper triangle of the first n rows of a, leading dimension lda, starting at a[off];
+    // for the output of complexQR use lda = n
+    public static PackedUpperTriangular fromInterleaved(double[] a, int off, int lda, int n) {
+        if (lda < n) throw new IllegalArgumentException("leading dimension, " + lda + ", is less than the order, " + n);
+        if (n > 0 && a.length < off + 2 * (lda * (n - 1) + n)) throw new IllegalArgumentException("array is too short for " + n + " rows");
+        PackedUpperTriangular t = new PackedUpperTriangular(n);
+        for (int i = 0, p = 0; i < n; i++) {
+            int len = 2 * (n - i);
+            System.arraycopy(a, off + 2 * (lda * i + i), t.r, p, len);
+            p += len;
+        }
+        return t;
+    }
+
+    // Pack the upper triangle of the leading n x n block of a ComplexMatrix, n = number of columns
+    public static PackedUpperTriangular of(ComplexMatrix matrix) {
+        int n = matrix.getNcol();
+        if (matrix.getNrow() < n) throw new IllegalArgumentException("rows, " + matrix.getNrow() + ", are fewer than columns, " + n);
+        Complex[][] array = matrix.getArrayReference();
+        PackedUpperTriangular t = new PackedUpperTriangular(n);
+        for (int i = 0, p = 0; i < n; i++) {
+            for (int j = i; j < n; j++, p += 2) {
+                t.r[p] = array[i][j].getReal();
+                t.r[p + 1] = array[i][j].getImag();
+            }
+        }
+        return t;
+    }
+
+    // Index of the real part of element (i, j), j >= i, in the packed array
+    public static int index(int n, int i, int j) {
+        return 2 * (i * n - i * (i - 1) / 2 + j - i);
+    }
+
+    // GET VALUES
+    public int getN() {
+        return this.n;
+    }
+
+    // The packed array itself, by rows
+    public double[] getArrayReference() {
+        return this.r;
+    }
+
+    public double getReal(int i, int j) {
+        check(i, j);
+        return (j < i) ? 0.0 : this.r[index(this.n, i, j)];
+    }
+
+    public double getImag(int i, int j) {
+        check(i, j);
+        return (j < i) ? 0.0 : this.r[index(this.n, i, j) + 1];
+    }
+
+    public Complex getElementCopy(int i, int j) {
+        return new Complex(getReal(i, j), getImag(i, j));
+    }
+
+    // Return R as an m x n ComplexMatrix, m >= n, zero below the diagonal, as complexQR leaves it in A
+    public ComplexMatrix toComplexMatrix(int m) {
+        if (m < this.n) throw new IllegalArgumentException("rows, " + m + ", are fewer than columns, " + this.n);
+        ComplexMatrix matrix = new ComplexMatrix(m, this.n);
+        Complex[][] array = matrix.getArrayReference();
+        for (int i = 0, p = 0; i < this.n; i++) {
+            for (int j = i; j < this.n; j++, p += 2) {
+                array[i][j].reset(this.r[p], this.r[p + 1]);
+            }
+        }
+        return matrix;
+    }
+
+    public ComplexMatrix toComplexMatrix() {
+        return toComplexMatrix(this.n);
+    }
+
+    // Unpack into an n x n row-major array, zero below the diagonal
+    public double[] toInterleaved() {
+        double[] a = new double[2 * this.n * this.n];
+        for (int i = 0, p = 0; i < this.n; i++) {
+            int len = 2 * (this.n - i);
+            System.arraycopy(this.r, p, a, 2 * (this.n * i + i), len);
+            p += len;
+        }
+        return a;
+    }
+
+    public PackedUpperTriangular copy() {
+        return new PackedUpperTriangular(this.r.clone(), this.n);
+    }
+
+    // SET VALUES
+    public void setElement(int i, int j, double real, double imag) {
+        check(i, j);
+        if (j < i) throw new IllegalArgumentException("element (" + i + ", " + j + ") is below the diagonal");
+        int p = index(this.n, i, j);
+        this.r[p] = real;
+        this.r[p + 1] = imag;
+    }
+
+    // SOLUTIONS
+    // Back substitution in place: x, n elements interleaved from x[xOff], receives R^-1 x
+    public void solve(double[] x, int xOff) {
+        if (x.length < xOff + 2 * this.n) throw new IllegalArgumentException("vector is too short for " + this.n + " complex elements");
+        int p = this.r.length;
+        for (int i = this.n - 1; i >= 0; i--) {
+            p -= 2 * (this.n - i);                                  // start of row i, its diagonal
+            double sr = x[xOff + 2 * i];
+            double si = x[xOff + 2 * i + 1];
+            for (int j = i + 1, q = p + 2; j < this.n; j++, q += 2) {
+                double rr = this.r[q], ri = this.r[q + 1];
+                double xr = x[xOff + 2 * j], xi = x[xOff + 2 * j + 1];
+                sr -= rr * xr - ri * xi;
+                si -= rr * xi + ri * xr;
+            }
+            double dr = this.r[p], di = this.r[p + 1];
+            double d = dr * dr + di * di;
+            if (d == 0.0) throw new ArithmeticException("Singular matrix");
+            x[xOff + 2 * i]     = (sr * dr + si * di) / d;
+            x[xOff + 2 * i + 1] = (si * dr - sr * di) / d;
+        }
+    }
+
+    // Forward substitution in place with the adjoint: x receives RH^-1 x.  Row i of R is column i of RH,
+    // so once x[i] is known it is subtracted from the rest of x along that row.
+    public void solveAdjoint(double[] x, int xOff) {
+        if (x.length < xOff + 2 * this.n) throw new IllegalArgumentException("vector is too short for " + this.n + " complex elements");
+        for (int i = 0, p = 0; i < this.n; i++) {
+            double dr = this.r[p], di = -this.r[p + 1];             // conj(R[i][i])
+            double d = dr * dr + di * di;
+            if (d == 0.0) throw new ArithmeticException("Singular matrix");
+            double br = x[xOff + 2 * i], bi = x[xOff + 2 * i + 1];
+            double xr = (br * dr + bi * di) / d;
+            double xi = (bi * dr - br * di) / d;
+            x[xOff + 2 * i] = xr;
+            x[xOff + 2 * i + 1] = xi;
+            p += 2;
+            for (int j = i + 1; j < this.n; j++, p += 2) {         // x[j] -= conj(R[i][j]) x[i]
+                double rr = this.r[p], ri = this.r[p + 1];
+                x[xOff + 2 * j]     -= rr * xr + ri * xi;
+                x[xOff + 2 * j + 1] -= rr * xi - ri * xr;
+            }
+        }
+    }
+
+    public Complex[] solve(Complex[] b) {
+        if (b.length != this.n) throw new IllegalArgumentException("vector length, " + b.length + ", is not equal to the order, " + this.n);
+        double[] x = new double[2 * this.n];
+        for (int i = 0; i < this.n; i++) {
+            x[2 * i] = b[i].getReal();
+            x[2 * i + 1] = b[i].getImag();
+        }
+        solve(x, 0);
+        Complex[] result = new Complex[this.n];
+        for (int i = 0; i < this.n; i++) {
+            result[i] = new Complex(x[2 * i], x[2 * i + 1]);
+        }
+        return result;
+    }
+
+    // MULTIPLICATION
+    // y = R x, n elements interleaved; x and y may be the same array, as R is upper triangular
+    public void times(double[] x, int xOff, double[] y, int yOff) {
+        if (x.length < xOff + 2 * this.n || y.length < yOff + 2 * this.n) throw new IllegalArgumentException("vector is too short for " + this.n + " complex elements");
+        for (int i = 0, p = 0; i < this.n; i++) {
+            double sr = 0.0, si = 0.0;
+            for (int j = i; j < this.n; j++, p += 2) {
+                double rr = this.r[p], ri = this.r[p + 1];
+                double xr = x[xOff + 2 * j], xi = x[xOff + 2 * j + 1];
+                sr += rr * xr - ri * xi;
+                si += rr * xi + ri * xr;
+            }
+            y[yOff + 2 * i] = sr;                                   // x[i] is not read again
+            y[yOff + 2 * i + 1] = si;
+        }
+    }
+
+    // R B, both upper triangular, packed
+    public PackedUpperTriangular times(PackedUpperTriangular b) {
+        if (b.n != this.n) throw new IllegalArgumentException("Nonconformable matrices");
+        PackedUpperTriangular c = new PackedUpperTriangular(this.n);
+        for (int i = 0, p = 0; i < this.n; i++) {
+            int ci = p;                                             // row i of C, like row i of R, starts at i
+            for (int k = i; k < this.n; k++, p += 2) {             // C[i][k..] += R[i][k] B[k][k..]
+                double ar = this.r[p], ai = this.r[p + 1];
+                for (int j = k, q = index(this.n, k, k), s = ci + 2 * (k - i); j < this.n; j++, q += 2, s += 2) {
+                    double br = b.r[q], bi = b.r[q + 1];
+                    c.r[s]     += ar * br - ai * bi;
+                    c.r[s + 1] += ar * bi + ai * br;
+                }
+            }
+        }
+        return c;
+    }
+
+    // A R, for any view A with n columns; only the nonzero part of each column of R is used
+    public ComplexMatrix timesLeft(ComplexMatrixView a) {
+        if (a.getNcol() != this.n) throw new IllegalArgumentException("Nonconformable matrices");
+        int m = a.getNrow();
+        ComplexMatrix c = new ComplexMatrix(m, this.n);
+        Complex[][] cc = c.getArrayReference();
+        double[] sum = new double[2 * this.n];
+        for (int i = 0; i < m; i++) {
+            Arrays.fill(sum, 0.0);
+            for (int k = 0, p = 0; k < this.n; k++) {               // row i of C += A[i][k] row k of R
+                double ar = a.getReal(i, k), ai = a.getImag(i, k);
+                for (int j = k; j < this.n; j++, p += 2) {
+                    double rr = this.r[p], ri = this.r[p + 1];
+                    sum[2 * j]     += ar * rr - ai * ri;
+                    sum[2 * j + 1] += ar * ri + ai * rr;
+                }
+            }
+            for (int j = 0; j < this.n; j++) {
+                cc[i][j].reset(sum[2 * j], sum[2 * j + 1]);
+            }
+        }
+        return c;
+    }
+
+    // NORMS
+    // Frobenius norm
+    public double frobeniusNorm() {
+        double scale = 0.0, ssq = 1.0;                              // scaled sum of squares, as LAPACK's zlassq
+        for (double v : this.r) {
+            if (v != 0.0) {
+                double t = Math.abs(v);
+                if (scale < t) {
+                    ssq = 1.0 + ssq * (scale / t) * (scale / t);
+                    scale = t;
+                } else {
+                    ssq += (t / scale) * (t / scale);
+                }
+            }
+        }
+        return scale * Math.sqrt(ssq);
+    }
+
+    // Maximum column sum of moduli
+    public double oneNorm() {
+        double[] col = new double[this.n];
+        for (int i = 0, p = 0; i < this.n; i++) {
+            for (int j = i; j < this.n; j++, p += 2) {
+                col[j] += Math.hypot(this.r[p], this.r[p + 1]);
+            }
+        }
+        double max = 0.0;
+        for (double c : col) {
+            max = Math.max(max, c);
+        }
+        return max;
+    }
+
+    // Maximum row sum of moduli
+    public double infinityNorm() {
+        double max = 0.0;
+        for (int i = 0, p = 0; i < this.n; i++) {
+            double row = 0.0;
+            for (int j = i; j < this.n; j++, p += 2) {
+                row += Math.hypot(this.r[p], this.r[p + 1]);
+            }
+            max = Math.max(max, row);
+        }
+        return max;
+    }
+
+    private void check(int i, int j) {
+        if (i < 0 || i >= this.n || j < 0 || j >= this.n) throw new IllegalArgumentException("element (" + i + ", " + j + ") is outside the " + this.n + "x" + this.n + " matrix");
+    }
+}
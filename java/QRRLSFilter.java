@@ -0,0 +1,161 @@
+package com.bob.complexqr;
+
+/*
+        Complex adaptive transversal filter using QR decomposition based recursive least squares,
+        QR-RLS.
+
+        The filter output is y = uT w, where u holds the last n input samples, u[0] the newest,
+        and w minimises the exponentially weighted error  sum lambda^(N-i) |d(i) - u(i)T w|^2.
+
+        The least squares problem is kept as the upper triangular R and right hand side z of its
+        QR factorization, R w = z, stored together as an n x (n+1) array with z as the last column.
+        For each sample R and z are scaled by sqrt(lambda), the new row [uT, d] is appended and
+        annihilated against R with n complex Givens rotations (ComplexHouseholder.givens and rotate),
+        and w is recovered by back substitution.  Each of these is O(n^2) and nothing is allocated
+        per sample.
+
+        R starts as sqrt(delta) I, so the back substitution is defined from the first sample.
+        The diagonal of R stays real and positive.
+
+        see:    S. Haykin, Adaptive Filter Theory, chapter on QR-RLS
+*/
+
+import java.util.Arrays;
+
+public class QRRLSFilter {
+
+    private final int order;                // number of taps, n
+    private final double lambda;            // forgetting factor, 0 < lambda <= 1
+    private final double sqrtLambda;
+    private final double delta;             // initial R = sqrt(delta) I
+
+    private final int ld;                   // leading dimension of r, n+1
+    private final double[] r;               // R with z as column n, n x (n+1)
+    private final double[] w;               // tap weights, n
+    private final double[] u;               // tap delay line, n, u[0] newest
+    private final double[] x;               // row [uT, d] being annihilated, n+1
+    private final double[] rot = new double[3];
+
+    private long samples = 0L;              // number of samples processed since reset
+
+    // CONSTRUCTORS
+    // order = number of taps, lambda = forgetting factor, delta = regularization of the initial R
+    public QRRLSFilter(int order, double lambda, double delta) {
+        if (order < 1) throw new IllegalArgumentException("order, " + order + ", must be at least one");
+        if (lambda <= 0.0 || lambda > 1.0) throw new IllegalArgumentException("forgetting factor, " + lambda + ", must be in (0, 1]");
+        if (delta <= 0.0) throw new IllegalArgumentException("regularization, " + delta + ", must be positive");
+        this.order = order;
+        this.lambda = lambda;
+        this.sqrtLambda = Math.sqrt(lambda);
+        this.delta = delta;
+        this.ld = order + 1;
+        this.r = new double[2 * order * this.ld];
+        this.w = new double[2 * order];
+        this.u = new double[2 * order];
+        this.x = new double[2 * this.ld];
+        reset();
+    }
+
+    // order = number of taps, lambda = forgetting factor, default regularization
+    public QRRLSFilter(int order, double lambda) {
+        this(order, lambda, 1.0e-4);
+    }
+
+    // Clear the weights, the delay line and R
+    public final void reset() {
+        Arrays.fill(this.r, 0.0);
+        Arrays.fill(this.w, 0.0);
+        Arrays.fill(this.u, 0.0);
+        double d = Math.sqrt(this.delta);
+        for (int i = 0; i < this.order; i++) {
+            this.r[2 * (this.ld * i + i)] = d;
+        }
+        this.samples = 0L;
+    }
+
+    // GET VALUES
+    public int getOrder() {
+        return this.order;
+    }
+
+    public double getForgettingFactor() {
+        return this.lambda;
+    }
+
+    public long getSampleCount() {
+        return this.samples;
+    }
+
+    // Return a copy of the tap weights
+    public Complex[] getWeights() {
+        Complex[] weights = new Complex[this.order];
+        for (int i = 0; i < this.order; i++) {
+            weights[i] = new Complex(this.w[2 * i], this.w[2 * i + 1]);
+        }
+        return weights;
+    }
+
+    // PROCESSING
+    // Process a block in place.  Each sample is four doubles: input real, input imag, desired real, desired imag.
+    // The desired pair is overwritten with the a priori error d - uT w.
+    public void process(double[] interleavedSamples) {
+        if (interleavedSamples.length % 4 != 0) throw new IllegalArgumentException("block length, " + interleavedSamples.length + ", must be a multiple of four");
+        for (int p = 0; p < interleavedSamples.length; p += 4) {
+            step(interleavedSamples[p], interleavedSamples[p + 1], interleavedSamples[p + 2], interleavedSamples[p + 3],
+                    interleavedSamples, p + 2);
+        }
+    }
+
+    // Process nSamples of complex input and desired signals, interleaved real and imag.
+    // The a priori error of each sample is written to error, which may be the desired array.
+    public void process(double[] input, double[] desired, double[] error, int nSamples) {
+        if (input.length < 2 * nSamples || desired.length < 2 * nSamples || error.length < 2 * nSamples) {
+            throw new IllegalArgumentException("arrays are too short for " + nSamples + " complex samples");
+        }
+        for (int i = 0, p = 0; i < nSamples; i++, p += 2) {
+            step(input[p], input[p + 1], desired[p], desired[p + 1], error, p);
+        }
+    }
+
+    // One sample: a priori error, then the O(n^2) update of R, z and w
+    private void step(double xr, double xi, double dr, double di, double[] error, int eOff) {
+        int n = this.order;
+        int ld2 = 2 * this.ld;
+
+        System.arraycopy(this.u, 0, this.u, 2, 2 * (n - 1));   // shift the delay line
+        this.u[0] = xr;
+        this.u[1] = xi;
+
+        double er = dr, ei = di;                                // e = d - uT w
+        for (int i = 0, p = 0; i < n; i++, p += 2) {
+            er -= this.u[p] * this.w[p] - this.u[p + 1] * this.w[p + 1];
+            ei -= this.u[p] * this.w[p + 1] + this.u[p + 1] * this.w[p];
+        }
+
+        for (int i = 0; i < n; i++) {                           // R, z *= sqrt(lambda)
+            for (int p = i * ld2 + 2 * i; p < (i + 1) * ld2; p++) {
+                this.r[p] *= this.sqrtLambda;
+            }
+        }
+
+        System.arraycopy(this.u, 0, this.x, 0, 2 * n);          // new row [uT, d]
+        this.x[2 * n] = dr;
+        this.x[2 * n + 1] = di;
+
+        for (int j = 0; j < n; j++) {                           // annihilate the new row
+            int jj = j * ld2 + 2 * j;
+            ComplexHouseholder.givens(this.r, jj, this.x[2 * j], this.x[2 * j + 1], this.rot);
+            ComplexHouseholder.rotate(this.rot, this.r, jj + 2, this.x, 2 * j + 2, n - j);
+        }
+
+        for (int i = 0; i < n; i++) {                           // w = R^-1 z
+            this.w[2 * i] = this.r[i * ld2 + 2 * n];
+            this.w[2 * i + 1] = this.r[i * ld2 + 2 * n + 1];
+        }
+        ComplexHouseholder.backSubstitute(this.r, 0, this.ld, n, this.w, 0);
+
+        error[eOff] = er;
+        error[eOff + 1] = ei;
+        this.samples++;
+    }
+}
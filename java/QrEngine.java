@@ -0,0 +1,28 @@
+package com.bob.complexqr;
+
+/*
+        A QR factorization backend, as MainActivity.complexHouseholder is to complexQR.S.
+
+        Every engine has the calling sequence of complexQR: a is the m x n matrix, m >= n, rows
+        contiguous, real and imag interleaved, and is overwritten by R, zero below the diagonal;
+        q, if not null, must hold the m x m identity and receives Q, with Q A = R.  The result is
+        the time of the factorization in microseconds.
+
+        R is unique only up to a unit complex factor on each row, so two engines may give R and Q
+        that differ by those factors; Q A = R holds for both.
+
+        QrEngines lists the engines, checks each against the same conformance test and chooses
+        among those that pass.
+*/
+
+public interface QrEngine {
+
+    // Short name, for logs and reports
+    String getName();
+
+    // True if the engine can run here, e.g. the native library is loaded on the right architecture
+    boolean isAvailable();
+
+    // Factor a in place, and form Q in q if it is not null.  Returns microseconds.
+    long householder(double[] a, double[] q, int m, int n);
+}
@@ -0,0 +1,439 @@
+package com.bob.complexqr;
+
+/*
+        The QR engines and the choice among them.
+
+        The engines, each a QrEngine with the calling sequence of complexQR,
+
+            native      complexQR.S through JNI on arm64, complexQR.c, the portable C version,
+                        on other architectures
+            neon        complexQRneon.S, complexQR.S with the inner loops in the q registers, arm64 only
+            foreign     the native kernel through the FFM API instead of JNI, ForeignQR in java-desktop,
+                        found by name as the vector engine is
+            vector      ComplexHouseholder with the updates in the Java Vector API, VectorQrEngine in
+                        java-desktop, found by name so that Android, which has no jdk.incubator.vector,
+                        simply does not list it
+            recursive   RecursiveHouseholder, blocked, compact WY updates
+            tiled       TiledQR, tiles scheduled on all the processors, with AutoTuner's tile size and
+                        thread count if a tuner is given
+            java        ComplexHouseholder, a column at a time, runs anywhere
+
+        Before an engine is used it must pass the conformance test: random matrices of a few shapes,
+        square, tall, one column, and larger than a tile, are factored with Q, and Q A = R, QH Q = I
+        and the zeros below the diagonal of R are checked to CONFORMANCE_TOLERANCE relative to the
+        norm of A.  Every engine runs the same test, so a broken kernel or a broken build of one is
+        dropped rather than trusted; conformanceReport() gives the residuals.
+
+        select(m, n) chooses by architecture, the engines that are not available here are skipped,
+        by shape, below SMALL columns only the column at a time engines are considered, and by
+        measured throughput: the remaining engines are timed on a random matrix of the shape, at
+        most TRIAL_MAXIMUM in either dimension, and the fastest is kept for the shape class, the
+        rows and columns rounded up to powers of two, as in AutoTuner.  householder(a, q, m, n)
+        does both, so a caller gets the fastest engine without naming one.  Selection takes up to a
+        few seconds, with the tiled engine's tuning; selectedOrDefault(m, n) does not wait for it,
+        for a caller such as the user interface thread that can not.
+*/
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class QrEngines {
+
+    public static final String TAG = MainActivity.TAG;
+
+    public static final String NATIVE       = "native";
+    public static final String NEON         = "neon";
+    public static final String FOREIGN      = "foreign";
+    public static final String VECTOR       = "vector";
+    public static final String RECURSIVE    = "recursive";
+    public static final String TILED        = "tiled";
+    public static final String JAVA         = "java";
+
+    public static final double CONFORMANCE_TOLERANCE = 1.0E-12;
+
+    private static final String VECTOR_ENGINE_CLASS = "com.bob.complexqr.VectorQrEngine";
+    private static final String FOREIGN_ENGINE_CLASS = "com.bob.complexqr.ForeignQR";
+    private static final int[][] CONFORMANCE_SHAPES = {{1, 1}, {2, 1}, {2, 2}, {5, 5}, {7, 3}, {40, 17}, {100, 100}, {130, 61}};
+    private static final int SMALL              = 32;               // fewer columns: no blocked or tiled engine
+    private static final int TRIAL_MAXIMUM      = 256;              // largest dimension of a timing trial
+    private static final int TRIAL_REPEATS      = 2;                // timed runs of each engine
+
+    private static QrEngines defaultEngines = null;
+
+    private final List<QrEngine> engines = new ArrayList<>();
+    private final Map<String, Double> residuals = new LinkedHashMap<>();    // by engine name, once tested
+    private final Map<String, QrEngine> selected = new ConcurrentHashMap<>();   // by shape class, read without the lock
+
+    // CONSTRUCTORS
+    // All the engines, the tiled one tuned by tuner if it is not null
+    public QrEngines(AutoTuner tuner) {
+        this.engines.add(new NativeEngine());
+        this.engines.add(new NeonEngine());
+        QrEngine foreign = load(FOREIGN_ENGINE_CLASS);
+        if (foreign != null) {
+            this.engines.add(foreign);
+        }
+        QrEngine vector = load(VECTOR_ENGINE_CLASS);
+        if (vector != null) {
+            this.engines.add(vector);
+        }
+        this.engines.add(new RecursiveEngine());
+        this.engines.add(new TiledEngine(tuner));
+        this.engines.add(new JavaEngine());
+    }
+
+    // The engines shared by the app, without a tuner until setDefault is called
+    public static synchronized QrEngines getDefault() {
+        if (defaultEngines == null) {
+            defaultEngines = new QrEngines(null);
+        }
+        return defaultEngines;
+    }
+
+    public static synchronized void setDefault(QrEngines engines) {
+        defaultEngines = engines;
+    }
+
+    private static QrEngine load(String className) {
+        try {
+            return (QrEngine) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            Log.d(TAG, "QR engine " + className + " not loaded: " + e);
+            return null;
+        }
+    }
+
+    // ENGINES
+    public List<QrEngine> getEngines() {
+        return new ArrayList<>(this.engines);
+    }
+
+    // The engine called name, or null
+    public QrEngine getEngine(String name) {
+        for (QrEngine engine : this.engines) {
+            if (engine.getName().equals(name)) return engine;
+        }
+        return null;
+    }
+
+    // True if the engine is available here and has passed the conformance test
+    public synchronized boolean isUsable(QrEngine engine) {
+        if (!engine.isAvailable()) return false;
+        Double residual = this.residuals.get(engine.getName());
+        if (residual == null) {
+            residual = conformance(engine);
+            this.residuals.put(engine.getName(), residual);
+            Log.d(TAG, "QR engine " + engine.getName() + " conformance residual " + residual);
+        }
+        return residual <= CONFORMANCE_TOLERANCE;
+    }
+
+    // SELECTION
+    // The fastest usable engine for an m x n matrix, timed now if its shape class has not been
+    public synchronized QrEngine select(int m, int n) {
+        if (m < n) throw new IllegalArgumentException("number of rows, " + m + ", must not be less than the number of columns, " + n);
+        if (n < 1) throw new IllegalArgumentException("number of columns, " + n + ", must be positive");
+        String key = ceilingPowerOfTwo(m) + "x" + ceilingPowerOfTwo(n);
+        QrEngine engine = this.selected.get(key);
+        if (engine == null) {
+            engine = fastest(m, n);
+            this.selected.put(key, engine);
+            Log.d(TAG, "QR engine for " + key + ": " + engine.getName());
+        }
+        return engine;
+    }
+
+    // The engine select(m, n) chose for the shape class, or if it has not been chosen the native engine if the
+    // library is loaded, otherwise the Java engine; neither is tested or timed here, so this does not block
+    public QrEngine selectedOrDefault(int m, int n) {
+        QrEngine engine = this.selected.get(ceilingPowerOfTwo(m) + "x" + ceilingPowerOfTwo(n));
+        if (engine != null) return engine;
+        QrEngine fallback = getEngine(NATIVE);
+        return fallback.isAvailable() ? fallback : getEngine(JAVA);
+    }
+
+    // Factor a with the selected engine, as QrEngine.householder
+    public long householder(double[] a, double[] q, int m, int n) {
+        return select(m, n).householder(a, q, m, n);
+    }
+
+    private QrEngine fastest(int m, int n) {
+        double scale = Math.min(1.0, (double) TRIAL_MAXIMUM / m);
+        int tm = Math.max(1, (int) (m * scale));
+        int tn = Math.max(1, Math.min(tm, (int) (n * scale)));
+        double[] a = random(tm, tn, new Random(1L));
+
+        QrEngine best = null;
+        long bestTime = Long.MAX_VALUE;
+        for (QrEngine engine : this.engines) {
+            if (n < SMALL && (engine instanceof RecursiveEngine || engine instanceof TiledEngine)) continue;
+            if (!isUsable(engine)) continue;
+            long time = time(engine, a, tm, tn);
+            if (time < bestTime) {
+                bestTime = time;
+                best = engine;
+            }
+        }
+        if (best == null) throw new IllegalStateException("no QR engine passed the conformance test");
+        return best;
+    }
+
+    // Best of TRIAL_REPEATS timed runs, after one untimed run, R only, nanoseconds
+    private static long time(QrEngine engine, double[] a, int m, int n) {
+        long best = Long.MAX_VALUE;
+        for (int repeat = 0; repeat <= TRIAL_REPEATS; repeat++) {
+            double[] b = a.clone();
+            long start = System.nanoTime();
+            engine.householder(b, null, m, n);
+            long elapsed = System.nanoTime() - start;
+            if (repeat > 0) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        int p = Integer.highestOneBit(x);
+        return (p == x) ? p : 2 * p;
+    }
+
+    // CONFORMANCE
+    // Largest residual of the conformance test, relative to the norm of A; infinite if the engine failed to run
+    public static double conformance(QrEngine engine) {
+        Random random = new Random(2L);
+        double worst = 0.0;
+        for (int[] shape : CONFORMANCE_SHAPES) {
+            int m = shape[0], n = shape[1];
+            double[] a = random(m, n, random);
+            double[] r = a.clone();
+            double[] q = identity(m);
+            try {
+                engine.householder(r, q, m, n);
+            } catch (RuntimeException e) {
+                Log.d(TAG, "QR engine " + engine.getName() + " failed on " + m + "x" + n + ": " + e);
+                return Double.POSITIVE_INFINITY;
+            }
+            double residual = residual(a, r, q, m, n);
+            if (!(residual <= worst)) {
+                worst = residual;                                   // NaN is kept as the worst
+            }
+        }
+        return worst;
+    }
+
+    // max(|QH R - A|, |QH Q - I|, |R below the diagonal|) / |A|, Frobenius norms
+    static double residual(double[] a, double[] r, double[] q, int m, int n) {
+        double norm = 0.0;
+        for (double x : a) {
+            norm += x * x;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0.0) norm = 1.0;
+
+        double below = 0.0, factor = 0.0, orthogonal = 0.0;
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < Math.min(i, n); j++) {
+                below += r[2 * (n * i + j)] * r[2 * (n * i + j)] + r[2 * (n * i + j) + 1] * r[2 * (n * i + j) + 1];
+            }
+        }
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {                           // (QH R)[i][j], R upper so k <= j
+                double sr = -a[2 * (n * i + j)], si = -a[2 * (n * i + j) + 1];
+                for (int k = 0; k <= Math.min(j, m - 1); k++) {
+                    double qr = q[2 * (m * k + i)], qi = -q[2 * (m * k + i) + 1];
+                    double rr = r[2 * (n * k + j)], ri = r[2 * (n * k + j) + 1];
+                    sr += qr * rr - qi * ri;
+                    si += qr * ri + qi * rr;
+                }
+                factor += sr * sr + si * si;
+            }
+            for (int j = 0; j < m; j++) {                           // (QH Q)[i][j] - I
+                double sr = (i == j) ? -1.0 : 0.0, si = 0.0;
+                for (int k = 0; k < m; k++) {
+                    double qr = q[2 * (m * k + i)], qi = -q[2 * (m * k + i) + 1];
+                    double pr = q[2 * (m * k + j)], pi = q[2 * (m * k + j) + 1];
+                    sr += qr * pr - qi * pi;
+                    si += qr * pi + qi * pr;
+                }
+                orthogonal += sr * sr + si * si;
+            }
+        }
+        return Math.max(Math.max(Math.sqrt(factor), Math.sqrt(below)) / norm, Math.sqrt(orthogonal));
+    }
+
+    // One line per engine: availability and conformance residual
+    public synchronized String conformanceReport() {
+        StringBuilder sb = new StringBuilder();
+        for (QrEngine engine : this.engines) {
+            if (!engine.isAvailable()) {
+                sb.append(String.format(Locale.US, "%-10s not available%n", engine.getName()));
+            } else {
+                boolean usable = isUsable(engine);
+                sb.append(String.format(Locale.US, "%-10s residual %.2e %s%n", engine.getName(),
+                        this.residuals.get(engine.getName()), usable ? "ok" : "FAILED"));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static double[] random(int m, int n, Random random) {
+        double[] a = new double[2 * m * n];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = 2.0 * random.nextDouble() - 1.0;
+        }
+        return a;
+    }
+
+    private static double[] identity(int m) {
+        double[] q = new double[2 * m * m];
+        for (int i = 0; i < m; i++) {
+            q[2 * (m * i + i)] = 1.0;
+        }
+        return q;
+    }
+
+    // Zero a below the diagonal, where the Java engines leave the Householder vectors and the native ones what
+    // the reflections leave, rounding error, which they do not store over
+    static void clearBelowDiagonal(double[] a, int m, int n) {
+        for (int i = 1; i < m; i++) {
+            int end = Math.min(i, n);
+            for (int j = 0; j < end; j++) {
+                a[2 * (n * i + j)] = 0.0;
+                a[2 * (n * i + j) + 1] = 0.0;
+            }
+        }
+    }
+
+    static void checkArguments(double[] a, double[] q, int m, int n) {
+        if (m < n) throw new IllegalArgumentException("number of rows, " + m + ", must not be less than the number of columns, " + n);
+        if (n < 1) throw new IllegalArgumentException("number of columns, " + n + ", must be positive");
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        if (q != null && q.length < 2 * m * m) throw new IllegalArgumentException("Q array is too short for a " + m + "x" + m + " complex matrix");
+    }
+
+    // ENGINES
+    // complexQR.S through NativeQR
+    static final class NativeEngine implements QrEngine {
+        public String getName() {
+            return NATIVE;
+        }
+
+        public boolean isAvailable() {
+            return NativeQR.isAvailable();
+        }
+
+        public long householder(double[] a, double[] q, int m, int n) {
+            checkArguments(a, q, m, n);
+            long time = NativeQR.complexHouseholder(a, q, m, n, (q == null) ? 0 : 1);
+            clearBelowDiagonal(a, m, n);                                // the kernel leaves what it did not need to zero
+            return time;
+        }
+    }
+
+    // complexQRneon.S through NativeQR; elsewhere the library has only the C version, already the native engine
+    static final class NeonEngine implements QrEngine {
+        public String getName() {
+            return NEON;
+        }
+
+        public boolean isAvailable() {
+            return NativeQR.isAvailable() && "aarch64".equals(System.getProperty("os.arch"));
+        }
+
+        public long householder(double[] a, double[] q, int m, int n) {
+            checkArguments(a, q, m, n);
+            long time = NativeQR.complexHouseholderNeon(a, q, m, n, (q == null) ? 0 : 1);
+            clearBelowDiagonal(a, m, n);
+            return time;
+        }
+    }
+
+    // ComplexHouseholder, a column at a time
+    static final class JavaEngine implements QrEngine {
+        public String getName() {
+            return JAVA;
+        }
+
+        public boolean isAvailable() {
+            return true;
+        }
+
+        public long householder(double[] a, double[] q, int m, int n) {
+            checkArguments(a, q, m, n);
+            long start = System.nanoTime();
+            double[] vHead = new double[2 * n];
+            ComplexHouseholder.factor(a, m, n, vHead);
+            if (q != null) {
+                ComplexHouseholder.applyQ(a, m, n, vHead, false, q, 0, m, m, new double[2 * m]);
+            }
+            clearBelowDiagonal(a, m, n);
+            return (System.nanoTime() - start) / 1000L;
+        }
+    }
+
+    // RecursiveHouseholder, blocked
+    static final class RecursiveEngine implements QrEngine {
+        public String getName() {
+            return RECURSIVE;
+        }
+
+        public boolean isAvailable() {
+            return true;
+        }
+
+        public long householder(double[] a, double[] q, int m, int n) {
+            checkArguments(a, q, m, n);
+            long start = System.nanoTime();
+            double[] vHead = new double[2 * n];
+            RecursiveHouseholder.factor(a, m, n, vHead);
+            if (q != null) {
+                ComplexHouseholder.applyQ(a, m, n, vHead, false, q, 0, m, m, new double[2 * m]);
+            }
+            clearBelowDiagonal(a, m, n);
+            return (System.nanoTime() - start) / 1000L;
+        }
+    }
+
+    // TiledQR, parallel
+    static final class TiledEngine implements QrEngine {
+        private final AutoTuner tuner;                                  // null: default tile size, all processors
+
+        TiledEngine(AutoTuner tuner) {
+            this.tuner = tuner;
+        }
+
+        public String getName() {
+            return TILED;
+        }
+
+        public boolean isAvailable() {
+            return true;
+        }
+
+        public long householder(double[] a, double[] q, int m, int n) {
+            checkArguments(a, q, m, n);
+            int nb = TiledQR.BLOCK_SIZE;
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (this.tuner != null) {
+                AutoTuner.Configuration c = this.tuner.get(AutoTuner.TILED_QR, m, n);    // tuned outside the timing
+                nb = c.blockSize;
+                threads = c.threads;
+            }
+            long start = System.nanoTime();
+            TiledQR tiled = new TiledQR(a, m, n, nb, threads);
+            if (q != null) {
+                tiled.applyQ(false, q, 0, m, m);
+            }
+            clearBelowDiagonal(a, m, n);
+            return (System.nanoTime() - start) / 1000L;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.bob.complexqr;
+
+/*
+        Recursive Householder QR, after Elmroth and Gustavson.
+
+        complexQR and ComplexHouseholder.factor reduce one column at a time, and each reflection
+        makes a full pass over the trailing matrix; once a column of A no longer fits in cache
+        every pass runs at memory speed.  Here the columns are split in half: the left half is
+        factored, recursively, its reflectors are applied to the right half at once as the compact
+        WY block reflector I - V T VH, and the right half is factored, recursively.  The T of the
+        two halves are joined by
+
+            T = [ T1  -T1 (V1H V2) T2 ]
+                [ 0    T2             ]
+
+        The block updates near the top of the recursion are large and stream A a few times in all,
+        those near the leaves are small enough for the L1 cache, with no block size to tune for a
+        particular device.
+
+        The output is that of ComplexHouseholder.factor, R on and above the diagonal, v[1..] below
+        it, v[0] in vHead, with a square matrix skipping its last column, so it can be used by
+        ComplexQR, applyQ and formQ.  The values agree with factor to rounding.
+*/
+
+import java.util.Arrays;
+
+public final class RecursiveHouseholder {
+
+    private RecursiveHouseholder() {
+    }
+
+    // QR factorization of the m x n matrix a in place, leading dimension lda, starting at a[off], m >= n.
+    // vHead receives v[0] of each reflector (2*n doubles); t, if not null, receives the n x n T, leading
+    // dimension n, so that H0 H1 ... Hn-1 = I - V T VH.
+    public static void factor(double[] a, int off, int lda, int m, int n, double[] vHead, double[] t) {
+        if (m < n) throw new IllegalArgumentException("rows, " + m + ", are fewer than columns, " + n);
+        if (n == 0) return;
+        double[] tt = (t != null) ? t : new double[2 * n * n];
+        double[] work = new double[2 * n * n];
+        recurse(a, off, lda, m, n, vHead, 0, tt, 0, n, t != null, work);
+    }
+
+    // QR factorization of the m x n matrix a (rows contiguous), as ComplexHouseholder.factor
+    public static void factor(double[] a, int m, int n, double[] vHead) {
+        factor(a, 0, n, m, n, vHead, null);
+    }
+
+    // Factor the m x n panel at a[off]; its reflectors go to vHead[vOff..] and, if needT, its T to t[tOff],
+    // leading dimension ldt.  The T of a left half is always needed, to update the right half; that of a right
+    // half only to join it into the T of its parent.  So without needT the top right of T, V1H V2 of the two
+    // halves, is skipped; at the top level that is a quarter of the work of the factorization.
+    private static void recurse(double[] a, int off, int lda, int m, int n, double[] vHead, int vOff,
+                                double[] t, int tOff, int ldt, boolean needT, double[] work) {
+        if (n == 1) {
+            if (m > 1) {
+                ComplexHouseholder.house(a, off, lda, m, vHead, vOff);
+                t[tOff] = 2.0;
+            } else {
+                vHead[vOff] = 0.0;                                  // last column of a square matrix, H = I
+                vHead[vOff + 1] = 0.0;
+                t[tOff] = 0.0;
+            }
+            t[tOff + 1] = 0.0;
+            return;
+        }
+        int n1 = n / 2, n2 = n - n1;
+        int t12 = tOff + 2 * n1;                                    // T1 V1H V2 T2 goes to the top right of T
+        int t22 = tOff + 2 * (ldt * n1 + n1);
+
+        recurse(a, off, lda, m, n1, vHead, vOff, t, tOff, ldt, true, work);
+
+        // A2 = Hn1-1 ... H0 A2
+        ComplexHouseholder.applyBlockLeft(a, off, lda, m, n1, vHead, vOff, t, tOff, ldt, true,
+                a, off + 2 * n1, lda, n2, work);
+
+        recurse(a, off + 2 * (lda * n1 + n1), lda, m - n1, n2, vHead, vOff + 2 * n1, t, t22, ldt, needT, work);
+        if (!needT) return;
+
+        // T12 = -T1 (V1H V2) T2
+        v1hv2(a, off, lda, m, n1, n2, vHead, vOff, t, t12, ldt);
+        for (int i = 0; i < n1; i++) {                              // Y = T1 Y, T1 upper, from the top down
+            int row = t12 + 2 * ldt * i;
+            ComplexHouseholder.scaleRow(t, row, 2 * n2, t[tOff + 2 * (ldt * i + i)], t[tOff + 2 * (ldt * i + i) + 1]);
+            for (int l = i + 1; l < n1; l++) {
+                ComplexHouseholder.addRow(t, row, t, t12 + 2 * ldt * l, 2 * n2, t[tOff + 2 * (ldt * i + l)], t[tOff + 2 * (ldt * i + l) + 1]);
+            }
+        }
+        for (int i = 0; i < n1; i++) {                              // Y = -Y T2, a row at a time through work
+            int row = t12 + 2 * ldt * i;
+            Arrays.fill(work, 0, 2 * n2, 0.0);
+            for (int l = 0; l < n2; l++) {                          // work[l..] += Y[i][l] T2[l][l..]
+                ComplexHouseholder.addRow(work, 2 * l, t, t22 + 2 * (ldt * l + l), 2 * (n2 - l), -t[row + 2 * l], -t[row + 2 * l + 1]);
+            }
+            System.arraycopy(work, 0, t, row, 2 * n2);
+        }
+        for (int i = 0; i < n2; i++) {                              // below the diagonal of T
+            for (int j = 0; j < n1; j++) {
+                t[tOff + 2 * (ldt * (n1 + i) + j)] = 0.0;
+                t[tOff + 2 * (ldt * (n1 + i) + j) + 1] = 0.0;
+            }
+        }
+    }
+
+    // y[i][j] = v[i]H v[n1 + j], the n1 x n2 product of the two halves' reflectors, at y[yOff], leading dimension ldy.
+    // v[n1 + j] is zero above row n1 + j, so the sum runs over rows n1 + j .. m-1; the panel is streamed by rows
+    // and each row of y is updated with unit stride.
+    private static void v1hv2(double[] a, int off, int lda, int m, int n1, int n2, double[] vHead, int vOff,
+                              double[] y, int yOff, int ldy) {
+        for (int i = 0; i < n1; i++) {
+            Arrays.fill(y, yOff + 2 * ldy * i, yOff + 2 * (ldy * i + n2), 0.0);
+        }
+        for (int r = n1; r < m; r++) {
+            int row = off + 2 * lda * r;
+            int head = r - n1;                                      // v[n1 + head] starts on this row
+            int tail = Math.min(head, n2);                          // v[n1 + j], j < tail, are below their heads
+            for (int i = 0; i < n1; i++) {
+                double vr = a[row + 2 * i], vi = -a[row + 2 * i + 1];     // conj(v[i][r])
+                int p = yOff + 2 * ldy * i;
+                for (int j = 0, q = row + 2 * n1; j < tail; j++, p += 2, q += 2) {
+                    double wr = a[q], wi = a[q + 1];
+                    y[p]     += vr * wr - vi * wi;
+                    y[p + 1] += vr * wi + vi * wr;
+                }
+                if (head < n2) {
+                    double wr = vHead[vOff + 2 * (n1 + head)], wi = vHead[vOff + 2 * (n1 + head) + 1];
+                    y[p]     += vr * wr - vi * wi;
+                    y[p + 1] += vr * wi + vi * wr;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.bob.complexqr;
+
+/*
+        Least squares by QR for a complex m x n matrix with far more rows than fit in memory, m >> n,
+        fed a block of rows at a time.
+
+        Only the n x n R is kept.  Each block of rows B is folded into it by the TSQRT kernel of
+        TiledQR, the QR of R stacked on the block, [R; B] = Q [R'; 0], which is the merge step of
+        TSQR; the block is then dropped.  Memory is O(n^2) plus one block, whatever the number of rows.
+
+        The right hand sides are streamed with A as extra columns, so the factorization is of the
+        augmented [A B], width n + nrhs:
+
+            [ R   Z ]       R x = z for each column z of Z gives the least squares solution, and the
+            [ 0   S ]       norm of the column of S above and on its diagonal is the norm of the residual.
+
+        This applies to B exactly the reflections applied to A without keeping them.
+
+        Rows come from arrays, from Iterators over arrays of whole rows, or from ReadableByteChannels
+        (a FileChannel) of doubles, real and imag interleaved and rows contiguous, as for complexQR,
+        big endian by default as in the .dat files MainActivity writes.  A and B may be in separate
+        files, read in step.  Rows are collected until a block is full, so adding a row at a time
+        costs no more than adding whole blocks.
+*/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+public class StreamingQR {
+
+    public static final int BLOCK_ROWS = 256;               // default rows folded into R at a time
+
+    private final int ncol;                                 // columns of A, n
+    private final int nrhs;                                 // right hand sides, columns of B
+    private final int width;                                // n + nrhs, leading dimension of work
+    private final int blockRows;                            // rows of the block
+    private final double[] work;                            // R of [A B], width x width, and the block below it
+    private final double[] head;                            // v[0] of each TSQRT reflection, not kept
+
+    private int pending = 0;                                // rows in the block not yet folded into R
+    private long rows = 0L;                                 // rows added since reset
+
+    // CONSTRUCTORS
+    // n columns of A and nrhs right hand sides, which may be zero, with the default block
+    public StreamingQR(int n, int nrhs) {
+        this(n, nrhs, BLOCK_ROWS);
+    }
+
+    public StreamingQR(int n, int nrhs, int blockRows) {
+        if (n < 1) throw new IllegalArgumentException("number of columns, " + n + ", must be positive");
+        if (nrhs < 0) throw new IllegalArgumentException("number of right hand sides, " + nrhs + ", must not be negative");
+        if (blockRows < 1) throw new IllegalArgumentException("rows per block, " + blockRows + ", must be positive");
+        this.ncol = n;
+        this.nrhs = nrhs;
+        this.width = n + nrhs;
+        this.blockRows = blockRows;
+        this.work = new double[2 * this.width * (this.width + blockRows)];
+        this.head = new double[2 * this.width];
+    }
+
+    // Forget every row added
+    public void reset() {
+        Arrays.fill(this.work, 0, 2 * this.width * this.width, 0.0);
+        this.pending = 0;
+        this.rows = 0L;
+    }
+
+    // ADDING ROWS
+    // count rows of A, n elements each from a[aOff], and of B, nrhs each from b[bOff]; b may be null if nrhs is 0
+    public void add(double[] a, int aOff, double[] b, int bOff, int count) {
+        int n = this.ncol;
+        if (count < 0) throw new IllegalArgumentException("number of rows, " + count + ", must not be negative");
+        if (aOff < 0 || a.length - aOff < 2 * n * count) throw new IllegalArgumentException("array is too short for " + count + " rows of " + n + " complex elements");
+        if (this.nrhs > 0 && (b == null || bOff < 0 || b.length - bOff < 2 * this.nrhs * count))
+            throw new IllegalArgumentException("right hand side is too short for " + count + " rows of " + this.nrhs + " complex elements");
+        for (int i = 0; i < count; i++) {
+            int row = 2 * this.width * (this.width + this.pending);
+            System.arraycopy(a, aOff + 2 * n * i, this.work, row, 2 * n);
+            if (this.nrhs > 0) {
+                System.arraycopy(b, bOff + 2 * this.nrhs * i, this.work, row + 2 * n, 2 * this.nrhs);
+            }
+            added();
+        }
+    }
+
+    // All the rows in a, and in b, which may be null if nrhs is 0
+    public void add(double[] a, double[] b) {
+        if (a.length % (2 * this.ncol) != 0) throw new IllegalArgumentException("array length, " + a.length + ", is not a whole number of rows");
+        add(a, 0, b, 0, a.length / (2 * this.ncol));
+    }
+
+    // Blocks of whole rows of A, and the same rows of B from bBlocks, which may be null if nrhs is 0
+    public void addAll(Iterator<double[]> aBlocks, Iterator<double[]> bBlocks) {
+        while (aBlocks.hasNext()) {
+            double[] a = aBlocks.next();
+            double[] b = null;
+            if (this.nrhs > 0) {
+                if (bBlocks == null || !bBlocks.hasNext()) throw new IllegalArgumentException("right hand side ended before the matrix");
+                b = bBlocks.next();
+                if (b.length / this.nrhs != a.length / this.ncol) throw new IllegalArgumentException("right hand side block does not have the rows of the matrix block");
+            }
+            add(a, b);
+        }
+    }
+
+    // Read rows of A from a until it ends, big endian
+    public void read(ReadableByteChannel a) throws IOException {
+        read(a, null, ByteOrder.BIG_ENDIAN);
+    }
+
+    // Read rows of A from a, and the same rows of B from b, until they end.  b may be null if nrhs is 0.
+    public void read(ReadableByteChannel a, ReadableByteChannel b, ByteOrder order) throws IOException {
+        int n = this.ncol;
+        if (this.nrhs > 0 && b == null) throw new IllegalArgumentException("no channel for the " + this.nrhs + " right hand sides");
+        ByteBuffer aBytes = ByteBuffer.allocateDirect(16 * n * this.blockRows).order(order);
+        ByteBuffer bBytes = (this.nrhs > 0) ? ByteBuffer.allocateDirect(16 * this.nrhs * this.blockRows).order(order) : null;
+        while (true) {
+            int count = fill(a, aBytes, 16 * n);
+            if (this.nrhs > 0 && fill(b, bBytes, 16 * this.nrhs) != count) throw new IOException("right hand side does not have the rows of the matrix");
+            if (count == 0) {
+                return;
+            }
+            DoubleBuffer aDoubles = aBytes.asDoubleBuffer();
+            DoubleBuffer bDoubles = (this.nrhs > 0) ? bBytes.asDoubleBuffer() : null;
+            for (int i = 0; i < count; i++) {
+                int row = 2 * this.width * (this.width + this.pending);
+                aDoubles.get(this.work, row, 2 * n);
+                if (this.nrhs > 0) {
+                    bDoubles.get(this.work, row + 2 * n, 2 * this.nrhs);
+                }
+                added();
+            }
+        }
+    }
+
+    // Read into bytes until it is full or the channel ends; returns the whole rows read, rowBytes each
+    private static int fill(ReadableByteChannel channel, ByteBuffer bytes, int rowBytes) throws IOException {
+        bytes.clear();
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes) < 0) break;
+        }
+        bytes.flip();
+        if (bytes.remaining() % rowBytes != 0) throw new IOException("channel ended inside a row");
+        return bytes.remaining() / rowBytes;
+    }
+
+    // One more row in the block, fold the block into R if it is full
+    private void added() {
+        this.pending++;
+        this.rows++;
+        if (this.pending == this.blockRows) {
+            fold();
+        }
+    }
+
+    // [R; block] = Q [R'; 0], Q discarded
+    private void fold() {
+        if (this.pending == 0) {
+            return;
+        }
+        TiledQR.tsqrt(this.work, 0, 2 * this.width * this.width, this.width, this.pending, this.width, this.head, null);
+        this.pending = 0;
+    }
+
+    // GET VALUES
+    public int getNcol() {
+        return this.ncol;
+    }
+
+    public int getRhsCount() {
+        return this.nrhs;
+    }
+
+    // Rows added since reset
+    public long getRows() {
+        return this.rows;
+    }
+
+    // R of A, n x n upper triangular, for the rows added so far
+    public ComplexMatrix getR() {
+        fold();
+        return PackedUpperTriangular.fromInterleaved(this.work, 0, this.width, this.ncol).toComplexMatrix(this.ncol);
+    }
+
+    // LEAST SQUARES
+    // x minimising ||A x - b|| for right hand side k, n elements interleaved
+    public double[] solve(int k) {
+        int n = this.ncol;
+        if (k < 0 || k >= this.nrhs) throw new IllegalArgumentException("right hand side, " + k + ", must be between 0 and " + (this.nrhs - 1));
+        if (this.rows < n) throw new IllegalStateException("fewer rows, " + this.rows + ", than columns, " + n);
+        fold();
+        double[] x = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            x[2 * i] = this.work[2 * (this.width * i + n + k)];
+            x[2 * i + 1] = this.work[2 * (this.width * i + n + k) + 1];
+        }
+        ComplexHouseholder.backSubstitute(this.work, 0, this.width, n, x, 0);
+        return x;
+    }
+
+    // x minimising ||A x - b|| for the only right hand side
+    public Complex[] solve() {
+        if (this.nrhs != 1) throw new IllegalStateException("there are " + this.nrhs + " right hand sides, use solve(k)");
+        double[] x = solve(0);
+        Complex[] xvec = new Complex[this.ncol];
+        for (int i = 0; i < this.ncol; i++) {
+            xvec[i] = new Complex(x[2 * i], x[2 * i + 1]);
+        }
+        return xvec;
+    }
+
+    // ||A x - b|| at the least squares solution for right hand side k, without forming x
+    public double getResidualNorm(int k) {
+        int n = this.ncol;
+        if (k < 0 || k >= this.nrhs) throw new IllegalArgumentException("right hand side, " + k + ", must be between 0 and " + (this.nrhs - 1));
+        fold();
+        double sum = 0.0;
+        for (int i = n; i <= n + k; i++) {
+            double re = this.work[2 * (this.width * i + n + k)], im = this.work[2 * (this.width * i + n + k) + 1];
+            sum += re * re + im * im;
+        }
+        return Math.sqrt(sum);
+    }
+}
@@ -0,0 +1,255 @@
+package com.bob.complexqr;
+
+/*
+        A dependency driven task scheduler for tile algorithms.
+
+        Tasks are added in the order a serial loop would run them, each with the data items it
+        reads and those it writes; an item is any part of the data the caller chooses to number,
+        typically a tile or part of a tile.  From these the usual hazards give the edges:
+
+            read after write        a reader waits for the last writer of the item
+            write after read        a writer waits for every reader since that write
+            write after write       a writer waits for the last writer
+
+        run executes the tasks on a ForkJoinPool as soon as all their predecessors are done: a task
+        that finishes hands each successor it has released to the pool, so a worker goes on with
+        work on the tiles it has just written, and idle workers steal the rest.  With one thread the
+        tasks simply run in the order they were added, which is always a valid order.
+
+        Each task records its start and end times, in nanoseconds from the start of run, and the
+        thread that ran it, so the efficiency of the schedule can be measured: the busy time over
+        the elapsed time times the number of threads.
+
+        see:    A. Buttari, J. Langou, J. Kurzak and J. Dongarra, A class of parallel tiled linear algebra
+                algorithms for multicore architectures, Parallel Computing 35 (2009)
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class TaskGraph {
+
+    private final List<Task> tasks = new ArrayList<>();
+    private final int[] lastWriter;                         // per item, -1 if never written
+    private final List<List<Integer>> readers;              // per item, readers since the last write
+    private long elapsed = 0L;
+    private int threadsUsed = 1;
+
+    private static final class Task {
+        final int kind;                                     // caller's kernel number
+        final int tile;                                     // caller's tile number, for timing
+        final Runnable body;
+        final List<Integer> successors = new ArrayList<>();
+        int predecessors = 0;
+        final AtomicInteger pending = new AtomicInteger();
+        long start, end;
+        int thread;
+
+        Task(int kind, int tile, Runnable body) {
+            this.kind = kind;
+            this.tile = tile;
+            this.body = body;
+        }
+    }
+
+    // CONSTRUCTORS
+    // A graph over data items numbered 0 .. items-1
+    public TaskGraph(int items) {
+        if (items < 0) throw new IllegalArgumentException("number of items, " + items + ", must not be negative");
+        this.lastWriter = new int[items];
+        this.readers = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            this.lastWriter[i] = -1;
+            this.readers.add(new ArrayList<Integer>());
+        }
+    }
+
+    // BUILDING
+    // Add a task; an item in both reads and writes is treated as written.  Returns the task number.
+    public int add(int kind, int tile, Runnable body, int[] reads, int[] writes) {
+        int id = this.tasks.size();
+        Task task = new Task(kind, tile, body);
+        this.tasks.add(task);
+        for (int item : reads) {
+            if (contains(writes, item)) continue;
+            depend(this.lastWriter[item], id);
+            this.readers.get(item).add(id);
+        }
+        for (int item : writes) {
+            depend(this.lastWriter[item], id);
+            for (int r : this.readers.get(item)) {
+                depend(r, id);
+            }
+            this.readers.get(item).clear();
+            this.lastWriter[item] = id;
+        }
+        return id;
+    }
+
+    private void depend(int before, int after) {
+        if (before < 0 || before == after) return;
+        List<Integer> successors = this.tasks.get(before).successors;
+        if (!successors.isEmpty() && successors.get(successors.size() - 1) == after) return;     // already an edge
+        successors.add(after);
+        this.tasks.get(after).predecessors++;
+    }
+
+    private static boolean contains(int[] list, int item) {
+        for (int i : list) {
+            if (i == item) return true;
+        }
+        return false;
+    }
+
+    // RUNNING
+    // Run every task, with threads > 1 on a ForkJoinPool of that many workers
+    public void run(int threads) {
+        final long origin = System.nanoTime();
+        this.threadsUsed = Math.max(1, threads);
+        if (threads <= 1) {
+            for (Task task : this.tasks) {
+                task.start = System.nanoTime() - origin;
+                task.body.run();
+                task.end = System.nanoTime() - origin;
+                task.thread = 0;
+            }
+            this.elapsed = System.nanoTime() - origin;
+            return;
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final CountDownLatch done = new CountDownLatch(this.tasks.size());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> workers = new ArrayList<>();
+        try {
+            for (Task task : this.tasks) {
+                task.pending.set(task.predecessors);
+            }
+            for (int id = 0; id < this.tasks.size(); id++) {
+                if (this.tasks.get(id).predecessors == 0) {
+                    pool.execute(runner(id, pool, done, failure, workers, origin));
+                }
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("tile task interrupted", e);
+        } finally {
+            pool.shutdown();
+        }
+        this.elapsed = System.nanoTime() - origin;
+
+        Throwable e = failure.get();
+        if (e instanceof ArithmeticException) throw (ArithmeticException) e;
+        if (e instanceof IllegalArgumentException) throw (IllegalArgumentException) e;
+        if (e != null) throw new IllegalStateException("tile kernel failed: " + e, e);
+    }
+
+    // Run task id and release its successors.  After a failure the remaining tasks are released without
+    // running, so that run still returns.
+    private Runnable runner(final int id, final ForkJoinPool pool, final CountDownLatch done,
+                            final AtomicReference<Throwable> failure, final List<Thread> workers, final long origin) {
+        return new Runnable() {
+            public void run() {
+                Task task = tasks.get(id);
+                task.thread = workerIndex(workers, Thread.currentThread());
+                task.start = System.nanoTime() - origin;
+                if (failure.get() == null) {
+                    try {
+                        task.body.run();
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+                task.end = System.nanoTime() - origin;
+                for (int s : task.successors) {
+                    if (tasks.get(s).pending.decrementAndGet() == 0) {
+                        pool.execute(runner(s, pool, done, failure, workers, origin));
+                    }
+                }
+                done.countDown();
+            }
+        };
+    }
+
+    private static int workerIndex(List<Thread> workers, Thread thread) {
+        synchronized (workers) {
+            int i = workers.indexOf(thread);
+            if (i < 0) {
+                workers.add(thread);
+                i = workers.size() - 1;
+            }
+            return i;
+        }
+    }
+
+    // TIMING
+    public int size() {
+        return this.tasks.size();
+    }
+
+    public int getKind(int task) {
+        return this.tasks.get(task).kind;
+    }
+
+    public int getTile(int task) {
+        return this.tasks.get(task).tile;
+    }
+
+    // Start and end of a task, nanoseconds from the start of run
+    public long getStart(int task) {
+        return this.tasks.get(task).start;
+    }
+
+    public long getEnd(int task) {
+        return this.tasks.get(task).end;
+    }
+
+    // Index, from 0, of the worker that ran a task
+    public int getThread(int task) {
+        return this.tasks.get(task).thread;
+    }
+
+    // Number of tasks that must finish before a task can start
+    public int getPredecessors(int task) {
+        return this.tasks.get(task).predecessors;
+    }
+
+    // Wall time of the last run, nanoseconds
+    public long getElapsedNanos() {
+        return this.elapsed;
+    }
+
+    // Sum of the task times of the last run, nanoseconds
+    public long getBusyNanos() {
+        long busy = 0L;
+        for (Task task : this.tasks) {
+            busy += task.end - task.start;
+        }
+        return busy;
+    }
+
+    // Busy time over elapsed time times threads: 1 if no worker was ever idle
+    public double getEfficiency() {
+        return (this.elapsed == 0L) ? 0.0 : (double) getBusyNanos() / ((double) this.elapsed * this.threadsUsed);
+    }
+
+    // Longest chain of task times through the graph, nanoseconds: no schedule can finish sooner
+    public long getCriticalPathNanos() {
+        long[] finish = new long[this.tasks.size()];
+        long longest = 0L;
+        for (int id = 0; id < this.tasks.size(); id++) {    // tasks were added in a topological order
+            Task task = this.tasks.get(id);
+            finish[id] += task.end - task.start;
+            for (int s : task.successors) {
+                finish[s] = Math.max(finish[s], finish[id]);
+            }
+            longest = Math.max(longest, finish[id]);
+        }
+        return longest;
+    }
+}
@@ -0,0 +1,442 @@
+package com.bob.complexqr;
+
+/*
+        Tiled QR factorization of a complex m x n matrix, m >= n, in the style of PLASMA.
+
+        complexQR and ComplexHouseholder.factor reduce a column at a time; each reflection depends
+        on the last, so the only parallelism is within the update of one panel.  Here A is divided
+        into nb x nb tiles and factored by four tile kernels:
+
+            GEQRT   QR of the diagonal tile                             A_kk = Q_kk R_kk
+            UNMQR   apply Q_kk to a tile to its right                   A_kj = Q_kk A_kj
+            TSQRT   QR of R_kk stacked on a tile below it               [R_kk; A_ik] = Q_ik [R_kk; 0]
+            TSMQR   apply Q_ik to the two tiles to the right            [A_kj; A_ij] = Q_ik [A_kj; A_ij]
+
+        Step k is GEQRT(k), UNMQR(k, j) for j > k, then for each i > k TSQRT(i, k) followed by
+        TSMQR(i, j, k) for j > k.  The kernels are scheduled by a TaskGraph: each runs as soon as
+        the tiles it needs are ready, so the updates of step k overlap the factorization of step
+        k + 1 and of later panels, and parallelism does not end at one panel.
+
+        The diagonal tile is two data items for the scheduler: R on and above the diagonal, which
+        TSQRT updates, and the Householder vectors below it, which UNMQR reads.  So the UNMQR of a
+        step run alongside its TSQRT.
+
+        Each kernel keeps the Householder vectors, as ComplexHouseholder, v[0] separately and the
+        rest in the tile, with the T of its compact WY form, I - V T VH.  A TSQRT vector is v[0] on
+        a row of R_kk and a full column in A_ik.  Q A = R as in complexQR.S, and A is overwritten
+        by R, above the diagonal, and the vectors.
+
+        Per tile timing: getTileNanos gives the time of the kernels that wrote each tile, and
+        getKernelNanos, getEfficiency and getCriticalPathNanos show how well the schedule used the
+        threads.
+
+        see:    A. Buttari, J. Langou, J. Kurzak and J. Dongarra, A class of parallel tiled linear algebra
+                algorithms for multicore architectures, Parallel Computing 35 (2009)
+*/
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+public class TiledQR {
+
+    public static final String TAG = MainActivity.TAG;
+
+    public static final int BLOCK_SIZE = 48;                // default tile size
+
+    public static final int GEQRT = 0;                      // kernel numbers, for timing
+    public static final int UNMQR = 1;
+    public static final int TSQRT = 2;
+    public static final int TSMQR = 3;
+    private static final String[] KERNEL = {"GEQRT", "UNMQR", "TSQRT", "TSMQR"};
+
+    private final int nrow;
+    private final int ncol;
+    private final int nb;
+    private final int mt, nt;                               // tile rows and tile columns
+    private final double[] a;                               // R and the Householder vectors, m x n
+    private final double[][] head;                          // v[0] of each kernel's vectors, by tile (i, k), i >= k
+    private final double[][] t;                             // T of each kernel, by tile (i, k), i >= k
+    private final TaskGraph graph;
+    private final int threads;
+
+    // CONSTRUCTORS
+    // Factor a copy of a ComplexMatrix with all the processors
+    public TiledQR(ComplexMatrix matrix) {
+        this(ComplexHouseholder.toInterleaved(matrix), matrix.getNrow(), matrix.getNcol(),
+                BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Factor the m x n matrix a in place, stored as for complexQR, with nb x nb tiles on threads threads
+    public TiledQR(double[] a, int m, int n, int nb, int threads) {
+        if (m < n) throw new IllegalArgumentException("number of rows, " + m + ", must not be less than the number of columns, " + n);
+        if (a.length < 2 * m * n) throw new IllegalArgumentException("array is too short for a " + m + "x" + n + " complex matrix");
+        if (nb < 1) throw new IllegalArgumentException("block size, " + nb + ", must be at least one");
+        this.nrow = m;
+        this.ncol = n;
+        this.nb = nb;
+        this.mt = (m + nb - 1) / nb;
+        this.nt = (n + nb - 1) / nb;
+        this.a = a;
+        this.head = new double[this.mt * this.nt][];
+        this.t = new double[this.mt * this.nt][];
+        this.threads = Math.max(1, threads);
+        this.graph = build();
+        this.graph.run(this.threads);
+    }
+
+    // Tile sizes
+    private int rows(int i) {
+        return Math.min(this.nb, this.nrow - i * this.nb);
+    }
+
+    private int cols(int j) {
+        return Math.min(this.nb, this.ncol - j * this.nb);
+    }
+
+    // Offset in a of tile (i, j)
+    private int offset(int i, int j) {
+        return 2 * (this.ncol * i * this.nb + j * this.nb);
+    }
+
+    // Scheduler items: the upper part (or all) of tile (i, j), and the part below the diagonal of a diagonal tile
+    private int upper(int i, int j) {
+        return 2 * (this.nt * i + j);
+    }
+
+    private int lower(int i, int j) {
+        return 2 * (this.nt * i + j) + 1;
+    }
+
+    // The tasks of the factorization, in the order of the serial loop
+    private TaskGraph build() {
+        TaskGraph g = new TaskGraph(2 * this.mt * this.nt);
+        final int lda = this.ncol;
+        for (int k = 0; k < this.nt; k++) {
+            final int k0 = k;
+            final int kb = cols(k);
+            final int mk = rows(k);
+            this.head[this.nt * k + k] = new double[2 * kb];
+            this.t[this.nt * k + k] = new double[2 * kb * kb];
+            g.add(GEQRT, this.nt * k + k, new Runnable() {
+                public void run() {
+                    geqrt(a, offset(k0, k0), lda, mk, kb, head[nt * k0 + k0], t[nt * k0 + k0]);
+                }
+            }, new int[0], new int[] {upper(k, k), lower(k, k)});
+
+            for (int j = k + 1; j < this.nt; j++) {
+                final int j0 = j;
+                g.add(UNMQR, this.nt * k + j, new Runnable() {
+                    public void run() {
+                        ComplexHouseholder.applyBlockLeft(a, offset(k0, k0), lda, mk, kb, head[nt * k0 + k0], 0,
+                                t[nt * k0 + k0], 0, kb, true, a, offset(k0, j0), lda, cols(j0), new double[2 * kb * cols(j0)]);
+                    }
+                }, new int[] {lower(k, k)}, new int[] {upper(k, j)});
+            }
+
+            for (int i = k + 1; i < this.mt; i++) {
+                final int i0 = i;
+                this.head[this.nt * i + k] = new double[2 * kb];
+                this.t[this.nt * i + k] = new double[2 * kb * kb];
+                g.add(TSQRT, this.nt * i + k, new Runnable() {
+                    public void run() {
+                        tsqrt(a, offset(k0, k0), offset(i0, k0), lda, rows(i0), kb, head[nt * i0 + k0], t[nt * i0 + k0]);
+                    }
+                }, new int[0], new int[] {upper(k, k), upper(i, k)});
+
+                for (int j = k + 1; j < this.nt; j++) {
+                    final int j0 = j;
+                    g.add(TSMQR, this.nt * i + j, new Runnable() {
+                        public void run() {
+                            tsmqr(a, offset(i0, k0), lda, rows(i0), kb, head[nt * i0 + k0], t[nt * i0 + k0], true,
+                                    a, offset(k0, j0), lda, a, offset(i0, j0), lda, cols(j0));
+                        }
+                    }, new int[] {upper(i, k)}, new int[] {upper(k, j), upper(i, j)});
+                }
+            }
+        }
+        return g;
+    }
+
+    // KERNELS
+    // GEQRT: QR of the mb x kb tile at a[off], mb >= kb, with its T (kb x kb)
+    static void geqrt(double[] a, int off, int lda, int mb, int kb, double[] head, double[] t) {
+        ComplexHouseholder.factor(a, off, lda, mb, kb, head, new double[2 * kb]);
+        ComplexHouseholder.formT(a, off, lda, mb, kb, head, 0, t, 0, kb, new double[2 * kb]);
+    }
+
+    // TSQRT: QR of the kb x kb upper triangle R at a[rOff] stacked on the mb x kb tile at a[bOff].  R is updated,
+    // the tile receives the lower parts of the vectors, head their elements on the diagonal of R and t their T.
+    // With t null T is not formed, for StreamingQR, which never applies the vectors again.
+    static void tsqrt(double[] a, int rOff, int bOff, int lda, int mb, int kb, double[] head, double[] t) {
+        double[] work = new double[2 * kb];
+        for (int j = 0; j < kb; j++) {
+            int jj = rOff + 2 * (lda * j + j);
+            double sum = 0.0;
+            for (int r = 0, p = bOff + 2 * j; r < mb; r++, p += 2 * lda) {
+                sum += a[p] * a[p] + a[p + 1] * a[p + 1];
+            }
+            double x0r = a[jj], x0i = a[jj + 1];
+            double abs0 = Math.hypot(x0r, x0i);
+            double norm = Math.sqrt(sum + abs0 * abs0);
+            if (sum == 0.0) {
+                head[2 * j] = 0.0;                                  // nothing below R[j][j], H = I
+                head[2 * j + 1] = 0.0;
+                continue;
+            }
+            double pr = 1.0, pi = 0.0;                              // e^(i arg x0)
+            if (abs0 != 0.0) {
+                pr = x0r / abs0;
+                pi = x0i / abs0;
+            }
+            double v0r = x0r + pr * norm, v0i = x0i + pi * norm;
+            double scale = 1.0 / Math.sqrt(sum + v0r * v0r + v0i * v0i);
+            double h0r = v0r * scale, h0i = v0i * scale;
+            head[2 * j] = h0r;
+            head[2 * j + 1] = h0i;
+            a[jj] = -pr * norm;                                     // R[j][j]
+            a[jj + 1] = -pi * norm;
+            for (int r = 0, p = bOff + 2 * j; r < mb; r++, p += 2 * lda) {
+                a[p] *= scale;
+                a[p + 1] *= scale;
+            }
+
+            // the rest of row j of R and of the tile, columns j+1 .. kb-1
+            int n2 = 2 * (kb - j - 1);
+            if (n2 == 0) continue;
+            int rj = jj + 2;
+            for (int q = 0; q < n2; q += 2) {                       // w = conj(v0) R[j][] + VH B
+                work[q]     = h0r * a[rj + q] + h0i * a[rj + q + 1];
+                work[q + 1] = h0r * a[rj + q + 1] - h0i * a[rj + q];
+            }
+            for (int r = 0; r < mb; r++) {
+                int row = bOff + 2 * lda * r;
+                double vr = a[row + 2 * j], vi = a[row + 2 * j + 1];
+                for (int q = 0, p = row + 2 * j + 2; q < n2; q += 2, p += 2) {
+                    work[q]     += vr * a[p] + vi * a[p + 1];
+                    work[q + 1] += vr * a[p + 1] - vi * a[p];
+                }
+            }
+            for (int q = 0; q < n2; q++) {
+                work[q] += work[q];                                 // 2*sum
+            }
+            ComplexHouseholder.addRow(a, rj, work, 0, n2, -h0r, -h0i);
+            for (int r = 0; r < mb; r++) {
+                int row = bOff + 2 * lda * r;
+                ComplexHouseholder.addRow(a, row + 2 * j + 2, work, 0, n2, -a[row + 2 * j], -a[row + 2 * j + 1]);
+            }
+        }
+
+        if (t == null) {
+            return;
+        }
+        // T: the parts of the vectors on R do not overlap, so v[l]H v[i] is the product of tile columns l and i
+        for (int i = 0; i < kb; i++) {
+            Arrays.fill(work, 0, 2 * i, 0.0);
+            for (int r = 0; r < mb; r++) {
+                int row = bOff + 2 * lda * r;
+                double yr = a[row + 2 * i], yi = a[row + 2 * i + 1];
+                for (int l = 0; l < i; l++) {
+                    double xr = a[row + 2 * l], xi = a[row + 2 * l + 1];
+                    work[2 * l]     += xr * yr + xi * yi;
+                    work[2 * l + 1] += xr * yi - xi * yr;
+                }
+            }
+            for (int l = 0; l < i; l++) {                           // T[0..i-1][i] = -2 T[0..i-1][0..i-1] work
+                double sr = 0.0, si = 0.0;
+                for (int p = l; p < i; p++) {
+                    double tr = t[2 * (kb * l + p)], ti = t[2 * (kb * l + p) + 1];
+                    sr += tr * work[2 * p] - ti * work[2 * p + 1];
+                    si += tr * work[2 * p + 1] + ti * work[2 * p];
+                }
+                t[2 * (kb * l + i)] = -2.0 * sr;
+                t[2 * (kb * l + i) + 1] = -2.0 * si;
+            }
+            for (int l = i + 1; l < kb; l++) {
+                t[2 * (kb * l + i)] = 0.0;
+                t[2 * (kb * l + i) + 1] = 0.0;
+            }
+            boolean reflected = head[2 * i] != 0.0 || head[2 * i + 1] != 0.0;
+            t[2 * (kb * i + i)] = reflected ? 2.0 : 0.0;
+            t[2 * (kb * i + i) + 1] = 0.0;
+        }
+    }
+
+    // TSMQR: apply the kb reflectors of a TSQRT, lower parts in the mb x kb tile at v[vOff], to the kb x ncols
+    // block c1 and the mb x ncols block c2 beneath it: [C1; C2] = (I - V TH VH) [C1; C2], the order of the
+    // factorization, with adjoint = true, or (I - V T VH) [C1; C2], its inverse, with adjoint = false.
+    static void tsmqr(double[] v, int vOff, int ldv, int mb, int kb, double[] head, double[] t, boolean adjoint,
+                      double[] c1, int c1Off, int ldc1, double[] c2, int c2Off, int ldc2, int ncols) {
+        int n2 = 2 * ncols;
+        double[] w = new double[kb * n2];
+        for (int j = 0; j < kb; j++) {                              // W = diag(conj(v0)) C1 + VH C2
+            double hr = head[2 * j], hi = head[2 * j + 1];
+            int row = c1Off + 2 * ldc1 * j;
+            for (int q = 0, p = n2 * j; q < n2; q += 2, p += 2) {
+                w[p]     = hr * c1[row + q] + hi * c1[row + q + 1];
+                w[p + 1] = hr * c1[row + q + 1] - hi * c1[row + q];
+            }
+        }
+        ComplexHouseholder.multiplyVH(v, vOff, ldv, mb, kb, c2, c2Off, ldc2, n2, w);
+        ComplexHouseholder.multiplyT(t, 0, kb, kb, adjoint, w, n2);
+        for (int j = 0; j < kb; j++) {                              // C1 -= diag(v0) W
+            ComplexHouseholder.addRow(c1, c1Off + 2 * ldc1 * j, w, n2 * j, n2, -head[2 * j], -head[2 * j + 1]);
+        }
+        ComplexHouseholder.subtractVW(v, vOff, ldv, mb, kb, w, c2, c2Off, ldc2, n2);     // C2 -= V W
+    }
+
+    // GET VALUES
+    public int getNrow() {
+        return this.nrow;
+    }
+
+    public int getNcol() {
+        return this.ncol;
+    }
+
+    public int getBlockSize() {
+        return this.nb;
+    }
+
+    // v[0] and T of the kernel that factored tile (i, k), i >= k, with the lower parts of its vectors in the tile
+    double[] getHead(int i, int k) {
+        return this.head[this.nt * i + k];
+    }
+
+    double[] getT(int i, int k) {
+        return this.t[this.nt * i + k];
+    }
+
+    // Return R as an m x n ComplexMatrix, zero below the diagonal, as complexQR leaves it in A
+    public ComplexMatrix getR() {
+        return getPackedR().toComplexMatrix(this.nrow);
+    }
+
+    public PackedUpperTriangular getPackedR() {
+        return PackedUpperTriangular.fromInterleaved(this.a, 0, this.ncol, this.ncol);
+    }
+
+    // Apply Q (transpose = false) or QH (transpose = true) from the left to the m x ncols block c at c[cOff],
+    // leading dimension ldc, with the kernels of the factorization replayed in order, or in reverse
+    public void applyQ(boolean transpose, double[] c, int cOff, int ldc, int ncols) {
+        int lda = this.ncol;
+        double[] work = new double[2 * this.nb * ncols];
+        for (int s = 0; s < this.nt; s++) {
+            int k = transpose ? this.nt - 1 - s : s;
+            int kb = cols(k);
+            int ck = cOff + 2 * ldc * k * this.nb;
+            if (!transpose) {
+                ComplexHouseholder.applyBlockLeft(this.a, offset(k, k), lda, rows(k), kb, this.head[this.nt * k + k], 0,
+                        this.t[this.nt * k + k], 0, kb, true, c, ck, ldc, ncols, work);
+            }
+            for (int u = k + 1; u < this.mt; u++) {
+                int i = transpose ? this.mt + k - u : u;
+                tsmqr(this.a, offset(i, k), lda, rows(i), kb, this.head[this.nt * i + k], this.t[this.nt * i + k], !transpose,
+                        c, ck, ldc, c, cOff + 2 * ldc * i * this.nb, ldc, ncols);
+            }
+            if (transpose) {
+                ComplexHouseholder.applyBlockLeft(this.a, offset(k, k), lda, rows(k), kb, this.head[this.nt * k + k], 0,
+                        this.t[this.nt * k + k], 0, kb, false, c, ck, ldc, ncols, work);
+            }
+        }
+    }
+
+    // Form the explicit m x m Q, Q A = R, as complexQR does with flag = 1
+    public ComplexMatrix getQ() {
+        int m = this.nrow;
+        double[] q = new double[2 * m * m];
+        for (int i = 0; i < m; i++) {
+            q[2 * (m * i + i)] = 1.0;
+        }
+        applyQ(false, q, 0, m, m);
+        return ComplexHouseholder.toComplexMatrix(q, 0, m, m, m);
+    }
+
+    // LEAST SQUARES
+    // Least squares in place: y holds b, interleaved, m elements, and receives x in its first n elements
+    public void solve(double[] y) {
+        if (y.length < 2 * this.nrow) throw new IllegalArgumentException("vector is too short for " + this.nrow + " complex elements");
+        applyQ(false, y, 0, 1, 1);
+        ComplexHouseholder.backSubstitute(this.a, 0, this.ncol, this.ncol, y, 0);
+    }
+
+    // Return x minimising ||A x - b||, b of length m
+    public Complex[] solve(Complex[] bvec) {
+        if (bvec.length != this.nrow) throw new IllegalArgumentException("vector length, " + bvec.length + ", is not equal to the number of rows, " + this.nrow);
+        double[] y = new double[2 * this.nrow];
+        for (int i = 0; i < this.nrow; i++) {
+            y[2 * i] = bvec[i].getReal();
+            y[2 * i + 1] = bvec[i].getImag();
+        }
+        solve(y);
+        Complex[] xvec = new Complex[this.ncol];
+        for (int i = 0; i < this.ncol; i++) {
+            xvec[i] = new Complex(y[2 * i], y[2 * i + 1]);
+        }
+        return xvec;
+    }
+
+    // TIMING
+    public int getThreads() {
+        return this.threads;
+    }
+
+    // Wall time of the factorization, nanoseconds
+    public long getElapsedNanos() {
+        return this.graph.getElapsedNanos();
+    }
+
+    // Total time and number of calls of one kernel, GEQRT, UNMQR, TSQRT or TSMQR
+    public long getKernelNanos(int kernel) {
+        long sum = 0L;
+        for (int task = 0; task < this.graph.size(); task++) {
+            if (this.graph.getKind(task) == kernel) sum += this.graph.getEnd(task) - this.graph.getStart(task);
+        }
+        return sum;
+    }
+
+    public int getKernelCount(int kernel) {
+        int count = 0;
+        for (int task = 0; task < this.graph.size(); task++) {
+            if (this.graph.getKind(task) == kernel) count++;
+        }
+        return count;
+    }
+
+    // Time of the kernels that wrote tile (i, j), nanoseconds
+    public long getTileNanos(int i, int j) {
+        if (i < 0 || i >= this.mt || j < 0 || j >= this.nt) throw new IllegalArgumentException("tile (" + i + ", " + j + ") is outside the " + this.mt + "x" + this.nt + " tiles");
+        long sum = 0L;
+        for (int task = 0; task < this.graph.size(); task++) {
+            if (this.graph.getTile(task) == this.nt * i + j) sum += this.graph.getEnd(task) - this.graph.getStart(task);
+        }
+        return sum;
+    }
+
+    // Busy time of the kernels over elapsed time times threads
+    public double getEfficiency() {
+        return this.graph.getEfficiency();
+    }
+
+    // Longest chain of dependent kernels, nanoseconds; elapsed time can not be less
+    public long getCriticalPathNanos() {
+        return this.graph.getCriticalPathNanos();
+    }
+
+    // The timing as text, also sent to the log
+    public String timingReport() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format(Locale.US, "tiled QR %dx%d, %dx%d tiles of %d, %d threads: %.3f ms, critical path %.3f ms, efficiency %.2f\n",
+                this.nrow, this.ncol, this.mt, this.nt, this.nb, this.threads,
+                getElapsedNanos() / 1.0e6, getCriticalPathNanos() / 1.0e6, getEfficiency()));
+        for (int kernel = GEQRT; kernel <= TSMQR; kernel++) {
+            int count = getKernelCount(kernel);
+            long nanos = getKernelNanos(kernel);
+            s.append(String.format(Locale.US, "  %s %d calls, %.3f ms, %.1f us each\n", KERNEL[kernel], count,
+                    nanos / 1.0e6, (count == 0) ? 0.0 : nanos / 1.0e3 / count));
+        }
+        Log.d(TAG, s.toString());
+        return s.toString();
+    }
+}